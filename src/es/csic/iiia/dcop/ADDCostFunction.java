@@ -0,0 +1,1402 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import es.csic.iiia.dcop.CostFunction.Combine;
+import es.csic.iiia.dcop.CostFunction.Normalize;
+import es.csic.iiia.dcop.CostFunction.Summarize;
+import es.csic.iiia.dcop.util.ConstraintChecks;
+import gnu.trove.iterator.TLongDoubleIterator;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.hash.TLongDoubleHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Cost Function implementation that stores its values as an (multi-valued)
+ * algebraic decision diagram.
+ * <p/>
+ * The diagram tests the function's variables in ascending identifier order,
+ * skipping the variables on which a sub-function does not depend, and shares
+ * all identical sub-diagrams. Therefore, highly structured functions (large
+ * constant regions, repeated sub-tables) are stored in space proportional to
+ * their structure instead of their size.
+ * <p/>
+ * Combination, summarization, reduction, filtering, negation, inversion and
+ * normalization operate directly on the diagrams. Random writes through
+ * {@link #setValue(long, double)} are buffered and patched into the diagram
+ * (rebuilding only the paths that lead to them) the next time that a diagram
+ * operation is performed. Only when a large fraction of the function has
+ * been written is it temporarily expanded into a flat array instead.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class ADDCostFunction extends AbstractCostFunction {
+
+    /**
+     * Root of the diagram.
+     */
+    private Node root;
+
+    /**
+     * Point writes pending to be patched into the diagram.
+     */
+    private TLongDoubleHashMap writes;
+
+    /**
+     * Expanded values, once so many values have been written that
+     * rebuilding the whole diagram is cheaper than patching it.
+     */
+    private double[] staging;
+
+    /**
+     * Variables of this function, in diagram order (ascending identifier).
+     */
+    private Variable[] order;
+
+    /**
+     * Identifiers of the variables, in diagram order.
+     */
+    private int[] orderIds;
+
+    /**
+     * Linearized index stride of each variable, in diagram order.
+     */
+    private long[] strides;
+
+    /**
+     * Position (in the function's variables) of each variable, in diagram
+     * order.
+     */
+    private int[] positions;
+
+    /**
+     * Number of configurations spanned by the variables from each level
+     * (in diagram order) to the end.
+     */
+    private long[] remaining;
+
+    /**
+     * Cached number of nogoods, or -1 if unknown.
+     */
+    private long nNoGoods = -1;
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     */
+    protected ADDCostFunction(Variable[] variables) {
+        super(variables);
+        computeOrder();
+        root = new Builder().terminal(0);
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     */
+    protected ADDCostFunction(CostFunction factor) {
+        super(factor);
+        computeOrder();
+        if (factor instanceof ADDCostFunction) {
+            // Diagrams are immutable, so they can be safely shared
+            final ADDCostFunction f = (ADDCostFunction)factor;
+            root = f.root;
+            writes = f.writes == null ? null : new TLongDoubleHashMap(f.writes);
+            staging = f.staging == null ? null : f.staging.clone();
+            nNoGoods = f.nNoGoods;
+        } else if (factor instanceof OffHeapHypercubeCostFunction) {
+            // Too large (or better not) to be copied into an array
+            nNoGoods = -1;
+            root = build(factor, 0, 0, new Builder());
+        } else {
+            root = build(factor.getValues());
+        }
+    }
+
+    /**
+     * Builds a new function over the given variables, with the given diagram.
+     */
+    private ADDCostFunction derive(Variable[] vars, Node diagram) {
+        ADDCostFunction f = new ADDCostFunction(vars);
+        f.setFactory(getFactory());
+        f.root = diagram;
+        return f;
+    }
+
+    /**
+     * Computes the diagram ordering of the variables and their strides.
+     */
+    private void computeOrder() {
+        final int len = variables.length;
+        order = variables.clone();
+        Arrays.sort(order, new Comparator<Variable>() {
+            public int compare(Variable t, Variable t1) {
+                return t.getId() < t1.getId() ? -1 : (t.getId() == t1.getId() ? 0 : 1);
+            }
+        });
+
+        orderIds = new int[len];
+        strides = new long[len];
+        positions = new int[len];
+        remaining = new long[len+1];
+        remaining[len] = 1;
+        for (int k=len-1; k>=0; k--) {
+            remaining[k] = remaining[k+1] * order[k].getDomain();
+        }
+        for (int k=0; k<len; k++) {
+            orderIds[k] = order[k].getId();
+            for (int i=0; i<len; i++) {
+                if (variables[i].getId() == orderIds[k]) {
+                    strides[k] = sizes[len - i - 1];
+                    positions[k] = i;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the diagram level of the given variable identifier.
+     */
+    private int levelOf(int varId) {
+        return Arrays.binarySearch(orderIds, varId);
+    }
+
+    /**
+     * Returns the diagram of this function, compressing the pending writes
+     * (if any).
+     */
+    private Node getRoot() {
+        if (staging != null) {
+            root = build(staging);
+            staging = null;
+        } else if (writes != null) {
+            root = patch(root, writes);
+            writes = null;
+        }
+        return root;
+    }
+
+    /**
+     * Returns the diagram corresponding to the given function.
+     */
+    private static Node toDiagram(CostFunction f) {
+        if (f instanceof ADDCostFunction) {
+            return ((ADDCostFunction)f).getRoot();
+        }
+        return new ADDCostFunction(f).root;
+    }
+
+    /**
+     * Builds a (reduced) diagram from a linearized array of values.
+     */
+    private Node build(double[] values) {
+        if (values.length != size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+        nNoGoods = -1;
+        return build(values, 0, 0, new Builder());
+    }
+
+    private Node build(double[] values, int level, long base, Builder b) {
+        if (level == order.length) {
+            return b.terminal(values[(int)base]);
+        }
+        final int domain = order[level].getDomain();
+        Node[] children = new Node[domain];
+        for (int i=0; i<domain; i++) {
+            children[i] = build(values, level+1, base + i*strides[level], b);
+        }
+        return b.node(orderIds[level], children);
+    }
+
+    /**
+     * Builds a (reduced) diagram reading the values of the given function
+     * through long indices.
+     */
+    private Node build(CostFunction f, int level, long base, Builder b) {
+        if (level == order.length) {
+            return b.terminal(f.getValue(base));
+        }
+        final int domain = order[level].getDomain();
+        Node[] children = new Node[domain];
+        for (int i=0; i<domain; i++) {
+            children[i] = build(f, level+1, base + i*strides[level], b);
+        }
+        return b.node(orderIds[level], children);
+    }
+
+    /**
+     * Fills the given array with the values represented by a diagram.
+     */
+    private void expand(Node node, int level, long base, double[] out) {
+        if (level == order.length) {
+            out[(int)base] = node.value;
+            return;
+        }
+        final int domain = order[level].getDomain();
+        final boolean tested = node.var == orderIds[level];
+        for (int i=0; i<domain; i++) {
+            expand(tested ? node.children[i] : node, level+1, base + i*strides[level], out);
+        }
+    }
+
+    /**
+     * Returns the diagram resulting from applying the given point writes to
+     * the given diagram, rebuilding only the paths that lead to them.
+     */
+    private Node patch(Node diagram, TLongDoubleHashMap pending) {
+        // Sort the writes in diagram order, so that each sub-diagram
+        // receives a contiguous range of them
+        TLongDoubleHashMap byLevel = new TLongDoubleHashMap(pending.size());
+        for (TLongDoubleIterator it = pending.iterator(); it.hasNext();) {
+            it.advance();
+            byLevel.put(toDiagramIndex(it.key()), it.value());
+        }
+        final long[] keys = byLevel.keys();
+        Arrays.sort(keys);
+        final double[] vals = new double[keys.length];
+        for (int i=0; i<keys.length; i++) {
+            vals[i] = byLevel.get(keys[i]);
+        }
+        nNoGoods = -1;
+        return patch(diagram, 0, keys, vals, 0, keys.length, new Builder(diagram));
+    }
+
+    private Node patch(Node node, int level, long[] keys, double[] vals,
+            int from, int to, Builder b)
+    {
+        if (level == order.length) {
+            return b.terminal(vals[from]);
+        }
+        final int domain = order[level].getDomain();
+        final Node[] children = new Node[domain];
+        if (node.var == orderIds[level]) {
+            System.arraycopy(node.children, 0, children, 0, domain);
+        } else {
+            Arrays.fill(children, node);
+        }
+        final long span = remaining[level+1];
+        int i = from;
+        while (i < to) {
+            final int branch = (int)((keys[i] / span) % domain);
+            int j = i + 1;
+            while (j < to && (int)((keys[j] / span) % domain) == branch) {
+                j++;
+            }
+            children[branch] = patch(children[branch], level+1, keys, vals, i, j, b);
+            i = j;
+        }
+        return b.node(orderIds[level], children);
+    }
+
+    /**
+     * Converts a linearized index of this function to the corresponding
+     * index in diagram order.
+     */
+    private long toDiagramIndex(long index) {
+        long idx = 0;
+        for (int k=0; k<order.length; k++) {
+            idx += ((index / strides[k]) % order[k].getDomain()) * remaining[k+1];
+        }
+        return idx;
+    }
+
+    /**
+     * Returns the number of distinct nodes in this function's diagram.
+     *
+     * @return number of diagram nodes.
+     */
+    public int getNumberOfNodes() {
+        return collect(getRoot(), new IdentityHashMap<Node, Node>()).size();
+    }
+
+    /**
+     * Returns the size (in bytes) of a compact encoding of this function's
+     * diagram, where each internal node is sent as its variable identifier
+     * plus one reference per child, and each terminal as its value.
+     *
+     * @return size of the encoded diagram.
+     */
+    public long getEncodedSize() {
+        long bytes = 0;
+        for (Node n : collect(getRoot(), new IdentityHashMap<Node, Node>()).keySet()) {
+            bytes += n.isTerminal() ? 8 : 4 + 4*n.children.length;
+        }
+        return bytes;
+    }
+
+    private static IdentityHashMap<Node, Node> collect(Node node, IdentityHashMap<Node, Node> seen) {
+        if (seen.put(node, node) == null && !node.isTerminal()) {
+            for (Node child : node.children) {
+                collect(child, seen);
+            }
+        }
+        return seen;
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        modified();
+        writes = null;
+        staging = null;
+        nNoGoods = -1;
+        root = new Builder().terminal(initialValue);
+    }
+
+    public double[] getValues() {
+        if (staging != null) {
+            return staging.clone();
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new UnsupportedOperationException("Function " + getName()
+                    + " is too large to be expanded into an array.");
+        }
+        double[] res = new double[(int)size];
+        expand(getRoot(), 0, 0, res);
+        return res;
+    }
+
+    @Override
+    protected double[] copyValues() {
+        return getValues();
+    }
+
+
+    public void setValues(double[] values) {
+        modified();
+        writes = null;
+        staging = null;
+        root = build(values);
+    }
+
+    public double getValue(long index) {
+        ConstraintChecks.inc();
+        if (staging != null) {
+            return staging[(int)index];
+        }
+        if (writes != null && writes.containsKey(index)) {
+            return writes.get(index);
+        }
+
+        Node n = root;
+        while (!n.isTerminal()) {
+            final int k = levelOf(n.var);
+            n = n.children[(int)((index / strides[k]) % order[k].getDomain())];
+        }
+        return n.value;
+    }
+
+    public void setValue(long index, double value) {
+        modified();
+        nNoGoods = -1;
+        if (staging != null) {
+            staging[(int)index] = value;
+            return;
+        }
+
+        if (writes == null) {
+            writes = new TLongDoubleHashMap();
+        }
+        writes.put(index, value);
+
+        // Expand the function once patching would touch most of it
+        if (writes.size() > (size >>> 3) && size <= Integer.MAX_VALUE - 8) {
+            final double[] values = new double[(int)size];
+            expand(root, 0, 0, values);
+            for (TLongDoubleIterator it = writes.iterator(); it.hasNext();) {
+                it.advance();
+                values[(int)it.key()] = it.value();
+            }
+            writes = null;
+            staging = values;
+        }
+    }
+
+    public long getNumberOfNoGoods() {
+        if (nNoGoods < 0) {
+            final double ng = getFactory().getSummarizeOperation().getNoGood();
+            nNoGoods = countNoGoods(getRoot(), 0, ng, new HashMap<NodeKey, Long>());
+        }
+        return nNoGoods;
+    }
+
+    private long countNoGoods(Node node, int level, double ng, HashMap<NodeKey, Long> memo) {
+        if (node.isTerminal()) {
+            return node.value == ng ? remaining[level] : 0;
+        }
+
+        final NodeKey key = new NodeKey(node, null, level);
+        Long count = memo.get(key);
+        if (count != null) {
+            return count;
+        }
+
+        long c = 0;
+        if (node.var == orderIds[level]) {
+            for (Node child : node.children) {
+                c += countNoGoods(child, level+1, ng, memo);
+            }
+        } else {
+            c = order[level].getDomain() * countNoGoods(node, level+1, ng, memo);
+        }
+        memo.put(key, c);
+        return c;
+    }
+
+    private double sumGoods(Node node, int level, double ng, HashMap<NodeKey, Double> memo) {
+        if (node.isTerminal()) {
+            return node.value == ng ? 0 : node.value * remaining[level];
+        }
+
+        final NodeKey key = new NodeKey(node, null, level);
+        Double sum = memo.get(key);
+        if (sum != null) {
+            return sum;
+        }
+
+        double s = 0;
+        if (node.var == orderIds[level]) {
+            for (Node child : node.children) {
+                s += sumGoods(child, level+1, ng, memo);
+            }
+        } else {
+            s = order[level].getDomain() * sumGoods(node, level+1, ng, memo);
+        }
+        memo.put(key, s);
+        return s;
+    }
+
+    @Override public TLongIterator iterator() {
+        return new ADDIterator();
+    }
+
+    @Override public MasterIterator masterIterator() {
+        return new ADDMasterIterator();
+    }
+
+    @Override
+    public CostFunction negate() {
+        final Combine operation = getFactory().getCombineOperation();
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        return derive(variables, map(getRoot(), new UnaryOperation() {
+            public double eval(double x) {
+                if (x == ng) {
+                    return x;
+                }
+                final double v = operation.negate(x);
+                if (Double.isNaN(v)) {
+                    throw new RuntimeException("Negation generated a NaN value. Halting.");
+                }
+                return v;
+            }
+        }, new Builder(), new IdentityHashMap<Node, Node>()));
+    }
+
+    @Override
+    public CostFunction invert() {
+        final Combine operation = getFactory().getCombineOperation();
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        return derive(variables, map(getRoot(), new UnaryOperation() {
+            public double eval(double x) {
+                return x == ng ? x : operation.invert(x);
+            }
+        }, new Builder(), new IdentityHashMap<Node, Node>()));
+    }
+
+    @Override
+    public CostFunction normalize() {
+        final Normalize mode = getFactory().getNormalizationType();
+        if (mode == Normalize.NONE) {
+            return this;
+        }
+
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        final double sum = sumGoods(getRoot(), 0, ng, new HashMap<NodeKey, Double>());
+        final double dlen = (double)(size - getNumberOfNoGoods());
+        final double avg = sum / dlen;
+        if (Double.isNaN(avg)) {
+            throw new RuntimeException("Normalization generated a NaN value. Halting.");
+        }
+
+        return derive(variables, map(getRoot(), new UnaryOperation() {
+            public double eval(double x) {
+                if (x == ng) {
+                    return x;
+                }
+                if (mode == Normalize.SUM0) {
+                    final double v = x - avg;
+                    if (Double.isNaN(v)) {
+                        throw new RuntimeException("Normalization generated a NaN value. Halting.");
+                    }
+                    return v;
+                }
+                return sum != 0 ? x/sum : 1/dlen;
+            }
+        }, new Builder(), new IdentityHashMap<Node, Node>()));
+    }
+
+    @Override
+    protected CostFunction combineFunction(CostFunction factor) {
+        if (factor == null || factor.getSize() == 0 || size == 0) {
+            return super.combineFunction(factor);
+        }
+
+        LinkedHashSet<Variable> varSet = new LinkedHashSet<Variable>(variableSet);
+        varSet.addAll(factor.getVariableSet());
+
+        final Builder b = new Builder();
+        final Node r = apply(getRoot(), toDiagram(factor), combineOperation(),
+                absorbingValue(), b, new HashMap<NodeKey, Node>());
+        return derive(varSet.toArray(new Variable[0]), r);
+    }
+
+    @Override
+    public CostFunction combine(List<CostFunction> fs) {
+        ArrayList<CostFunction> nfs = new ArrayList<CostFunction>(fs.size());
+        for (CostFunction f : fs) {
+            if (f != null) {
+                nfs.add(f);
+            }
+        }
+        if (nfs.size() <= 1 || size == 0) {
+            return super.combine(nfs);
+        }
+
+        final OperationCache cache = getFactory().getOperationCache();
+        final CostFunction[] operands = new CostFunction[nfs.size() + 1];
+        operands[0] = this;
+        for (int i=0; i<nfs.size(); i++) {
+            operands[i+1] = nfs.get(i);
+        }
+        if (cache != null) {
+            final CostFunction result = cache.get(OperationCache.Operation.COMBINE, operands, null);
+            if (result != null) {
+                return getFactory().buildCostFunction(result);
+            }
+        }
+
+        LinkedHashSet<Variable> varSet = new LinkedHashSet<Variable>(variableSet);
+        Node r = getRoot();
+        final BinaryOperation op = combineOperation();
+        final double absorbing = absorbingValue();
+        for (CostFunction f : nfs) {
+            if (f.getSize() == 0) {
+                continue;
+            }
+            varSet.addAll(f.getVariableSet());
+            r = apply(r, toDiagram(f), op, absorbing, new Builder(),
+                    new HashMap<NodeKey, Node>());
+        }
+        final CostFunction result = derive(varSet.toArray(new Variable[0]), r);
+        if (cache != null) {
+            cache.put(OperationCache.Operation.COMBINE, operands, null, result);
+        }
+        return result;
+    }
+
+    @Override
+    public void negateInPlace() {
+        adopt((ADDCostFunction)negate());
+    }
+
+    @Override
+    public void invertInPlace() {
+        adopt((ADDCostFunction)invert());
+    }
+
+    @Override
+    public void normalizeInPlace() {
+        adopt((ADDCostFunction)normalize());
+    }
+
+    /**
+     * Replaces the diagram of this function by the one of the given function,
+     * which must be defined over the same variables.
+     */
+    private void adopt(ADDCostFunction f) {
+        if (f != this) {
+            modified();
+            writes = null;
+            staging = null;
+            nNoGoods = -1;
+            root = f.getRoot();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * All the diagrams are walked at once, eliminating the summarized
+     * variables while they are combined, so the combination itself is never
+     * built.
+     */
+    @Override
+    public CostFunction combineAndSummarize(List<CostFunction> fs, Variable[] vars) {
+        if (size == 0) {
+            return super.combineAndSummarize(fs, vars);
+        }
+
+        ArrayList<Node> roots = new ArrayList<Node>(fs.size() + 1);
+        LinkedHashSet<Variable> union = new LinkedHashSet<Variable>(variableSet);
+        roots.add(getRoot());
+        for (CostFunction f : fs) {
+            if (f == null || f.getSize() == 0) {
+                continue;
+            }
+            union.addAll(f.getVariableSet());
+            roots.add(toDiagram(f));
+        }
+
+        final Fusion fusion = new Fusion(union, vars);
+        final Node r = fusion.fuse(roots.toArray(new Node[0]), 0);
+        return derive(vars, r);
+    }
+
+    @Override
+    protected CostFunction summarizeFunction(Variable[] vars) {
+        final Summarize operation = getFactory().getSummarizeOperation();
+        final Set<Variable> keep = new LinkedHashSet<Variable>(Arrays.asList(vars));
+        final boolean[] eliminate = new boolean[order.length];
+        for (int k=0; k<order.length; k++) {
+            eliminate[k] = !keep.contains(order[k]);
+        }
+
+        final BinaryOperation op = new BinaryOperation() {
+            public double eval(double x, double y) {
+                return operation.eval(x, y);
+            }
+        };
+        final Node r = eliminate(getRoot(), 0, eliminate, operation, op,
+                new Builder(), new HashMap<NodeKey, Node>(),
+                new HashMap<NodeKey, Node>());
+        return derive(vars, r);
+    }
+
+    private Node eliminate(Node node, int level, boolean[] eliminate,
+            Summarize operation, BinaryOperation op, Builder b,
+            HashMap<NodeKey, Node> memo, HashMap<NodeKey, Node> applyMemo)
+    {
+        if (level == order.length) {
+            return b.terminal(node.value);
+        }
+
+        final NodeKey key = new NodeKey(node, null, level);
+        Node r = memo.get(key);
+        if (r != null) {
+            return r;
+        }
+
+        final int domain = order[level].getDomain();
+        final boolean tested = node.var == orderIds[level];
+        if (!eliminate[level]) {
+            if (tested) {
+                Node[] children = new Node[domain];
+                for (int i=0; i<domain; i++) {
+                    children[i] = eliminate(node.children[i], level+1, eliminate,
+                            operation, op, b, memo, applyMemo);
+                }
+                r = b.node(orderIds[level], children);
+            } else {
+                r = eliminate(node, level+1, eliminate, operation, op, b, memo, applyMemo);
+            }
+        } else if (tested) {
+            r = eliminate(node.children[0], level+1, eliminate, operation, op, b,
+                    memo, applyMemo);
+            for (int i=1; i<domain; i++) {
+                r = apply(r, eliminate(node.children[i], level+1, eliminate,
+                        operation, op, b, memo, applyMemo), op, Double.NaN, b,
+                        applyMemo);
+            }
+        } else {
+            r = eliminate(node, level+1, eliminate, operation, op, b, memo, applyMemo);
+            if (operation == Summarize.SUM) {
+                r = map(r, new UnaryOperation() {
+                    public double eval(double x) {
+                        return x * domain;
+                    }
+                }, b, new IdentityHashMap<Node, Node>());
+            }
+        }
+
+        memo.put(key, r);
+        return r;
+    }
+
+    @Override
+    public CostFunction reduce(VariableAssignment mapping) {
+        if (mapping == null || mapping.isEmpty()) {
+            return getFactory().buildCostFunction(this);
+        }
+
+        LinkedHashSet<Variable> newVariables = new LinkedHashSet<Variable>(variableSet);
+        newVariables.removeAll(mapping.keySet());
+        if (newVariables.isEmpty()) {
+            return getFactory().buildCostFunction(new Variable[0], getValue(mapping));
+        }
+
+        final int[] values = new int[order.length];
+        for (int k=0; k<order.length; k++) {
+            final Integer v = mapping.get(order[k]);
+            values[k] = v == null ? -1 : v;
+        }
+        final Node r = restrict(getRoot(), values, new Builder(),
+                new IdentityHashMap<Node, Node>());
+        return derive(newVariables.toArray(new Variable[0]), r);
+    }
+
+    @Override
+    public CostFunction reduce(CompactAssignment assignment) {
+        if (assignment == null || assignment.isEmpty()) {
+            return getFactory().buildCostFunction(this);
+        }
+
+        ArrayList<Variable> newVariables = new ArrayList<Variable>(variables.length);
+        for (Variable v : variables) {
+            if (!assignment.contains(v)) {
+                newVariables.add(v);
+            }
+        }
+        if (newVariables.isEmpty()) {
+            return getFactory().buildCostFunction(new Variable[0], getValue(assignment));
+        }
+
+        final int[] values = new int[order.length];
+        for (int k=0; k<order.length; k++) {
+            values[k] = assignment.get(order[k]);
+        }
+        final Node r = restrict(getRoot(), values, new Builder(),
+                new IdentityHashMap<Node, Node>());
+        return derive(newVariables.toArray(new Variable[0]), r);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Restricting a diagram does not materialize any table, so this is the
+     * same as {@link #reduce(CompactAssignment)}.
+     */
+    @Override
+    public CostFunction reduceView(CompactAssignment assignment) {
+        return reduce(assignment);
+    }
+
+    private Node restrict(Node node, int[] values, Builder b, IdentityHashMap<Node, Node> memo) {
+        if (node.isTerminal()) {
+            return b.terminal(node.value);
+        }
+        Node r = memo.get(node);
+        if (r != null) {
+            return r;
+        }
+
+        final int value = values[levelOf(node.var)];
+        if (value >= 0) {
+            r = restrict(node.children[value], values, b, memo);
+        } else {
+            Node[] children = new Node[node.children.length];
+            for (int i=0; i<children.length; i++) {
+                children[i] = restrict(node.children[i], values, b, memo);
+            }
+            r = b.node(node.var, children);
+        }
+        memo.put(node, r);
+        return r;
+    }
+
+    @Override
+    public CostFunction filter(List<CostFunction> infs, final double bound) {
+        final Summarize sum = getFactory().getSummarizeOperation();
+        final double ng = sum.getNoGood();
+
+        // Combine ourselves with the filtering functions (reduced to our vars)
+        Node combi = getRoot();
+        for (CostFunction f : infs) {
+            Set<Variable> sv = this.getSharedVariables(f);
+            if (sv.size() != f.getVariableSet().size()) {
+                f = f.summarize(sv.toArray(new Variable[0]));
+            }
+            combi = apply(combi, toDiagram(f), combineOperation(), absorbingValue(),
+                    new Builder(), new HashMap<NodeKey, Node>());
+        }
+
+        // Remove the configurations whose combined value is beyond the bound
+        final Node r = apply(getRoot(), combi, new BinaryOperation() {
+            public double eval(double x, double c) {
+                return sum.isBetter(bound, c) ? ng : x;
+            }
+        }, Double.NaN, new Builder(), new HashMap<NodeKey, Node>());
+
+        if (r.isTerminal() && r.value == ng) {
+            return getFactory().buildCostFunction(new Variable[0], ng);
+        }
+
+        return derive(variables, r);
+    }
+
+    @Override public String getName() {
+        return "D" + super.getName();
+    }
+
+    /**
+     * Returns the combine operation as a diagram operation, checking for
+     * NaN values.
+     */
+    private BinaryOperation combineOperation() {
+        final Combine operation = getFactory().getCombineOperation();
+        return new BinaryOperation() {
+            public double eval(double x, double y) {
+                final double v = operation.eval(x, y);
+                if (Double.isNaN(v)) {
+                    throw new RuntimeException("Combination generated a NaN value (" + x + "," + y + "). Halting.");
+                }
+                return v;
+            }
+        };
+    }
+
+    /**
+     * Returns the value that absorbs any other during combination (nogoods,
+     * when they do), or NaN otherwise.
+     */
+    private double absorbingValue() {
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        switch (getFactory().getCombineOperation()) {
+            case SUM:
+                return Double.isInfinite(ng) ? ng : Double.NaN;
+            case PRODUCT:
+                return ng == 0 ? ng : Double.NaN;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Applies a binary operation over two diagrams.
+     */
+    private static Node apply(Node a, Node b, BinaryOperation op, double absorbing,
+            Builder builder, HashMap<NodeKey, Node> memo)
+    {
+        if (a.isTerminal() && a.value == absorbing) {
+            return builder.terminal(absorbing);
+        }
+        if (b.isTerminal() && b.value == absorbing) {
+            return builder.terminal(absorbing);
+        }
+        if (a.isTerminal() && b.isTerminal()) {
+            ConstraintChecks.inc();
+            return builder.terminal(op.eval(a.value, b.value));
+        }
+
+        final NodeKey key = new NodeKey(a, b, 0);
+        Node r = memo.get(key);
+        if (r != null) {
+            return r;
+        }
+
+        final int var = Math.min(a.var, b.var);
+        final int domain = a.var == var ? a.children.length : b.children.length;
+        Node[] children = new Node[domain];
+        for (int i=0; i<domain; i++) {
+            children[i] = apply(a.var == var ? a.children[i] : a,
+                    b.var == var ? b.children[i] : b, op, absorbing, builder, memo);
+        }
+        r = builder.node(var, children);
+        memo.put(key, r);
+        return r;
+    }
+
+    /**
+     * Applies an unary operation over all the terminals of a diagram.
+     */
+    private static Node map(Node a, UnaryOperation op, Builder builder,
+            IdentityHashMap<Node, Node> memo)
+    {
+        Node r = memo.get(a);
+        if (r != null) {
+            return r;
+        }
+
+        if (a.isTerminal()) {
+            r = builder.terminal(op.eval(a.value));
+        } else {
+            Node[] children = new Node[a.children.length];
+            for (int i=0; i<children.length; i++) {
+                children[i] = map(a.children[i], op, builder, memo);
+            }
+            r = builder.node(a.var, children);
+        }
+        memo.put(a, r);
+        return r;
+    }
+
+    /**
+     * Combination of several diagrams that eliminates the summarized
+     * variables on the fly.
+     */
+    private final class Fusion {
+        private final int[] ids;
+        private final int[] domains;
+        private final boolean[] eliminate;
+        private final Summarize operation = getFactory().getSummarizeOperation();
+        private final BinaryOperation combine = combineOperation();
+        private final BinaryOperation summarize = new BinaryOperation() {
+            public double eval(double x, double y) {
+                return operation.eval(x, y);
+            }
+        };
+        private final double absorbing = absorbingValue();
+        private final Builder b = new Builder();
+        private final HashMap<NodesKey, Node> memo = new HashMap<NodesKey, Node>();
+        private final HashMap<NodeKey, Node> applyMemo = new HashMap<NodeKey, Node>();
+
+        /**
+         * Builds a fusion over the given (union) variables, keeping only
+         * the given ones.
+         */
+        Fusion(Set<Variable> union, Variable[] vars) {
+            final Variable[] uorder = union.toArray(new Variable[0]);
+            Arrays.sort(uorder);
+            final Set<Variable> keep = new LinkedHashSet<Variable>(Arrays.asList(vars));
+            ids = new int[uorder.length];
+            domains = new int[uorder.length];
+            eliminate = new boolean[uorder.length];
+            for (int k=0; k<uorder.length; k++) {
+                ids[k] = uorder[k].getId();
+                domains[k] = uorder[k].getDomain();
+                eliminate[k] = !keep.contains(uorder[k]);
+            }
+        }
+
+        /**
+         * Returns the summarized combination of the given sub-diagrams, from
+         * the given level (in union order) onwards.
+         */
+        Node fuse(Node[] nodes, int level) {
+            boolean terminal = true;
+            for (Node n : nodes) {
+                if (!n.isTerminal()) {
+                    terminal = false;
+                } else if (n.value == absorbing) {
+                    return b.terminal(absorbing);
+                }
+            }
+            if (terminal) {
+                double v = nodes[0].value;
+                for (int i=1; i<nodes.length; i++) {
+                    ConstraintChecks.inc();
+                    v = combine.eval(v, nodes[i].value);
+                }
+                return constant(v, level);
+            }
+
+            final NodesKey key = new NodesKey(nodes, level);
+            Node r = memo.get(key);
+            if (r != null) {
+                return r;
+            }
+
+            final int var = ids[level];
+            final int domain = domains[level];
+            boolean tested = false;
+            for (Node n : nodes) {
+                tested |= n.var == var;
+            }
+
+            if (!tested) {
+                r = fuse(nodes, level+1);
+                if (eliminate[level] && operation == Summarize.SUM) {
+                    r = map(r, new UnaryOperation() {
+                        public double eval(double x) {
+                            return x * domain;
+                        }
+                    }, b, new IdentityHashMap<Node, Node>());
+                }
+            } else {
+                final Node[] children = eliminate[level] ? null : new Node[domain];
+                for (int i=0; i<domain; i++) {
+                    final Node[] next = nodes.clone();
+                    for (int j=0; j<next.length; j++) {
+                        if (next[j].var == var) {
+                            next[j] = next[j].children[i];
+                        }
+                    }
+                    final Node c = fuse(next, level+1);
+                    if (children != null) {
+                        children[i] = c;
+                    } else {
+                        r = r == null ? c : apply(r, c, summarize, Double.NaN, b, applyMemo);
+                    }
+                }
+                if (children != null) {
+                    r = b.node(var, children);
+                }
+            }
+
+            memo.put(key, r);
+            return r;
+        }
+
+        /**
+         * Returns the summarization of a constant sub-function, from the
+         * given level onwards.
+         */
+        private Node constant(double v, int level) {
+            if (operation == Summarize.SUM) {
+                for (int k=level; k<ids.length; k++) {
+                    if (eliminate[k]) {
+                        v *= domains[k];
+                    }
+                }
+            }
+            return b.terminal(v);
+        }
+    }
+
+    private interface UnaryOperation {
+        double eval(double x);
+    }
+
+    private interface BinaryOperation {
+        double eval(double x, double y);
+    }
+
+    /**
+     * Diagram node. Terminal nodes hold a value, while internal nodes test a
+     * variable and hold one child per possible value of it.
+     */
+    private static final class Node {
+        private static final int TERMINAL = Integer.MAX_VALUE;
+        final int var;
+        final Node[] children;
+        final double value;
+        private final int hash;
+
+        Node(double value) {
+            this.var = TERMINAL;
+            this.children = null;
+            this.value = value;
+            final long bits = Double.doubleToLongBits(value);
+            this.hash = (int)(bits ^ (bits >>> 32));
+        }
+
+        Node(int var, Node[] children) {
+            this.var = var;
+            this.children = children;
+            this.value = Double.NaN;
+            int h = var;
+            for (Node child : children) {
+                h = 31*h + System.identityHashCode(child);
+            }
+            this.hash = h;
+        }
+
+        boolean isTerminal() {
+            return children == null;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Node)) {
+                return false;
+            }
+            final Node other = (Node)obj;
+            if (other.var != var) {
+                return false;
+            }
+            if (isTerminal()) {
+                return Double.doubleToLongBits(value) == Double.doubleToLongBits(other.value);
+            }
+            if (children.length != other.children.length) {
+                return false;
+            }
+            for (int i=0; i<children.length; i++) {
+                if (children[i] != other.children[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Identity-based key for the operation caches.
+     */
+    private static final class NodeKey {
+        private final Node a, b;
+        private final int level;
+
+        NodeKey(Node a, Node b, int level) {
+            this.a = a;
+            this.b = b;
+            this.level = level;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*(31*System.identityHashCode(a) + System.identityHashCode(b)) + level;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            final NodeKey other = (NodeKey)obj;
+            return a == other.a && b == other.b && level == other.level;
+        }
+    }
+
+    /**
+     * Identity-based key for the fusion cache.
+     */
+    private static final class NodesKey {
+        private final Node[] nodes;
+        private final int level;
+        private final int hash;
+
+        NodesKey(Node[] nodes, int level) {
+            this.nodes = nodes;
+            this.level = level;
+            int h = level;
+            for (Node n : nodes) {
+                h = 31*h + System.identityHashCode(n);
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            final NodesKey other = (NodesKey)obj;
+            if (level != other.level || nodes.length != other.nodes.length) {
+                return false;
+            }
+            for (int i=0; i<nodes.length; i++) {
+                if (nodes[i] != other.nodes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Builds reduced diagrams, sharing all the structurally identical nodes
+     * and skipping the tests whose outcome does not matter.
+     */
+    private static final class Builder {
+        private final HashMap<Node, Node> unique = new HashMap<Node, Node>();
+
+        Builder() {
+        }
+
+        /**
+         * Builds a builder that reuses the nodes of the given (reduced)
+         * diagram, so that the diagrams it builds from them stay reduced.
+         */
+        Builder(Node diagram) {
+            register(diagram);
+        }
+
+        private void register(Node n) {
+            if (!unique.containsKey(n)) {
+                unique.put(n, n);
+                if (!n.isTerminal()) {
+                    for (Node child : n.children) {
+                        register(child);
+                    }
+                }
+            }
+        }
+
+        Node terminal(double value) {
+            return canonical(new Node(value));
+        }
+
+        Node node(int var, Node[] children) {
+            final Node first = children[0];
+            boolean redundant = true;
+            for (int i=1; i<children.length && redundant; i++) {
+                redundant = children[i] == first;
+            }
+            if (redundant) {
+                return first;
+            }
+            return canonical(new Node(var, children));
+        }
+
+        private Node canonical(Node n) {
+            final Node c = unique.get(n);
+            if (c != null) {
+                return c;
+            }
+            unique.put(n, n);
+            return n;
+        }
+    }
+
+    /**
+     * Lazily iterates over the non-nogood indices of the function, in diagram
+     * order, walking the diagram with an explicit path and pruning its
+     * nogood regions.
+     */
+    private class ADDIterator implements TLongIterator {
+        private final double ng = getFactory().getSummarizeOperation().getNoGood();
+        private final int len = order.length;
+
+        /**
+         * Node reached at each level of the current path.
+         */
+        private final Node[] path = new Node[len + 1];
+
+        /**
+         * Branch taken at each level of the current path.
+         */
+        protected final int[] branch = new int[len];
+
+        private boolean started;
+        private boolean ready;
+        private boolean done;
+
+        ADDIterator() {
+            path[0] = getRoot();
+        }
+
+        /**
+         * Moves the path to the next good leaf.
+         *
+         * @return false if there are no more good leaves.
+         */
+        private boolean advance() {
+            int level = len - 1;
+            if (!started) {
+                started = true;
+                if (path[0].isTerminal() && path[0].value == ng) {
+                    return false;
+                }
+                if (len == 0) {
+                    return true;
+                }
+                level = 0;
+                branch[0] = -1;
+            }
+
+            while (level >= 0) {
+                if (++branch[level] == order[level].getDomain()) {
+                    level--;
+                    continue;
+                }
+                final Node node = path[level];
+                final Node child = node.var == orderIds[level]
+                        ? node.children[branch[level]] : node;
+                if (child.isTerminal() && child.value == ng) {
+                    continue;
+                }
+                path[level+1] = child;
+                if (++level == len) {
+                    return true;
+                }
+                branch[level] = -1;
+            }
+            return false;
+        }
+
+        public boolean hasNext() {
+            if (!ready && !done) {
+                ready = advance();
+                done = !ready;
+            }
+            return ready;
+        }
+
+        public long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            long idx = 0;
+            for (int k=0; k<len; k++) {
+                idx += branch[k] * strides[k];
+            }
+            return idx;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from a decision diagram.");
+        }
+    }
+
+    /**
+     * Lazily iterates over the non-nogood indices of the function, keeping
+     * track of the sub-indices.
+     */
+    private class ADDMasterIterator extends ADDIterator implements MasterIterator {
+        private final int[] subidx = new int[variables.length];
+
+        @Override
+        public long next() {
+            final long idx = super.next();
+            for (int k=0; k<branch.length; k++) {
+                subidx[positions[k]] = branch[k];
+            }
+            return idx;
+        }
+
+        public int[] getIndices() {
+            return subidx;
+        }
+    }
+
+}
@@ -38,7 +38,11 @@
 
 package es.csic.iiia.dcop;
 
+import es.csic.iiia.dcop.RepresentationPlanner.Representation;
+import es.csic.iiia.dcop.util.ConstraintChecks;
 import es.csic.iiia.dcop.util.CostFunctionStats;
+import es.csic.iiia.dcop.util.Parallelism;
+import gnu.trove.function.TDoubleFunction;
 import gnu.trove.iterator.TLongIterator;
 import gnu.trove.list.TLongList;
 import gnu.trove.list.array.TLongArrayList;
@@ -89,6 +93,24 @@ public abstract class AbstractCostFunction implements CostFunction {
      * The factory that generated this CostFunction.
      */
     private CostFunctionFactory factory;
+
+    /**
+     * Modification counter of this function.
+     */
+    private long version;
+
+    /**
+     * Content hash of this function, along with the version it was
+     * computed for.
+     */
+    private transient long[] contentHash;
+
+    /**
+     * Tile summary of this function, along with the version it was built
+     * for.
+     */
+    private transient TileSummary tileSummary;
+    private transient long tileSummaryVersion;
     
     /**
      * Comparator to order functions by sparsity
@@ -137,9 +159,168 @@ public abstract class AbstractCostFunction implements CostFunction {
     }
 
     public void setFactory(CostFunctionFactory factory) {
+        modified();
         this.factory = factory;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Marks this function as modified, invalidating any cached result of
+     * the operations where it was an operand.
+     */
+    protected void modified() {
+        version++;
+    }
+
+    public long getContentHash() {
+        final long[] cached = contentHash;
+        if (cached != null && cached[1] == version) {
+            return cached[0];
+        }
+
+        final long v = version;
+        final long h = computeContentHash();
+        contentHash = new long[]{h, v};
+        return h;
+    }
+
+    /**
+     * Returns the best value of each tile of this function, or
+     * <code>null</code> if this function does not support tile summaries.
+     * The summary is cached until the function is modified.
+     *
+     * @return tile summary of this function, or <code>null</code>.
+     */
+    public TileSummary getTileSummary() {
+        final Summarize operation = factory.getSummarizeOperation();
+        if (!TileSummary.ENABLED || operation == Summarize.SUM) {
+            return null;
+        }
+
+        final TileSummary cached = tileSummary;
+        if (cached != null && tileSummaryVersion == version
+                && cached.getOperation() == operation) {
+            return cached;
+        }
+
+        final long v = version;
+        final TileSummary summary = buildTileSummary(operation);
+        tileSummaryVersion = v;
+        tileSummary = summary;
+        return summary;
+    }
+
+    /**
+     * Builds the tile summary of this function. Only dense representations
+     * and sorted maps provide one, because the other sparse ones are already
+     * iterated over their good tuples only.
+     *
+     * @param operation summarization operation (MAX or MIN).
+     * @return tile summary of this function, or <code>null</code>.
+     */
+    protected TileSummary buildTileSummary(Summarize operation) {
+        return null;
+    }
+
+    /**
+     * Returns an empty (all nogoods) tile summary for this function to
+     * maintain as its values are written, or <code>null</code> if summaries
+     * are not used with the current summarization operation.
+     *
+     * @return new tile summary, or <code>null</code>.
+     */
+    protected TileSummary newTileSummary() {
+        final Summarize operation = factory == null ? null : factory.getSummarizeOperation();
+        if (!TileSummary.ENABLED || operation == null || operation == Summarize.SUM) {
+            return null;
+        }
+        return new TileSummary(size, operation);
+    }
+
+    /**
+     * Computes the content hash of this function, as the (order independent)
+     * sum of the hashes of its good tuples, so that it does not depend on
+     * how the function is stored.
+     * <p/>
+     * Tuples are identified by their index in the canonical order of the
+     * variables (sorted by id), so that functions holding the same
+     * assignments get the same hash whatever the order of their variables.
+     */
+    private long computeContentHash() {
+        final int len = variables.length;
+        final Variable[] sorted = variables.clone();
+        Arrays.sort(sorted);
+
+        // Canonical stride of each of this function's variables
+        long header = len;
+        final long[] strides = new long[len];
+        long stride = 1;
+        for (int i=len-1; i>=0; i--) {
+            final int pos = Arrays.asList(variables).indexOf(sorted[i]);
+            strides[pos] = stride;
+            stride *= sorted[i].getDomain();
+            header = header * 31 + sorted[i].getId() * 0x9E3779B97F4A7C15L
+                    + sorted[i].getDomain();
+        }
+
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        long sum = 0, goods = 0;
+        if (isHypercube(this)) {
+            // Walk the tuples in order, tracking their canonical index
+            final double[] values = getValues();
+            final int[] sub = new int[len];
+            long canonical = 0;
+            for (int i=0; i<values.length; i++) {
+                if (values[i] != ng) {
+                    sum += hashTuple(canonical, values[i]);
+                    goods++;
+                }
+                for (int k=len-1; k>=0; k--) {
+                    canonical += strides[k];
+                    if (++sub[k] < variables[k].getDomain()) {
+                        break;
+                    }
+                    canonical -= strides[k] * sub[k];
+                    sub[k] = 0;
+                }
+            }
+        } else {
+            TLongIterator it = iterator();
+            while (it.hasNext()) {
+                final long i = it.next();
+                final double value = getValue(i);
+                if (value != ng) {
+                    long canonical = 0;
+                    for (int k=0; k<len; k++) {
+                        canonical += (i / sizes[len-k-1]) % variables[k].getDomain()
+                                * strides[k];
+                    }
+                    sum += hashTuple(canonical, value);
+                    goods++;
+                }
+            }
+        }
+        return mix(sum + mix(goods + 31 * header));
+    }
+
+    private static long hashTuple(long index, double value) {
+        // Both zeroes must hash alike
+        final long bits = Double.doubleToLongBits(value == 0 ? 0d : value);
+        return mix(index * 0x9E3779B97F4A7C15L + mix(bits));
+    }
+
+    /**
+     * 64-bit finalizer of the SplitMix64 generator.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     public CostFunctionFactory getFactory() {
         return factory;
     }
@@ -184,6 +365,27 @@ public abstract class AbstractCostFunction implements CostFunction {
         return mapping;
     }
 
+    public CompactAssignment getOptimalAssignment(CompactAssignment assignment) {
+        if (assignment == null) {
+            assignment = new CompactAssignment();
+        }
+
+        // Empty cost functions have no optimal value
+        if (variables.length == 0) {
+            return assignment;
+        }
+
+        long i = getOptimalConfiguration();
+        if (i < 0) {i = nextRandomLong(size);}
+        final int len = variables.length;
+        for (int j = 0; j < len; j++) {
+            final int jj = len - 1 - j;
+            assignment.put(variables[j], (int)(i / sizes[jj]));
+            i = i % sizes[jj];
+        }
+        return assignment;
+    }
+
     private static long nextRandomLong(long n) {
         Random random = new Random();
 
@@ -230,7 +432,7 @@ public abstract class AbstractCostFunction implements CostFunction {
     public long getOptimalConfiguration() {
         // Find the maximal value
         Summarize operation = factory.getSummarizeOperation();
-        ArrayList<Long> idx = new ArrayList<Long>();
+        TLongArrayList idx = new TLongArrayList();
         double optimal = operation.getNoGood();
         TLongIterator it = iterator();
         while(it.hasNext()) {
@@ -252,6 +454,10 @@ public abstract class AbstractCostFunction implements CostFunction {
         return idx.get(new Random().nextInt(idx.size()));
     }
 
+    public TLongIterator bestFirstIterator() {
+        return new BestFirstIterator(this);
+    }
+
     /**
      * Get the linearized index corresponding to the given variable mapping.
      * 
@@ -280,6 +486,23 @@ public abstract class AbstractCostFunction implements CostFunction {
         return idx;
     }
 
+    public long getIndex(CompactAssignment assignment) {
+        final int len = variables.length;
+        if (len == 0) {
+            // This can be an empty or a constant factor
+            return size == 0 ? -1 : 0;
+        }
+
+        long idx = 0;
+        for (int i = 0; i < len; i++) {
+            final int v = assignment.get(variables[i]);
+            if (v >= 0) {
+                idx += sizes[len - i - 1] * v;
+            }
+        }
+        return idx;
+    }
+
     /**
      * Get the linearized index corresponding to the given variable mapping.
      *
@@ -344,6 +567,22 @@ public abstract class AbstractCostFunction implements CostFunction {
         return mapping;
     }
 
+    public CompactAssignment getAssignment(long index, CompactAssignment assignment) {
+        if (assignment == null) {
+            assignment = new CompactAssignment();
+        } else {
+            assignment.clear();
+        }
+
+        final int len = variables.length;
+        for (int i = 0; i < len; i++) {
+            final int ii = len - 1 - i;
+            assignment.put(variables[i], (int)(index / sizes[ii]));
+            index = index % sizes[ii];
+        }
+        return assignment;
+    }
+
     /**
      * Get the function's size (in number of possible configurations).
      * @return number of function's possible configurations.
@@ -379,7 +618,7 @@ public abstract class AbstractCostFunction implements CostFunction {
         StringBuilder buf = new StringBuilder();
         buf.append(getName());
         buf.append(" {");
-        if (size>0 && getValues() != null) {
+        if (size>0) {
             buf.append(CostFunctionStats.formatValue(getValue(0)));
             for(long i=1; i<size; i++) {
                 buf.append(",");
@@ -396,7 +635,7 @@ public abstract class AbstractCostFunction implements CostFunction {
         StringBuilder buf = new StringBuilder();
         buf.append(getName());
         buf.append(" {\n");
-        if (size>0 && getValues() != null) {
+        if (size>0) {
             VariableAssignment map = null;
             for(long i=0; i<size; i++) {
                 map = getMapping(i, map);
@@ -425,6 +664,13 @@ public abstract class AbstractCostFunction implements CostFunction {
         return getValue(idx);
     }
 
+    public double getValue(CompactAssignment assignment) {
+        long idx = this.getIndex(assignment);
+        if (idx < 0)
+            return getFactory().getCombineOperation().getNeutralValue();
+        return getValue(idx);
+    }
+
     public Set<Variable> getVariableSet() {
         return variableSet;
     }
@@ -503,7 +749,189 @@ public abstract class AbstractCostFunction implements CostFunction {
         return result;
     }
 
+    public CostFunction negateInto(CostFunction dst) {
+        if (dst == this) {
+            negateInPlace();
+            return this;
+        }
+        if (!variableSet.equals(dst.getVariableSet())) {
+            throw new IllegalArgumentException("The destination function must be defined over the same variables.");
+        }
+
+        final Combine operation = factory.getCombineOperation();
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        final Variable[] dvars = dst.getVariableSet().toArray(new Variable[0]);
+        if (Arrays.equals(dvars, variables)) {
+            // Same layout, so only the good values need to be visited
+            dst.initialize(ng);
+            TLongIterator it = iterator();
+            while (it.hasNext()) {
+                final long i = it.next();
+                final double v = operation.negate(getValue(i));
+                if (Double.isNaN(v)) {
+                    throw new RuntimeException("Negation generated a NaN value. Halting.");
+                }
+                dst.setValue(i, v);
+            }
+            return dst;
+        }
+
+        IterationPlan.Odometer it = IterationPlan.odometer(IterationPlan.get(dvars, variables));
+        final long[] idxs = it.getIndices();
+        do {
+            final double value = getValue(idxs[0]);
+            final double v = value == ng ? value : operation.negate(value);
+            if (Double.isNaN(v)) {
+                throw new RuntimeException("Negation generated a NaN value. Halting.");
+            }
+            dst.setValue(it.getPosition(), v);
+        } while (it.next());
+        return dst;
+    }
+
+    public void negateInPlace() {
+        final Combine operation = factory.getCombineOperation();
+        transformInPlace(new TDoubleFunction() {
+            public double execute(double value) {
+                final double v = operation.negate(value);
+                if (Double.isNaN(v)) {
+                    throw new RuntimeException("Negation generated a NaN value. Halting.");
+                }
+                return v;
+            }
+        });
+    }
+
+    public void invertInPlace() {
+        final Combine operation = factory.getCombineOperation();
+        transformInPlace(new TDoubleFunction() {
+            public double execute(double value) {
+                return operation.invert(value);
+            }
+        });
+    }
+
+    /**
+     * Replaces every good (non-nogood) value of this function by the result
+     * of applying the given transformation to it.
+     * <p/>
+     * This implementation takes a snapshot of the good indices first, so
+     * that they can be safely rewritten while iterating. Representations
+     * that can rewrite their values in place should override it.
+     *
+     * @param transform transformation to apply.
+     */
+    protected void transformInPlace(TDoubleFunction transform) {
+        TLongIterator it = goodIndices();
+        while (it.hasNext()) {
+            final long i = it.next();
+            setValue(i, transform.execute(getValue(i)));
+        }
+    }
+
+    /**
+     * Returns a copy of the values of this function, owned by the caller.
+     * <p/>
+     * This implementation clones the array returned by {@link #getValues()}.
+     * Representations whose {@link #getValues()} already builds a new array
+     * should return it directly instead.
+     *
+     * @return new array with the values of this function.
+     */
+    protected double[] copyValues() {
+        return getValues().clone();
+    }
+
+    /**
+     * Returns a copy of the values of the given function, owned by the caller.
+     *
+     * @param f function whose values to copy.
+     * @return new array with the values of the given function.
+     */
+    static double[] copyValuesOf(CostFunction f) {
+        if (f instanceof AbstractCostFunction) {
+            return ((AbstractCostFunction)f).copyValues();
+        }
+        return f.getValues().clone();
+    }
+
+    public CostFunction combineInto(CostFunction factor, CostFunction dst) {
+        ArrayList<CostFunction> fs = new ArrayList<CostFunction>(1);
+        fs.add(factor);
+        return combineInto(fs, dst);
+    }
+
+    public CostFunction combineInto(List<CostFunction> fs, CostFunction dst) {
+        ArrayList<CostFunction> functions = new ArrayList<CostFunction>(fs.size() + 1);
+        functions.add(this);
+        for (CostFunction f : fs) {
+            if (f != null) functions.add(f);
+        }
+
+        LinkedHashSet<Variable> union = new LinkedHashSet<Variable>();
+        for (CostFunction f : functions) {
+            union.addAll(f.getVariableSet());
+        }
+        if (!union.equals(dst.getVariableSet())) {
+            throw new IllegalArgumentException("The destination function must be defined over the combined variables.");
+        }
+
+        // Every position of the destination is computed before being
+        // written, so it can be one of the operands (with the same scope).
+        final Combine operation = factory.getCombineOperation();
+        final Variable[] dvars = dst.getVariableSet().toArray(new Variable[0]);
+        final int nf = functions.size();
+        final CostFunction[] operands = functions.toArray(new CostFunction[0]);
+        final IterationPlan[] plans = new IterationPlan[nf];
+        for (int i=0; i<nf; i++) {
+            plans[i] = IterationPlan.get(dvars, operands[i].getVariableSet().toArray(new Variable[0]));
+        }
+
+        if (isHypercube(operands) && isHypercube(dst)) {
+            bulkCombine(operands, dst, plans);
+            return dst;
+        }
+
+        IterationPlan.Odometer it = IterationPlan.odometer(plans);
+        final long[] idxs = it.getIndices();
+        do {
+            double v = operands[0].getValue(idxs[0]);
+            for (int i=1; i<nf; i++) {
+                v = operation.eval(v, operands[i].getValue(idxs[i]));
+            }
+            if (Double.isNaN(v)) {
+                throw new RuntimeException("Combination generated a NaN value. Halting.");
+            }
+            dst.setValue(it.getPosition(), v);
+        } while (it.next());
+
+        return dst;
+    }
+
     public CostFunction combine(CostFunction factor) {
+        final OperationCache cache = factory.getOperationCache();
+        if (cache == null || factor == null) {
+            return combineFunction(factor);
+        }
+
+        final CostFunction[] operands = new CostFunction[]{this, factor};
+        CostFunction result = cache.get(OperationCache.Operation.COMBINE, operands, null);
+        if (result != null) {
+            return factory.buildCostFunction(result);
+        }
+        result = combineFunction(factor);
+        cache.put(OperationCache.Operation.COMBINE, operands, null, result);
+        return result;
+    }
+
+    /**
+     * Combines this function with the given one, without looking for the
+     * result in the operation cache.
+     *
+     * @param factor function to combine with.
+     * @return combination of both functions.
+     */
+    protected CostFunction combineFunction(CostFunction factor) {
         final double ng = factory.getSummarizeOperation().getNoGood();
 
         // Combination with null factors gives a null / the other factor
@@ -523,7 +951,7 @@ public abstract class AbstractCostFunction implements CostFunction {
         CostFunction result;
         final double ratio1 = getNumberOfNoGoods() / (float)getSize();
         final double ratio2 = factor.getNumberOfNoGoods() / (float)factor.getSize();
-        if (ratio1 > 0.8 || ratio2 > 0.8) {
+        if (factory.getPlanner().isSparseCombination(Arrays.asList(this, factor), vars)) {
             // Sparse functions pay off
             CostFunction left  = ratio1 > ratio2 ? this : factor;
             CostFunction right = left == this ? factor : this;
@@ -534,7 +962,7 @@ public abstract class AbstractCostFunction implements CostFunction {
         } else {
             // It is better to use dense functions
             result = factory.buildCostFunction(vars, 1);
-            if (result instanceof MapCostFunction) {
+            if (result instanceof MapCostFunction || result instanceof SortedMapCostFunction) {
                 result = factory.buildSparseCostFunction(vars, ng);
                 factor = factor.summarize(vars);
                 sparseCombine(factor, this, result);
@@ -600,20 +1028,28 @@ public abstract class AbstractCostFunction implements CostFunction {
             CostFunction result)
     {   
         final Combine operation = factory.getCombineOperation();
-        MasterIterator       it = result.masterIterator();
-        ConditionedIterator  i1 = f1.conditionedIterator(result);
-        ConditionedIterator  i2 = f2.conditionedIterator(result);
-        final int[] subidx      = it.getIndices();
-        while (it.hasNext()) {
-            final long i = it.next();
-            final double v1 = f1.getValue(i1.nextSubidxs(subidx));
-            final double v2 = f2.getValue(i2.nextSubidxs(subidx));
+        final Variable[] rvars = result.getVariableSet().toArray(new Variable[0]);
+        final IterationPlan[] plans = new IterationPlan[]{
+                IterationPlan.get(rvars, f1.getVariableSet().toArray(new Variable[0])),
+                IterationPlan.get(rvars, f2.getVariableSet().toArray(new Variable[0])),
+        };
+
+        if (isHypercube(f1, f2, result)) {
+            bulkCombine(new CostFunction[]{f1, f2}, result, plans);
+            return;
+        }
+
+        IterationPlan.Odometer it = IterationPlan.odometer(plans);
+        final long[] idxs = it.getIndices();
+        do {
+            final double v1 = f1.getValue(idxs[0]);
+            final double v2 = f2.getValue(idxs[1]);
             final double v = operation.eval(v1, v2);
             if (Double.isNaN(v)) {
                 throw new RuntimeException("Combination generated a NaN value (" + v1 + "," + v2 + "). Halting.");
             }
-            result.setValue(i, v);
-        }
+            result.setValue(it.getPosition(), v);
+        } while (it.next());
     }
     
     @Override
@@ -649,24 +1085,15 @@ public abstract class AbstractCostFunction implements CostFunction {
 
         // Optimized implementation plan:
         //   1. Look at the nogood ratio of each function
-        //   2. If any ratio > 0.8 : Result is sparse, and
+        //   2. If the planner says so : Result is sparse, and
         //      -> loop :
         //         - Find the combination with min number of operations
         //         - Remove items from the list, add result
         //   3. Otherwise : Result is dense, and
         //      -> use unoptimized base implementation.
 
-        boolean sparse = false;
         fs.add(this);
-        for (CostFunction f : fs) {
-            final double ratio = f.getNumberOfNoGoods() / (float)f.getSize();
-            if (ratio > 0.8) {
-                sparse = true;
-                break;
-            }
-        }
-
-        if (sparse) {
+        if (factory.getPlanner().isSparseCombination(fs, vars.toArray(new Variable[0]))) {
             // Sort functions by sparsity
             Collections.sort(fs, sparseComparator);
             // @TODO : Check if the order is right!!
@@ -681,33 +1108,226 @@ public abstract class AbstractCostFunction implements CostFunction {
         // Unoptimized base implementation:
         // Iterate over the result positions, fetching the values from ourselves
         // and all the other factors.
-        CostFunction result = factory.buildCostFunction(vars.toArray(new Variable[0]), operation.getNeutralValue());
+        final Variable[] rvars = vars.toArray(new Variable[0]);
+        CostFunction result = factory.buildCostFunction(rvars, operation.getNeutralValue());
         final int niterators = fs.size();
-        ConditionedIterator[] iterators = new ConditionedIterator[niterators];
+        final CostFunction[] functions = fs.toArray(new CostFunction[0]);
+        final IterationPlan[] plans = new IterationPlan[niterators];
         for (int i=0; i<niterators; i++) {
-            iterators[i] = fs.get(i).conditionedIterator(result);
+            plans[i] = IterationPlan.get(rvars, functions[i].getVariableSet().toArray(new Variable[0]));
         }
         
-        MasterIterator it = result.masterIterator();
-        final int[] subidx = it.getIndices();
-        while (it.hasNext()) {
-            final long idx = it.next();
-            double v = fs.get(0).getValue(iterators[0].nextSubidxs(subidx));
+        if (isHypercube(functions) && isHypercube(result)) {
+            bulkCombine(functions, result, plans);
+            return result;
+        }
+
+        IterationPlan.Odometer it = IterationPlan.odometer(plans);
+        final long[] idxs = it.getIndices();
+        do {
+            double v = functions[0].getValue(idxs[0]);
             for (int i=1; i<niterators; i++) {
-                final long idx2 = iterators[i].nextSubidxs(subidx);
-                v = operation.eval(v, fs.get(i).getValue(idx2));
+                v = operation.eval(v, functions[i].getValue(idxs[i]));
             }
 
             if (Double.isNaN(v)) {
                 throw new RuntimeException("Combination generated a NaN value. Halting.");
             }
             
-            result.setValue(idx, v);
+            result.setValue(it.getPosition(), v);
+        } while (it.next());
+
+        return result;
+    }
+
+    public CostFunction combineAndSummarize(List<CostFunction> fs, Variable[] vars) {
+        fs = new ArrayList<CostFunction>(fs);
+
+        // Remove null functions
+        for (int i=fs.size()-1; i>=0; i--) {
+            if (fs.get(i) == null) fs.remove(i);
+        }
+        fs.add(0, this);
+
+        // Compute the union scope
+        LinkedHashSet<Variable> union = new LinkedHashSet<Variable>();
+        for (CostFunction f : fs) {
+            union.addAll(f.getVariableSet());
+        }
+
+        // Sparse functions are better handled by the sparse combination,
+        // whose intermediate result is already small. Likewise, summarizing
+        // to variables outside the union scope needs a full intermediate.
+        if (!union.containsAll(Arrays.asList(vars)) || factory.getPlanner()
+                .isSparseCombineAndSummarize(fs, union.toArray(new Variable[0]))) {
+            return fs.remove(0).combine(fs).summarize(vars);
+        }
+
+        final Combine operation = factory.getCombineOperation();
+        final Summarize sum = factory.getSummarizeOperation();
+        final Variable[] uvars = union.toArray(new Variable[0]);
+        final int nf = fs.size();
+        long total = 1;
+        for (Variable v : uvars) {
+            total *= v.getDomain();
+            if (total < 0) {
+                throw new RuntimeException("Combined function index overflow.");
+            }
+        }
+
+        final CostFunction[] functions = fs.toArray(new CostFunction[0]);
+        CostFunction result = factory.buildCostFunction(vars, sum.getNoGood());
+
+        // Stream the union space, only writing into the (smaller) result
+        if (isHypercube(functions) && isHypercube(result)) {
+            bulkSummarize(functions, result, uvars, total);
+            return store(result);
+        }
+
+        // Per-function (and result) iteration plans over the union space
+        final IterationPlan[] plans = new IterationPlan[nf + 1];
+        for (int i=0; i<nf; i++) {
+            plans[i] = IterationPlan.get(uvars, functions[i].getVariableSet().toArray(new Variable[0]));
         }
+        plans[nf] = IterationPlan.get(uvars, result.getVariableSet().toArray(new Variable[0]));
+
+        IterationPlan.Odometer it = IterationPlan.odometer(plans);
+        final long[] idxs = it.getIndices();
+        do {
+            double v = functions[0].getValue(idxs[0]);
+            for (int i=1; i<nf; i++) {
+                v = operation.eval(v, functions[i].getValue(idxs[i]));
+            }
+            if (Double.isNaN(v)) {
+                throw new RuntimeException("Combination generated a NaN value. Halting.");
+            }
+            final long ridx = idxs[nf];
+            result.setValue(ridx, sum.eval(v, result.getValue(ridx)));
+        } while (it.next());
+
+        return store(result);
+    }
 
+    /**
+     * Converts the given (dense) result to the representation chosen by the
+     * planner, if it is not dense.
+     *
+     * @param result operation result.
+     * @return result in its planned representation.
+     */
+    private CostFunction store(CostFunction result) {
+        final Representation rep = factory.getPlanner().getRepresentation(result);
+        if (rep != Representation.DENSE) {
+            result = factory.buildCostFunction(result, rep);
+        }
         return result;
     }
 
+    /**
+     * Combines the given hypercubes in bulk, splitting the result range among
+     * the available threads.
+     *
+     * @param functions hypercubes to combine.
+     * @param result result hypercube.
+     * @param plans plans of each function, with the result as reference.
+     */
+    private void bulkCombine(CostFunction[] functions, CostFunction result,
+            final IterationPlan[] plans)
+    {
+        final Kernel kernel = factory.getKernel();
+        final double[][] operands = new double[functions.length][];
+        for (int i=0; i<functions.length; i++) {
+            operands[i] = functions[i].getValues();
+        }
+        final double[] values = ((HypercubeCostFunction)result).getMutableValues();
+        Parallelism.forRange(result.getSize(), new Parallelism.RangeTask() {
+            public void run(int block, long from, long to) {
+                kernel.combine(operands, values, plans, from, to);
+            }
+        });
+        ((HypercubeCostFunction)result).updateNoGoods(kernel.getNoGood());
+        ConstraintChecks.add(functions.length*result.getSize());
+    }
+
+    /**
+     * Combines the given hypercubes over the given space in bulk, summarizing
+     * the combination into the result hypercube (initialized to nogoods).
+     * <p/>
+     * The space is walked with the result variables first, so that every
+     * result position spans a contiguous range of it. Hence the result range
+     * can be split among the available threads, each one writing a disjoint
+     * part of the result. Only results smaller than the number of blocks are
+     * summarized into per-block partials instead.
+     *
+     * @param functions hypercubes to combine.
+     * @param result result hypercube, whose variables must be in the space.
+     * @param space variables of the space to walk.
+     * @param total size of the space.
+     */
+    private void bulkSummarize(CostFunction[] functions, CostFunction result,
+            Variable[] space, long total)
+    {
+        final Kernel kernel = factory.getKernel();
+        final int nf = functions.length;
+
+        // Result variables go first, followed by the summarized ones
+        LinkedHashSet<Variable> order = new LinkedHashSet<Variable>(result.getVariableSet());
+        order.addAll(Arrays.asList(space));
+        final Variable[] reference = order.toArray(new Variable[0]);
+
+        final double[][] operands = new double[nf][];
+        final IterationPlan[] plans = new IterationPlan[nf + 1];
+        for (int i=0; i<nf; i++) {
+            operands[i] = functions[i].getValues();
+            plans[i] = IterationPlan.get(reference, ((AbstractCostFunction)functions[i]).variables);
+        }
+        plans[nf] = IterationPlan.get(reference, result.getVariableSet().toArray(new Variable[0]));
+
+        final double[] values = ((HypercubeCostFunction)result).getMutableValues();
+        final long rsize = result.getSize();
+        final long span = total / rsize;
+        final int blocks = Parallelism.getBlocks(total);
+        if (blocks <= rsize) {
+            Parallelism.forRange(rsize, blocks, new Parallelism.RangeTask() {
+                public void run(int block, long from, long to) {
+                    kernel.combineAndSummarize(operands, values, plans, from*span, to*span);
+                }
+            });
+        } else {
+            final double ng = factory.getSummarizeOperation().getNoGood();
+            final double[][] partials = new double[blocks][];
+            partials[0] = values;
+            for (int b=1; b<blocks; b++) {
+                partials[b] = new double[values.length];
+                Arrays.fill(partials[b], ng);
+            }
+            Parallelism.forRange(total, blocks, new Parallelism.RangeTask() {
+                public void run(int block, long from, long to) {
+                    kernel.combineAndSummarize(operands, partials[block], plans, from, to);
+                }
+            });
+            kernel.summarize(partials);
+        }
+        ((HypercubeCostFunction)result).updateNoGoods(kernel.getNoGood());
+        ConstraintChecks.add((nf+1)*total);
+    }
+
+    /**
+     * Checks whether all the given functions are plain hypercubes, whose
+     * values can be processed in bulk by the kernels.
+     *
+     * @param fs functions to check.
+     * @return true if all the functions are hypercubes.
+     */
+    private static boolean isHypercube(CostFunction... fs) {
+        for (CostFunction f : fs) {
+            if (!(f instanceof HypercubeCostFunction)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public CostFunction normalize() {
         Normalize mode = factory.getNormalizationType();
         if (mode == Normalize.NONE) {
@@ -715,6 +1335,29 @@ public abstract class AbstractCostFunction implements CostFunction {
         }
 
         CostFunction result = factory.buildCostFunction(this);
+        normalizeValues(mode, result);
+        return result;
+    }
+
+    public void normalizeInPlace() {
+        Normalize mode = factory.getNormalizationType();
+        if (mode != Normalize.NONE) {
+            normalizeValues(mode, this);
+        }
+    }
+
+    /**
+     * Stores the normalized values of this function into the given result,
+     * which must be a copy of this function (or this function itself).
+     *
+     * @param mode normalization mode.
+     * @param result function where to store the normalized values.
+     */
+    private void normalizeValues(Normalize mode, CostFunction result) {
+        if (Parallelism.isParallel(size) && isHypercube(this, result)) {
+            parallelNormalize(mode, result);
+            return;
+        }
 
         // Calculate aggregation
         TLongIterator it = iterator();
@@ -729,30 +1372,113 @@ public abstract class AbstractCostFunction implements CostFunction {
         if (Double.isNaN(avg)) {
             throw new RuntimeException("Normalization generated a NaN value. Halting.");
         }
-        it = iterator();
+        final TDoubleFunction transform;
         switch (mode) {
             case SUM0:
-                while(it.hasNext()) {
-                    final long i = it.next();
-                    double v = getValue(i) - avg;
-                    if (Double.isNaN(v)) {
-                        throw new RuntimeException("Normalization generated a NaN value. Halting.");
+                transform = new TDoubleFunction() {
+                    public double execute(double value) {
+                        final double v = value - avg;
+                        if (Double.isNaN(v)) {
+                            throw new RuntimeException("Normalization generated a NaN value. Halting.");
+                        }
+                        return v;
                     }
-                    result.setValue(i, v);
-                }
+                };
                 break;
             case SUM1:
                 // Avoid div by 0
-                while(it.hasNext()) {
-                    final long i = it.next();
-                    final double value = getValue(i);
-                    final double v = sum != 0 ? value/sum : 1/dlen;
-                    result.setValue(i, v);
-                }
+                final double total = sum;
+                transform = new TDoubleFunction() {
+                    public double execute(double value) {
+                        return total != 0 ? value/total : 1/dlen;
+                    }
+                };
                 break;
+            default:
+                return;
         }
 
-        return result;
+        if (result == this) {
+            transformInPlace(transform);
+            return;
+        }
+        it = iterator();
+        while(it.hasNext()) {
+            final long i = it.next();
+            result.setValue(i, transform.execute(getValue(i)));
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the (non-nogood) indices of this
+     * function, so that they can be safely rewritten while iterating.
+     *
+     * @return iterator over the current good indices.
+     */
+    private TLongIterator goodIndices() {
+        TLongArrayList idxs = new TLongArrayList((int)Math.min(Integer.MAX_VALUE - 8,
+                size - getNumberOfNoGoods()));
+        for (TLongIterator it = iterator(); it.hasNext();) {
+            idxs.add(it.next());
+        }
+        return idxs.iterator();
+    }
+
+    /**
+     * Normalizes this (hypercube) function into the given result, splitting
+     * the work among the available threads.
+     */
+    private void parallelNormalize(final Normalize mode, CostFunction result) {
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        final double[] values = getValues();
+        final double[] rvalues = ((HypercubeCostFunction)result).getMutableValues();
+
+        // Calculate aggregation
+        final double[] sums = new double[Parallelism.getBlocks(size)];
+        Parallelism.forRange(size, sums.length, new Parallelism.RangeTask() {
+            public void run(int block, long from, long to) {
+                double s = 0;
+                for (int i=(int)from; i<to; i++) {
+                    if (values[i] != ng) {
+                        s += values[i];
+                    }
+                }
+                sums[block] = s;
+            }
+        });
+        double total = 0;
+        for (double s : sums) {
+            total += s;
+        }
+        final double sum = total;
+        final double dlen = (double)(size - getNumberOfNoGoods());
+        final double avg = sum / dlen;
+        if (Double.isNaN(avg)) {
+            throw new RuntimeException("Normalization generated a NaN value. Halting.");
+        }
+
+        Parallelism.forRange(size, sums.length, new Parallelism.RangeTask() {
+            public void run(int block, long from, long to) {
+                for (int i=(int)from; i<to; i++) {
+                    final double value = values[i];
+                    if (value == ng) {
+                        continue;
+                    }
+                    if (mode == Normalize.SUM0) {
+                        final double v = value - avg;
+                        if (Double.isNaN(v)) {
+                            throw new RuntimeException("Normalization generated a NaN value. Halting.");
+                        }
+                        rvalues[i] = v;
+                    } else {
+                        // Avoid div by 0
+                        rvalues[i] = sum != 0 ? value/sum : 1/dlen;
+                    }
+                }
+            }
+        });
+        ConstraintChecks.add(2*(size - getNumberOfNoGoods()));
+        ((HypercubeCostFunction)result).updateNoGoods(ng);
     }
 
     public CostFunction reduce(VariableAssignment mapping) {
@@ -770,8 +1496,7 @@ public abstract class AbstractCostFunction implements CostFunction {
         }
 
         // Instantiate lit
-        float sparsity = this.getNumberOfNoGoods() / (float)this.getSize();
-        if (sparsity > 0.8) {
+        if (factory.getPlanner().isSparseReduction(this, newVariables.toArray(new Variable[0]))) {
             CostFunction result = factory.buildSparseCostFunction(
                     newVariables.toArray(new Variable[0]), factory.getSummarizeOperation().getNoGood());
             return sparseReduce(result, mapping);
@@ -814,6 +1539,93 @@ public abstract class AbstractCostFunction implements CostFunction {
         return result;
     }
 
+    public CostFunction reduceView(CompactAssignment assignment) {
+        if (assignment == null || assignment.isEmpty())
+            return this;
+
+        ArrayList<Variable> newVariables = new ArrayList<Variable>(variables.length);
+        final int len = variables.length;
+        long base = 0;
+        for (int i = 0; i < len; i++) {
+            final int v = assignment.get(variables[i]);
+            if (v < 0) {
+                newVariables.add(variables[i]);
+            } else {
+                base += sizes[len - i - 1] * v;
+            }
+        }
+
+        if (newVariables.size() == len) {
+            return this;
+        }
+        if (newVariables.isEmpty()) {
+            return factory.buildCostFunction(new Variable[0], getValue(base));
+        }
+
+        return new ReducedCostFunction(this,
+                newVariables.toArray(new Variable[0]), base);
+    }
+
+    public CostFunction reduce(CompactAssignment assignment) {
+        if (assignment == null || assignment.isEmpty())
+            return factory.buildCostFunction(this);
+
+        // Calculate the new factor's variables, and the offset of the fixed
+        // ones.
+        ArrayList<Variable> newVariables = new ArrayList<Variable>(variables.length);
+        final int len = variables.length;
+        long base = 0;
+        for (int i = 0; i < len; i++) {
+            final int v = assignment.get(variables[i]);
+            if (v < 0) {
+                newVariables.add(variables[i]);
+            } else {
+                base += sizes[len - i - 1] * v;
+            }
+        }
+
+        // Does this factor reduce to a constant?
+        if (newVariables.isEmpty()) {
+            return factory.buildCostFunction(new Variable[0], getValue(assignment));
+        }
+        final Variable[] rvars = newVariables.toArray(new Variable[0]);
+
+        // Instantiate lit
+        if (factory.getPlanner().isSparseReduction(this, rvars)) {
+            CostFunction result = factory.buildSparseCostFunction(rvars,
+                    factory.getSummarizeOperation().getNoGood());
+            final IterationPlan plan = IterationPlan.get(variables, rvars);
+            final int[] subidx = new int[len];
+            TLongIterator it = iterator();
+            while (it.hasNext()) {
+                final long i = it.next();
+                indexToSubindex(i, subidx);
+
+                boolean ok = true;
+                for (int j = 0; j < len; j++) {
+                    final int v = assignment.get(variables[j]);
+                    if (v >= 0 && v != subidx[j]) {
+                        ok = false;
+                        break;
+                    }
+                }
+                if (!ok) continue;
+
+                result.setValue(plan.index(subidx), getValue(i));
+            }
+            return result;
+        }
+
+        CostFunction result = factory.buildCostFunction(rvars, 0);
+        IterationPlan.Odometer it = IterationPlan.odometer(IterationPlan.get(rvars, variables));
+        final long[] idxs = it.getIndices();
+        do {
+            result.setValue(it.getPosition(), getValue(base + idxs[0]));
+        } while (it.next());
+
+        return result;
+    }
+
     public CostFunction filter(CostFunction f, double bound) {
         CostFunction result = factory.buildCostFunction(this);
         Summarize operation = factory.getSummarizeOperation();
@@ -843,40 +1655,67 @@ public abstract class AbstractCostFunction implements CostFunction {
     }
 
     @Override
-    public CostFunction filter(List<CostFunction> infs, double bound) {
+    public CostFunction filter(List<CostFunction> infs, final double bound) {
         CostFunction result = factory.buildCostFunction(this);
         Summarize sum = factory.getSummarizeOperation();
         Combine   com = factory.getCombineOperation();
         final double ng = sum.getNoGood();
-        ArrayList<CostFunction> fs = new ArrayList<CostFunction>(infs.size());
+        final CostFunction[] filters = getFilters(infs);
+
+        // Tiles that can not satisfy the bound, whatever the filterers' values
+        final boolean[] discarded = getDiscardedTiles(filters, bound);
+
+        // Bulk filtering of hypercubes
+        if (isHypercube(this, result) && isHypercube(filters)) {
+            final Kernel kernel = factory.getKernel();
+            final double[] values = getValues();
+            final double[] rvalues = ((HypercubeCostFunction)result).getMutableValues();
+            final double[][] fvalues = new double[filters.length][];
+            final IterationPlan[] plans = new IterationPlan[filters.length];
+            for (int i=0; i<filters.length; i++) {
+                fvalues[i] = filters[i].getValues();
+                plans[i] = IterationPlan.get(variables,
+                        filters[i].getVariableSet().toArray(new Variable[0]));
+            }
+            final boolean[] goods = new boolean[Parallelism.getBlocks(size)];
+            Parallelism.forRange(size, goods.length, new Parallelism.RangeTask() {
+                public void run(int block, long from, long to) {
+                    goods[block] = kernel.filter(values, fvalues, rvalues, plans,
+                            bound, discarded, from, to);
+                }
+            });
+            ((HypercubeCostFunction)result).updateNoGoods(ng);
+            ConstraintChecks.add((filters.length+1)*(size - getDiscardedSize(discarded)));
 
-        // Reduce to shared variables (lower memory usage)
-        for (CostFunction f : infs) {
-            Set<Variable> sv = this.getSharedVariables(f);
-            if (sv.size() != f.getVariableSet().size()) {
-                fs.add(f.summarize(sv.toArray(new Variable[0])));
-            } else {
-                fs.add(f);
+            for (boolean good : goods) {
+                if (good) {
+                    return result;
+                }
             }
+            return factory.buildCostFunction(new Variable[0], ng);
         }
 
         // Perform the actual filtering (only on "good" tuples)
         boolean allNogoods = true; VariableAssignment map = null;
-        final int nfs = fs.size();
+        final int nfs = filters.length;
         ConditionedIterator[] iterators = new ConditionedIterator[nfs];
         for (int i=0; i<nfs; i++) {
-            iterators[i] = fs.get(i).conditionedIterator(this);
+            iterators[i] = filters[i].conditionedIterator(this);
         }
         
         MasterIterator it = masterIterator();
         final int[] subidxs = it.getIndices();
         while(it.hasNext()) {
             final long idx = it.next();
+            if (discarded != null && discarded[TileSummary.getTile(idx)]) {
+                result.setValue(idx, ng);
+                continue;
+            }
             
             double v = getValue(idx);
             for (int i=0; i<nfs; i++) {
                 final long idx2 = iterators[i].nextSubidxs(subidxs);
-                v = com.eval(v, fs.get(i).getValue(idx2));
+                v = com.eval(v, filters[i].getValue(idx2));
                 if (sum.isBetter(bound, v)) break;
             }
             
@@ -895,6 +1734,99 @@ public abstract class AbstractCostFunction implements CostFunction {
         return result;
     }
 
+    /**
+     * Returns the given filtering functions, summarized to the variables
+     * they share with this one (lowering memory usage).
+     *
+     * @param infs filtering functions.
+     * @return filtering functions over the shared variables.
+     */
+    protected CostFunction[] getFilters(List<CostFunction> infs) {
+        CostFunction[] fs = new CostFunction[infs.size()];
+        for (int i=0; i<fs.length; i++) {
+            final CostFunction f = infs.get(i);
+            Set<Variable> sv = this.getSharedVariables(f);
+            if (sv.size() != f.getVariableSet().size()) {
+                fs[i] = f.summarize(sv.toArray(new Variable[0]));
+            } else {
+                fs[i] = f;
+            }
+        }
+        return fs;
+    }
+
+    /**
+     * Returns the tiles of this function whose best value, combined with the
+     * best value of each filterer, is already worse than the bound. Returns
+     * <code>null</code> when there is no tile summary or the combination is
+     * not monotone.
+     *
+     * @param filters filtering functions.
+     * @param bound filtering bound.
+     * @return discarded tiles, or <code>null</code>.
+     */
+    protected boolean[] getDiscardedTiles(CostFunction[] filters, double bound) {
+        if (factory.getCombineOperation() != Combine.SUM) {
+            return null;
+        }
+        final TileSummary summary = getTileSummary();
+        if (summary == null) {
+            return null;
+        }
+
+        final Summarize sum = factory.getSummarizeOperation();
+        double best = 0;
+        for (CostFunction f : filters) {
+            best += getBestValue(f);
+        }
+
+        final int tiles = summary.getTiles();
+        final boolean[] discarded = new boolean[tiles];
+        boolean any = false;
+        for (int t=0; t<tiles; t++) {
+            discarded[t] = sum.isBetter(bound, summary.getBest(t) + best);
+            any |= discarded[t];
+        }
+        return any ? discarded : null;
+    }
+
+    /**
+     * Returns the best value of the given function.
+     */
+    private static double getBestValue(CostFunction f) {
+        final TileSummary summary = f instanceof AbstractCostFunction
+                ? ((AbstractCostFunction)f).getTileSummary() : null;
+        if (summary != null) {
+            return summary.getBest();
+        }
+
+        final Summarize sum = f.getFactory().getSummarizeOperation();
+        double best = sum.getNoGood();
+        TLongIterator it = f.iterator();
+        while (it.hasNext()) {
+            best = sum.eval(best, f.getValue(it.next()));
+        }
+        return best;
+    }
+
+    /**
+     * Returns the number of elements of this function within the given
+     * discarded tiles.
+     */
+    private long getDiscardedSize(boolean[] discarded) {
+        if (discarded == null) {
+            return 0;
+        }
+        long n = 0;
+        for (int t=0; t<discarded.length; t++) {
+            if (discarded[t]) {
+                final long from = (long)t << TileSummary.TILE_BITS;
+                n += Math.min(size, from + (1L << TileSummary.TILE_BITS)) - from;
+            }
+        }
+        return n;
+    }
+
     public void setValue(int[] index, double value) {
         setValue(subindexToIndex(index), value);
     }
@@ -906,13 +1838,13 @@ public abstract class AbstractCostFunction implements CostFunction {
      * @param subindex vector of variable configurations (indices).
      * @return corresponding linearized index.
      */
-    protected int subindexToIndex(int[] subindex) {
+    protected long subindexToIndex(int[] subindex) {
         // Check index lengths
         if (subindex.length != sizes.length) {
             throw new IllegalArgumentException("Invalid index specification");
         }
         // Compute subindex -> index offset
-        int idx = 0;
+        long idx = 0;
         for (int i = 0; i < subindex.length; i++) {
             // Check domain limits
             if (variables[i].getDomain() <= subindex[i]) {
@@ -924,12 +1856,34 @@ public abstract class AbstractCostFunction implements CostFunction {
     }
 
     public CostFunction summarize(Variable[] vars) {
+        final OperationCache cache = factory.getOperationCache();
+        if (cache == null) {
+            return summarizeFunction(vars);
+        }
+
+        final CostFunction[] operands = new CostFunction[]{this};
+        CostFunction result = cache.get(OperationCache.Operation.SUMMARIZE, operands, vars);
+        if (result != null) {
+            return factory.buildCostFunction(result);
+        }
+        result = summarizeFunction(vars);
+        cache.put(OperationCache.Operation.SUMMARIZE, operands, vars, result);
+        return result;
+    }
+
+    /**
+     * Summarizes this function to the given variables, without looking for
+     * the result in the operation cache.
+     *
+     * @param vars variables of the result.
+     * @return summarization of this function.
+     */
+    protected CostFunction summarizeFunction(Variable[] vars) {
         Summarize operation = factory.getSummarizeOperation();
 
         // Choose between sparse and dense functions
         CostFunction result;
-        final double ratio1 = getNumberOfNoGoods() / (float)getSize();
-        if (ratio1 > 0.5) {
+        if (factory.getPlanner().isSparseSummarization(this, vars)) {
             result = factory.buildSparseCostFunction(vars,
                 operation.getNoGood());
         } else {
@@ -937,6 +1891,38 @@ public abstract class AbstractCostFunction implements CostFunction {
                 operation.getNoGood());
         }
 
+        summarizeValues(result);
+        return result;
+    }
+
+    public CostFunction summarizeInto(CostFunction dst) {
+        if (dst == this) {
+            throw new IllegalArgumentException("A function can not be summarized into itself.");
+        }
+        dst.initialize(factory.getSummarizeOperation().getNoGood());
+        summarizeValues(dst);
+        return dst;
+    }
+
+    /**
+     * Summarizes the values of this function into the given result, which
+     * must be initialized to nogoods.
+     *
+     * @param result function where to store the summarization.
+     */
+    private void summarizeValues(CostFunction result) {
+        final Summarize operation = factory.getSummarizeOperation();
+
+        if (isHypercube(this, result)) {
+            final IterationPlan plan = IterationPlan.get(variables,
+                    result.getVariableSet().toArray(new Variable[0]));
+            if (plan.getOffsets().length == 1) {
+                // Every value maps to a single result position
+                bulkSummarize(new CostFunction[]{this}, result, variables, size);
+                return;
+            }
+        }
+
         MasterIterator it = masterIterator();
         final int[] subidxs = it.getIndices();
         ConditionedIterator rit = result.conditionedIterator(this);
@@ -950,7 +1936,6 @@ public abstract class AbstractCostFunction implements CostFunction {
                 result.setValue(idx, operation.eval(getValue(i), result.getValue(idx)));
             }
         }
-        return result;
     }
 
     @Override
@@ -1006,10 +1991,44 @@ public abstract class AbstractCostFunction implements CostFunction {
 
         // Constant cost function handling
         if (variableSet.size() == 0) {
+            if (getValue(0) == other.getValue(0)) {
+                // Also covers two (infinite) nogoods
+                return true;
+            }
             final double e = getValue(0) - other.getValue(0);
             return Math.abs(e) <= delta;
         }
 
+        // Different content hashes prove that the contents differ, so exact
+        // comparisons only scan functions with equal hashes. Tolerant ones
+        // must scan anyway, because values within delta hash differently.
+        if (delta == 0 && getContentHash() != other.getContentHash()) {
+            return false;
+        }
+        final boolean sameLayout = other instanceof AbstractCostFunction
+                && Arrays.equals(variables, ((AbstractCostFunction)other).variables);
+
+        // Infinite nogoods are never within delta of a good value
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        if (Double.isInfinite(ng) && factory == other.getFactory()
+                && getNumberOfNoGoods() != other.getNumberOfNoGoods()) {
+            return false;
+        }
+
+        if (sameLayout) {
+            for (long i=0; i<size; i++) {
+                final double v1 = getValue(i);
+                final double v2 = other.getValue(i);
+                if (Double.isNaN(v1) || Double.isNaN(v2)) {
+                    return false;
+                }
+                if (Math.abs(v1 - v2) > delta) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         VariableAssignment map = null;
         for (long i=0; i<size; i++) {
             map = this.getMapping(i, map);
@@ -1035,15 +2054,15 @@ public abstract class AbstractCostFunction implements CostFunction {
     }
 
     /**
-     * Default implementation of conditioned iterator.
+     * Default implementation of conditioned iterator, backed by a (cached)
+     * {@link IterationPlan}.
      */
     public class DefaultConditionedIterator implements ConditionedIterator {
-        private int[] referenceIdxs;
-        private int[] idxsToReference;
-        private int len = variables.length;
-        private AbstractCostFunction master;
-        private int noffsets;
-        private long[] offsets;
+        private final int[] referenceIdxs;
+        private final AbstractCostFunction master;
+        private final long[] strides;
+        private final long[] offsets;
+        private final int noffsets;
         private long idx;
         private int currentOffset;
         
@@ -1056,111 +2075,29 @@ public abstract class AbstractCostFunction implements CostFunction {
             if (!(reference instanceof AbstractCostFunction)) {
                 throw new RuntimeException("Unable to build custom iterator for arbitrary CostFunction subtypes");
             }
-            AbstractCostFunction other = (AbstractCostFunction)reference;
-            master = other;
-                        
-            referenceIdxs = new int[other.variables.length];
-            idxsToReference = new int[len];
-
-//            int idx = 0;
-//            for (Variable v1 : vs)  {
-//                for (int j=0; j<len; j++) {
-//                    final Variable v2 = variables[j];
-//                    if (v1.equals(v2)) {
-//                        idxsToReference[j] = idx;
-//                        break;
-//                    }
-//                }
-//                idx++;
-//            }
-            
-            ArrayList<Integer> freeVars = new ArrayList<Integer>(len);
-            Arrays.fill(idxsToReference, -1);
-            for (int j=0; j<len; j++) {
-                boolean found = false;
-                
-                for (int i=0, olen=other.variables.length; i<olen; i++) {    
-                    if (variables[j].equals(other.variables[i])) {
-                        idxsToReference[j] = i;
-                        found = true;
-                        break;
-                    }
-                }
-                
-                if (!found) {
-                    freeVars.add(j);
-                }
-            }
-            
-            // Ofsset computation (a single parent index maps to multiple
-            // indices of this function)
-            if  (!freeVars.isEmpty()) {
-                
-                // Compute the number of offsets
-                noffsets = 1;
-                for (int i : freeVars) {
-                    noffsets *= variables[i].getDomain();
-                    if (noffsets < 0) {
-                        throw new RuntimeException("Offset index overflow.");
-                    }
-                }
-                
-                // Compute the actual offsets
-                offsets = new long[noffsets];
-                long multiplier = 1;
-                for (int i : freeVars) {
-                    final int domain = variables[i].getDomain();
-                    int oidx = 0;
-                    while (oidx < noffsets) {
-                        for (int j=0; j<domain; j++) {
-                            for (int k=0; k<multiplier; k++) {
-                                offsets[oidx++] += sizes[len - i - 1]*j;
-                            }
-                        }
-                    }
-                    multiplier *= domain;
-                }
-                
-            } else {
-                noffsets = 1;
-                offsets = new long[]{0l};
-            }
-            
-            Arrays.fill(referenceIdxs, 0);
+            master = (AbstractCostFunction)reference;
+            referenceIdxs = new int[master.variables.length];
+
+            final IterationPlan plan = IterationPlan.get(master.variables, variables);
+            strides = plan.getStrides();
+            offsets = plan.getOffsets();
+            noffsets = offsets.length;
         }
 
         public long next(long referenceIdx) {
             master.indexToSubindex(referenceIdx, referenceIdxs);
-            
-            // Compute subindex -> index
-            idx = 0;
-            for (int i = 0; i < len; i++) {
-                final int referenceIdxi = idxsToReference[i];
-                if (referenceIdxi >= 0) {
-                    final int idxv = referenceIdxs[referenceIdxi];
-                    idx += sizes[len - i - 1] * idxv;
-                }
-            }
-            
-            currentOffset = 0;
-            return idx;
+            return nextSubidxs(referenceIdxs);
         }
         
         public long nextSubidxs(int[] referenceIdxs) {
-            //master.indexToSubindex(referenceIdx, referenceIdxs);
-            
             // Compute subindex -> index
-            idx = 0;
-            for (int i = 0; i < len; i++) {
-                final int referenceIdxi = idxsToReference[i];
-                if (referenceIdxi >= 0) {
-                    final int idxv = referenceIdxs[referenceIdxi];
-                    idx += sizes[len - i - 1] * idxv;
-                }
+            long i = 0;
+            for (int j = 0; j < strides.length; j++) {
+                i += strides[j] * referenceIdxs[j];
             }
-            
+            idx = i;
             currentOffset = 0;
-            return idx;
+            return i;
         }
         
         public boolean hasNextOffset() {
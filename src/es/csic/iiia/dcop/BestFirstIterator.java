@@ -0,0 +1,173 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop;
+
+import es.csic.iiia.dcop.CostFunction.Summarize;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Iterator over the indices of the good tuples of a cost function, from the
+ * best to the worst value according to the summarization operation.
+ * <p/>
+ * The good tuples are arranged into a binary heap when the iterator is
+ * created, which takes linear time, so that retrieving the <i>k</i> best
+ * tuples takes <i>O(n + k log n)</i> time. Ties are broken at random.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class BestFirstIterator implements TLongIterator {
+
+    private final long[] indices;
+    private final double[] keys;
+    private final int[] salts;
+    private int size;
+
+    /**
+     * Builds a new iterator over the good tuples of the given function. The
+     * function must not be modified while iterating.
+     *
+     * @param f function to iterate.
+     */
+    public BestFirstIterator(CostFunction f) {
+        final Summarize operation = f.getFactory().getSummarizeOperation();
+        final double ng = operation.getNoGood();
+
+        // Store the keys so that the best value is always the largest one
+        final double sign = operation.isBetter(1, 0) ? 1 : -1;
+        TLongArrayList is = new TLongArrayList();
+        TDoubleArrayList ks = new TDoubleArrayList();
+        TLongIterator it = f.iterator();
+        while (it.hasNext()) {
+            final long i = it.next();
+            final double v = f.getValue(i);
+            if (v != ng) {
+                is.add(i);
+                ks.add(sign * v);
+            }
+        }
+
+        indices = is.toArray();
+        keys = ks.toArray();
+        size = indices.length;
+        salts = new int[size];
+        final Random random = new Random();
+        for (int i=0; i<size; i++) {
+            salts[i] = random.nextInt();
+        }
+
+        for (int i=size/2 - 1; i>=0; i--) {
+            siftDown(i);
+        }
+    }
+
+    public boolean hasNext() {
+        return size > 0;
+    }
+
+    public long next() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        final long best = indices[0];
+        size--;
+        if (size > 0) {
+            move(size, 0);
+            siftDown(0);
+        }
+        return best;
+    }
+
+    /**
+     * Returns the number of tuples not yet returned by this iterator.
+     *
+     * @return remaining tuples.
+     */
+    public int remaining() {
+        return size;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported.");
+    }
+
+    private boolean above(int i, int j) {
+        if (keys[i] != keys[j]) {
+            return keys[i] > keys[j];
+        }
+        return salts[i] > salts[j];
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            final int l = 2*i + 1;
+            if (l >= size) {
+                return;
+            }
+            final int r = l + 1;
+            final int c = r < size && above(r, l) ? r : l;
+            if (!above(c, i)) {
+                return;
+            }
+            swap(i, c);
+            i = c;
+        }
+    }
+
+    private void move(int from, int to) {
+        indices[to] = indices[from];
+        keys[to] = keys[from];
+        salts[to] = salts[from];
+    }
+
+    private void swap(int i, int j) {
+        final long ti = indices[i];
+        final double tk = keys[i];
+        final int ts = salts[i];
+        move(j, i);
+        indices[j] = ti;
+        keys[j] = tk;
+        salts[j] = ts;
+    }
+
+}
@@ -0,0 +1,393 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Primitive variable assignment, storing the value of each variable in an
+ * array indexed by the variable's identifier and tracking which variables
+ * are assigned in a bitset.
+ *
+ * Compared to {@link VariableAssignment}, lookups and updates do not box
+ * integers nor hash variables, and copies are plain array copies.
+ * <p/>
+ * The arrays only span the window of identifiers between the lowest and
+ * highest assigned ones (starting at a multiple of 64, so that the bitset
+ * words stay aligned), and copies are trimmed to the assigned range. Hence,
+ * their cost depends on the assigned variables, not on the number of
+ * variables of the problem.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class CompactAssignment implements Serializable {
+
+    /**
+     * Identifier of the first slot of the arrays (a multiple of 64).
+     */
+    private int base;
+
+    /**
+     * Value of each variable, indexed by variable id minus base.
+     */
+    private int[] values;
+
+    /**
+     * Assigned variables, indexed by variable id minus base.
+     */
+    private Variable[] variables;
+
+    /**
+     * Bitset of assigned variable ids, minus base.
+     */
+    private long[] assigned;
+
+    /**
+     * Number of assigned variables.
+     */
+    private int size;
+
+    /**
+     * Constructs a new empty assignment.
+     */
+    public CompactAssignment() {
+        this(16);
+    }
+
+    /**
+     * Constructs a new empty assignment, with room for the given number of
+     * consecutive variable identifiers.
+     *
+     * @param capacity initial capacity.
+     */
+    public CompactAssignment(int capacity) {
+        capacity = Math.max(capacity, 1);
+        values = new int[capacity];
+        variables = new Variable[capacity];
+        assigned = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Constructs a new assignment by copying the given one, trimmed to the
+     * range of its assigned identifiers.
+     *
+     * @param other assignment to copy.
+     */
+    public CompactAssignment(CompactAssignment other) {
+        if (other.size == 0) {
+            values = new int[1];
+            variables = new Variable[1];
+            assigned = new long[1];
+            return;
+        }
+
+        final long[] bits = other.assigned;
+        int first = 0, last = bits.length - 1;
+        while (bits[first] == 0) first++;
+        while (bits[last] == 0) last--;
+        final int from = first << 6;
+        final int to = (last << 6) + 64 - Long.numberOfLeadingZeros(bits[last]);
+
+        base = other.base + from;
+        values = Arrays.copyOfRange(other.values, from, to);
+        variables = Arrays.copyOfRange(other.variables, from, to);
+        assigned = Arrays.copyOfRange(bits, first, last + 1);
+        size = other.size;
+    }
+
+    /**
+     * Constructs a new assignment with the same contents as the given
+     * (map-based) one.
+     *
+     * @param other assignment to copy.
+     */
+    public CompactAssignment(VariableAssignment other) {
+        this();
+        for (Variable v : other.keySet()) {
+            put(v, other.get(v));
+        }
+    }
+
+    /**
+     * Grows (or moves, if empty) the storage window to hold the given
+     * variable identifier.
+     */
+    private void ensureCapacity(int id) {
+        final int idx = id - base;
+        if (idx >= 0 && idx < values.length) {
+            return;
+        }
+
+        if (size == 0) {
+            base = id & ~63;
+            if (id - base >= values.length) {
+                final int capacity = Math.max(id - base + 1, values.length * 2);
+                values = new int[capacity];
+                variables = new Variable[capacity];
+                assigned = new long[(capacity + 63) >>> 6];
+            }
+            return;
+        }
+
+        final int length = values.length;
+        int newBase = base, newEnd = base + length;
+        if (idx < 0) {
+            newBase = Math.max(0, Math.min(id, base - length)) & ~63;
+        } else {
+            newEnd = Math.max(id + 1, base + length * 2);
+        }
+        final int capacity = newEnd - newBase;
+        final int offset = base - newBase;
+        final int[] nvalues = new int[capacity];
+        final Variable[] nvariables = new Variable[capacity];
+        final long[] nassigned = new long[(capacity + 63) >>> 6];
+        System.arraycopy(values, 0, nvalues, offset, length);
+        System.arraycopy(variables, 0, nvariables, offset, length);
+        System.arraycopy(assigned, 0, nassigned, offset >>> 6, assigned.length);
+        base = newBase;
+        values = nvalues;
+        variables = nvariables;
+        assigned = nassigned;
+    }
+
+    /**
+     * Returns true if the given variable is assigned.
+     *
+     * @param v variable to check.
+     * @return true if the variable is assigned, false otherwise.
+     */
+    public boolean contains(Variable v) {
+        final int idx = v.getId() - base;
+        return idx >= 0 && idx < values.length
+                && (assigned[idx >>> 6] & (1L << idx)) != 0;
+    }
+
+    /**
+     * Returns the value assigned to the given variable, or -1 if it is not
+     * assigned.
+     *
+     * @param v variable.
+     * @return value of the variable, or -1 if it is not assigned.
+     */
+    public int get(Variable v) {
+        return contains(v) ? values[v.getId() - base] : -1;
+    }
+
+    /**
+     * Assigns the given value to the given variable.
+     *
+     * @param v variable.
+     * @param value value of the variable.
+     */
+    public void put(Variable v, int value) {
+        ensureCapacity(v.getId());
+        final int idx = v.getId() - base;
+        final long bit = 1L << idx;
+        if ((assigned[idx >>> 6] & bit) == 0) {
+            assigned[idx >>> 6] |= bit;
+            variables[idx] = v;
+            size++;
+        }
+        values[idx] = value;
+    }
+
+    /**
+     * Copies all the assignments of the given assignment into this one,
+     * overwriting the values of the variables assigned in both.
+     *
+     * @param other assignment to copy from.
+     */
+    public void putAll(CompactAssignment other) {
+        final long[] bits = other.assigned;
+        for (int w=0; w<bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                final int idx = (w << 6) + Long.numberOfTrailingZeros(word);
+                put(other.variables[idx], other.values[idx]);
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Unassigns the given variable.
+     *
+     * @param v variable to unassign.
+     */
+    public void remove(Variable v) {
+        if (contains(v)) {
+            final int idx = v.getId() - base;
+            assigned[idx >>> 6] &= ~(1L << idx);
+            variables[idx] = null;
+            size--;
+        }
+    }
+
+    /**
+     * Unassigns all the variables.
+     */
+    public void clear() {
+        for (int w=0; w<assigned.length; w++) {
+            long word = assigned[w];
+            while (word != 0) {
+                variables[(w << 6) + Long.numberOfTrailingZeros(word)] = null;
+                word &= word - 1;
+            }
+            assigned[w] = 0;
+        }
+        size = 0;
+    }
+
+    /**
+     * @return number of assigned variables.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no assigned variables.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the assigned variables, sorted by identifier.
+     *
+     * @return assigned variables.
+     */
+    public Variable[] getVariables() {
+        Variable[] res = new Variable[size];
+        int i = 0;
+        for (int w=0; w<assigned.length; w++) {
+            long word = assigned[w];
+            while (word != 0) {
+                res[i++] = variables[(w << 6) + Long.numberOfTrailingZeros(word)];
+                word &= word - 1;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns a new assignment containing only the given variables.
+     *
+     * @param vars variables to keep.
+     * @return filtered assignment.
+     */
+    public CompactAssignment filter(Set<Variable> vars) {
+        CompactAssignment filtered = new CompactAssignment(vars.size());
+        for (Variable v : vars) {
+            if (contains(v)) {
+                filtered.put(v, values[v.getId() - base]);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Converts this assignment to a (map-based) variable assignment.
+     *
+     * @return equivalent variable assignment.
+     */
+    public VariableAssignment toVariableAssignment() {
+        VariableAssignment map = new VariableAssignment(size*2);
+        for (Variable v : getVariables()) {
+            map.put(v, values[v.getId() - base]);
+        }
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompactAssignment)) {
+            return false;
+        }
+        final CompactAssignment other = (CompactAssignment)obj;
+        if (size != other.size) {
+            return false;
+        }
+        // Same size, so it suffices that every assignment is in the other
+        for (int w=0; w<assigned.length; w++) {
+            long bits = assigned[w];
+            while (bits != 0) {
+                final int idx = (w << 6) + Long.numberOfTrailingZeros(bits);
+                final Variable v = variables[idx];
+                if (!other.contains(v) || other.get(v) != values[idx]) {
+                    return false;
+                }
+                bits &= bits - 1;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int w=0; w<assigned.length; w++) {
+            long word = assigned[w];
+            while (word != 0) {
+                final int idx = (w << 6) + Long.numberOfTrailingZeros(word);
+                hash += (base + idx) ^ values[idx];
+                word &= word - 1;
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("{");
+        int i = size;
+        for (Variable v : getVariables()) {
+            buf.append(v.getName()).append(":").append(values[v.getId() - base]);
+            if (--i != 0) buf.append(",");
+        }
+        return buf.append("}").toString();
+    }
+
+}
@@ -247,6 +247,57 @@ public interface CostFunction {
      */
     CostFunction combine(List<CostFunction> fs);
 
+    /**
+     * Combine this factor with the given ones, and summarize the result over
+     * the specified variables.
+     *
+     * This is equivalent to <code>combine(fs).summarize(vars)</code>, but
+     * implementations may avoid building the (potentially huge) combined
+     * function over the union of all scopes.
+     *
+     * @param fs list of functions to combine with.
+     * @param vars variables to summarize.
+     * @return a new CostFunction which is the result of combining this and the
+     * given functions, summarized over the specified variables.
+     */
+    CostFunction combineAndSummarize(List<CostFunction> fs, Variable[] vars);
+
+    /**
+     * Combine this factor with the given one, storing the result into the
+     * given destination function.
+     *
+     * The destination must be defined over the union of both factor's
+     * variables, and may be one of the operands.
+     *
+     * @param factor factor to combine with.
+     * @param dst function where to store the result.
+     * @return the destination function.
+     */
+    CostFunction combineInto(CostFunction factor, CostFunction dst);
+
+    /**
+     * Combine this factor with the given ones, storing the result into the
+     * given destination function.
+     *
+     * The destination must be defined over the union of all the factors'
+     * variables, and may be one of the operands.
+     *
+     * @param fs list of functions to combine with.
+     * @param dst function where to store the result.
+     * @return the destination function.
+     */
+    CostFunction combineInto(List<CostFunction> fs, CostFunction dst);
+
+    /**
+     * Summarize this factor over the variables of the given destination
+     * function, storing the result into it.
+     *
+     * @param dst function where to store the result (its previous contents
+     * are discarded).
+     * @return the destination function.
+     */
+    CostFunction summarizeInto(CostFunction dst);
+
     /**
      * Negates this factor, converting all its values into their negative
      * counterparts.
@@ -256,6 +307,23 @@ public interface CostFunction {
      * @see #combine(es.csic.iiia.dcop.CostFunction) 
      */
     CostFunction negate();
+
+    /**
+     * Negates this factor, storing the negated values into the given
+     * destination function, which must be defined over the same variables.
+     *
+     * @param dst function where to store the result.
+     * @return the destination function.
+     * @see #negate()
+     */
+    CostFunction negateInto(CostFunction dst);
+
+    /**
+     * Negates this factor, overwriting its values.
+     *
+     * @see #negate()
+     */
+    void negateInPlace();
     
     /**
      * Inverts this factor, applying the inverse of the given operation to
@@ -269,6 +337,13 @@ public interface CostFunction {
      */
     CostFunction invert();
 
+    /**
+     * Inverts this factor, overwriting its values.
+     *
+     * @see #invert()
+     */
+    void invertInPlace();
+
     /**
      * Normalizes this factor in the specified mode.
      * @return reference to the normalized cost function (this is the same
@@ -277,6 +352,13 @@ public interface CostFunction {
      */
     CostFunction normalize();
 
+    /**
+     * Normalizes this factor in the specified mode, overwriting its values.
+     *
+     * @see #normalize()
+     */
+    void normalizeInPlace();
+
     /**
      * Reduces the factor, fixing the variable-value pairs of the mapping
      * table.
@@ -286,6 +368,28 @@ public interface CostFunction {
      */
     CostFunction reduce(VariableAssignment mapping);
 
+    /**
+     * Reduces the factor, fixing the variable-value pairs of the given
+     * assignment.
+     *
+     * @param assignment variable-value pairs to fix.
+     * @return new reduced factor.
+     */
+    CostFunction reduce(CompactAssignment assignment);
+
+    /**
+     * Reduces the factor, fixing the variable-value pairs of the given
+     * assignment, without materializing the result when possible.
+     * <p/>
+     * The returned function is a read-only view that may share storage with
+     * this one (or even be this function itself), so it must not be modified
+     * nor used after this function is modified.
+     *
+     * @param assignment variable-value pairs to fix.
+     * @return reduced view of this factor.
+     */
+    CostFunction reduceView(CompactAssignment assignment);
+
     /**
      * Filters this cost function with the given one.
      *
@@ -340,6 +444,17 @@ public interface CostFunction {
      */
     VariableAssignment getOptimalConfiguration(VariableAssignment mapping);
 
+    /**
+     * Returns the optimal assignment for this factor.
+     *
+     * Works exactly like {@link #getOptimalConfiguration(es.csic.iiia.dcop.VariableAssignment)},
+     * but using a primitive assignment.
+     *
+     * @param assignment current assignment, instantiated if null.
+     * @return reference to the new assignment.
+     */
+    CompactAssignment getOptimalAssignment(CompactAssignment assignment);
+
     /**
      * Returns <strong>the first</strong> index of the values array
      * corresponding to the specified variables mapping.
@@ -349,6 +464,15 @@ public interface CostFunction {
      */
     long getIndex(VariableAssignment mapping);
 
+    /**
+     * Returns <strong>the first</strong> index of the values array
+     * corresponding to the specified assignment.
+     *
+     * @param assignment variable/value assignment.
+     * @return index of the values array corresponding to the given assignment.
+     */
+    long getIndex(CompactAssignment assignment);
+
     /**
      * Get all the linearized indices corresponding to the given variable mapping.
      *
@@ -367,6 +491,16 @@ public interface CostFunction {
      */
     VariableAssignment getMapping(long index, VariableAssignment mapping);
 
+    /**
+     * Returns the variable/value assignment corresponding to the specified
+     * index of the values array.
+     *
+     * @param index of the values array.
+     * @param assignment assignment to fill, instantiated if null.
+     * @return variable/value assignment corresponding to the given index.
+     */
+    CompactAssignment getAssignment(long index, CompactAssignment assignment);
+
     /**
      * Get a short string representation of this function.
      *
@@ -430,6 +564,14 @@ public interface CostFunction {
      */
     double getValue(VariableAssignment mapping);
 
+    /**
+     * Gets the value of this factor for the given variable/value assignment.
+     *
+     * @param assignment variable/value assignment.
+     * @return value corresponding factor value.
+     */
+    double getValue(CompactAssignment assignment);
+
     /**
      * Gets an array of all values in this function (ordered according to the
      * variables array)
@@ -499,6 +641,16 @@ public interface CostFunction {
      * @return Iterator over the indices of this cost function.
      */
     public TLongIterator iterator();
+
+    /**
+     * Obtains an iterator over the linearized indices of the good elements
+     * of this cost function, from the best to the worst value according to
+     * the summarization operation. Ties are returned in random order.
+     *
+     * @see BestFirstIterator
+     * @return Iterator over the indices of this cost function, best first.
+     */
+    public TLongIterator bestFirstIterator();
     
     /**
      * Obtains an iterator over the linearized indices of non-infinity elements of this
@@ -520,5 +672,23 @@ public interface CostFunction {
     public void setFactory(CostFunctionFactory factory);
 
     public CostFunctionFactory getFactory();
+
+    /**
+     * Returns the version of this function, which changes every time that
+     * any of its values is modified.
+     *
+     * @return version of this function.
+     */
+    public long getVersion();
+
+    /**
+     * Returns a 64-bit hash of the contents of this function (its variables
+     * and good tuples), which depends neither on its representation nor on
+     * the order of its variables. The hash is cached until the function is
+     * modified.
+     *
+     * @return content hash of this function.
+     */
+    public long getContentHash();
     
 }
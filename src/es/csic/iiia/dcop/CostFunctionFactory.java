@@ -63,6 +63,11 @@ public class CostFunctionFactory {
      */
     private CostFunction.Normalize normalizationType = CostFunction.Normalize.NONE;
 
+    /**
+     * Kernel implementing the current combine and summarize operations.
+     */
+    private Kernel kernel = Kernel.get(combineOperation, summarizeOperation);
+
     private CostFunctionTypeFactory denseFactory = new HypercubeCostFunctionFactory(this);
 
     public CostFunctionTypeFactory getDenseFactory() {
@@ -84,15 +89,94 @@ public class CostFunctionFactory {
     }
     private CostFunctionTypeFactory sparseFactory = new MapCostFunctionFactory(this);
 
+    /**
+     * Factory used for functions whose nogood ratio lies between the
+     * {@link #HYBRID_THRESHOLD} and the sparse threshold, or <code>null</code>
+     * to store them using the dense factory.
+     */
+    private CostFunctionTypeFactory hybridFactory = null;
+
+    /**
+     * Nogood ratio from which functions are built using the hybrid factory
+     * (if any).
+     */
+    public static double HYBRID_THRESHOLD = 0.3;
+
+    public CostFunctionTypeFactory getHybridFactory() {
+        return hybridFactory;
+    }
+
+    public void setHybridFactory(CostFunctionTypeFactory hybridFactory) {
+        this.hybridFactory = hybridFactory;
+        setMode(summarizeOperation, combineOperation, normalizationType);
+    }
+
     public CostFunction buildCostFunction(Variable[] variables, double initialValue) {
         return denseFactory.buildCostFunction(variables, initialValue);
     }
 
+    /**
+     * Planner deciding the representation of functions and operation results.
+     */
+    private RepresentationPlanner planner = new ThresholdPlanner();
+
+    public RepresentationPlanner getPlanner() {
+        return planner;
+    }
+
+    public void setPlanner(RepresentationPlanner planner) {
+        this.planner = planner;
+    }
+
+    /**
+     * Cache of operation results, or <code>null</code> to always compute
+     * them.
+     */
+    private OperationCache operationCache = null;
+
+    public OperationCache getOperationCache() {
+        return operationCache;
+    }
+
+    public void setOperationCache(OperationCache operationCache) {
+        this.operationCache = operationCache;
+    }
+
+    /**
+     * Intern table of the functions that are shared (and never modified).
+     */
+    private final CostFunctionInterner interner = new CostFunctionInterner();
+
+    public CostFunctionInterner getInterner() {
+        return interner;
+    }
+
     public CostFunction buildCostFunction(CostFunction function) {
-        double sparsity = function.getNumberOfNoGoods()/(double)function.getSize();
-        return sparsity >= 0.8
-                ? sparseFactory.buildCostFunction(function)
-                : denseFactory.buildCostFunction(function);
+        return buildCostFunction(function, planner.getRepresentation(function));
+    }
+
+    /**
+     * Builds a copy of the given function using the given representation.
+     * Hybrid functions are built using the dense factory when there is no
+     * hybrid factory.
+     *
+     * @param function function to copy.
+     * @param representation representation of the copy.
+     * @return copy of the function.
+     */
+    public CostFunction buildCostFunction(CostFunction function,
+            RepresentationPlanner.Representation representation) {
+        switch (representation) {
+            case SPARSE:
+                return sparseFactory.buildCostFunction(function);
+            case HYBRID:
+                if (hybridFactory != null) {
+                    return hybridFactory.buildCostFunction(function);
+                }
+                return denseFactory.buildCostFunction(function);
+            default:
+                return denseFactory.buildCostFunction(function);
+        }
     }
 
     public CostFunction buildSparseCostFunction(Variable[] variables, double initialValue) {
@@ -105,6 +189,17 @@ public class CostFunctionFactory {
         this.combineOperation = combineOperation;
         this.summarizeOperation = summarizeOperation;
         this.normalizationType = normalizationType;
+        kernel = Kernel.get(combineOperation, summarizeOperation);
+    }
+
+    /**
+     * Returns the kernel implementing the current combine and summarize
+     * operations.
+     *
+     * @return current kernel.
+     */
+    public Kernel getKernel() {
+        return kernel;
     }
 
     public Combine getCombineOperation() {
@@ -113,6 +208,7 @@ public class CostFunctionFactory {
 
     public void setCombineOperation(Combine combineOperation) {
         this.combineOperation = combineOperation;
+        kernel = Kernel.get(combineOperation, summarizeOperation);
     }
 
     public Normalize getNormalizationType() {
@@ -129,6 +225,7 @@ public class CostFunctionFactory {
 
     public void setSummarizeOperation(Summarize summarizeOperation) {
         this.summarizeOperation = summarizeOperation;
+        kernel = Kernel.get(combineOperation, summarizeOperation);
     }
  
 }
@@ -0,0 +1,200 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Intern table of cost functions, so that functions with the same contents
+ * can share a single (canonical) instance.
+ * <p/>
+ * Functions are looked up by their content hash, and then compared exactly.
+ * Canonical instances are weakly referenced, and they must never be
+ * modified: a canonical function that has been modified since it was
+ * interned is dropped from the table.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class CostFunctionInterner {
+
+    /**
+     * Number of new canonical functions between purges of the table.
+     */
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final HashMap<Long, List<Entry>> table = new HashMap<Long, List<Entry>>();
+    private long hits;
+    private long misses;
+
+    /**
+     * Returns the canonical instance of the given function, which is the
+     * function itself if no other function with the same contents has been
+     * interned before.
+     *
+     * @param f function to intern.
+     * @return canonical function with the same contents.
+     */
+    public synchronized CostFunction intern(CostFunction f) {
+        final Long hash = f.getContentHash();
+        List<Entry> bucket = table.get(hash);
+        if (bucket == null) {
+            bucket = new ArrayList<Entry>(1);
+            table.put(hash, bucket);
+        }
+
+        Iterator<Entry> it = bucket.iterator();
+        while (it.hasNext()) {
+            final Entry e = it.next();
+            final CostFunction canonical = e.function.get();
+            if (canonical == null || canonical.getVersion() != e.version) {
+                it.remove();
+                continue;
+            }
+            if (canonical == f || sameContent(canonical, f)) {
+                hits++;
+                return canonical;
+            }
+        }
+
+        misses++;
+        bucket.add(new Entry(f));
+        if (misses % PURGE_INTERVAL == 0) {
+            purge();
+        }
+        return f;
+    }
+
+    /**
+     * Removes the entries of the functions that have been collected or
+     * modified.
+     */
+    private void purge() {
+        Iterator<List<Entry>> buckets = table.values().iterator();
+        while (buckets.hasNext()) {
+            final List<Entry> bucket = buckets.next();
+            Iterator<Entry> it = bucket.iterator();
+            while (it.hasNext()) {
+                final Entry e = it.next();
+                final CostFunction f = e.function.get();
+                if (f == null || f.getVersion() != e.version) {
+                    it.remove();
+                }
+            }
+            if (bucket.isEmpty()) {
+                buckets.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of interned functions that were replaced by an
+     * already existing one.
+     *
+     * @return number of shared functions.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of interned functions that became canonical.
+     *
+     * @return number of canonical functions.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Removes all the interned functions.
+     */
+    public synchronized void clear() {
+        table.clear();
+    }
+
+    /**
+     * Returns true if both functions have the same representation,
+     * variables (in the same order) and values.
+     *
+     * @param f1 first function.
+     * @param f2 second function.
+     * @return true if both functions are identical.
+     */
+    public static boolean sameContent(CostFunction f1, CostFunction f2) {
+        if (f1.getClass() != f2.getClass() || f1.getSize() != f2.getSize()
+                || f1.getFactory() != f2.getFactory()
+                || f1.getNumberOfNoGoods() != f2.getNumberOfNoGoods()
+                || f1.getContentHash() != f2.getContentHash()
+                || !f1.getVariableSet().equals(f2.getVariableSet()))
+        {
+            return false;
+        }
+        final Variable[] v1 = f1.getVariableSet().toArray(new Variable[0]);
+        final Variable[] v2 = f2.getVariableSet().toArray(new Variable[0]);
+        for (int i=0; i<v1.length; i++) {
+            if (!v1[i].equals(v2[i])) {
+                return false;
+            }
+        }
+        for (long i=0, len=f1.getSize(); i<len; i++) {
+            if (Double.doubleToLongBits(f1.getValue(i)) != Double.doubleToLongBits(f2.getValue(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Interned function, along with its version when it was interned.
+     */
+    private static class Entry {
+        private final WeakReference<CostFunction> function;
+        private final long version;
+        public Entry(CostFunction f) {
+            function = new WeakReference<CostFunction>(f);
+            version = f.getVersion();
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop;
+
+import java.util.Collection;
+
+/**
+ * Representation planner that estimates the size and nogood ratio of the
+ * result of each operation, picking the representation with the lowest
+ * estimated cost.
+ * <p/>
+ * Costs are measured in dense element accesses, plus the memory used by the
+ * result weighted by {@link #MEMORY_WEIGHT}. Nogoods are assumed to be
+ * independently distributed among the operands, so that a combined tuple is
+ * good with probability <code>prod(1 - r_i)</code> and a summarized tuple is
+ * a nogood with probability <code>r^k</code>, where <code>k</code> tuples
+ * collapse into each result tuple.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class CostModelPlanner extends RepresentationPlanner {
+
+    /**
+     * Cost of accessing an element of a sparse function, relative to the
+     * cost of accessing an element of a dense one.
+     */
+    public static double SPARSE_ACCESS_COST = 4;
+
+    /**
+     * Cost of each byte of memory, in dense element accesses.
+     */
+    public static double MEMORY_WEIGHT = 1/16d;
+
+    /**
+     * Bytes per element of a dense function.
+     */
+    private static final double DENSE_BYTES = 8;
+
+    /**
+     * Bytes per (good) element of a sparse function.
+     */
+    private static final double SPARSE_BYTES = 16;
+
+    /**
+     * Cost of storing the given number of elements densely.
+     */
+    private static double denseStorage(double elements) {
+        return elements * (1 + DENSE_BYTES * MEMORY_WEIGHT);
+    }
+
+    /**
+     * Cost of storing the given number of good elements sparsely.
+     */
+    private static double sparseStorage(double elements) {
+        return elements * (SPARSE_ACCESS_COST + SPARSE_BYTES * MEMORY_WEIGHT);
+    }
+
+    @Override
+    protected boolean sparseCombination(Collection<CostFunction> operands, long size) {
+        final int n = operands.size();
+        double good = 1, maxRatio = 0;
+        for (CostFunction f : operands) {
+            final double r = getRatio(f);
+            good *= 1 - r;
+            maxRatio = Math.max(maxRatio, r);
+        }
+
+        // Dense: visit every result tuple, looking up every operand
+        final double dense = size * n + denseStorage(size);
+        // Sparse: expand the sparsest operand to the result scope, looking up
+        // the others for each of its good tuples
+        final double sparse = (1 - maxRatio) * size * (SPARSE_ACCESS_COST + n - 1)
+                + sparseStorage(good * size);
+        return sparse < dense;
+    }
+
+    @Override
+    protected boolean sparseSummarization(CostFunction f, long size) {
+        final double r = getRatio(f);
+        final double goods = f.getSize() - f.getNumberOfNoGoods();
+        final double k = f.getSize() / (double)Math.max(size, 1);
+        final double resultGoods = size * (1 - Math.pow(r, k));
+
+        // Each good tuple reads and updates its result tuple
+        final double dense = 2 * goods + denseStorage(size);
+        final double sparse = 2 * goods * SPARSE_ACCESS_COST + sparseStorage(resultGoods);
+        return sparse < dense;
+    }
+
+    @Override
+    protected boolean sparseReduction(CostFunction f, long size) {
+        final double r = getRatio(f);
+        final double goods = f.getSize() - f.getNumberOfNoGoods();
+
+        // Dense: look up every result tuple. Sparse: decode every good tuple
+        final double dense = size + denseStorage(size);
+        final double sparse = 2 * goods + sparseStorage(size * (1 - r));
+        return sparse < dense;
+    }
+
+    @Override
+    protected Representation representation(CostFunction f, boolean hybrid) {
+        final double size = f.getSize();
+        final double goods = size - f.getNumberOfNoGoods();
+
+        // Storage plus one full iteration over the good elements
+        final double dense = denseStorage(size) + size;
+        final double sparse = sparseStorage(goods) + goods * SPARSE_ACCESS_COST;
+        final double masked = denseStorage(size) + size / 8 * MEMORY_WEIGHT
+                + goods + size / 64;
+
+        Representation best = sparse < dense ? Representation.SPARSE : Representation.DENSE;
+        if (hybrid && masked < Math.min(dense, sparse)) {
+            best = Representation.HYBRID;
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return "COST_MODEL";
+    }
+
+}
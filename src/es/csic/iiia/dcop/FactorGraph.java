@@ -100,4 +100,13 @@ public class FactorGraph {
         return res;
     }
 
+    public double getValue(CompactAssignment assignment) {
+        CostFunction.Combine combi = factors.get(0).getFactory().getCombineOperation();
+        double res = combi.getNeutralValue();
+        for (CostFunction f : factors) {
+            res = combi.eval(res, f.getValue(assignment));
+        }
+        return res;
+    }
+
 }
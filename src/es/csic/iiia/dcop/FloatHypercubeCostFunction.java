@@ -0,0 +1,313 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import es.csic.iiia.dcop.CostFunction.Summarize;
+import es.csic.iiia.dcop.util.ConstraintChecks;
+import gnu.trove.iterator.TLongIterator;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+
+/**
+ * Cost Function implementation that stores the whole hypercube of values in
+ * a linearized array of single-precision floats.
+ * <p/>
+ * This representation behaves exactly as the {@link HypercubeCostFunction},
+ * but halves the memory required to store each hypercube at the expense of
+ * precision. Therefore, it is intended for problems where values do not need
+ * 64-bit precision (such as log-domain probabilities), allowing to hold
+ * bigger cliques in the same amount of memory.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class FloatHypercubeCostFunction extends AbstractCostFunction implements Serializable {
+
+    /**
+     * Hypercube values storage array.
+     */
+    private float[] values;
+
+    /**
+     * Functions sharing the values array, which must be copied before being
+     * modified while shared (copy-on-write).
+     */
+    private SharedStorage storage;
+
+    /**
+     * Counter of nogoods.
+     */
+    private long nNoGoods;
+
+    /**
+     * Tile summary maintained along the writes, or <code>null</code> if it
+     * has to be built from scratch.
+     */
+    private transient TileSummary tiles;
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     */
+    protected FloatHypercubeCostFunction(Variable[] variables) {
+        super(variables);
+        if (size < 0 || size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Function " + getName()
+                    + " is too large to be stored in an array. Use an off-heap"
+                    + " representation instead.");
+        }
+        values = new float[(int)size];
+        storage = new SharedStorage();
+        nNoGoods = 0;
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     */
+    protected FloatHypercubeCostFunction(CostFunction factor) {
+        super(factor);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Function " + getName()
+                    + " is too large to be stored in an array. Use an off-heap"
+                    + " representation instead.");
+        }
+        if (factor instanceof FloatHypercubeCostFunction) {
+            final FloatHypercubeCostFunction other = (FloatHypercubeCostFunction)factor;
+            storage = other.storage.share(other, this);
+            values = other.values;
+            tiles = other.tiles == null ? null : new TileSummary(other.tiles);
+        } else {
+            final double[] vs = factor.getValues();
+            values = new float[vs.length];
+            for (int i=0; i<vs.length; i++) {
+                values[i] = (float)vs[i];
+            }
+            storage = new SharedStorage();
+        }
+        nNoGoods = factor.getNumberOfNoGoods();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Because values are stored in single precision, this returns a widened
+     * copy of the internal storage. Modifications to the returned array are
+     * not reflected in this function.
+     */
+    public double[] getValues() {
+        if (values == null) {
+            return null;
+        }
+
+        double[] res = new double[values.length];
+        for (int i=0; i<values.length; i++) {
+            res[i] = values[i];
+        }
+        return res;
+    }
+
+    @Override
+    protected double[] copyValues() {
+        return getValues();
+    }
+
+
+    public void setValues(double[] values) {
+
+        if (values.length != this.values.length) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+
+        this.values = new float[values.length];
+        storage = storage.detach();
+        nNoGoods = 0;
+        tiles = newTileSummary();
+        for (int i=0; i<values.length; i++) {
+            setValue(i, values[i]);
+        }
+    }
+
+    @Override public TLongIterator iterator() {
+        return new FloatHypercubeIterator();
+    }
+
+    @Override public MasterIterator masterIterator() {
+        return new FloatHypercubeMasterIterator();
+    }
+
+    @Override public double getValue(long index) {
+        ConstraintChecks.inc();
+        return values[(int)index];
+    }
+
+    public void setValue(long index, double value) {
+        modified();
+        final float ng = (float)getFactory().getSummarizeOperation().getNoGood();
+        if (storage.isShared()) {
+            values = values.clone();
+            storage = storage.detach();
+        }
+        final float prev = values[(int)index];
+        final float v = (float)value;
+        if (v != ng && prev == ng) {
+            nNoGoods--;
+        }
+        if (v == ng && prev != ng) {
+            nNoGoods++;
+        }
+        values[(int)index] = v;
+        if (tiles != null) {
+            tiles.update(index, v);
+        }
+    }
+
+    public long getNumberOfNoGoods() {
+        return nNoGoods;
+    }
+
+    @Override protected TileSummary buildTileSummary(Summarize operation) {
+        if (tiles == null || tiles.getOperation() != operation) {
+            tiles = new TileSummary(values.length, operation);
+            for (int i=0; i<values.length; i++) {
+                tiles.update(i, values[i]);
+            }
+        }
+        return tiles;
+    }
+
+    @Override public String getName() {
+        return "F" + super.getName();
+    }
+
+    /**
+     * Implements the Iterator interface for a float hypercube, allowing to
+     * iterate over its (non-nogood) elements using the common java conventions.
+     */
+    protected class FloatHypercubeIterator implements TLongIterator {
+        private long idx;
+        private float ng = (float)getFactory().getSummarizeOperation().getNoGood();
+
+        public FloatHypercubeIterator() {
+            idx = -1;
+            findNextGood();
+        }
+
+        private void findNextGood() {
+            idx++;
+            while (idx < size && values[(int)idx] == ng) {
+                idx++;
+            }
+            if (idx == size) {
+                idx = -1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx >= 0 && idx < size;
+        }
+
+        @Override
+        public long next() {
+            if (idx < 0) {
+                throw new NoSuchElementException();
+            }
+
+            final long res = idx;
+            findNextGood();
+            return res;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
+        }
+
+    }
+
+    /**
+     * Implements the MasterIterator interface for a float hypercube, walking
+     * over all of its elements while keeping track of the sub-indices.
+     */
+    protected class FloatHypercubeMasterIterator implements MasterIterator {
+        private final int[] subidx = new int[variables.length];
+        private long idx;
+
+        public FloatHypercubeMasterIterator() {
+            idx = -1;
+            if (variables.length > 0)
+                subidx[variables.length-1] = -1;
+        }
+
+        private void incIdx() {
+            idx++;
+            for (int i=variables.length-1; i>=0; i--) {
+                if (++subidx[i] != variables[i].getDomain()) {
+                    break;
+                } else {
+                    subidx[i] = 0;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx >= -1 && idx < size-1;
+        }
+
+        @Override
+        public long next() {
+            incIdx();
+            return idx;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
+        }
+
+        @Override
+        public int[] getIndices() {
+            return subidx;
+        }
+    }
+
+}
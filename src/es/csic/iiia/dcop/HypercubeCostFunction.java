@@ -38,6 +38,8 @@
 
 package es.csic.iiia.dcop;
 
+import es.csic.iiia.dcop.CostFunction.Combine;
+import es.csic.iiia.dcop.CostFunction.Summarize;
 import es.csic.iiia.dcop.util.ConstraintChecks;
 import gnu.trove.iterator.TLongIterator;
 import java.io.Serializable;
@@ -59,11 +61,29 @@ public final class HypercubeCostFunction extends AbstractCostFunction implements
      */
     private double[] values;
 
+    /**
+     * Functions sharing the values array, which must be copied before being
+     * modified while shared (copy-on-write).
+     */
+    private SharedStorage storage;
+
     /**
      * Counter of nogoods.
      */
     private long nNoGoods;
 
+    /**
+     * Nogood value counted by {@link #nNoGoods}, or NaN if it has not been
+     * looked up yet.
+     */
+    private transient double ng = Double.NaN;
+
+    /**
+     * Tile summary maintained along the writes, or <code>null</code> if it
+     * has to be built from scratch.
+     */
+    private transient TileSummary tiles;
+
     /**
      * Creates a new CostFunction, initialized to zeros.
      *
@@ -71,9 +91,13 @@ public final class HypercubeCostFunction extends AbstractCostFunction implements
      */
     protected HypercubeCostFunction(Variable[] variables) {
         super(variables);
-        if (size < 0)
-            return;
+        if (size < 0 || size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Function " + getName()
+                    + " is too large to be stored in an array. Use an off-heap"
+                    + " representation instead.");
+        }
         values = new double[(int)size];
+        storage = new SharedStorage();
         nNoGoods = 0;
     }
 
@@ -84,14 +108,56 @@ public final class HypercubeCostFunction extends AbstractCostFunction implements
      */
     protected HypercubeCostFunction(CostFunction factor) {
         super(factor);
-        values = factor.getValues().clone();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Function " + getName()
+                    + " is too large to be stored in an array. Use an off-heap"
+                    + " representation instead.");
+        }
+        if (factor instanceof HypercubeCostFunction) {
+            final HypercubeCostFunction other = (HypercubeCostFunction)factor;
+            storage = other.storage.share(other, this);
+            values = other.values;
+            tiles = other.tiles == null ? null : new TileSummary(other.tiles);
+            ng = other.ng;
+        } else {
+            values = copyValuesOf(factor);
+            storage = new SharedStorage();
+        }
         nNoGoods = factor.getNumberOfNoGoods();
     }
 
+    /**
+     * Returns the values of this function, which may be shared with its
+     * copies and therefore must not be modified.
+     *
+     * @return values of this function.
+     */
     public double[] getValues() {
         return values;
     }
 
+    /**
+     * Returns the values of this function for writing in bulk, detaching
+     * them first from any copy that shares them. Callers must call
+     * {@link #updateNoGoods(double)} when done.
+     *
+     * @return values of this function.
+     */
+    double[] getMutableValues() {
+        unshare();
+        return values;
+    }
+
+    /**
+     * Copies the values array if it is shared with other functions.
+     */
+    private void unshare() {
+        if (storage.isShared()) {
+            values = values.clone();
+            storage = storage.detach();
+        }
+    }
+
     public void setValues(double[] values) {
         
         if (values.length != this.values.length) {
@@ -99,7 +165,10 @@ public final class HypercubeCostFunction extends AbstractCostFunction implements
         }
 
         this.values = new double[values.length];
+        storage = storage.detach();
         nNoGoods = 0;
+        ng = Double.NaN;
+        tiles = newTileSummary();
         for (int i=0; i<values.length; i++) {
             setValue(i, values[i]);
         }
@@ -119,21 +188,110 @@ public final class HypercubeCostFunction extends AbstractCostFunction implements
     }
 
     public void setValue(long index, double value) {
-        final double ng = getFactory().getSummarizeOperation().getNoGood();
-        final double prev = values[(int)index];
-        if (value != ng && prev == ng) {
-            nNoGoods--;
+        modified();
+        unshare();
+        final double nogood = getNoGood();
+        final int i = (int)index;
+        final double prev = values[i];
+        values[i] = value;
+        nNoGoods += (value == nogood ? 1 : 0) - (prev == nogood ? 1 : 0);
+        if (tiles != null) {
+            tiles.update(index, value);
         }
-        if (value == ng && prev != ng) {
-            nNoGoods++;
+    }
+
+    /**
+     * Returns the nogood value of the factory's summarization operation,
+     * looking it up only once.
+     *
+     * @return nogood value.
+     */
+    private double getNoGood() {
+        if (ng != ng) {
+            ng = getFactory().getSummarizeOperation().getNoGood();
         }
-        values[(int)index] = value;
+        return ng;
+    }
+
+    @Override public void setFactory(CostFunctionFactory factory) {
+        super.setFactory(factory);
+        ng = Double.NaN;
     }
 
     public long getNumberOfNoGoods() {
         return nNoGoods;
     }
 
+    @Override protected TileSummary buildTileSummary(Summarize operation) {
+        if (tiles == null || tiles.getOperation() != operation) {
+            tiles = new TileSummary(values, operation);
+        }
+        return tiles;
+    }
+
+    @Override public void negateInPlace() {
+        final Combine operation = getFactory().getCombineOperation();
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        unshare();
+        for (int i=0; i<values.length; i++) {
+            final double value = values[i];
+            if (value != ng) {
+                final double v = operation.negate(value);
+                if (v != v) {
+                    throw new RuntimeException("Negation generated a NaN value. Halting.");
+                }
+                values[i] = v;
+            }
+        }
+        ConstraintChecks.add(values.length);
+        updateNoGoods(ng);
+    }
+
+    @Override public void invertInPlace() {
+        final Combine operation = getFactory().getCombineOperation();
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        unshare();
+        for (int i=0; i<values.length; i++) {
+            if (values[i] != ng) {
+                values[i] = operation.invert(values[i]);
+            }
+        }
+        ConstraintChecks.add(values.length);
+        updateNoGoods(ng);
+    }
+
+    /**
+     * Recounts the number of nogoods after the values array has been
+     * written in bulk, rebuilding the tile summary in the same pass.
+     *
+     * @param ng nogood value.
+     */
+    void updateNoGoods(double ng) {
+        modified();
+        this.ng = ng;
+        final TileSummary summary = newTileSummary();
+        final Summarize operation = summary == null ? null : summary.getOperation();
+        final int tile = 1 << TileSummary.TILE_BITS;
+        long n = 0;
+        for (int from=0; from<values.length; from+=tile) {
+            final int to = Math.min(values.length, from + tile);
+            double best = ng;
+            for (int i=from; i<to; i++) {
+                final double v = values[i];
+                if (v == ng) {
+                    n++;
+                } else if (operation != null) {
+                    best = operation.eval(best, v);
+                }
+            }
+            if (summary != null) {
+                summary.update(from, best);
+            }
+        }
+        nNoGoods = n;
+        tiles = summary;
+    }
+
     @Override public String getName() {
         return "H" + super.getName();
     }
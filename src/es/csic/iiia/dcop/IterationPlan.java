@@ -0,0 +1,345 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Precomputed plan to iterate a (local) cost function following the natural
+ * order of another (reference) one.
+ * <p/>
+ * A plan holds the stride that each reference variable has in the local
+ * function, along with the offsets spanned by the local variables that are
+ * not present in the reference. Plans only depend on the pair of variable
+ * orders, so they are cached and shared among all the functions with the
+ * same scopes.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class IterationPlan {
+
+    /**
+     * Maximum number of cached plans.
+     */
+    public static int CACHE_SIZE = 1024;
+
+    /**
+     * Least-recently used cache of plans, keyed by scope signature.
+     */
+    private static final Map<Signature, IterationPlan> cache =
+        new LinkedHashMap<Signature, IterationPlan>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Signature, IterationPlan> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /**
+     * Stride (in the local function) of each reference variable, or zero if
+     * the variable is not part of the local function.
+     */
+    private final long[] strides;
+
+    /**
+     * Local index offsets spanned by the local variables that are not part
+     * of the reference.
+     */
+    private final long[] offsets;
+
+    /**
+     * Domains of the reference variables.
+     */
+    private final int[] domains;
+
+    /**
+     * Returns the plan to iterate a function over the <em>local</em>
+     * variables following the order of a function over the <em>reference</em>
+     * ones.
+     *
+     * @param reference ordered variables of the reference function.
+     * @param local ordered variables of the local function.
+     * @return iteration plan.
+     */
+    public static IterationPlan get(Variable[] reference, Variable[] local) {
+        final Signature key = new Signature(reference, local);
+        synchronized(cache) {
+            IterationPlan plan = cache.get(key);
+            if (plan == null) {
+                plan = new IterationPlan(reference, local);
+                cache.put(key, plan);
+            }
+            return plan;
+        }
+    }
+
+    private IterationPlan(Variable[] reference, Variable[] local) {
+        final int len = local.length;
+
+        // Natural strides of the local function
+        long[] localStrides = new long[len];
+        long stride = 1;
+        for (int i=len-1; i>=0; i--) {
+            localStrides[i] = stride;
+            stride *= local[i].getDomain();
+        }
+
+        // Map the reference variables into the local ones
+        boolean[] mapped = new boolean[len];
+        strides = new long[reference.length];
+        domains = new int[reference.length];
+        for (int j=0; j<reference.length; j++) {
+            domains[j] = reference[j].getDomain();
+            for (int i=0; i<len; i++) {
+                if (reference[j].equals(local[i])) {
+                    strides[j] = localStrides[i];
+                    mapped[i] = true;
+                    break;
+                }
+            }
+        }
+
+        // Offsets spanned by the free (non-mapped) local variables
+        int noffsets = 1;
+        for (int i=0; i<len; i++) {
+            if (!mapped[i]) {
+                noffsets *= local[i].getDomain();
+                if (noffsets < 0) {
+                    throw new RuntimeException("Offset index overflow.");
+                }
+            }
+        }
+        offsets = new long[noffsets];
+        int filled = 1;
+        for (int i=0; i<len; i++) {
+            if (mapped[i]) {
+                continue;
+            }
+            final int domain = local[i].getDomain();
+            for (int v=1; v<domain; v++) {
+                for (int k=0; k<filled; k++) {
+                    offsets[v*filled + k] = offsets[k] + v*localStrides[i];
+                }
+            }
+            filled *= domain;
+        }
+    }
+
+    /**
+     * Returns the local index corresponding to the given reference
+     * sub-indices.
+     *
+     * @param subidx reference sub-indices.
+     * @return local index.
+     */
+    public long index(int[] subidx) {
+        long idx = 0;
+        for (int i=0; i<strides.length; i++) {
+            idx += strides[i] * subidx[i];
+        }
+        return idx;
+    }
+
+    /**
+     * Returns the local strides of each reference variable.
+     *
+     * @return local strides of the reference variables.
+     */
+    public long[] getStrides() {
+        return strides;
+    }
+
+    /**
+     * Returns the local index offsets spanned by the local variables that
+     * are not part of the reference.
+     *
+     * @return local index offsets.
+     */
+    public long[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Builds a new cursor that walks the whole reference space in its natural
+     * order, keeping track of the corresponding indices of the local
+     * functions of the given plans (which must share the same reference).
+     *
+     * @param plans plans of the local functions to track.
+     * @return new cursor.
+     */
+    public static Odometer odometer(IterationPlan... plans) {
+        return new Odometer(plans);
+    }
+
+    /**
+     * Odometer-style cursor over the reference space of one or more plans.
+     */
+    public static final class Odometer {
+        private final int[] domains;
+        private final int[] subidx;
+        private final long[] indices;
+        private final long[][] increments;
+        private final long[][] wraps;
+        private long position;
+
+        private Odometer(IterationPlan[] plans) {
+            domains = plans[0].domains;
+            final int n = domains.length;
+            final int np = plans.length;
+            subidx = new int[n];
+            indices = new long[np];
+            increments = new long[n][np];
+            wraps = new long[n][np];
+            for (int k=0; k<n; k++) {
+                for (int p=0; p<np; p++) {
+                    increments[k][p] = plans[p].strides[k];
+                    wraps[k][p] = plans[p].strides[k] * (domains[k] - 1);
+                }
+            }
+        }
+
+        /**
+         * Moves the cursor to the given (linearized) reference index.
+         *
+         * @param position reference index.
+         */
+        public void seek(long position) {
+            this.position = position;
+            Arrays.fill(indices, 0);
+            final int np = indices.length;
+            for (int k=domains.length-1; k>=0; k--) {
+                subidx[k] = (int)(position % domains[k]);
+                position /= domains[k];
+                final long[] inc = increments[k];
+                for (int p=0; p<np; p++) {
+                    indices[p] += inc[p] * subidx[k];
+                }
+            }
+        }
+
+        /**
+         * Advances to the next reference configuration.
+         *
+         * @return true if the cursor moved, or false if the whole space has
+         * already been walked (in which case it is reset to the start).
+         */
+        public boolean next() {
+            final int np = indices.length;
+            for (int k=domains.length-1; k>=0; k--) {
+                if (++subidx[k] != domains[k]) {
+                    final long[] inc = increments[k];
+                    for (int p=0; p<np; p++) {
+                        indices[p] += inc[p];
+                    }
+                    position++;
+                    return true;
+                }
+                subidx[k] = 0;
+                final long[] wrap = wraps[k];
+                for (int p=0; p<np; p++) {
+                    indices[p] -= wrap[p];
+                }
+            }
+            position = 0;
+            return false;
+        }
+
+        /**
+         * Returns the current (linearized) reference index.
+         *
+         * @return reference index.
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Returns the current local index of each tracked function. The
+         * returned array is updated in place as the cursor advances.
+         *
+         * @return local indices.
+         */
+        public long[] getIndices() {
+            return indices;
+        }
+
+        /**
+         * Returns the current reference sub-indices. The returned array is
+         * updated in place as the cursor advances.
+         *
+         * @return reference sub-indices.
+         */
+        public int[] getSubindices() {
+            return subidx;
+        }
+    }
+
+    /**
+     * Scope signature (pair of variable orders) of a plan.
+     */
+    private static final class Signature {
+        private final int[] ids;
+        private final int hash;
+
+        Signature(Variable[] reference, Variable[] local) {
+            ids = new int[reference.length + local.length + 1];
+            int i = 0;
+            for (Variable v : reference) {
+                ids[i++] = v.getId();
+            }
+            ids[i++] = -1;
+            for (Variable v : local) {
+                ids[i++] = v.getId();
+            }
+            hash = Arrays.hashCode(ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Signature && Arrays.equals(ids, ((Signature)obj).ids);
+        }
+    }
+
+}
@@ -0,0 +1,867 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import es.csic.iiia.dcop.CostFunction.Combine;
+import es.csic.iiia.dcop.CostFunction.Summarize;
+import java.util.Arrays;
+
+/**
+ * Specialized implementation of the (combine, summarize) operations for a
+ * specific pair of modes, along with bulk loops over linearized arrays of
+ * values.
+ * <p/>
+ * There is a final implementation for each pair of modes, selected once per
+ * operation through {@link CostFunctionFactory#getKernel()}, so that the
+ * element operations called from the bulk loops always resolve to the same
+ * (small, inlinable) method instead of going through the enum dispatch and
+ * factory lookups on every tuple.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public abstract class Kernel {
+
+    private static final Kernel[][] kernels = new Kernel[][] {
+        // PRODUCT
+        {new ProductMax(), new ProductMin(), new ProductSum()},
+        // SUM
+        {new SumMax(), new SumMin(), new SumSum()},
+    };
+
+    /**
+     * Nogood value of the summarize operation.
+     */
+    protected final double noGood;
+
+    /**
+     * Neutral value of the combine operation.
+     */
+    protected final double neutral;
+
+    private final Combine combine;
+    private final Summarize summarize;
+
+    /**
+     * Returns the kernel of the given pair of operations.
+     *
+     * @param combine combine operation.
+     * @param summarize summarize operation.
+     * @return kernel implementing the given operations.
+     */
+    public static Kernel get(Combine combine, Summarize summarize) {
+        return kernels[combine.ordinal()][summarize.ordinal()];
+    }
+
+    private Kernel(Combine combine, Summarize summarize) {
+        this.combine = combine;
+        this.summarize = summarize;
+        this.noGood = summarize.getNoGood();
+        this.neutral = combine.getNeutralValue();
+    }
+
+    /**
+     * Combines two values.
+     *
+     * @see Combine#eval(double, double)
+     */
+    public abstract double combine(double x, double y);
+
+    /**
+     * Summarizes two values.
+     *
+     * @see Summarize#eval(double, double)
+     */
+    public abstract double summarize(double x, double y);
+
+    /**
+     * Returns the combine operation implemented by this kernel.
+     *
+     * @return combine operation.
+     */
+    public Combine getCombineOperation() {
+        return combine;
+    }
+
+    /**
+     * Returns the summarize operation implemented by this kernel.
+     *
+     * @return summarize operation.
+     */
+    public Summarize getSummarizeOperation() {
+        return summarize;
+    }
+
+    /**
+     * Returns the nogood value of the summarize operation.
+     *
+     * @return nogood value.
+     */
+    public double getNoGood() {
+        return noGood;
+    }
+
+    /**
+     * Returns <em>true</em> if x is better than y.
+     *
+     * @see Summarize#isBetter(double, double)
+     */
+    public abstract boolean isBetter(double x, double y);
+
+    /*
+     * The bulk loops below are abstract, and implemented by each final kernel
+     * instead of here, so that the element operations they call are bound
+     * statically (and inlined) within each of them.
+     */
+
+    /**
+     * Combines the given operands over the [from, to) range of the result,
+     * writing the combination of each position into the result.
+     *
+     * @param operands values of each operand.
+     * @param result values of the result.
+     * @param plans plans of each operand, with the result as reference.
+     * @param from first result index (inclusive).
+     * @param to last result index (exclusive).
+     */
+    public abstract void combine(double[][] operands, double[] result,
+            IterationPlan[] plans, long from, long to);
+
+    /**
+     * Combines the given operands over the [from, to) range of the union
+     * space, summarizing the combination of each position into the result.
+     *
+     * @param operands values of each operand.
+     * @param result values of the result (initialized to nogoods).
+     * @param plans plans of each operand followed by the result's, with the
+     * union space as reference.
+     * @param from first union index (inclusive).
+     * @param to last union index (exclusive).
+     */
+    public abstract void combineAndSummarize(double[][] operands, double[] result,
+            IterationPlan[] plans, long from, long to);
+
+    /**
+     * Summarizes the [from, to) range of the given values into the result.
+     *
+     * @param values values to summarize.
+     * @param result values of the result (initialized to nogoods).
+     * @param plan plan of the result, with the values as reference.
+     * @param from first index (inclusive).
+     * @param to last index (exclusive).
+     */
+    public abstract void summarize(double[] values, double[] result, IterationPlan plan,
+            long from, long to);
+
+    /**
+     * Summarizes the given partial results into the first one.
+     *
+     * @param partials partial results.
+     */
+    public abstract void summarize(double[][] partials);
+
+    /**
+     * Filters the [from, to) range of the given values, setting to nogood
+     * the positions whose combination with the filtering functions is worse
+     * than the bound.
+     *
+     * @param values values to filter.
+     * @param filters values of the filtering functions.
+     * @param result values of the filtered result (initialized as a copy of
+     * the values).
+     * @param plans plans of the filtering functions, with the values as
+     * reference.
+     * @param bound filtering bound.
+     * @param discarded tiles that are known to be filtered out, or
+     * <code>null</code>.
+     * @param from first index (inclusive).
+     * @param to last index (exclusive).
+     * @return true if any position in the range survived the filtering.
+     */
+    public abstract boolean filter(double[] values, double[][] filters, double[] result,
+            IterationPlan[] plans, double bound, boolean[] discarded, long from, long to);
+
+    private static final class ProductMax extends Kernel {
+        ProductMax() {super(Combine.PRODUCT, Summarize.MAX);}
+        public double combine(double x, double y) {return x*y;}
+        public double summarize(double x, double y) {return Math.max(x, y);}
+        public boolean isBetter(double x, double y) {return x - y > 0.00001;}
+
+        public void combine(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                result[pos] = v;
+                it.next();
+            }
+        }
+
+        public void combineAndSummarize(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (long pos=from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                final int ridx = (int)idxs[n];
+                result[ridx] = summarize(v, result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[] values, double[] result, IterationPlan plan,
+                long from, long to)
+        {
+            final IterationPlan.Odometer it = IterationPlan.odometer(plan);
+            final long[] idxs = it.getIndices();
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                final int ridx = (int)idxs[0];
+                result[ridx] = summarize(values[pos], result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[][] partials) {
+            final double[] result = partials[0];
+            for (int p=1; p<partials.length; p++) {
+                final double[] partial = partials[p];
+                for (int i=0; i<result.length; i++) {
+                    result[i] = summarize(result[i], partial[i]);
+                }
+            }
+        }
+
+        public boolean filter(double[] values, double[][] filters, double[] result,
+                IterationPlan[] plans, double bound, boolean[] discarded, long from, long to)
+        {
+            final int n = filters.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            boolean anyGood = false;
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                if (discarded != null && discarded[pos >>> TileSummary.TILE_BITS]) {
+                    // Skip to the start of the next tile
+                    final int end = (int)Math.min(to,
+                            ((long)(pos >>> TileSummary.TILE_BITS) + 1) << TileSummary.TILE_BITS);
+                    Arrays.fill(result, pos, end, noGood);
+                    pos = end - 1;
+                    if (end < to) {
+                        it.seek(end);
+                    }
+                    continue;
+                }
+                double v = values[pos];
+                for (int i=0; i<n; i++) {
+                    v = combine(v, filters[i][(int)idxs[i]]);
+                    if (isBetter(bound, v)) break;
+                }
+                if (isBetter(bound, v)) {
+                    result[pos] = noGood;
+                } else {
+                    anyGood = true;
+                }
+                it.next();
+            }
+            return anyGood;
+        }
+    }
+
+    private static final class ProductMin extends Kernel {
+        ProductMin() {super(Combine.PRODUCT, Summarize.MIN);}
+        public double combine(double x, double y) {return x*y;}
+        public double summarize(double x, double y) {return Math.min(x, y);}
+        public boolean isBetter(double x, double y) {return y - x > 0.00001;}
+
+        public void combine(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                result[pos] = v;
+                it.next();
+            }
+        }
+
+        public void combineAndSummarize(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (long pos=from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                final int ridx = (int)idxs[n];
+                result[ridx] = summarize(v, result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[] values, double[] result, IterationPlan plan,
+                long from, long to)
+        {
+            final IterationPlan.Odometer it = IterationPlan.odometer(plan);
+            final long[] idxs = it.getIndices();
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                final int ridx = (int)idxs[0];
+                result[ridx] = summarize(values[pos], result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[][] partials) {
+            final double[] result = partials[0];
+            for (int p=1; p<partials.length; p++) {
+                final double[] partial = partials[p];
+                for (int i=0; i<result.length; i++) {
+                    result[i] = summarize(result[i], partial[i]);
+                }
+            }
+        }
+
+        public boolean filter(double[] values, double[][] filters, double[] result,
+                IterationPlan[] plans, double bound, boolean[] discarded, long from, long to)
+        {
+            final int n = filters.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            boolean anyGood = false;
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                if (discarded != null && discarded[pos >>> TileSummary.TILE_BITS]) {
+                    // Skip to the start of the next tile
+                    final int end = (int)Math.min(to,
+                            ((long)(pos >>> TileSummary.TILE_BITS) + 1) << TileSummary.TILE_BITS);
+                    Arrays.fill(result, pos, end, noGood);
+                    pos = end - 1;
+                    if (end < to) {
+                        it.seek(end);
+                    }
+                    continue;
+                }
+                double v = values[pos];
+                for (int i=0; i<n; i++) {
+                    v = combine(v, filters[i][(int)idxs[i]]);
+                    if (isBetter(bound, v)) break;
+                }
+                if (isBetter(bound, v)) {
+                    result[pos] = noGood;
+                } else {
+                    anyGood = true;
+                }
+                it.next();
+            }
+            return anyGood;
+        }
+    }
+
+    private static final class ProductSum extends Kernel {
+        ProductSum() {super(Combine.PRODUCT, Summarize.SUM);}
+        public double combine(double x, double y) {return x*y;}
+        public double summarize(double x, double y) {return x+y;}
+        public boolean isBetter(double x, double y) {throw new RuntimeException("I don't know how to compare when using SUM summarization.");}
+
+        public void combine(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                result[pos] = v;
+                it.next();
+            }
+        }
+
+        public void combineAndSummarize(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (long pos=from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                final int ridx = (int)idxs[n];
+                result[ridx] = summarize(v, result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[] values, double[] result, IterationPlan plan,
+                long from, long to)
+        {
+            final IterationPlan.Odometer it = IterationPlan.odometer(plan);
+            final long[] idxs = it.getIndices();
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                final int ridx = (int)idxs[0];
+                result[ridx] = summarize(values[pos], result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[][] partials) {
+            final double[] result = partials[0];
+            for (int p=1; p<partials.length; p++) {
+                final double[] partial = partials[p];
+                for (int i=0; i<result.length; i++) {
+                    result[i] = summarize(result[i], partial[i]);
+                }
+            }
+        }
+
+        public boolean filter(double[] values, double[][] filters, double[] result,
+                IterationPlan[] plans, double bound, boolean[] discarded, long from, long to)
+        {
+            final int n = filters.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            boolean anyGood = false;
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                if (discarded != null && discarded[pos >>> TileSummary.TILE_BITS]) {
+                    // Skip to the start of the next tile
+                    final int end = (int)Math.min(to,
+                            ((long)(pos >>> TileSummary.TILE_BITS) + 1) << TileSummary.TILE_BITS);
+                    Arrays.fill(result, pos, end, noGood);
+                    pos = end - 1;
+                    if (end < to) {
+                        it.seek(end);
+                    }
+                    continue;
+                }
+                double v = values[pos];
+                for (int i=0; i<n; i++) {
+                    v = combine(v, filters[i][(int)idxs[i]]);
+                    if (isBetter(bound, v)) break;
+                }
+                if (isBetter(bound, v)) {
+                    result[pos] = noGood;
+                } else {
+                    anyGood = true;
+                }
+                it.next();
+            }
+            return anyGood;
+        }
+    }
+
+    private static final class SumMax extends Kernel {
+        SumMax() {super(Combine.SUM, Summarize.MAX);}
+        public double combine(double x, double y) {return x+y;}
+        public double summarize(double x, double y) {return Math.max(x, y);}
+        public boolean isBetter(double x, double y) {return x - y > 0.00001;}
+
+        public void combine(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                result[pos] = v;
+                it.next();
+            }
+        }
+
+        public void combineAndSummarize(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (long pos=from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                final int ridx = (int)idxs[n];
+                result[ridx] = summarize(v, result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[] values, double[] result, IterationPlan plan,
+                long from, long to)
+        {
+            final IterationPlan.Odometer it = IterationPlan.odometer(plan);
+            final long[] idxs = it.getIndices();
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                final int ridx = (int)idxs[0];
+                result[ridx] = summarize(values[pos], result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[][] partials) {
+            final double[] result = partials[0];
+            for (int p=1; p<partials.length; p++) {
+                final double[] partial = partials[p];
+                for (int i=0; i<result.length; i++) {
+                    result[i] = summarize(result[i], partial[i]);
+                }
+            }
+        }
+
+        public boolean filter(double[] values, double[][] filters, double[] result,
+                IterationPlan[] plans, double bound, boolean[] discarded, long from, long to)
+        {
+            final int n = filters.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            boolean anyGood = false;
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                if (discarded != null && discarded[pos >>> TileSummary.TILE_BITS]) {
+                    // Skip to the start of the next tile
+                    final int end = (int)Math.min(to,
+                            ((long)(pos >>> TileSummary.TILE_BITS) + 1) << TileSummary.TILE_BITS);
+                    Arrays.fill(result, pos, end, noGood);
+                    pos = end - 1;
+                    if (end < to) {
+                        it.seek(end);
+                    }
+                    continue;
+                }
+                double v = values[pos];
+                for (int i=0; i<n; i++) {
+                    v = combine(v, filters[i][(int)idxs[i]]);
+                    if (isBetter(bound, v)) break;
+                }
+                if (isBetter(bound, v)) {
+                    result[pos] = noGood;
+                } else {
+                    anyGood = true;
+                }
+                it.next();
+            }
+            return anyGood;
+        }
+    }
+
+    private static final class SumMin extends Kernel {
+        SumMin() {super(Combine.SUM, Summarize.MIN);}
+        public double combine(double x, double y) {return x+y;}
+        public double summarize(double x, double y) {return Math.min(x, y);}
+        public boolean isBetter(double x, double y) {return y - x > 0.00001;}
+
+        public void combine(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                result[pos] = v;
+                it.next();
+            }
+        }
+
+        public void combineAndSummarize(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (long pos=from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                final int ridx = (int)idxs[n];
+                result[ridx] = summarize(v, result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[] values, double[] result, IterationPlan plan,
+                long from, long to)
+        {
+            final IterationPlan.Odometer it = IterationPlan.odometer(plan);
+            final long[] idxs = it.getIndices();
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                final int ridx = (int)idxs[0];
+                result[ridx] = summarize(values[pos], result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[][] partials) {
+            final double[] result = partials[0];
+            for (int p=1; p<partials.length; p++) {
+                final double[] partial = partials[p];
+                for (int i=0; i<result.length; i++) {
+                    result[i] = summarize(result[i], partial[i]);
+                }
+            }
+        }
+
+        public boolean filter(double[] values, double[][] filters, double[] result,
+                IterationPlan[] plans, double bound, boolean[] discarded, long from, long to)
+        {
+            final int n = filters.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            boolean anyGood = false;
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                if (discarded != null && discarded[pos >>> TileSummary.TILE_BITS]) {
+                    // Skip to the start of the next tile
+                    final int end = (int)Math.min(to,
+                            ((long)(pos >>> TileSummary.TILE_BITS) + 1) << TileSummary.TILE_BITS);
+                    Arrays.fill(result, pos, end, noGood);
+                    pos = end - 1;
+                    if (end < to) {
+                        it.seek(end);
+                    }
+                    continue;
+                }
+                double v = values[pos];
+                for (int i=0; i<n; i++) {
+                    v = combine(v, filters[i][(int)idxs[i]]);
+                    if (isBetter(bound, v)) break;
+                }
+                if (isBetter(bound, v)) {
+                    result[pos] = noGood;
+                } else {
+                    anyGood = true;
+                }
+                it.next();
+            }
+            return anyGood;
+        }
+    }
+
+    private static final class SumSum extends Kernel {
+        SumSum() {super(Combine.SUM, Summarize.SUM);}
+        public double combine(double x, double y) {return x+y;}
+        public double summarize(double x, double y) {return x+y;}
+        public boolean isBetter(double x, double y) {throw new RuntimeException("I don't know how to compare when using SUM summarization.");}
+
+        public void combine(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                result[pos] = v;
+                it.next();
+            }
+        }
+
+        public void combineAndSummarize(double[][] operands, double[] result,
+                IterationPlan[] plans, long from, long to)
+        {
+            final int n = operands.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            final double[] o0 = operands[0];
+            it.seek(from);
+            for (long pos=from; pos<to; pos++) {
+                double v = o0[(int)idxs[0]];
+                for (int i=1; i<n; i++) {
+                    v = combine(v, operands[i][(int)idxs[i]]);
+                }
+                if (v != v) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+                final int ridx = (int)idxs[n];
+                result[ridx] = summarize(v, result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[] values, double[] result, IterationPlan plan,
+                long from, long to)
+        {
+            final IterationPlan.Odometer it = IterationPlan.odometer(plan);
+            final long[] idxs = it.getIndices();
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                final int ridx = (int)idxs[0];
+                result[ridx] = summarize(values[pos], result[ridx]);
+                it.next();
+            }
+        }
+
+        public void summarize(double[][] partials) {
+            final double[] result = partials[0];
+            for (int p=1; p<partials.length; p++) {
+                final double[] partial = partials[p];
+                for (int i=0; i<result.length; i++) {
+                    result[i] = summarize(result[i], partial[i]);
+                }
+            }
+        }
+
+        public boolean filter(double[] values, double[][] filters, double[] result,
+                IterationPlan[] plans, double bound, boolean[] discarded, long from, long to)
+        {
+            final int n = filters.length;
+            final IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            boolean anyGood = false;
+            it.seek(from);
+            for (int pos=(int)from; pos<to; pos++) {
+                if (discarded != null && discarded[pos >>> TileSummary.TILE_BITS]) {
+                    // Skip to the start of the next tile
+                    final int end = (int)Math.min(to,
+                            ((long)(pos >>> TileSummary.TILE_BITS) + 1) << TileSummary.TILE_BITS);
+                    Arrays.fill(result, pos, end, noGood);
+                    pos = end - 1;
+                    if (end < to) {
+                        it.seek(end);
+                    }
+                    continue;
+                }
+                double v = values[pos];
+                for (int i=0; i<n; i++) {
+                    v = combine(v, filters[i][(int)idxs[i]]);
+                    if (isBetter(bound, v)) break;
+                }
+                if (isBetter(bound, v)) {
+                    result[pos] = noGood;
+                } else {
+                    anyGood = true;
+                }
+                it.next();
+            }
+            return anyGood;
+        }
+    }
+
+}
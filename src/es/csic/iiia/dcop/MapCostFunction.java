@@ -40,6 +40,7 @@ package es.csic.iiia.dcop;
 
 import es.csic.iiia.dcop.util.ConstraintChecks;
 import es.csic.iiia.dcop.util.CostFunctionStats;
+import gnu.trove.function.TDoubleFunction;
 import gnu.trove.iterator.TLongIterator;
 import java.io.Serializable;
 import gnu.trove.map.hash.TLongDoubleHashMap;
@@ -95,7 +96,13 @@ public final class MapCostFunction extends AbstractCostFunction implements Seria
             final int capacity = (int)(factor.getSize() - factor.getNumberOfNoGoods());
             zero = getFactory().getSummarizeOperation().getNoGood();
             map = new TLongDoubleHashMap(capacity, .75f, Long.MIN_VALUE, zero);
-            setValues(factor.getValues());
+            for (TLongIterator it = factor.iterator(); it.hasNext();) {
+                final long i = it.next();
+                final double v = factor.getValue(i);
+                if (v != zero) {
+                    map.put(i, v);
+                }
+            }
         }
     }
 
@@ -115,6 +122,12 @@ public final class MapCostFunction extends AbstractCostFunction implements Seria
         return v;
     }
 
+    @Override
+    protected double[] copyValues() {
+        return getValues();
+    }
+
+
     @Override
     public void setValues(double[] values) {
         reset();
@@ -146,6 +159,7 @@ public final class MapCostFunction extends AbstractCostFunction implements Seria
     }
 
     @Override public void setValue(long index, double value) {
+        modified();
         if (index < 0 || index >= size)
             throw new IndexOutOfBoundsException(Long.toString(index) + " out of "
                     + size);
@@ -157,6 +171,18 @@ public final class MapCostFunction extends AbstractCostFunction implements Seria
         }
     }
 
+    @Override protected void transformInPlace(TDoubleFunction transform) {
+        modified();
+        ConstraintChecks.add(map.size());
+        map.transformValues(transform);
+        // Values transformed into "zero" are not stored
+        map.retainEntries(new TLongDoubleProcedure() {
+            public boolean execute(long index, double value) {
+                return value != zero;
+            }
+        });
+    }
+
     @Override public long getNumberOfNoGoods() {
         return size - map.size();
     }
@@ -184,6 +210,10 @@ public final class MapCostFunction extends AbstractCostFunction implements Seria
 
         // Constant cost function handling
         if (variableSet.size() == 0) {
+            if (getValue(0) == other.getValue(0)) {
+                // Also covers two (infinite) nogoods
+                return true;
+            }
             final double e = getValue(0) - other.getValue(0);
             return Math.abs(e) <= delta;
         }
@@ -266,6 +296,7 @@ public final class MapCostFunction extends AbstractCostFunction implements Seria
         }
 
         public void remove() {
+            modified();
             map.remove(keys[i]);
         }
         
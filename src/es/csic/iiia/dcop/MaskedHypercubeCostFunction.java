@@ -0,0 +1,362 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import es.csic.iiia.dcop.CostFunction.Summarize;
+import es.csic.iiia.dcop.util.ConstraintChecks;
+import gnu.trove.iterator.TLongIterator;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Cost Function implementation that stores the whole hypercube of values in
+ * a linearized array of doubles, along with a bitmask of its "good"
+ * (non-nogood) configurations.
+ * <p/>
+ * Iterators use the bitmask to skip nogoods up to 64 configurations at a
+ * time, so this representation suits functions that have too many nogoods
+ * to be efficiently handled as plain hypercubes, but too few to be worth
+ * storing as sparse maps.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class MaskedHypercubeCostFunction extends AbstractCostFunction implements Serializable {
+
+    /**
+     * Hypercube values storage array.
+     */
+    private double[] values;
+
+    /**
+     * Bitmask of good configurations (bit <em>i</em> is set if the i-th
+     * value is not a nogood).
+     */
+    private long[] goods;
+
+    /**
+     * Functions sharing the values and mask arrays, which must be copied
+     * before being modified while shared (copy-on-write).
+     */
+    private SharedStorage storage;
+
+    /**
+     * Counter of nogoods.
+     */
+    private long nNoGoods;
+
+    /**
+     * Tile summary maintained along the writes, or <code>null</code> if it
+     * has to be built from scratch.
+     */
+    private transient TileSummary tiles;
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     */
+    protected MaskedHypercubeCostFunction(Variable[] variables) {
+        super(variables);
+        if (size < 0 || size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Function " + getName()
+                    + " is too large to be stored in an array. Use an off-heap"
+                    + " representation instead.");
+        }
+        values = new double[(int)size];
+        goods = new long[(int)((size + 63) >>> 6)];
+        storage = new SharedStorage();
+        nNoGoods = 0;
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     */
+    protected MaskedHypercubeCostFunction(CostFunction factor) {
+        super(factor);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Function " + getName()
+                    + " is too large to be stored in an array. Use an off-heap"
+                    + " representation instead.");
+        }
+        if (factor instanceof MaskedHypercubeCostFunction) {
+            final MaskedHypercubeCostFunction other = (MaskedHypercubeCostFunction)factor;
+            storage = other.storage.share(other, this);
+            values = other.values;
+            goods = other.goods;
+            nNoGoods = factor.getNumberOfNoGoods();
+            tiles = other.tiles == null ? null : new TileSummary(other.tiles);
+        } else {
+            values = copyValuesOf(factor);
+            goods = new long[(int)((size + 63) >>> 6)];
+            storage = new SharedStorage();
+            computeMask();
+        }
+    }
+
+    /**
+     * Recomputes the good configurations mask from the stored values,
+     * rebuilding the tile summary in the same pass.
+     */
+    private void computeMask() {
+        if (storage.isShared()) {
+            values = values.clone();
+            goods = new long[goods.length];
+            storage = storage.detach();
+        }
+        Arrays.fill(goods, 0);
+        nNoGoods = 0;
+        tiles = null;
+        if (getFactory() == null) {
+            return;
+        }
+
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        final TileSummary summary = newTileSummary();
+        final Summarize operation = summary == null ? null : summary.getOperation();
+        final int tile = 1 << TileSummary.TILE_BITS;
+        for (int from=0; from<values.length; from+=tile) {
+            final int to = Math.min(values.length, from + tile);
+            double best = ng;
+            for (int i=from; i<to; i++) {
+                final double v = values[i];
+                if (v == ng) {
+                    nNoGoods++;
+                } else {
+                    goods[i >>> 6] |= 1L << i;
+                    if (operation != null) {
+                        best = operation.eval(best, v);
+                    }
+                }
+            }
+            if (summary != null) {
+                summary.update(from, best);
+            }
+        }
+        tiles = summary;
+    }
+
+    @Override
+    public void setFactory(CostFunctionFactory factory) {
+        if (factory == getFactory()) {
+            return;
+        }
+        super.setFactory(factory);
+        computeMask();
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    public void setValues(double[] values) {
+
+        if (values.length != this.values.length) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+
+        this.values = values.clone();
+        goods = new long[goods.length];
+        storage = storage.detach();
+        computeMask();
+    }
+
+    @Override public TLongIterator iterator() {
+        return new MaskedIterator();
+    }
+
+    @Override public MasterIterator masterIterator() {
+        return new MaskedMasterIterator();
+    }
+
+    @Override public double getValue(long index) {
+        ConstraintChecks.inc();
+        return values[(int)index];
+    }
+
+    public void setValue(long index, double value) {
+        modified();
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        if (storage.isShared()) {
+            values = values.clone();
+            goods = goods.clone();
+            storage = storage.detach();
+        }
+        final int i = (int)index;
+        final long bit = 1L << i;
+        final boolean wasGood = (goods[i >>> 6] & bit) != 0;
+        if (value != ng && !wasGood) {
+            nNoGoods--;
+            goods[i >>> 6] |= bit;
+        }
+        if (value == ng && wasGood) {
+            nNoGoods++;
+            goods[i >>> 6] &= ~bit;
+        }
+        values[i] = value;
+        if (tiles != null) {
+            tiles.update(index, value);
+        }
+    }
+
+    public long getNumberOfNoGoods() {
+        return nNoGoods;
+    }
+
+    @Override protected TileSummary buildTileSummary(Summarize operation) {
+        if (tiles == null || tiles.getOperation() != operation) {
+            tiles = new TileSummary(values, operation);
+        }
+        return tiles;
+    }
+
+    /**
+     * Returns the index of the first good configuration at or after the
+     * given one, or -1 if there is none.
+     */
+    private long nextGood(long from) {
+        if (from >= size) {
+            return -1;
+        }
+        int w = (int)(from >>> 6);
+        long word = goods[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == goods.length) {
+                return -1;
+            }
+            word = goods[w];
+        }
+        return ((long)w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override public String getName() {
+        return "B" + super.getName();
+    }
+
+    /**
+     * Implements the Iterator interface for a masked hypercube, iterating
+     * over its good elements only.
+     */
+    protected class MaskedIterator implements TLongIterator {
+        private long idx;
+
+        public MaskedIterator() {
+            idx = nextGood(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx >= 0;
+        }
+
+        @Override
+        public long next() {
+            if (idx < 0) {
+                throw new NoSuchElementException();
+            }
+
+            final long res = idx;
+            idx = nextGood(idx + 1);
+            return res;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
+        }
+
+    }
+
+    /**
+     * Implements the MasterIterator interface for a masked hypercube,
+     * iterating over its good elements only while keeping track of their
+     * sub-indices.
+     */
+    protected class MaskedMasterIterator implements MasterIterator {
+        private final int[] subidx = new int[variables.length];
+        private long idx = -1;
+        private long nextIdx;
+
+        public MaskedMasterIterator() {
+            nextIdx = nextGood(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIdx >= 0;
+        }
+
+        @Override
+        public long next() {
+            if (nextIdx < 0) {
+                throw new NoSuchElementException();
+            }
+
+            if (idx >= 0 && nextIdx == idx + 1) {
+                // Contiguous configuration, just increment the sub-indices
+                for (int i=variables.length-1; i>=0; i--) {
+                    if (++subidx[i] != variables[i].getDomain()) {
+                        break;
+                    } else {
+                        subidx[i] = 0;
+                    }
+                }
+            } else {
+                indexToSubindex(nextIdx, subidx);
+            }
+
+            idx = nextIdx;
+            nextIdx = nextGood(idx + 1);
+            return idx;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
+        }
+
+        @Override
+        public int[] getIndices() {
+            return subidx;
+        }
+    }
+
+}
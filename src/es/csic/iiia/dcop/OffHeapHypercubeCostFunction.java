@@ -0,0 +1,496 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import es.csic.iiia.dcop.CostFunction.Summarize;
+import es.csic.iiia.dcop.util.ConstraintChecks;
+import gnu.trove.function.TDoubleFunction;
+import gnu.trove.iterator.TLongIterator;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Cost Function implementation that stores the whole hypercube of values
+ * outside of the java heap, in a sequence of fixed-size chunks of direct
+ * memory.
+ * <p/>
+ * In contrast to the {@link HypercubeCostFunction}, this representation uses
+ * true <code>long</code> indexing, so it can hold hypercubes with more than
+ * 2^31 elements. Moreover, the values do not live in the java heap, so huge
+ * functions do not put any pressure on the garbage collector (the available
+ * direct memory can be set through the <code>-XX:MaxDirectMemorySize</code>
+ * jvm option). Chunks are only allocated when they are first written, so
+ * untouched chunks hold the function's initial value without using memory.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class OffHeapHypercubeCostFunction extends AbstractCostFunction {
+
+    /**
+     * Default chunk size, as a power of two (2^27 doubles = 1Gb per chunk).
+     */
+    public static final int DEFAULT_CHUNK_BITS = 27;
+
+    /**
+     * Chunk size, as a power of two.
+     */
+    private final int chunkBits;
+
+    /**
+     * Mask to extract the in-chunk offset of an index.
+     */
+    private final long chunkMask;
+
+    /**
+     * Hypercube values storage chunks, or <code>null</code> for those that
+     * have not been allocated yet.
+     */
+    private DoubleBuffer[] chunks;
+
+    /**
+     * Value of every element of the chunks that have not been allocated.
+     */
+    private double background;
+
+    /**
+     * Functions sharing each chunk, which must be copied before being
+     * modified while shared (copy-on-write).
+     */
+    private SharedStorage[] shared;
+
+    /**
+     * Counter of nogoods.
+     */
+    private long nNoGoods;
+
+    /**
+     * Tile summary maintained along the writes, or <code>null</code> if it
+     * has to be built from scratch.
+     */
+    private transient TileSummary tiles;
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     * @param chunkBits size of each storage chunk, as a power of two.
+     */
+    protected OffHeapHypercubeCostFunction(Variable[] variables, int chunkBits) {
+        super(variables);
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+        if (size < 0) {
+            throw new IllegalArgumentException("The size of function " + getName()
+                    + " overflows the maximum addressable size.");
+        }
+        allocate();
+        nNoGoods = 0;
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     * @param chunkBits size of each storage chunk, as a power of two.
+     */
+    protected OffHeapHypercubeCostFunction(CostFunction factor, int chunkBits) {
+        super(factor);
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+
+        if (factor instanceof OffHeapHypercubeCostFunction
+                && ((OffHeapHypercubeCostFunction)factor).chunkBits == chunkBits) {
+            final OffHeapHypercubeCostFunction other = (OffHeapHypercubeCostFunction)factor;
+            chunks = new DoubleBuffer[other.chunks.length];
+            for (int i=0; i<chunks.length; i++) {
+                chunks[i] = other.chunks[i] == null ? null : other.chunks[i].duplicate();
+            }
+            background = other.background;
+            shared = new SharedStorage[chunks.length];
+            for (int i=0; i<chunks.length; i++) {
+                shared[i] = other.shared[i].share(other, this);
+            }
+            nNoGoods = factor.getNumberOfNoGoods();
+            tiles = other.tiles == null ? null : new TileSummary(other.tiles);
+            return;
+        }
+
+        allocate();
+        if (size <= Integer.MAX_VALUE) {
+            final double[] vs = factor.getValues();
+            for (int i=0; i<vs.length; i++) {
+                put(i, vs[i]);
+            }
+        } else {
+            for (long i=0; i<size; i++) {
+                put(i, factor.getValue(i));
+            }
+        }
+        nNoGoods = factor.getNumberOfNoGoods();
+    }
+
+    /**
+     * Sets up the (zero-valued) storage chunks required to hold this
+     * function's values, which are allocated on their first write.
+     */
+    private void allocate() {
+        final long chunkSize = 1L << chunkBits;
+        final int nChunks = (int)((size + chunkSize - 1) >>> chunkBits);
+        chunks = new DoubleBuffer[nChunks];
+        shared = new SharedStorage[nChunks];
+        for (int i=0; i<nChunks; i++) {
+            shared[i] = new SharedStorage();
+        }
+        background = 0;
+    }
+
+    /**
+     * Drops all the storage chunks, so that every element takes the given
+     * value.
+     *
+     * @param value value of every element.
+     */
+    private void release(double value) {
+        for (int i=0; i<chunks.length; i++) {
+            chunks[i] = null;
+            if (shared[i].isShared()) {
+                shared[i] = shared[i].detach();
+            }
+        }
+        background = value;
+    }
+
+    /**
+     * Returns the number of elements of the given chunk.
+     *
+     * @param i chunk index.
+     * @return number of elements of the chunk.
+     */
+    private int getChunkLength(int i) {
+        return (int)Math.min(1L << chunkBits, size - ((long)i << chunkBits));
+    }
+
+    /**
+     * Allocates a new (zero-filled) storage chunk.
+     *
+     * @param len number of elements of the chunk.
+     * @return new chunk.
+     */
+    private static DoubleBuffer newChunk(int len) {
+        return ByteBuffer.allocateDirect(len * 8)
+                .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    /**
+     * Prepares the given chunk for writing, copying it first if it is shared
+     * with other functions.
+     *
+     * @param i chunk index.
+     * @param keep whether to keep the current values of the chunk.
+     * @return the (writable) chunk.
+     */
+    private DoubleBuffer unshare(int i, boolean keep) {
+        if (chunks[i] == null) {
+            final DoubleBuffer chunk = newChunk(getChunkLength(i));
+            if (keep && background != 0) {
+                while (chunk.hasRemaining()) {
+                    chunk.put(background);
+                }
+                chunk.clear();
+            }
+            chunks[i] = chunk;
+            if (shared[i].isShared()) {
+                shared[i] = shared[i].detach();
+            }
+        } else if (shared[i].isShared()) {
+            final DoubleBuffer chunk = newChunk(chunks[i].capacity());
+            if (keep) {
+                DoubleBuffer src = chunks[i].duplicate();
+                src.clear();
+                chunk.put(src);
+                chunk.clear();
+            }
+            chunks[i] = chunk;
+            shared[i] = shared[i].detach();
+        }
+        return chunks[i];
+    }
+
+    private double get(long index) {
+        final DoubleBuffer chunk = chunks[(int)(index >>> chunkBits)];
+        return chunk == null ? background : chunk.get((int)(index & chunkMask));
+    }
+
+    private void put(long index, double value) {
+        unshare((int)(index >>> chunkBits), true).put((int)(index & chunkMask), value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned array is a copy of the off-heap storage, so modifications
+     * to it are not reflected in this function.
+     *
+     * @throws UnsupportedOperationException if this function has too many
+     * elements to fit in an array.
+     */
+    public double[] getValues() {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new UnsupportedOperationException("Function " + getName()
+                    + " is too large to be copied into an array.");
+        }
+
+        double[] res = new double[(int)size];
+        int offset = 0;
+        for (int i=0; i<chunks.length; i++) {
+            final int len = getChunkLength(i);
+            if (chunks[i] == null) {
+                Arrays.fill(res, offset, offset + len, background);
+            } else {
+                DoubleBuffer src = chunks[i].duplicate();
+                src.clear();
+                src.get(res, offset, len);
+            }
+            offset += len;
+        }
+        return res;
+    }
+
+    @Override
+    protected double[] copyValues() {
+        return getValues();
+    }
+
+
+    public void setValues(double[] values) {
+
+        if (values.length != size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+
+        release(0);
+        nNoGoods = 0;
+        tiles = newTileSummary();
+        for (int i=0; i<values.length; i++) {
+            setValue(i, values[i]);
+        }
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        modified();
+        final double v = initialValue;
+        release(v);
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        nNoGoods = v == ng ? size : 0;
+        tiles = null;
+    }
+
+    @Override public TLongIterator iterator() {
+        return new OffHeapIterator();
+    }
+
+    @Override public MasterIterator masterIterator() {
+        return new OffHeapMasterIterator();
+    }
+
+    @Override public double getValue(long index) {
+        ConstraintChecks.inc();
+        return get(index);
+    }
+
+    public void setValue(long index, double value) {
+        modified();
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        final double prev = get(index);
+        if (value != ng && prev == ng) {
+            nNoGoods--;
+        }
+        if (value == ng && prev != ng) {
+            nNoGoods++;
+        }
+        put(index, value);
+        if (tiles != null) {
+            tiles.update(index, value);
+        }
+    }
+
+    @Override protected void transformInPlace(TDoubleFunction transform) {
+        modified();
+        final double ng = getFactory().getSummarizeOperation().getNoGood();
+        final TileSummary summary = newTileSummary();
+        for (int i=0; i<chunks.length; i++) {
+            if (chunks[i] == null && background == ng) {
+                continue;
+            }
+            final DoubleBuffer chunk = unshare(i, true);
+            final int len = chunk.capacity();
+            final long offset = (long)i << chunkBits;
+            for (int j=0; j<len; j++) {
+                final double value = chunk.get(j);
+                if (value != ng) {
+                    final double v = transform.execute(value);
+                    if (v == ng) {
+                        nNoGoods++;
+                    } else if (summary != null) {
+                        summary.update(offset + j, v);
+                    }
+                    chunk.put(j, v);
+                }
+            }
+        }
+        tiles = summary;
+        ConstraintChecks.add(size);
+    }
+
+    public long getNumberOfNoGoods() {
+        return nNoGoods;
+    }
+
+    @Override protected TileSummary buildTileSummary(Summarize operation) {
+        if (tiles == null || tiles.getOperation() != operation) {
+            tiles = new TileSummary(size, operation);
+            for (long i=0; i<size; i++) {
+                tiles.update(i, get(i));
+            }
+        }
+        return tiles;
+    }
+
+    @Override public String getName() {
+        return "O" + super.getName();
+    }
+
+    /**
+     * Implements the Iterator interface for an off-heap hypercube, allowing to
+     * iterate over its (non-nogood) elements using the common java conventions.
+     */
+    protected class OffHeapIterator implements TLongIterator {
+        private long idx;
+        private double ng = getFactory().getSummarizeOperation().getNoGood();
+
+        public OffHeapIterator() {
+            idx = -1;
+            findNextGood();
+        }
+
+        private void findNextGood() {
+            idx++;
+            while (idx < size && get(idx) == ng) {
+                idx++;
+            }
+            if (idx == size) {
+                idx = -1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx >= 0 && idx < size;
+        }
+
+        @Override
+        public long next() {
+            if (idx < 0) {
+                throw new NoSuchElementException();
+            }
+
+            final long res = idx;
+            findNextGood();
+            return res;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
+        }
+
+    }
+
+    /**
+     * Implements the MasterIterator interface for an off-heap hypercube,
+     * walking over all of its elements while keeping track of the sub-indices.
+     */
+    protected class OffHeapMasterIterator implements MasterIterator {
+        private final int[] subidx = new int[variables.length];
+        private long idx;
+
+        public OffHeapMasterIterator() {
+            idx = -1;
+            if (variables.length > 0)
+                subidx[variables.length-1] = -1;
+        }
+
+        private void incIdx() {
+            idx++;
+            for (int i=variables.length-1; i>=0; i--) {
+                if (++subidx[i] != variables[i].getDomain()) {
+                    break;
+                } else {
+                    subidx[i] = 0;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx >= -1 && idx < size-1;
+        }
+
+        @Override
+        public long next() {
+            incIdx();
+            return idx;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
+        }
+
+        @Override
+        public int[] getIndices() {
+            return subidx;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+/**
+ * Factory of dense cost functions stored outside of the java heap.
+ *
+ * @see OffHeapHypercubeCostFunction
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class OffHeapHypercubeCostFunctionFactory implements CostFunctionTypeFactory {
+
+    CostFunctionFactory factory;
+
+    private final int chunkBits;
+
+    public OffHeapHypercubeCostFunctionFactory(CostFunctionFactory f) {
+        this(f, OffHeapHypercubeCostFunction.DEFAULT_CHUNK_BITS);
+    }
+
+    /**
+     * Builds a new factory whose functions are stored in chunks of
+     * 2^<em>chunkBits</em> elements.
+     *
+     * @param f parent factory.
+     * @param chunkBits size of each storage chunk, as a power of two.
+     */
+    public OffHeapHypercubeCostFunctionFactory(CostFunctionFactory f, int chunkBits) {
+        if (chunkBits < 0 || chunkBits > 27) {
+            throw new IllegalArgumentException("Chunk size must be between 2^0 and 2^27 elements.");
+        }
+        factory = f;
+        this.chunkBits = chunkBits;
+    }
+
+    public CostFunction buildCostFunction(Variable[] variables, double initialValue) {
+        OffHeapHypercubeCostFunction c = new OffHeapHypercubeCostFunction(variables, chunkBits);
+        c.setFactory(factory);
+        if (initialValue != 0) {
+            c.initialize(initialValue);
+        }
+        return c;
+    }
+
+    public CostFunction buildCostFunction(CostFunction function) {
+        OffHeapHypercubeCostFunction c = new OffHeapHypercubeCostFunction(function, chunkBits);
+        c.setFactory(factory);
+        return c;
+    }
+
+}
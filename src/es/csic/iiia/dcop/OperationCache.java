@@ -0,0 +1,325 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of cost function operation results.
+ * <p/>
+ * Results are keyed by the identity and version of their operands, the
+ * operation and the target scope, so modifying an operand invalidates the
+ * results computed from it. Operands are weakly referenced, and results are
+ * evicted in least-recently-used order once their total size exceeds the
+ * cache capacity.
+ * <p/>
+ * Cached results are shared: callers must not modify the functions returned
+ * by {@link #get}, {@link #summarize} or {@link #combine}.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class OperationCache {
+
+    /**
+     * Cached operations.
+     */
+    public enum Operation {
+        COMBINE, SUMMARIZE,
+    }
+
+    /**
+     * Default capacity, in function elements.
+     */
+    public static long DEFAULT_CAPACITY = 1 << 20;
+
+    private final LinkedHashMap<Key, Entry> entries =
+            new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private final long capacity;
+    private long elements;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Builds a new cache with the default capacity.
+     */
+    public OperationCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Builds a new cache holding results up to the given total number of
+     * elements.
+     *
+     * @param capacity maximum number of cached elements.
+     */
+    public OperationCache(long capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The cache capacity must be greater than 0.");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the summarization of the given function to the given
+     * variables, computing it only if it is not cached.
+     *
+     * @param f function to summarize.
+     * @param vars variables of the result.
+     * @return (shared) summarization.
+     */
+    public CostFunction summarize(CostFunction f, Variable[] vars) {
+        final CostFunction[] operands = new CostFunction[]{f};
+        CostFunction result = get(Operation.SUMMARIZE, operands, vars);
+        if (result == null) {
+            result = f.summarize(vars);
+            put(Operation.SUMMARIZE, operands, vars, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the combination of the given functions, computing it only if
+     * it is not cached.
+     *
+     * @param f1 first function.
+     * @param f2 second function.
+     * @return (shared) combination.
+     */
+    public CostFunction combine(CostFunction f1, CostFunction f2) {
+        final CostFunction[] operands = new CostFunction[]{f1, f2};
+        CostFunction result = get(Operation.COMBINE, operands, null);
+        if (result == null) {
+            result = f1.combine(f2);
+            put(Operation.COMBINE, operands, null, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cached result of the given operation, or <code>null</code>
+     * if it is not cached (or it has been modified since it was cached).
+     *
+     * @param operation operation.
+     * @param operands operands, in order.
+     * @param scope variables of the result, or <code>null</code> if they
+     * are implied by the operands.
+     * @return cached result, or <code>null</code>.
+     */
+    public synchronized CostFunction get(Operation operation,
+            CostFunction[] operands, Variable[] scope) {
+        final Key key = new Key(operation, operands, scope);
+        final Entry e = entries.get(key);
+        if (e != null && e.result.getVersion() == e.version) {
+            hits.incrementAndGet();
+            return e.result;
+        }
+        if (e != null) {
+            remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores the result of the given operation.
+     *
+     * @param operation operation.
+     * @param operands operands, in order.
+     * @param scope variables of the result, or <code>null</code> if they
+     * are implied by the operands.
+     * @param result result of the operation.
+     */
+    public synchronized void put(Operation operation, CostFunction[] operands,
+            Variable[] scope, CostFunction result) {
+        if (result.getSize() > capacity) {
+            return;
+        }
+        final Key key = new Key(operation, operands, scope);
+        remove(key);
+        entries.put(key, new Entry(result));
+        elements += result.getSize();
+
+        // Evict the least recently used results
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (elements > capacity && it.hasNext()) {
+            elements -= it.next().getValue().result.getSize();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(Key key) {
+        final Entry e = entries.remove(key);
+        if (e != null) {
+            elements -= e.result.getSize();
+        }
+    }
+
+    /**
+     * Removes all the cached results.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        elements = 0;
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return number of cached results.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the fraction of lookups that have been hits.
+     *
+     * @return hit rate of this cache.
+     */
+    public double getHitRate() {
+        final long h = getHits();
+        final long lookups = h + getMisses();
+        return lookups == 0 ? 0 : h / (double)lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationCache{hits=" + getHits() + ", misses=" + getMisses()
+                + ", evictions=" + getEvictions() + "}";
+    }
+
+    /**
+     * Cached result, along with its version when it was cached.
+     */
+    private static class Entry {
+        private final CostFunction result;
+        private final long version;
+        public Entry(CostFunction result) {
+            this.result = result;
+            this.version = result.getVersion();
+        }
+    }
+
+    /**
+     * Operation key, which references its operands weakly so that it never
+     * matches again once they have been collected.
+     */
+    private static class Key {
+        private final Operation operation;
+        private final CostFunction.Combine combine;
+        private final CostFunction.Summarize summarize;
+        private final WeakReference<CostFunction>[] operands;
+        private final long[] versions;
+        private final Variable[] scope;
+        private final int hash;
+
+        @SuppressWarnings("unchecked")
+        public Key(Operation operation, CostFunction[] operands, Variable[] scope) {
+            this.operation = operation;
+            final CostFunctionFactory factory = operands[0].getFactory();
+            this.combine = factory == null ? null : factory.getCombineOperation();
+            this.summarize = factory == null ? null : factory.getSummarizeOperation();
+            this.operands = new WeakReference[operands.length];
+            this.versions = new long[operands.length];
+            this.scope = scope == null ? null : scope.clone();
+
+            int h = operation.hashCode();
+            for (int i=0; i<operands.length; i++) {
+                this.operands[i] = new WeakReference<CostFunction>(operands[i]);
+                versions[i] = operands[i].getVersion();
+                h = 31*h + System.identityHashCode(operands[i]);
+            }
+            h = 31*h + Arrays.hashCode(versions);
+            h = 31*h + Arrays.hashCode(scope);
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key)obj;
+            if (hash != other.hash || operation != other.operation
+                    || combine != other.combine || summarize != other.summarize
+                    || operands.length != other.operands.length
+                    || !Arrays.equals(versions, other.versions)
+                    || !Arrays.equals(scope, other.scope)) {
+                return false;
+            }
+            for (int i=0; i<operands.length; i++) {
+                final CostFunction f = operands[i].get();
+                if (f == null || f != other.operands[i].get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop;
+
+import gnu.trove.iterator.TLongIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of a cost function reduced to a (partial) assignment of its
+ * variables.
+ * <p/>
+ * Instead of materializing the reduced table, every index of the view is
+ * remapped into the storage of the parent function. Therefore, views are
+ * cheap to build but slower to read than a regular function, and they must
+ * not outlive modifications of their parent.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class ReducedCostFunction extends AbstractCostFunction {
+
+    /**
+     * Reduced function.
+     */
+    private final CostFunction parent;
+
+    /**
+     * Index of the parent corresponding to the first element of the view.
+     */
+    private final long base;
+
+    /**
+     * Stride (in the parent) of each variable of the view.
+     */
+    private final long[] strides;
+
+    /**
+     * Number of nogoods of the view, along with the parent version it was
+     * computed for.
+     */
+    private long nNoGoods = -1;
+    private long nNoGoodsVersion;
+
+    /**
+     * Builds a new view of the given function.
+     *
+     * @param parent function to reduce.
+     * @param variables free (non-assigned) variables of the parent.
+     * @param base parent index corresponding to the assigned values and
+     * all the free variables set to zero.
+     */
+    ReducedCostFunction(CostFunction parent, Variable[] variables, long base) {
+        super(variables);
+        setFactory(parent.getFactory());
+        this.parent = parent;
+        this.base = base;
+        this.strides = IterationPlan.get(variables,
+                parent.getVariableSet().toArray(new Variable[0])).getStrides();
+    }
+
+    /**
+     * Returns the function being reduced by this view.
+     *
+     * @return parent function.
+     */
+    public CostFunction getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the parent index corresponding to the first element of the
+     * view.
+     *
+     * @return base index in the parent.
+     */
+    public long getBase() {
+        return base;
+    }
+
+    /**
+     * Returns the parent index corresponding to the given view index.
+     *
+     * @param index view index.
+     * @return parent index.
+     */
+    public long getParentIndex(long index) {
+        long idx = base;
+        for (int i=variables.length-1; i>=0; i--) {
+            final int d = variables[i].getDomain();
+            idx += strides[i] * (index % d);
+            index /= d;
+        }
+        return idx;
+    }
+
+    @Override public double getValue(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(Long.toString(index));
+        }
+        return parent.getValue(getParentIndex(index));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned array is a materialized copy of the view.
+     */
+    public double[] getValues() {
+        double[] res = new double[(int)size];
+        for (int i=0; i<res.length; i++) {
+            res[i] = getValue(i);
+        }
+        return res;
+    }
+
+    @Override
+    protected double[] copyValues() {
+        return getValues();
+    }
+
+
+    public void setValue(long index, double value) {
+        throw new UnsupportedOperationException("Reduced views are read-only.");
+    }
+
+    public void setValues(double[] values) {
+        throw new UnsupportedOperationException("Reduced views are read-only.");
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        throw new UnsupportedOperationException("Reduced views are read-only.");
+    }
+
+    @Override
+    public void negateInPlace() {
+        throw new UnsupportedOperationException("Reduced views are read-only.");
+    }
+
+    @Override
+    public void invertInPlace() {
+        throw new UnsupportedOperationException("Reduced views are read-only.");
+    }
+
+    public long getNumberOfNoGoods() {
+        final long v = parent.getVersion();
+        if (nNoGoods < 0 || nNoGoodsVersion != v) {
+            final double ng = getFactory().getSummarizeOperation().getNoGood();
+            long n = 0;
+            for (long i=0; i<size; i++) {
+                if (getValue(i) == ng) {
+                    n++;
+                }
+            }
+            nNoGoods = n;
+            nNoGoodsVersion = v;
+        }
+        return nNoGoods;
+    }
+
+    @Override public TLongIterator iterator() {
+        return new ReducedIterator();
+    }
+
+    @Override public MasterIterator masterIterator() {
+        return new ReducedMasterIterator();
+    }
+
+    @Override public String getName() {
+        return "R" + super.getName();
+    }
+
+    /**
+     * Implements the Iterator interface for a reduced view, walking over its
+     * (non-nogood) elements.
+     */
+    private class ReducedIterator implements TLongIterator {
+        private long idx;
+        private double ng = getFactory().getSummarizeOperation().getNoGood();
+
+        public ReducedIterator() {
+            idx = -1;
+            findNextGood();
+        }
+
+        private void findNextGood() {
+            idx++;
+            while (idx < size && getValue(idx) == ng) {
+                idx++;
+            }
+            if (idx == size) {
+                idx = -1;
+            }
+        }
+
+        public boolean hasNext() {
+            return idx >= 0 && idx < size;
+        }
+
+        public long next() {
+            if (idx < 0) {
+                throw new NoSuchElementException();
+            }
+
+            final long res = idx;
+            findNextGood();
+            return res;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Reduced views are read-only.");
+        }
+
+    }
+
+    /**
+     * Implements the MasterIterator interface for a reduced view, walking
+     * over all of its elements while keeping track of the sub-indices.
+     */
+    private class ReducedMasterIterator implements MasterIterator {
+        private final int[] subidx = new int[variables.length];
+        private long idx;
+
+        public ReducedMasterIterator() {
+            idx = -1;
+            if (variables.length > 0)
+                subidx[variables.length-1] = -1;
+        }
+
+        public boolean hasNext() {
+            return idx < size-1;
+        }
+
+        public long next() {
+            idx++;
+            for (int i=variables.length-1; i>=0; i--) {
+                if (++subidx[i] != variables[i].getDomain()) {
+                    break;
+                } else {
+                    subidx[i] = 0;
+                }
+            }
+            return idx;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Reduced views are read-only.");
+        }
+
+        public int[] getIndices() {
+            return subidx;
+        }
+    }
+
+}
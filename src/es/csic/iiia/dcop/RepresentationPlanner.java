@@ -0,0 +1,238 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Chooses the representation (and thereby the algorithm) used by the cost
+ * function operations, based on the statistics of their operands.
+ * <p/>
+ * Every decision is tallied, so that they can be reported after solving.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public abstract class RepresentationPlanner {
+
+    /**
+     * Operations whose representation is planned.
+     */
+    public enum Operation {
+        /** Combination of functions (dense or sparse algorithm). */
+        COMBINE,
+        /** Fused combination and summarization (dense) or separate (sparse). */
+        COMBINE_SUMMARIZE,
+        /** Summarization result. */
+        SUMMARIZE,
+        /** Reduction result. */
+        REDUCE,
+        /** Storage of an already computed function. */
+        STORE,
+    }
+
+    /**
+     * Available representations.
+     */
+    public enum Representation {
+        DENSE, HYBRID, SPARSE
+    }
+
+    private final AtomicLongArray decisions = new AtomicLongArray(
+            Operation.values().length * Representation.values().length);
+
+    /**
+     * Returns true if the given functions should be combined using the
+     * sparse algorithm (yielding a sparse result).
+     *
+     * @param operands functions to combine.
+     * @param vars variables of the result.
+     * @return true if the combination should be sparse.
+     */
+    public final boolean isSparseCombination(Collection<CostFunction> operands, Variable[] vars) {
+        return record(Operation.COMBINE, sparseCombination(operands, getSize(vars)));
+    }
+
+    /**
+     * Returns true if the combination of the given functions should be
+     * computed before summarizing it, instead of fusing both operations.
+     *
+     * @param operands functions to combine.
+     * @param union variables of the (intermediate) combination.
+     * @return true if the combination should be computed separately.
+     */
+    public final boolean isSparseCombineAndSummarize(Collection<CostFunction> operands,
+            Variable[] union) {
+        return record(Operation.COMBINE_SUMMARIZE, sparseCombination(operands, getSize(union)));
+    }
+
+    /**
+     * Returns true if the summarization of the given function over the
+     * given variables should produce a sparse function.
+     *
+     * @param f function to summarize.
+     * @param vars variables of the result.
+     * @return true if the result should be sparse.
+     */
+    public final boolean isSparseSummarization(CostFunction f, Variable[] vars) {
+        return record(Operation.SUMMARIZE, sparseSummarization(f, getSize(vars)));
+    }
+
+    /**
+     * Returns true if the reduction of the given function to the given
+     * variables should produce a sparse function.
+     *
+     * @param f function to reduce.
+     * @param vars variables of the result.
+     * @return true if the result should be sparse.
+     */
+    public final boolean isSparseReduction(CostFunction f, Variable[] vars) {
+        return record(Operation.REDUCE, sparseReduction(f, getSize(vars)));
+    }
+
+    /**
+     * Returns the representation in which the given function should be
+     * stored.
+     *
+     * @param f function to store.
+     * @return representation to use.
+     */
+    public final Representation getRepresentation(CostFunction f) {
+        final Representation r = queryRepresentation(f);
+        decisions.incrementAndGet(index(Operation.STORE, r));
+        return r;
+    }
+
+    /**
+     * Returns the representation in which the given function should be
+     * stored, without recording it as a decision (because the function is
+     * not going to be stored).
+     *
+     * @param f function to check.
+     * @return representation that would be used.
+     */
+    public final Representation queryRepresentation(CostFunction f) {
+        final boolean hybrid = f.getFactory() != null
+                && f.getFactory().getHybridFactory() != null;
+        Representation r = representation(f, hybrid);
+        if (r == Representation.HYBRID && !hybrid) {
+            r = Representation.DENSE;
+        }
+        return r;
+    }
+
+    protected abstract boolean sparseCombination(Collection<CostFunction> operands, long size);
+
+    protected abstract boolean sparseSummarization(CostFunction f, long size);
+
+    protected abstract boolean sparseReduction(CostFunction f, long size);
+
+    protected abstract Representation representation(CostFunction f, boolean hybrid);
+
+    /**
+     * Returns the number of times that the given representation has been
+     * chosen for the given operation.
+     *
+     * @param operation operation.
+     * @param representation representation.
+     * @return number of decisions.
+     */
+    public long getDecisions(Operation operation, Representation representation) {
+        return decisions.get(index(operation, representation));
+    }
+
+    /**
+     * Returns a report of the decisions taken so far, one line per
+     * operation.
+     *
+     * @return decisions report.
+     */
+    public String getReport() {
+        StringBuilder buf = new StringBuilder();
+        for (Operation o : Operation.values()) {
+            buf.append("PLANNER_").append(o);
+            for (Representation r : Representation.values()) {
+                buf.append(" ").append(r).append("=").append(getDecisions(o, r));
+            }
+            buf.append("\n");
+        }
+        return buf.toString();
+    }
+
+    private boolean record(Operation operation, boolean sparse) {
+        decisions.incrementAndGet(index(operation,
+                sparse ? Representation.SPARSE : Representation.DENSE));
+        return sparse;
+    }
+
+    private static int index(Operation operation, Representation representation) {
+        return operation.ordinal() * Representation.values().length + representation.ordinal();
+    }
+
+    /**
+     * Returns the nogood ratio of the given function.
+     *
+     * @param f function.
+     * @return ratio of nogoods.
+     */
+    protected static double getRatio(CostFunction f) {
+        return f.getNumberOfNoGoods() / (double)f.getSize();
+    }
+
+    /**
+     * Returns the size of the function defined over the given variables.
+     *
+     * @param vars variables.
+     * @return number of configurations of those variables, saturated to
+     * <code>Long.MAX_VALUE</code> if it does not fit in a long.
+     */
+    protected static long getSize(Variable[] vars) {
+        long size = 1;
+        for (Variable v : vars) {
+            final int domain = v.getDomain();
+            if (domain > 0 && size > Long.MAX_VALUE / domain) {
+                return Long.MAX_VALUE;
+            }
+            size *= domain;
+        }
+        return size;
+    }
+
+}
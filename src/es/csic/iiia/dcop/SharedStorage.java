@@ -0,0 +1,204 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference count of the storage (values array, chunk, ...) of a cost
+ * function, which is shared by its copies until one of them modifies it
+ * (copy-on-write).
+ * <p/>
+ * Every function holds its own handle, and the handles of the functions
+ * sharing a storage share its count. Copies register themselves through
+ * {@link #share(Object, Object)}, so taking a copy never writes into the
+ * source function. Copies of the same function may be taken concurrently, as
+ * long as that function is not being modified meanwhile.
+ * <p/>
+ * A function releases its share when it switches to a storage of its own
+ * ({@link #detach()}) or when it is garbage collected. In the latter case,
+ * the share is released the next time that any shared storage is checked,
+ * so the surviving copies do not clone storages that nobody else uses.
+ * Functions that have never been shared are not tracked at all.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+final class SharedStorage implements Serializable {
+
+    /**
+     * References to the sharing functions that have been garbage collected.
+     */
+    private static final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+
+    /**
+     * Storage (reference count) shared by this handle.
+     */
+    private final Group group;
+
+    /**
+     * Reference to the function holding this handle, or <code>null</code>
+     * if it has never been shared.
+     */
+    private transient Owner owner;
+
+    /**
+     * Whether this handle has already released its share.
+     */
+    private boolean released;
+
+    /**
+     * Builds the handle of a new (unshared) storage.
+     */
+    SharedStorage() {
+        this(new Group());
+    }
+
+    private SharedStorage(Group group) {
+        this.group = group;
+    }
+
+    /**
+     * Registers a new function using the storage.
+     *
+     * @param source function holding this handle.
+     * @param copy function that starts sharing the storage.
+     * @return handle of the copy.
+     */
+    synchronized SharedStorage share(Object source, Object copy) {
+        if (owner == null) {
+            owner = group.track(source, this);
+        }
+        group.owners.incrementAndGet();
+        final SharedStorage handle = new SharedStorage(group);
+        handle.owner = group.track(copy, handle);
+        return handle;
+    }
+
+    /**
+     * Returns true if the storage may be used by other functions, and hence
+     * must be copied before being modified.
+     *
+     * @return true if the storage is shared.
+     */
+    boolean isShared() {
+        if (group.owners.get() > 1) {
+            expunge();
+            return group.owners.get() > 1;
+        }
+        return false;
+    }
+
+    /**
+     * Unregisters a function that is switching to a storage of its own.
+     *
+     * @return handle of the new storage.
+     */
+    SharedStorage detach() {
+        release();
+        return new SharedStorage();
+    }
+
+    /**
+     * Releases the share of this handle, if not released yet.
+     */
+    private synchronized void release() {
+        if (!released) {
+            released = true;
+            if (owner != null) {
+                owner.clear();
+                group.untrack(owner);
+            }
+            group.owners.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases the shares of the functions that have been collected.
+     */
+    private static void expunge() {
+        Owner o;
+        while ((o = (Owner)collected.poll()) != null) {
+            o.handle.release();
+        }
+    }
+
+    /**
+     * Reference count of a storage, along with the references to its
+     * sharing functions. These are kept here so that they remain reachable
+     * (and get queued) after their functions are collected.
+     */
+    private static final class Group implements Serializable {
+        private final AtomicInteger owners = new AtomicInteger(1);
+        private transient Set<Owner> tracked;
+
+        synchronized Owner track(Object function, SharedStorage handle) {
+            if (tracked == null) {
+                tracked = new HashSet<Owner>();
+            }
+            final Owner o = new Owner(function, handle);
+            tracked.add(o);
+            return o;
+        }
+
+        synchronized void untrack(Owner o) {
+            if (tracked != null) {
+                tracked.remove(o);
+            }
+        }
+    }
+
+    /**
+     * Weak reference to a function sharing a storage, which gets queued
+     * when the function is collected.
+     */
+    private static final class Owner extends WeakReference<Object> {
+        private final SharedStorage handle;
+
+        Owner(Object function, SharedStorage handle) {
+            super(function, collected);
+            this.handle = handle;
+        }
+    }
+
+}
@@ -0,0 +1,635 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import es.csic.iiia.dcop.CostFunction.Combine;
+import es.csic.iiia.dcop.CostFunction.Summarize;
+import es.csic.iiia.dcop.util.ConstraintChecks;
+import gnu.trove.function.TDoubleFunction;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.hash.TLongDoubleHashMap;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Sparse Cost Function implementation that stores the non-nogood entries in
+ * a pair of primitive arrays, ordered by index.
+ * <p/>
+ * Keeping the keys sorted allows the iterators to walk over the function in
+ * index order (updating the sub-indices incrementally instead of recomputing
+ * them for each key), and the combination of two functions defined over the
+ * same variables to be computed as a merge-join of both key arrays.
+ * <p/>
+ * Writes are cheap whenever they follow the index order, which is what most
+ * operations do. Out-of-order insertions are buffered in a small hash map and
+ * merged into the sorted arrays the next time the function is iterated.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class SortedMapCostFunction extends AbstractCostFunction implements Serializable {
+
+    /**
+     * Sorted configuration indices.
+     */
+    private long[] keys;
+
+    /**
+     * Values corresponding to each of the sorted indices.
+     */
+    private double[] vals;
+
+    /**
+     * Number of used positions in the sorted arrays.
+     */
+    private int n;
+
+    /**
+     * Number of sorted positions whose value has been set to "zero"
+     * afterwards, and that will be dropped in the next compaction.
+     */
+    private int dead;
+
+    /**
+     * Entries inserted out of order, pending to be merged into the sorted
+     * arrays.
+     */
+    private TLongDoubleHashMap pending;
+
+    /**
+     * "Zero" value of this map.
+     */
+    private double zero;
+
+    /**
+     * Creates a new CostFunction, initialized to the zero value.
+     *
+     * @param variables involved in this factor.
+     * @param zeroValue value to consider as zero.
+     */
+    protected SortedMapCostFunction(Variable[] variables, double zeroValue) {
+        super(variables);
+
+        zero = zeroValue;
+        keys = new long[8];
+        vals = new double[8];
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     */
+    protected SortedMapCostFunction(CostFunction factor) {
+        super(factor);
+
+        if (factor instanceof SortedMapCostFunction) {
+            final SortedMapCostFunction f = (SortedMapCostFunction)factor;
+            keys = Arrays.copyOf(f.keys, Math.max(f.n, 8));
+            vals = Arrays.copyOf(f.vals, Math.max(f.n, 8));
+            n = f.n;
+            dead = f.dead;
+            if (f.pending != null && !f.pending.isEmpty()) {
+                pending = new TLongDoubleHashMap(f.pending);
+            }
+            zero = f.zero;
+        } else {
+            zero = getFactory().getSummarizeOperation().getNoGood();
+            final int capacity = (int)(factor.getSize() - factor.getNumberOfNoGoods());
+            keys = new long[Math.max(capacity, 8)];
+            TLongIterator it = factor.iterator();
+            while (it.hasNext()) {
+                keys[n++] = it.next();
+            }
+            Arrays.sort(keys, 0, n);
+            vals = new double[keys.length];
+            for (int i=0; i<n; i++) {
+                vals[i] = factor.getValue(keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Resets the costFunction to "zero" values
+     */
+    private void reset() {
+        n = 0;
+        dead = 0;
+        pending = null;
+    }
+
+    /**
+     * Appends a new entry at the end of the sorted arrays, growing them if
+     * necessary.
+     */
+    private void append(long index, double value) {
+        if (n == keys.length) {
+            final int capacity = n + (n >> 1) + 1;
+            keys = Arrays.copyOf(keys, capacity);
+            vals = Arrays.copyOf(vals, capacity);
+        }
+        keys[n] = index;
+        vals[n] = value;
+        n++;
+    }
+
+    /**
+     * Merges the pending entries into the sorted arrays, dropping the
+     * entries that have been set to zero.
+     */
+    private void compact() {
+        final int npending = pending == null ? 0 : pending.size();
+        if (npending == 0 && dead == 0) {
+            pending = null;
+            return;
+        }
+
+        long[] pkeys = npending == 0 ? new long[0] : pending.keys();
+        Arrays.sort(pkeys);
+
+        final int len = n - dead + npending;
+        long[] nkeys = new long[Math.max(len, 8)];
+        double[] nvals = new double[nkeys.length];
+        int i = 0, j = 0, k = 0;
+        while (i < n || j < npending) {
+            if (j == npending || (i < n && keys[i] < pkeys[j])) {
+                if (vals[i] != zero) {
+                    nkeys[k] = keys[i];
+                    nvals[k++] = vals[i];
+                }
+                i++;
+            } else {
+                nkeys[k] = pkeys[j];
+                nvals[k++] = pending.get(pkeys[j]);
+                j++;
+            }
+        }
+
+        keys = nkeys;
+        vals = nvals;
+        n = k;
+        dead = 0;
+        pending = null;
+    }
+
+    /**
+     * Retrieves the value at the given index, without accounting for it as
+     * a constraint check.
+     */
+    private double lookup(long index) {
+        if (n > 0 && index <= keys[n-1]) {
+            final int pos = Arrays.binarySearch(keys, 0, n, index);
+            if (pos >= 0) {
+                return vals[pos];
+            }
+        }
+        return pending == null ? zero : pending.get(index);
+    }
+
+    @Override
+    public double[] getValues() {
+        double[] v = new double[(int)size];
+        Arrays.fill(v, zero);
+        for (int i=0; i<n; i++) {
+            v[(int)keys[i]] = vals[i];
+        }
+        if (pending != null) {
+            for (long k : pending.keys()) {
+                v[(int)k] = pending.get(k);
+            }
+        }
+        return v;
+    }
+
+    @Override
+    protected double[] copyValues() {
+        return getValues();
+    }
+
+
+    @Override
+    public void setValues(double[] values) {
+        reset();
+
+        if (values.length != size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+
+        for (int i=0; i<size; i++) {
+            setValue(i, values[i]);
+        }
+    }
+
+    @Override public TLongIterator iterator() {
+        compact();
+        return new SortedIterator();
+    }
+
+    @Override public MasterIterator masterIterator() {
+        compact();
+        return new SortedMasterIterator();
+    }
+
+    public double getValue(long index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(Long.toString(index));
+
+        ConstraintChecks.inc();
+        return lookup(index);
+    }
+
+    @Override public void setValue(long index, double value) {
+        modified();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(Long.toString(index) + " out of "
+                    + size);
+
+        // Fast path: appending after the last sorted index
+        final boolean noPending = pending == null || pending.isEmpty();
+        if (noPending && (n == 0 || index > keys[n-1])) {
+            if (value != zero) {
+                append(index, value);
+            }
+            return;
+        }
+
+        // Updating an already present (sorted) index
+        if (n > 0 && index <= keys[n-1]) {
+            final int pos = Arrays.binarySearch(keys, 0, n, index);
+            if (pos >= 0) {
+                final double prev = vals[pos];
+                if (prev == zero && value != zero) {
+                    dead--;
+                } else if (prev != zero && value == zero) {
+                    dead++;
+                }
+                vals[pos] = value;
+                return;
+            }
+        }
+
+        // Out of order insertion
+        if (value == zero) {
+            if (pending != null) {
+                pending.remove(index);
+            }
+        } else {
+            if (pending == null) {
+                pending = new TLongDoubleHashMap(16, .75f, Long.MIN_VALUE, zero);
+            }
+            pending.put(index, value);
+        }
+    }
+
+    @Override protected void transformInPlace(TDoubleFunction transform) {
+        modified();
+        compact();
+        ConstraintChecks.add(n);
+        for (int i=0; i<n; i++) {
+            final double v = transform.execute(vals[i]);
+            if (v == zero) {
+                dead++;
+            }
+            vals[i] = v;
+        }
+    }
+
+    @Override public long getNumberOfNoGoods() {
+        final int npending = pending == null ? 0 : pending.size();
+        return size - (n - dead + npending);
+    }
+
+    @Override public String getName() {
+        return "T" + super.getName();
+    }
+
+    /**
+     * Checks if a nogood combined with any other value always yields a
+     * nogood, which is what allows to combine functions by only looking at
+     * the entries present in both of them.
+     */
+    private boolean isNoGoodAbsorbing() {
+        final Combine operation = getFactory().getCombineOperation();
+        switch (operation) {
+            case SUM:
+                return Double.isInfinite(zero);
+            case PRODUCT:
+                return zero == 0;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * When both functions are sorted maps defined over the same (ordered)
+     * variables, the combination is computed as a merge-join of their key
+     * arrays, without any random access.
+     */
+    @Override
+    protected CostFunction combineFunction(CostFunction factor) {
+        if (!(factor instanceof SortedMapCostFunction) || size == 0) {
+            return super.combineFunction(factor);
+        }
+
+        final SortedMapCostFunction other = (SortedMapCostFunction)factor;
+        if (other.zero != zero || !Arrays.equals(variables, other.variables)
+                || !isNoGoodAbsorbing())
+        {
+            return super.combineFunction(factor);
+        }
+
+        final CostFunctionFactory factory = getFactory();
+        final Combine operation = factory.getCombineOperation();
+        CostFunction result = factory.buildSparseCostFunction(variables, zero);
+
+        compact();
+        other.compact();
+        final long[] okeys = other.keys;
+        final double[] ovals = other.vals;
+        final int on = other.n;
+        int i = 0, j = 0;
+        long checks = 0;
+        while (i < n && j < on) {
+            final long k1 = keys[i], k2 = okeys[j];
+            if (k1 < k2) {
+                i++;
+            } else if (k2 < k1) {
+                j++;
+            } else {
+                final double v = operation.eval(vals[i], ovals[j]);
+                if (Double.isNaN(v)) {
+                    throw new RuntimeException("Combination generated a NaN value (" + vals[i] + "," + ovals[j] + "). Halting.");
+                }
+                result.setValue(k1, v);
+                checks += 2;
+                i++; j++;
+            }
+        }
+        ConstraintChecks.add(checks);
+
+        return result;
+    }
+
+    @Override protected TileSummary buildTileSummary(Summarize operation) {
+        // Summaries larger than the stored entries are not worth building
+        compact();
+        if ((size >>> TileSummary.TILE_BITS) > n) {
+            return null;
+        }
+        TileSummary summary = new TileSummary(size, operation);
+        for (int i=0; i<n; i++) {
+            summary.update(keys[i], vals[i]);
+        }
+        return summary;
+    }
+
+    /**
+     * Returns the number of consecutive indices of this function that map
+     * to the same index of a function over the given variables, when they
+     * are a prefix of this function's variables.
+     *
+     * @param vars variables of the other function.
+     * @return span of each index of the other function, or 0 if the
+     * variables are not a prefix of this function's ones.
+     */
+    private long getPrefixSpan(Variable[] vars) {
+        if (vars.length > variables.length) {
+            return 0;
+        }
+        for (int i=0; i<vars.length; i++) {
+            if (!vars[i].equals(variables[i])) {
+                return 0;
+            }
+        }
+        long span = 1;
+        for (int i=vars.length; i<variables.length; i++) {
+            span *= variables[i].getDomain();
+        }
+        return span;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * When summarizing to a prefix of this function's variables, every
+     * result index spans a contiguous range of keys. Then the keys are
+     * summarized in a single ordered pass, and each result value is written
+     * only once and in ascending order.
+     */
+    @Override
+    protected CostFunction summarizeFunction(Variable[] vars) {
+        final long span = getPrefixSpan(vars);
+        if (span == 0) {
+            return super.summarizeFunction(vars);
+        }
+
+        final CostFunctionFactory factory = getFactory();
+        final Summarize operation = factory.getSummarizeOperation();
+        CostFunction result;
+        if (factory.getPlanner().isSparseSummarization(this, vars)) {
+            result = factory.buildSparseCostFunction(vars, operation.getNoGood());
+        } else {
+            result = factory.buildCostFunction(vars, operation.getNoGood());
+        }
+
+        compact();
+        int i = 0;
+        while (i < n) {
+            final long ridx = keys[i] / span;
+            final long end = (ridx + 1) * span;
+            double v = vals[i++];
+            while (i < n && keys[i] < end) {
+                v = operation.eval(v, vals[i++]);
+            }
+            result.setValue(ridx, v);
+        }
+        ConstraintChecks.add(2*n);
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The surviving entries are appended in ascending order to a new sorted
+     * map, and the keys within tiles that can not satisfy the bound are
+     * skipped altogether.
+     */
+    @Override
+    public CostFunction filter(List<CostFunction> infs, double bound) {
+        final CostFunctionFactory factory = getFactory();
+        if (factory.getPlanner().queryRepresentation(this)
+                != RepresentationPlanner.Representation.SPARSE) {
+            return super.filter(infs, bound);
+        }
+
+        final Summarize sum = factory.getSummarizeOperation();
+        final Combine com = factory.getCombineOperation();
+        final double ng = sum.getNoGood();
+        final CostFunction[] filters = getFilters(infs);
+        final boolean[] discarded = getDiscardedTiles(filters, bound);
+        final ConditionedIterator[] iterators = new ConditionedIterator[filters.length];
+        for (int j=0; j<filters.length; j++) {
+            iterators[j] = filters[j].conditionedIterator(this);
+        }
+
+        CostFunction result = factory.buildSparseCostFunction(variables, ng);
+        compact();
+        final int[] subidx = new int[variables.length];
+        long checks = 0;
+        int i = 0;
+        while (i < n) {
+            final long idx = keys[i];
+            if (discarded != null && discarded[TileSummary.getTile(idx)]) {
+                // Skip to the first key of the next tile
+                final long next = ((long)TileSummary.getTile(idx) + 1) << TileSummary.TILE_BITS;
+                final int pos = Arrays.binarySearch(keys, i, n, next);
+                i = pos >= 0 ? pos : -pos - 1;
+                continue;
+            }
+
+            indexToSubindex(idx, subidx);
+            double v = vals[i++];
+            checks++;
+            for (int j=0; j<filters.length; j++) {
+                v = com.eval(v, filters[j].getValue(iterators[j].nextSubidxs(subidx)));
+                if (sum.isBetter(bound, v)) {
+                    break;
+                }
+            }
+            if (!sum.isBetter(bound, v)) {
+                result.setValue(idx, vals[i-1]);
+            }
+        }
+        ConstraintChecks.add(checks);
+
+        if (result.getNumberOfNoGoods() == size) {
+            return factory.buildCostFunction(new Variable[0], ng);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        compact();
+        StringBuilder buf = new StringBuilder();
+        buf.append(getName());
+        buf.append(" {");
+        for (int i=0; i<n; i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(keys[i]);
+            buf.append(":");
+            buf.append(vals[i]);
+        }
+        buf.append("}");
+
+        return buf.toString();
+    }
+
+    /**
+     * Iterates over the (non-nogood) indices of this function in ascending
+     * order.
+     */
+    private class SortedIterator implements TLongIterator {
+        private int i = -1;
+
+        public boolean hasNext() {
+            return i < n-1;
+        }
+
+        public long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return keys[++i];
+        }
+
+        public void remove() {
+            setValue(keys[i], zero);
+        }
+    }
+
+    /**
+     * Iterates over the (non-nogood) indices of this function in ascending
+     * order, updating the sub-indices incrementally when consecutive keys
+     * are adjacent.
+     */
+    private class SortedMasterIterator implements MasterIterator {
+        private int i = -1;
+        private final int[] subidx = new int[variables.length];
+
+        public int[] getIndices() {
+            return subidx;
+        }
+
+        public long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            i++;
+            final long idx = keys[i];
+            if (i > 0 && idx == keys[i-1] + 1) {
+                for (int j=variables.length-1; j>=0; j--) {
+                    if (++subidx[j] != variables[j].getDomain()) {
+                        break;
+                    } else {
+                        subidx[j] = 0;
+                    }
+                }
+            } else {
+                indexToSubindex(idx, subidx);
+            }
+            return idx;
+        }
+
+        public boolean hasNext() {
+            return i < n-1;
+        }
+
+        public void remove() {
+            setValue(keys[i], zero);
+        }
+
+    }
+
+}
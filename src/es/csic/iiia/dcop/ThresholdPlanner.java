@@ -0,0 +1,100 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop;
+
+import java.util.Collection;
+
+/**
+ * Representation planner that uses fixed nogood ratio thresholds, looking
+ * only at the operands.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class ThresholdPlanner extends RepresentationPlanner {
+
+    /**
+     * Nogood ratio from which functions (and combinations involving them)
+     * are sparse.
+     */
+    public static double SPARSE_THRESHOLD = 0.8;
+
+    /**
+     * Nogood ratio from which the summarization of a function is sparse.
+     */
+    public static double SUMMARIZE_THRESHOLD = 0.5;
+
+    @Override
+    protected boolean sparseCombination(Collection<CostFunction> operands, long size) {
+        for (CostFunction f : operands) {
+            if (getRatio(f) > SPARSE_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean sparseSummarization(CostFunction f, long size) {
+        return getRatio(f) > SUMMARIZE_THRESHOLD;
+    }
+
+    @Override
+    protected boolean sparseReduction(CostFunction f, long size) {
+        return getRatio(f) > SPARSE_THRESHOLD;
+    }
+
+    @Override
+    protected Representation representation(CostFunction f, boolean hybrid) {
+        final double ratio = getRatio(f);
+        if (ratio >= SPARSE_THRESHOLD) {
+            return Representation.SPARSE;
+        }
+        if (hybrid && ratio >= CostFunctionFactory.HYBRID_THRESHOLD) {
+            return Representation.HYBRID;
+        }
+        return Representation.DENSE;
+    }
+
+    @Override
+    public String toString() {
+        return "THRESHOLD";
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop;
+
+import es.csic.iiia.dcop.CostFunction.Summarize;
+import java.util.Arrays;
+
+/**
+ * Best value of each tile (block of consecutive indices) of a dense cost
+ * function, according to a MAX or MIN summarization.
+ * <p/>
+ * Tile summaries give an optimistic bound of every tuple within a tile, so
+ * that operations such as filtering can discard whole tiles at once. Dense
+ * backends maintain them as their values are written: bulk writes rebuild
+ * them within the same pass, and single writes {@link #update(long, double)}
+ * them. A value that stops being the best of its tile leaves the bound
+ * looser, but still valid.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class TileSummary {
+
+    /**
+     * Whether dense functions build tile summaries at all.
+     */
+    public static boolean ENABLED = true;
+
+    /**
+     * Base-2 logarithm of the number of elements in each tile.
+     */
+    public static final int TILE_BITS = 10;
+
+    private final Summarize operation;
+    private final double[] bests;
+
+    /**
+     * Builds an empty (all nogoods) summary of a function of the given size.
+     *
+     * @param size size of the summarized function.
+     * @param operation summarization operation (MAX or MIN).
+     */
+    public TileSummary(long size, Summarize operation) {
+        if (operation == Summarize.SUM) {
+            throw new IllegalArgumentException("Tile summaries require a MAX or MIN summarization.");
+        }
+        this.operation = operation;
+        bests = new double[(int)((size + (1L << TILE_BITS) - 1) >>> TILE_BITS)];
+        Arrays.fill(bests, operation.getNoGood());
+    }
+
+    /**
+     * Builds a copy of the given summary.
+     *
+     * @param other summary to copy.
+     */
+    public TileSummary(TileSummary other) {
+        operation = other.operation;
+        bests = other.bests.clone();
+    }
+
+    /**
+     * Builds the summary of the given values.
+     *
+     * @param values values of the summarized function.
+     * @param operation summarization operation (MAX or MIN).
+     */
+    public TileSummary(double[] values, Summarize operation) {
+        this(values.length, operation);
+        final int tiles = bests.length;
+        for (int t=0; t<tiles; t++) {
+            final int from = t << TILE_BITS;
+            final int to = Math.min(values.length, from + (1 << TILE_BITS));
+            double best = bests[t];
+            for (int i=from; i<to; i++) {
+                best = operation.eval(best, values[i]);
+            }
+            bests[t] = best;
+        }
+    }
+
+    /**
+     * Accounts for the given value of the summarized function.
+     *
+     * @param index index of the value.
+     * @param value value.
+     */
+    public void update(long index, double value) {
+        final int t = getTile(index);
+        bests[t] = operation.eval(bests[t], value);
+    }
+
+    /**
+     * Returns the summarization operation of this summary.
+     *
+     * @return summarization operation.
+     */
+    public Summarize getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the tile containing the given index.
+     *
+     * @param index index of the summarized function.
+     * @return tile of the index.
+     */
+    public static int getTile(long index) {
+        return (int)(index >>> TILE_BITS);
+    }
+
+    /**
+     * Returns the number of tiles.
+     *
+     * @return number of tiles.
+     */
+    public int getTiles() {
+        return bests.length;
+    }
+
+    /**
+     * Returns the best value within the given tile.
+     *
+     * @param tile tile.
+     * @return best value of the tile.
+     */
+    public double getBest(int tile) {
+        return bests[tile];
+    }
+
+    /**
+     * Returns the best value of the whole function.
+     *
+     * @return best value of the function.
+     */
+    public double getBest() {
+        double best = operation.getNoGood();
+        for (double b : bests) {
+            best = operation.eval(best, b);
+        }
+        return best;
+    }
+
+}
@@ -41,80 +41,132 @@ package es.csic.iiia.dcop;
 import es.csic.iiia.dcop.CostFunction.Combine;
 import es.csic.iiia.dcop.CostFunction.Summarize;
 import java.util.ArrayList;
-import java.util.TreeSet;
+import java.util.Arrays;
 
 /**
+ * Growable array of primitive values, used to propagate the values of the
+ * candidate solutions.
  *
  * @author Marc Pujol (mpujol at iiia.csic.es)
  */
-public class ValuesArray extends ArrayList<Double> {
+public class ValuesArray {
+
+    /**
+     * Values storage (only the first <em>size</em> ones are valid).
+     */
+    private double[] values;
+
+    /**
+     * Number of values in this array.
+     */
+    private int size;
 
     public ValuesArray() {
-        super();
+        this(10);
     }
 
     public ValuesArray(int capacity) {
-        super(capacity);
+        values = new double[Math.max(capacity, 1)];
     }
 
     public ValuesArray(ValuesArray other) {
-        super(other);
+        values = Arrays.copyOf(other.values, Math.max(other.size, 1));
+        size = other.size;
+    }
+
+    /**
+     * Appends a value to the end of this array.
+     *
+     * @param value value to add.
+     */
+    public void add(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public double get(int index) {
+        if (index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return values[index];
+    }
+
+    public void set(int index, double value) {
+        if (index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        values[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
     }
 
     public ValuesArray extend(ArrayList<Integer> upMappings) {
-        if (this.size() == upMappings.size())
+        if (size == upMappings.size())
             return this;
 
-        if (this.size() > upMappings.size())
+        if (size > upMappings.size())
             throw new ArrayIndexOutOfBoundsException("Can not extend to a lower number of elements");
 
         final int len = upMappings.size();
         ValuesArray result = new ValuesArray(len);
         for(int i=0; i<len; i++) {
-            final int j = upMappings.get(i);
-            if (j >= this.size()) {
-                System.out.println("hugh?");
-            }
-            result.add(this.get(j));
+            result.values[i] = get(upMappings.get(i));
         }
+        result.size = len;
 
         return result;
     }
 
+    /**
+     * Reduces this array, keeping the best value amongst those that map to
+     * the same (upper) element.
+     *
+     * The upper elements are expected to be numbered consecutively from 0, so
+     * the reduction is computed in a single pass.
+     *
+     * @param upMappings upper element of each value.
+     * @param sum summarization operation.
+     * @return reduced array.
+     */
     public ValuesArray reduce(ArrayList<Integer> upMappings,
             Summarize sum) {
-        if (this.size() != upMappings.size())
+        if (size != upMappings.size())
             throw new ArrayIndexOutOfBoundsException("Can not reduce to a higher number of elements");
 
-        TreeSet<Integer> reduced = new TreeSet<Integer>(upMappings);
-        
-        final int len = reduced.size();
-        ValuesArray result = new ValuesArray(len);
-        for(int i=0; i<len; i++) {
-            // Fetch the best value that maps to i
-            double bestValue = sum.getNoGood();
-
-            for (int j=0, len2 = size(); j<len2; j++) {
-                // Skip it if it doesn't map to i
-                if (upMappings.get(j) != i) continue;
-
-                final double value = get(j);
-                if (sum.isBetter(value, bestValue))
-                    bestValue = value;
-            }
+        final int[] buckets = new int[size];
+        int len = 0;
+        for (int j=0; j<size; j++) {
+            buckets[j] = upMappings.get(j);
+            len = Math.max(len, buckets[j] + 1);
+        }
 
-            // Set the result
-            result.add(bestValue);
+        ValuesArray result = new ValuesArray(len);
+        final double[] res = result.values;
+        Arrays.fill(res, 0, len, sum.getNoGood());
+        for (int j=0; j<size; j++) {
+            // Keep the best value that maps to each bucket
+            final int i = buckets[j];
+            if (sum.isBetter(values[j], res[i]))
+                res[i] = values[j];
         }
+        result.size = len;
 
         return result;
     }
 
     public double getBest(Summarize sum) {
         double res = sum.getNoGood();
-        for(Double v : this) {
-            if (sum.isBetter(v, res)) {
-                res = v;
+        for (int i=0; i<size; i++) {
+            if (sum.isBetter(values[i], res)) {
+                res = values[i];
             }
         }
         return res;
@@ -123,8 +175,8 @@ public class ValuesArray extends ArrayList<Double> {
     public int getBestIndex(Summarize sum) {
         double best = sum.getNoGood();
         int idx = 0;
-        for (int i=0; i<size(); i++) {
-            final double v = get(i);
+        for (int i=0; i<size; i++) {
+            final double v = values[i];
             if (sum.isBetter(v, best)) {
                 best = v;
                 idx = i;
@@ -134,27 +186,101 @@ public class ValuesArray extends ArrayList<Double> {
     }
 
     public ValuesArray combine(ValuesArray other, Combine com) {
-        final int size = size();
+        return new ValuesArray(this).combineInPlace(other, com);
+    }
 
-        if (size != other.size()) {
-            throw new ArrayIndexOutOfBoundsException("Value arrays must be of the same size to be combined.\n"+this+"\n"+other);
+    /**
+     * Combines this array with the given one, overwriting the values of this
+     * array.
+     *
+     * @param other array to combine with.
+     * @param com combine operation.
+     * @return this array.
+     */
+    public ValuesArray combineInPlace(ValuesArray other, Combine com) {
+        checkSize(other);
+        final double[] ovalues = other.values;
+        for (int i=0; i<size; i++) {
+            values[i] = com.eval(values[i], ovalues[i]);
         }
+        return this;
+    }
 
-        ValuesArray res = new ValuesArray(this);
+    /**
+     * Combines this array with the negation of the given one, overwriting the
+     * values of this array.
+     *
+     * @param other array whose negation is combined with this one.
+     * @param com combine operation.
+     * @return this array.
+     */
+    public ValuesArray combineNegatedInPlace(ValuesArray other, Combine com) {
+        checkSize(other);
+        final double[] ovalues = other.values;
         for (int i=0; i<size; i++) {
-            res.set(i, com.eval(get(i), other.get(i)));
+            values[i] = com.eval(values[i], com.negate(ovalues[i]));
         }
+        return this;
+    }
 
-        return res;
+    private void checkSize(ValuesArray other) {
+        if (size != other.size) {
+            throw new ArrayIndexOutOfBoundsException("Value arrays must be of the same size to be combined.\n"+this+"\n"+other);
+        }
     }
 
     public ValuesArray invert(Combine com) {
-        final int size = size();
-        final ValuesArray res = new ValuesArray(this);
+        return new ValuesArray(this).invertInPlace(com);
+    }
+
+    /**
+     * Negates the values of this array.
+     *
+     * @param com combine operation.
+     * @return this array.
+     */
+    public ValuesArray invertInPlace(Combine com) {
         for (int i=0; i<size; i++) {
-            res.set(i, com.negate(get(i)));
+            values[i] = com.negate(values[i]);
         }
-        return res;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ValuesArray)) {
+            return false;
+        }
+        final ValuesArray other = (ValuesArray)obj;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i=0; i<size; i++) {
+            if (Double.compare(values[i], other.values[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i=0; i<size; i++) {
+            final long bits = Double.doubleToLongBits(values[i]);
+            hash = 31 * hash + (int)(bits ^ (bits >>> 32));
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("[");
+        for (int i=0; i<size; i++) {
+            if (i > 0) buf.append(", ");
+            buf.append(values[i]);
+        }
+        return buf.append("]").toString();
     }
 
 }
@@ -63,9 +63,9 @@ public class RandomNoiseAdder {
         for (UPNode n : nodes) {
             List<CostFunction> functions = n.getRelations();
             for (CostFunction f : functions) {
-                double[] values = f.getValues();
-                for (int i=0; i<values.length; i++) {
-                    values[i] += variance*random.nextGaussian() - variance/2;
+                for (long i=0, len=f.getSize(); i<len; i++) {
+                    f.setValue(i, f.getValue(i)
+                            + variance*random.nextGaussian() - variance/2);
                 }
             }
         }
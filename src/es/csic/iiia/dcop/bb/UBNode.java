@@ -117,7 +117,7 @@ public class UBNode extends AbstractNode<UBEdge, UBResult> {
                 if (this.isParent(e)) {
                     inValues = inValues.extend(upMappings);
                 }
-                ubs = ubs.combine(inValues, combine);
+                ubs.combineInPlace(inValues, combine);
                 if (!summarize.isBetter(msg.getLB(), lb)) {
                     lb = msg.getLB();
                 }
@@ -137,7 +137,7 @@ public class UBNode extends AbstractNode<UBEdge, UBResult> {
         }
         final int index = ubs.getBestIndex(summarize);
         final double ub = ubs.get(index);
-        final VariableAssignment map = vpnode.getMapping(index);
+        final VariableAssignment map = vpnode.getMapping(index).toVariableAssignment();
         return new UBResult(this,map,ub,lb);
     }
 
@@ -149,7 +149,7 @@ public class UBNode extends AbstractNode<UBEdge, UBResult> {
             ValuesArray mub = new ValuesArray(ubs);
             UBMessage inMsg = e.getMessage(this);
             if (inMsg != null) {
-                mub = mub.combine(inMsg.getUBs().invert(combine), combine);
+                mub.combineNegatedInPlace(inMsg.getUBs(), combine);
             }
             // If sending to our parent...
             if (this.isParent(e)) {
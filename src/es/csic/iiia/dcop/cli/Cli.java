@@ -39,11 +39,13 @@
 package es.csic.iiia.dcop.cli;
 
 import es.csic.iiia.dcop.CostFunction;
+import es.csic.iiia.dcop.OperationCache;
 import es.csic.iiia.dcop.dsa.DSA;
 import es.csic.iiia.dcop.gdlf.strategies.control.ControlStrategies;
 import es.csic.iiia.dcop.gdlf.strategies.filter.FilterStrategies;
 import es.csic.iiia.dcop.gdlf.strategies.merge.MergeStrategies;
 import es.csic.iiia.dcop.gdlf.strategies.slice.SliceStrategies;
+import es.csic.iiia.dcop.util.StripedCounter;
 import es.csic.iiia.dcop.util.metrics.Metric;
 import es.csic.iiia.dcop.util.metrics.Metrics;
 import es.csic.iiia.dcop.vp.strategy.VPStrategy;
@@ -118,6 +120,46 @@ public class Cli {
         System.err.println("      - bz2    : compress using a bzip2 compressor.");
         System.err.println("      - sparse : compress by sending sparse functions when possible (<idx,value> tuples).");
         System.err.println("      - none   : do not perform any compression of sent messages.");
+        System.err.println("  --dense-representation=representation (hypercube)");
+        System.err.println("    Stores dense cost functions using the specified representation, one of: ");
+        System.err.println("      - hypercube        : array of double-precision values.");
+        System.err.println("      - float-hypercube  : array of single-precision values (half the memory).");
+        System.err.println("      - off-heap         : chunked direct memory, for cliques beyond 2^31 entries.");
+        System.err.println("      - masked-hypercube : array of values plus a bitmask of nogoods.");
+        System.err.println("      - add              : algebraic decision diagram (compact for structured functions).");
+        System.err.println("  --sparse-representation=representation (map)");
+        System.err.println("    Stores sparse cost functions using the specified representation, one of: ");
+        System.err.println("      - map        : hash map of <idx,value> tuples.");
+        System.err.println("      - sorted-map : index-ordered arrays of <idx,value> tuples.");
+        System.err.println("      - add        : algebraic decision diagram (compact for structured functions).");
+        System.err.println("  --hybrid-representation=representation (none)");
+        System.err.println("    Stores functions with a moderate amount of nogoods (between 30% and");
+        System.err.println("    80%) using the specified representation (same choices as the dense one).");
+        System.err.println("  --planner=planner (threshold)");
+        System.err.println("    Chooses between dense and sparse operations and results using the");
+        System.err.println("    specified planner, one of: ");
+        System.err.println("      - threshold  : fixed thresholds on the operands' nogood ratios.");
+        System.err.println("      - cost-model : estimated time and memory cost of each alternative.");
+        System.err.println("  --operation-cache[=elements] (disabled)");
+        System.err.println("    Caches the results of combinations and summarizations, up to the");
+        System.err.println("    specified number of function elements (1048576 if unspecified).");
+        System.err.println("  --threads=<n> (1)");
+        System.err.println("    Uses <n> threads to operate over large cost functions.");
+        System.err.println("  --parallel-threshold=<size> (65536)");
+        System.err.println("    Minimum function size (in elements) to operate in parallel.");
+        System.err.println("  --scheduler=scheduler (synchronous)");
+        System.err.println("    Runs the message-passing nodes using the specified scheduler, one of: ");
+        System.err.println("      - synchronous : synchronous cycles, where all the updated nodes run.");
+        System.err.println("      - wavefront   : tree graphs run from the leaves to the root and back, without");
+        System.err.println("                      polling and with independent subtrees in parallel.");
+        System.err.println("      - asynchronous: nodes run as soon as they receive messages, until quiescence");
+        System.err.println("                      (max-sum, DSA and other graph-mode algorithms).");
+        System.err.println("      - residual    : graph-mode GDL (max-sum) delivers the messages that change the");
+        System.err.println("                      most first, until all changes are below the tolerance.");
+        System.err.println("      - actors      : graph-mode nodes are agents with their own (virtual, on Java 21+)");
+        System.err.println("                      threads that block until messages arrive.");
+        System.err.println("  --scheduler-threads=<n> (1)");
+        System.err.println("    Uses <n> threads to run the nodes of each cycle (or subtree) concurrently.");
 
         System.err.println();
         System.err.println("-- Logging and output formatting");
@@ -130,6 +172,9 @@ public class Cli {
         System.err.println("  -g [graphFile], --clique-graph[=graphFile]");
         System.err.println("    Outputs the clique graph representation in .dot format to [graphFile],");
         System.err.println("    or \"cgraph.dot\" if unspecified.");
+        System.err.println("  --no-metrics");
+        System.err.println("    Disables the constraint checks, bytes and memory metrics, reporting");
+        System.err.println("    them as zero.");
         System.err.println("  -o format, --output-format=format (custom)");
         System.err.println("    Uses the specified output format, where format is one of: ");
         System.err.println("      - uai        : uses the UAI competition output format.");
@@ -225,6 +270,16 @@ public class Cli {
             new LongOpt("algorithm", LongOpt.REQUIRED_ARGUMENT, null, 'a'),
             new LongOpt("combine", LongOpt.REQUIRED_ARGUMENT, null, 'c'),
             new LongOpt("compress", LongOpt.REQUIRED_ARGUMENT, null, 0),
+            new LongOpt("dense-representation", LongOpt.REQUIRED_ARGUMENT, null, 11),
+            new LongOpt("sparse-representation", LongOpt.REQUIRED_ARGUMENT, null, 12),
+            new LongOpt("hybrid-representation", LongOpt.REQUIRED_ARGUMENT, null, 13),
+            new LongOpt("threads", LongOpt.REQUIRED_ARGUMENT, null, 14),
+            new LongOpt("parallel-threshold", LongOpt.REQUIRED_ARGUMENT, null, 15),
+            new LongOpt("no-metrics", LongOpt.NO_ARGUMENT, null, 16),
+            new LongOpt("planner", LongOpt.REQUIRED_ARGUMENT, null, 17),
+            new LongOpt("operation-cache", LongOpt.OPTIONAL_ARGUMENT, null, 18),
+            new LongOpt("scheduler", LongOpt.REQUIRED_ARGUMENT, null, 19),
+            new LongOpt("scheduler-threads", LongOpt.REQUIRED_ARGUMENT, null, 20),
             new LongOpt("heuristic", LongOpt.REQUIRED_ARGUMENT, null, 'e'),
             new LongOpt("factor-graph", LongOpt.OPTIONAL_ARGUMENT, null, 'f'),
             new LongOpt("clique-graph", LongOpt.OPTIONAL_ARGUMENT, null, 'g'),
@@ -348,6 +403,103 @@ public class Cli {
                     }
                     break;
 
+                case 11:
+                    arg = g.getOptarg().toUpperCase().replace('-','_');
+                    try {
+                        cli.setDenseRepresentation(CostFunctionRepresentation.valueOf(arg));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: invalid dense representation \"" + arg + "\"");
+                        System.exit(0);
+                    }
+                    break;
+
+                case 12:
+                    arg = g.getOptarg().toUpperCase().replace('-','_');
+                    try {
+                        cli.setSparseRepresentation(CostFunctionRepresentation.valueOf(arg));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: invalid sparse representation \"" + arg + "\"");
+                        System.exit(0);
+                    }
+                    break;
+
+                case 13:
+                    arg = g.getOptarg().toUpperCase().replace('-','_');
+                    try {
+                        cli.setHybridRepresentation(CostFunctionRepresentation.valueOf(arg));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: invalid hybrid representation \"" + arg + "\"");
+                        System.exit(0);
+                    }
+                    break;
+
+                case 14:
+                    arg = g.getOptarg();
+                    int threads = Integer.parseInt(arg);
+                    if (threads < 1) {
+                        System.err.println("Error: the number of threads must be greater than 0.");
+                        System.exit(0);
+                    }
+                    cli.setThreads(threads);
+                    break;
+
+                case 15:
+                    arg = g.getOptarg();
+                    long threshold = Long.parseLong(arg);
+                    if (threshold < 1) {
+                        System.err.println("Error: the parallel threshold must be greater than 0.");
+                        System.exit(0);
+                    }
+                    cli.setParallelThreshold(threshold);
+                    break;
+
+                case 16:
+                    StripedCounter.ENABLED = false;
+                    break;
+
+                case 17:
+                    arg = g.getOptarg().toUpperCase().replace('-','_');
+                    try {
+                        cli.setPlanner(RepresentationPlanners.valueOf(arg));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: invalid planner \"" + arg + "\"");
+                        System.exit(0);
+                    }
+                    break;
+
+                case 18:
+                    arg = g.getOptarg();
+                    long capacity = OperationCache.DEFAULT_CAPACITY;
+                    if (arg != null) {
+                        capacity = Long.parseLong(arg);
+                    }
+                    if (capacity < 1) {
+                        System.err.println("Error: the operation cache capacity must be greater than 0.");
+                        System.exit(0);
+                    }
+                    cli.setOperationCache(capacity);
+                    break;
+
+                case 19:
+                    arg = g.getOptarg().toUpperCase().replace('-','_');
+                    try {
+                        cli.setScheduler(Schedulers.valueOf(arg));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error: invalid scheduler \"" + arg + "\"");
+                        System.exit(0);
+                    }
+                    break;
+
+                case 20:
+                    arg = g.getOptarg();
+                    int schedulerThreads = Integer.parseInt(arg);
+                    if (schedulerThreads < 1) {
+                        System.err.println("Error: the number of scheduler threads must be greater than 0.");
+                        System.exit(0);
+                    }
+                    cli.setSchedulerThreads(schedulerThreads);
+                    break;
+
                 case 'a':
                     arg = g.getOptarg().toUpperCase().replace('-','_');
                     try {
@@ -44,6 +44,7 @@ import ch.qos.logback.core.joran.spi.JoranException;
 import es.csic.iiia.dcop.CostFunction;
 import es.csic.iiia.dcop.CostFunctionFactory;
 import es.csic.iiia.dcop.FactorGraph;
+import es.csic.iiia.dcop.OperationCache;
 import es.csic.iiia.dcop.Variable;
 import es.csic.iiia.dcop.VariableAssignment;
 import es.csic.iiia.dcop.algo.JunctionTreeAlgo;
@@ -73,11 +74,13 @@ import es.csic.iiia.dcop.io.TreeReader;
 import es.csic.iiia.dcop.jt.JTResults;
 import es.csic.iiia.dcop.jt.JunctionTree;
 import es.csic.iiia.dcop.mp.AbstractNode.Modes;
+import es.csic.iiia.dcop.mp.DefaultGraph;
 import es.csic.iiia.dcop.up.UPFactory;
 import es.csic.iiia.dcop.up.UPGraph;
 import es.csic.iiia.dcop.util.Compressor;
 import es.csic.iiia.dcop.util.ConstantFactorExtractor;
 import es.csic.iiia.dcop.util.MemoryTracker;
+import es.csic.iiia.dcop.util.Parallelism;
 import es.csic.iiia.dcop.util.UnaryVariableFilterer;
 import es.csic.iiia.dcop.vp.VPGraph;
 import es.csic.iiia.dcop.vp.VPResults;
@@ -113,6 +116,13 @@ public class CliApp {
         log.info("[Info] Summarize: " + summarizeOperation.toString());
         log.info("[Info] Combine: " + combineOperation.toString());
         log.info("[Info] Normalize: " + normalization.toString());
+        log.info("[Info] Dense-representation: " + denseRepresentation.toString());
+        log.info("[Info] Sparse-representation: " + sparseRepresentation.toString());
+        log.info("[Info] Hybrid-representation: " + (hybridRepresentation == null ? "NONE" : hybridRepresentation.toString()));
+        log.info("[Info] Planner: " + planner.toString());
+        log.info("[Info] Operation-cache: " + (operationCache == 0 ? "NONE" : String.valueOf(operationCache)));
+        log.info("[Info] Threads: " + Parallelism.THREADS + " (threshold " + Parallelism.THRESHOLD + ")");
+        log.info("[Info] Scheduler: " + scheduler.toString() + " (threads " + schedulerThreads + ")");
         if (algorithm == Algorithm.GDLF) {
             log.info("[Info] Control-strategy: " + controlStrategy.toString());
             if (controlStrategy == ControlStrategies.MIXED_NOSLICE
@@ -147,6 +157,13 @@ public class CliApp {
     private CostFunction.Summarize summarizeOperation = CostFunction.Summarize.MAX;
     private CostFunction.Combine combineOperation = CostFunction.Combine.SUM;
     private CostFunction.Normalize normalization = CostFunction.Normalize.NONE;
+    private CostFunctionRepresentation denseRepresentation = CostFunctionRepresentation.HYPERCUBE;
+    private CostFunctionRepresentation sparseRepresentation = CostFunctionRepresentation.MAP;
+    private CostFunctionRepresentation hybridRepresentation = null;
+    private RepresentationPlanners planner = RepresentationPlanners.THRESHOLD;
+    private long operationCache = 0;
+    private Schedulers scheduler = Schedulers.SYNCHRONOUS;
+    private int schedulerThreads = 1;
     private int maxCliqueVariables = 14;
     private double randomVariance = 0;
 
@@ -238,6 +255,16 @@ public class CliApp {
         factory.setCombineOperation(combineOperation);
         factory.setNormalizationType(normalization);
         factory.setSummarizeOperation(summarizeOperation);
+        factory.setDenseFactory(denseRepresentation.getInstance(factory));
+        factory.setSparseFactory(sparseRepresentation.getInstance(factory));
+        if (hybridRepresentation != null) {
+            factory.setHybridFactory(hybridRepresentation.getInstance(factory));
+        }
+        factory.setPlanner(planner.getInstance());
+        DefaultGraph.setDefaultScheduler(scheduler.getInstance(schedulerThreads));
+        if (operationCache > 0) {
+            factory.setOperationCache(new OperationCache(operationCache));
+        }
         List<CostFunction> factors = r.read(input, factory);
         
         VariableAssignment evidences = new VariableAssignment();
@@ -273,7 +300,7 @@ public class CliApp {
 
             DSA dsa = new DSA(fg);
             DSAResults res = dsa.run(10000);
-            map = res.getGlobalAssignment();
+            map = res.getGlobalAssignment().toVariableAssignment();
             log.info("ITERATIONS " + res.getIterations());
             
         } else {
@@ -341,6 +368,17 @@ public class CliApp {
             log.info("BOUND " + (inverse ? -bound : bound));
         }
 
+        for (String line : factory.getPlanner().getReport().split("\n")) {
+            log.info(line);
+        }
+        if (factory.getOperationCache() != null) {
+            final OperationCache cache = factory.getOperationCache();
+            log.info("OPERATION_CACHE_HITS " + cache.getHits());
+            log.info("OPERATION_CACHE_MISSES " + cache.getMisses());
+            log.info("OPERATION_CACHE_EVICTIONS " + cache.getEvictions());
+            log.info("OPERATION_CACHE_HIT_RATE " + cache.getHitRate());
+        }
+
         map.putAll(unaries);
         map.putAll(evidences);
         SortedMap<Variable, Integer> foo = new TreeMap<Variable, Integer>(map);
@@ -625,10 +663,46 @@ public class CliApp {
         this.sliceStrategy = sliceStrategy;
     }
 
+    void setDenseRepresentation(CostFunctionRepresentation representation) {
+        this.denseRepresentation = representation;
+    }
+
+    void setSparseRepresentation(CostFunctionRepresentation representation) {
+        this.sparseRepresentation = representation;
+    }
+
+    void setHybridRepresentation(CostFunctionRepresentation representation) {
+        this.hybridRepresentation = representation;
+    }
+
+    void setPlanner(RepresentationPlanners planner) {
+        this.planner = planner;
+    }
+
+    void setOperationCache(long capacity) {
+        this.operationCache = capacity;
+    }
+
+    void setScheduler(Schedulers scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    void setSchedulerThreads(int threads) {
+        this.schedulerThreads = threads;
+    }
+
     void setCompressionMethod(CompressionMethod method) {
         Compressor.METHOD = method;
     }
 
+    void setThreads(int threads) {
+        Parallelism.THREADS = threads;
+    }
+
+    void setParallelThreshold(long threshold) {
+        Parallelism.THRESHOLD = threshold;
+    }
+
     public OutputFormat getOutputFormat() {
         return outputFormat;
     }
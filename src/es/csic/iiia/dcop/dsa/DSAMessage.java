@@ -38,7 +38,7 @@
 
 package es.csic.iiia.dcop.dsa;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.mp.Message;
 
 /**
@@ -47,13 +47,13 @@ import es.csic.iiia.dcop.mp.Message;
  */
 public class DSAMessage implements Message {
 
-    private VariableAssignment assignment;
+    private CompactAssignment assignment;
 
-    public DSAMessage(VariableAssignment assignment) {
-        this.assignment = new VariableAssignment(assignment);
+    public DSAMessage(CompactAssignment assignment) {
+        this.assignment = new CompactAssignment(assignment);
     }
 
-    public VariableAssignment getAssignment() {
+    public CompactAssignment getAssignment() {
         return assignment;
     }
 
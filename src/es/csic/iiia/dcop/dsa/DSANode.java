@@ -40,8 +40,9 @@ package es.csic.iiia.dcop.dsa;
 
 import es.csic.iiia.dcop.CostFunction;
 import es.csic.iiia.dcop.Variable;
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.mp.AbstractNode;
+import es.csic.iiia.dcop.mp.AsynchronousNode;
 import java.util.ArrayList;
 import java.util.Random;
 import org.slf4j.Logger;
@@ -51,16 +52,17 @@ import org.slf4j.LoggerFactory;
  *
  * @author Marc Pujol (mpujol at iiia.csic.es)
  */
-public class DSANode extends AbstractNode<DSAEdge, DSAResult> {
+public class DSANode extends AbstractNode<DSAEdge, DSAResult>
+        implements AsynchronousNode {
 
     private static Logger log = LoggerFactory.getLogger(DSA.class);
 
     private Variable variable;
     private ArrayList<CostFunction> factors;
     private boolean converged;
-    private VariableAssignment myAssignment;
+    private CompactAssignment myAssignment;
     private int previousAssignment = Integer.MAX_VALUE;
-    private VariableAssignment othersAssignments;
+    private CompactAssignment othersAssignments;
     private Random random;
     private double p;
 
@@ -82,8 +84,8 @@ public class DSANode extends AbstractNode<DSAEdge, DSAResult> {
     @Override
     public void initialize() {
         setMode(Modes.GRAPH);
-        othersAssignments = new VariableAssignment();
-        myAssignment = new VariableAssignment(1);
+        othersAssignments = new CompactAssignment();
+        myAssignment = new CompactAssignment(1);
 
         // Randomly choose an initial assignment
         int conf = random.nextInt(variable.getDomain());
@@ -118,6 +120,16 @@ public class DSANode extends AbstractNode<DSAEdge, DSAResult> {
         // CC count
         long cc = 0;
 
+        // Wait until all the neighbors have sent their assignments, which may
+        // take a while when messages are delivered asynchronously. The node
+        // has not converged yet, because it has not even chosen its value.
+        for (DSAEdge e : getEdges()) {
+            if (e.getMessage(this) == null) {
+                setUpdated(false);
+                return;
+            }
+        }
+
         // Stochastically choose where to update or not
         if (random.nextDouble() > p) {
             return;
@@ -139,7 +151,7 @@ public class DSANode extends AbstractNode<DSAEdge, DSAResult> {
                 combi = combi.combine(f.reduce(othersAssignments));
             }
         }
-        myAssignment = combi.getOptimalConfiguration(myAssignment);
+        myAssignment = combi.getOptimalAssignment(myAssignment);
         if (Double.isInfinite(combi.getValue(myAssignment))) {
             myAssignment.put(variable, random.nextInt(variable.getDomain()));
         }
@@ -192,7 +204,7 @@ public class DSANode extends AbstractNode<DSAEdge, DSAResult> {
         super.setUpdated(updated);
     }
 
-    VariableAssignment getAssignment() {
+    CompactAssignment getAssignment() {
         return myAssignment;
     }
 
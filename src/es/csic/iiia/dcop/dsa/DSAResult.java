@@ -38,7 +38,7 @@
 
 package es.csic.iiia.dcop.dsa;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.mp.Result;
 
 /**
@@ -47,13 +47,13 @@ import es.csic.iiia.dcop.mp.Result;
  */
 public class DSAResult implements Result {
 
-    private VariableAssignment assignment;
+    private CompactAssignment assignment;
 
     public DSAResult(DSANode node) {
         this.assignment = node.getAssignment();
     }
 
-    public VariableAssignment getAssignment() {
+    public CompactAssignment getAssignment() {
         return assignment;
     }
 
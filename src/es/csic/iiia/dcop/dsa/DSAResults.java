@@ -38,7 +38,7 @@
 
 package es.csic.iiia.dcop.dsa;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.mp.DefaultResults;
 
 /**
@@ -47,8 +47,8 @@ import es.csic.iiia.dcop.mp.DefaultResults;
  */
 public class DSAResults extends DefaultResults<DSAResult> {
 
-    public VariableAssignment getGlobalAssignment() {
-        VariableAssignment a = new VariableAssignment();
+    public CompactAssignment getGlobalAssignment() {
+        CompactAssignment a = new CompactAssignment();
         for (DSAResult r : getResults()) {
             a.putAll(r.getAssignment());
         }
@@ -62,6 +62,40 @@ public class GdlMessage implements UPMessage {
         return Compressor.getCompressedSizeF(factor);
     }
 
+    /**
+     * Two messages are equal when their factors have the same variables and
+     * content hash, so that resending an unchanged message is detected
+     * without comparing every tuple. Messages that differ in any value, even
+     * slightly, are different.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof GdlMessage)) {
+            return false;
+        }
+        final CostFunction other = ((GdlMessage)obj).factor;
+        if (factor == other) {
+            return true;
+        }
+        if (factor == null || other == null) {
+            return false;
+        }
+        return factor.getVariableSet().equals(other.getVariableSet())
+                && factor.getContentHash() == other.getContentHash();
+    }
+
+    @Override
+    public int hashCode() {
+        if (factor == null) {
+            return 0;
+        }
+        final long h = factor.getContentHash();
+        return (int)(h ^ (h >>> 32));
+    }
+
     @Override
     public String toString() {
         return factor.toString();
@@ -38,21 +38,28 @@
 
 package es.csic.iiia.dcop.gdl;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.up.UPResult;
 import es.csic.iiia.dcop.CostFunction;
 import es.csic.iiia.dcop.Variable;
+import es.csic.iiia.dcop.mp.AsynchronousNode;
 import es.csic.iiia.dcop.up.UPEdge;
 import es.csic.iiia.dcop.up.UPNode;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * GDL algorithm node.
  * 
  * @author Marc Pujol (mpujol at iiia.csic.es)
  */
-public class GdlNode extends UPNode<UPEdge<GdlNode, GdlMessage>, UPResult> {
+public class GdlNode extends UPNode<UPEdge<GdlNode, GdlMessage>, UPResult>
+        implements AsynchronousNode {
 
     /**
      * Tolerance to use when comparing the previous and current beliefs.
@@ -74,6 +81,13 @@ public class GdlNode extends UPNode<UPEdge<GdlNode, GdlMessage>, UPResult> {
      */
     private CostFunction previousBelief;
 
+    /**
+     * Scratch functions where to negate the messages received through each
+     * edge, reused between iterations.
+     */
+    private HashMap<UPEdge<GdlNode, GdlMessage>, CostFunction> negated =
+            new HashMap<UPEdge<GdlNode, GdlMessage>, CostFunction>();
+
     /**
      * Edges from where we have already processed their messages
      */
@@ -118,6 +132,7 @@ public class GdlNode extends UPNode<UPEdge<GdlNode, GdlMessage>, UPResult> {
 
         // Calculate our potential
         previousBelief = null;
+        negated.clear();
         final double nv = factory.getCombineOperation().getNeutralValue();
         potential = factory.buildCostFunction(new Variable[0], nv);
         potential = potential.combine(relations);
@@ -160,15 +175,24 @@ public class GdlNode extends UPNode<UPEdge<GdlNode, GdlMessage>, UPResult> {
             }
         }
 
-        // Compute our belief
+        // Compute our belief, reusing the storage of a belief that is no
+        // longer needed when it is defined over the same variables.
+        CostFunction dst = belief;
         if (mode == Modes.GRAPH) {
+            dst = previousBelief;
             previousBelief = belief;
         }
 
-        this.belief = combi.combine(fns);
+        if (dst != null && dst != potential && dst != previousBelief
+                && dst.getVariableSet().equals(getScope(fns))) {
+            this.belief = fns.get(0).combineInto(fns.subList(1, fns.size()), dst);
+        } else {
+            this.belief = combi.combine(fns);
+        }
 
+        // The belief is always a function of our own at this point
         if (this.belief.getFactory().getNormalizationType() != CostFunction.Normalize.NONE) {
-            this.belief = this.belief.normalize();
+            this.belief.normalizeInPlace();
         }
 
         // Send updated messages
@@ -176,6 +200,20 @@ public class GdlNode extends UPNode<UPEdge<GdlNode, GdlMessage>, UPResult> {
         setUpdated(false);
     }
 
+    /**
+     * Returns the set of variables involved in the given functions.
+     *
+     * @param fns list of functions.
+     * @return union of the functions' variables.
+     */
+    private Set<Variable> getScope(List<CostFunction> fns) {
+        Set<Variable> scope = new LinkedHashSet<Variable>();
+        for (CostFunction f : fns) {
+            scope.addAll(f.getVariableSet());
+        }
+        return scope;
+    }
+
     public UPResult end() {
         return new UPResult(this);
     }
@@ -204,9 +242,9 @@ public class GdlNode extends UPNode<UPEdge<GdlNode, GdlMessage>, UPResult> {
     }
 
     @Override
-    public ArrayList<CostFunction> getReducedBelief(VariableAssignment map) {
+    public ArrayList<CostFunction> getReducedBelief(CompactAssignment map) {
         ArrayList<CostFunction> bl = new ArrayList<CostFunction>();
-        bl.add(belief.reduce(map));
+        bl.add(belief.reduceView(map));
         return bl;
     }
 
@@ -235,22 +273,41 @@ public class GdlNode extends UPNode<UPEdge<GdlNode, GdlMessage>, UPResult> {
 
             // Instead of multiplying all incoming messages except the one
             // from e, we "substract" the e message from the belief, which
-            // has the same result but with fewer operations.
+            // has the same result but with fewer operations. The result is
+            // directly summarized to the separator.
             CostFunction msg;
             GdlMessage im = e.getMessage(this);
             if (im != null) {
-                msg = belief.combine(im.getFactor().negate());
+                List<CostFunction> fs = Collections.singletonList(negate(e, im.getFactor()));
+                msg = belief.combineAndSummarize(fs, e.getVariables());
             } else {
-                msg = belief;
+                msg = belief.summarize(e.getVariables());
             }
 
-            // Summarize to the separator and send the resulting message
-            msg = msg.summarize(e.getVariables());
+            // Send the resulting message
             e.sendMessage(this, new GdlMessage(msg));
         }
         
     }
 
+    /**
+     * Negates the given message received through edge <em>e</em>, storing
+     * it into the scratch function of that edge.
+     *
+     * @param e edge where the message was received.
+     * @param f message factor.
+     * @return negated message.
+     */
+    private CostFunction negate(UPEdge<GdlNode, GdlMessage> e, CostFunction f) {
+        CostFunction scratch = negated.get(e);
+        if (scratch == null || !scratch.getVariableSet().equals(f.getVariableSet())) {
+            scratch = f.negate();
+            negated.put(e, scratch);
+            return scratch;
+        }
+        return f.negateInto(scratch);
+    }
+
     @Override
     public boolean isConverged() {
         return belief.equals(previousBelief);
@@ -0,0 +1,280 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop.gdl;
+
+import es.csic.iiia.dcop.CostFunction;
+import es.csic.iiia.dcop.Variable;
+import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.mp.AbstractNode.Modes;
+import es.csic.iiia.dcop.mp.AbstractScheduler;
+import es.csic.iiia.dcop.mp.DefaultGraph;
+import es.csic.iiia.dcop.mp.Node;
+import es.csic.iiia.dcop.mp.Results;
+import es.csic.iiia.dcop.mp.WavefrontScheduler;
+import es.csic.iiia.dcop.up.UPEdge;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Residual belief propagation scheduler for GDL graphs operating in
+ * {@link Modes#GRAPH} mode (such as max-sum).
+ * <p/>
+ * Instead of running every node at every cycle, the messages that have been
+ * sent but not yet delivered are kept in a priority queue ordered by their
+ * residual: the largest difference between the pending message and the one
+ * it replaces. At each step, the message with the largest residual is
+ * delivered and its recipient runs, updating the residuals of the messages
+ * it sends in turn. Messages whose residual falls below the recipient's
+ * tolerance ({@link GdlNode#getTolerance()}) are left undelivered, and the
+ * run finishes when there are no more messages to deliver.
+ * <p/>
+ * Updates are applied one at a time on the calling thread, and every group
+ * of as many runs as nodes in the graph is reported as a cycle. The number
+ * of runs is bounded by the runs that the remaining synchronous cycles would
+ * perform. Other graphs are handled by a {@link WavefrontScheduler} with the
+ * given number of threads.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class ResidualScheduler extends AbstractScheduler {
+
+    /**
+     * Scheduler used for the graphs that are not GDL graphs in graph mode.
+     */
+    private final WavefrontScheduler fallback;
+
+    /**
+     * Builds a new residual scheduler.
+     */
+    public ResidualScheduler() {
+        this(1);
+    }
+
+    /**
+     * Builds a new residual scheduler, running the graphs that it can not
+     * handle on the given number of threads.
+     *
+     * @param threads number of threads of the fallback scheduler.
+     */
+    public ResidualScheduler(int threads) {
+        super(threads);
+        fallback = new WavefrontScheduler(threads);
+    }
+
+    public int run(DefaultGraph<?,?,?> graph, Results<?> results, int iter,
+            int maxIterations)
+    {
+        if (graph.getMode() != Modes.GRAPH) {
+            return fallback.run(graph, results, iter, maxIterations);
+        }
+        for (Node n : graph.getNodes()) {
+            if (!(n instanceof GdlNode) || ((GdlNode)n).getMode() != Modes.GRAPH) {
+                return fallback.run(graph, results, iter, maxIterations);
+            }
+        }
+        final int size = graph.getNodes().size();
+        if (iter >= maxIterations || size == 0) {
+            return iter;
+        }
+
+        // Queue the initial messages
+        final IdentityHashMap<UPEdge, Update[]> updates =
+                new IdentityHashMap<UPEdge, Update[]>(graph.getEdges().size());
+        final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+        for (Object o : graph.getEdges()) {
+            final UPEdge e = (UPEdge)o;
+            final Update[] us = new Update[]{
+                new Update(e, (GdlNode)e.getNode1()),
+                new Update(e, (GdlNode)e.getNode2()),
+            };
+            updates.put(e, us);
+            for (Update u : us) {
+                u.enqueue(queue);
+            }
+        }
+
+        // Deliver the message with the largest residual until there are no
+        // more relevant changes.
+        final long budget = (long)(maxIterations - iter) * size;
+        final ArrayList<long[]> stats = new ArrayList<long[]>();
+        while (!queue.isEmpty() && stats.size() < budget) {
+            final Entry entry = queue.poll();
+            if (entry.isStale()) {
+                continue;
+            }
+            final Update u = entry.update;
+            u.entry = null;
+
+            final GdlNode n = u.recipient;
+            u.edge.tick(n);
+            stats.add(runNode(n, new long[3]));
+
+            for (Object o : n.getEdges()) {
+                final Update[] us = updates.get((UPEdge)o);
+                (us[0].recipient == n ? us[1] : us[0]).enqueue(queue);
+            }
+        }
+
+        iter = reportRuns(graph, results, iter, stats);
+
+        if (stats.size() >= budget) {
+            return maxIterations;
+        }
+        log.debug("All residuals below tolerance.");
+        return Math.min(iter, maxIterations);
+    }
+
+    /**
+     * Returns the largest difference between the values of two messages,
+     * once normalized.
+     *
+     * @param next new message.
+     * @param current message being replaced (possibly null).
+     * @return residual of the new message.
+     */
+    private static double getResidual(GdlMessage next, GdlMessage current) {
+        if (current == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        // Messages are only meaningful up to their normalization, and shifts
+        // that normalizing removes would otherwise bounce between neighbors
+        // forever.
+        final CostFunction f1 = next.getFactor().normalize();
+        final CostFunction f2 = current.getFactor().normalize();
+        if (!f1.getVariableSet().equals(f2.getVariableSet())) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        boolean sameLayout = true;
+        final Iterator<Variable> it1 = f1.getVariableSet().iterator();
+        final Iterator<Variable> it2 = f2.getVariableSet().iterator();
+        while (sameLayout && it1.hasNext()) {
+            sameLayout = it1.next().equals(it2.next());
+        }
+
+        VariableAssignment map = null;
+        double residual = 0;
+        for (long i=0, len=f1.getSize(); i<len; i++) {
+            final double v1 = f1.getValue(i);
+            final double v2;
+            if (sameLayout) {
+                v2 = f2.getValue(i);
+            } else {
+                map = f1.getMapping(i, map);
+                v2 = f2.getValue(map);
+            }
+            if (v1 == v2) {
+                // Also covers two (infinite) nogoods
+                continue;
+            }
+            final double d = Math.abs(v1 - v2);
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            residual = Math.max(residual, d);
+        }
+        return residual;
+    }
+
+    /**
+     * Pending update of one direction of an edge.
+     */
+    private static class Update {
+
+        private final UPEdge edge;
+        private final GdlNode recipient;
+
+        /**
+         * Entry of this update in the queue, or null if it is not queued.
+         */
+        private Entry entry;
+
+        public Update(UPEdge edge, GdlNode recipient) {
+            this.edge = edge;
+            this.recipient = recipient;
+        }
+
+        /**
+         * Recomputes the residual of the message pending in this direction,
+         * (re)queuing it if it is above the recipient's tolerance. Replaced
+         * entries are left in the queue and skipped when polled.
+         */
+        public void enqueue(PriorityQueue<Entry> queue) {
+            final GdlMessage next = (GdlMessage)edge.getPendingMessage(recipient);
+            final double r = next == null ? 0
+                    : getResidual(next, (GdlMessage)edge.getMessage(recipient));
+            if (entry != null && entry.residual == r) {
+                return;
+            }
+            entry = null;
+            if (next != null && r >= recipient.getTolerance()) {
+                entry = new Entry(this, r);
+                queue.add(entry);
+            }
+        }
+
+    }
+
+    /**
+     * Queued update with the residual it had when queued.
+     */
+    private static class Entry implements Comparable<Entry> {
+
+        private final Update update;
+        private final double residual;
+
+        public Entry(Update update, double residual) {
+            this.update = update;
+            this.residual = residual;
+        }
+
+        public boolean isStale() {
+            return update.entry != this;
+        }
+
+        public int compareTo(Entry o) {
+            return Double.compare(o.residual, residual);
+        }
+
+    }
+
+}
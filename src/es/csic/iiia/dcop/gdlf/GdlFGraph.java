@@ -121,8 +121,9 @@ public class GdlFGraph extends UPGraph<GdlFNode,UPEdge<GdlFNode, GdlFMessage>,UP
             boolean exit = false;
             for (int j=0; j<1; j++) {
 
-                ConstraintChecks.addTracker(this);
-                BytesSent.addTracker(this);
+                // Nodes may run in other threads, so aggregate all of them
+                final long startCCs = ConstraintChecks.getTotal();
+                final long startBytes = BytesSent.getTotal();
 
                 UPResults iterResults = iteration.run(maxIterations);
                 if (iterResults == null) {
@@ -157,8 +158,8 @@ public class GdlFGraph extends UPGraph<GdlFNode,UPEdge<GdlFNode, GdlFMessage>,UP
                     globalResults.add((UPResult)result);
                 }
 
-                long iterCCs   = ConstraintChecks.removeTracker(this);
-                long iterBytes = BytesSent.removeTracker(this);
+                long iterCCs   = ConstraintChecks.getTotal() - startCCs;
+                long iterBytes = BytesSent.getTotal() - startBytes;
                 System.out.println("ITERBYTES " + iterBytes);
                 System.out.println("ITERCCS " + iterCCs);
                 System.out.println("ITERSPARSITY " + FunctionCounter.getRatio());
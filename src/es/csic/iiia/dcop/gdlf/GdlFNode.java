@@ -41,7 +41,7 @@ package es.csic.iiia.dcop.gdlf;
 import es.csic.iiia.dcop.up.UPResult;
 import es.csic.iiia.dcop.CostFunction;
 import es.csic.iiia.dcop.Variable;
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.gdlf.strategies.filter.FilterStrategy;
 import es.csic.iiia.dcop.gdlf.strategies.merge.MergeStrategy;
 import es.csic.iiia.dcop.gdlf.strategies.slice.SliceStrategy;
@@ -76,6 +76,12 @@ public class GdlFNode extends UPNode<UPEdge<GdlFNode, GdlFMessage>, UPResult> {
      */
     private ArrayList<CostFunction> costFunctions;
 
+    /**
+     * (Interned) copy-on-write copies of the relations, shared by all the
+     * iterations.
+     */
+    private ArrayList<CostFunction> relationCopies;
+
     /**
      * Bounds from previous iteration
      */
@@ -144,6 +150,7 @@ public class GdlFNode extends UPNode<UPEdge<GdlFNode, GdlFMessage>, UPResult> {
 
         // Tree-based operation
         setMode(Modes.TREE_UP);
+        relationCopies = null;
         costFunctions = new ArrayList<CostFunction>(relations);
         MemoryTracker.add(MemoryTracker.getRequiredMemory(costFunctions));
 
@@ -160,9 +167,13 @@ public class GdlFNode extends UPNode<UPEdge<GdlFNode, GdlFMessage>, UPResult> {
         costFunctions = new ArrayList<CostFunction>();
         
         // Populate with our assigned relations
-        for (CostFunction f : relations) {
-            costFunctions.add(factory.buildCostFunction(f));
+        if (relationCopies == null) {
+            relationCopies = new ArrayList<CostFunction>(relations.size());
+            for (CostFunction f : relations) {
+                relationCopies.add(factory.getInterner().intern(factory.buildCostFunction(f)));
+            }
         }
+        costFunctions.addAll(relationCopies);
 
         // And the received messages
         Collection<UPEdge<GdlFNode, GdlFMessage>> edges = getEdges();
@@ -224,10 +235,13 @@ public class GdlFNode extends UPNode<UPEdge<GdlFNode, GdlFMessage>, UPResult> {
             List<Variable> vs = Arrays.asList(e.getVariables());
             fs = mergeStrategy.merge(fs, vs, limits.getMergeComputation(), limits.getMergeCommunication());
             
-            // Summarize
+            // Summarize (unless the merge strategy already did so)
             for (int i=0, len=fs.size(); i<len; i++) {
                 final CostFunction f = fs.get(i);
                 Variable[] vars = f.getSharedVariables(e.getVariables()).toArray(new Variable[0]);
+                if (vars.length == f.getVariableSet().size()) {
+                    continue;
+                }
                 final CostFunction summarizedFunction = fs.get(i).summarize(vars);
                 fs.set(i, summarizedFunction);
             }
@@ -265,10 +279,10 @@ public class GdlFNode extends UPNode<UPEdge<GdlFNode, GdlFMessage>, UPResult> {
     }
 
     @Override
-    public ArrayList<CostFunction> getReducedBelief(VariableAssignment map) {
+    public ArrayList<CostFunction> getReducedBelief(CompactAssignment map) {
         ArrayList<CostFunction> fs = new ArrayList<CostFunction>();
         for (CostFunction f : costFunctions) {
-            final CostFunction f2 = f.reduce(map);
+            final CostFunction f2 = f.reduceView(map);
             fs.add(f2);
         }
 
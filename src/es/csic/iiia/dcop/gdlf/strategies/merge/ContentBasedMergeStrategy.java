@@ -39,9 +39,11 @@
 package es.csic.iiia.dcop.gdlf.strategies.merge;
 
 import es.csic.iiia.dcop.CostFunction;
+import es.csic.iiia.dcop.OperationCache;
 import es.csic.iiia.dcop.Variable;
 import es.csic.iiia.dcop.util.metrics.Metric;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -63,6 +65,12 @@ public class ContentBasedMergeStrategy implements MergeStrategy {
     private static final Logger log = LoggerFactory.getLogger(ContentBasedMergeStrategy.class);
     
     private final Metric metric;
+
+    /**
+     * Summarizations of the candidate functions, which are evaluated against
+     * many other candidates.
+     */
+    private final OperationCache cache = new OperationCache();
     
     /**
      * Build a new content based merger, that uses the given metric to evaluate
@@ -82,6 +90,9 @@ public class ContentBasedMergeStrategy implements MergeStrategy {
                 edgeVariables, rComputation, rCommunication);
 
         // Logging
+        if (log.isDebugEnabled()) {
+            log.debug("Summarization cache: " + cache);
+        }
         if (log.isTraceEnabled()) {
             log.trace("-- Resulting partitions");
             for (int i=0, len=partitions.size(); i<len; i++) {
@@ -105,13 +116,14 @@ public class ContentBasedMergeStrategy implements MergeStrategy {
     private double getGain(CostFunction merged, CostFunction f1, 
             CostFunction f2, Collection<Variable> edgeVariables)
     {
-        Variable[] vars = merged.getSharedVariables(edgeVariables)
-                .toArray(new Variable[0]);
-        
         // Result of summarizing without combining
-        CostFunction sc = f1.summarize(vars).combine(f2.summarize(vars));
+        CostFunction sc = summarize(f1, edgeVariables)
+                .combine(summarize(f2, edgeVariables));
         
-        // Result of combining and then summarizing
+        // Result of combining and then summarizing. The merged function is
+        // evaluated only once, so it is not worth caching.
+        Variable[] vars = merged.getSharedVariables(edgeVariables)
+                .toArray(new Variable[0]);
         CostFunction cs = merged.summarize(vars);
         
         // Average gain
@@ -121,6 +133,27 @@ public class ContentBasedMergeStrategy implements MergeStrategy {
         return gain;
     }
     
+    /**
+     * Returns the (shared) summarization of the given candidate function to
+     * the variables it shares with the edge.
+     * <p/>
+     * This summarization does not depend on the partner the candidate is
+     * evaluated against, so it is computed once and then reused for every
+     * pair the candidate is part of.
+     *
+     * @param f candidate function.
+     * @param edgeVariables variables of the edge.
+     * @return summarization of f to its edge variables.
+     */
+    private CostFunction summarize(CostFunction f,
+            Collection<Variable> edgeVariables)
+    {
+        Variable[] vars = f.getSharedVariables(edgeVariables)
+                .toArray(new Variable[0]);
+        Arrays.sort(vars);
+        return cache.summarize(f, vars);
+    }
+    
     private List<CostFunction> merge_recursive(List<CostFunction> fs,
             Collection<Variable> edgeVariables, int rComputation, int rCommunication)
     {
@@ -164,6 +164,8 @@ public class ScopeBasedMergeStrategy implements MergeStrategy {
         }
         
         // And return a list after combining the functions inside each partition
+        // (directly summarized to the edge variables, so that the full
+        // partition function is never built)
         ArrayList<CostFunction> result = new ArrayList<CostFunction>();
         log.trace("-- Resulting partitions");
         for (int i=0, len=partitions.size(); i<len; i++) {
@@ -171,7 +173,9 @@ public class ScopeBasedMergeStrategy implements MergeStrategy {
                 log.trace("\t" + partitions.get(i));
             }
             final ArrayList<CostFunction> partition = partitions.get(i);
-            final CostFunction f = partition.remove(partition.size()-1).combine(partition);
+            final Variable[] vars = partitionsEdgeVariables.get(i).toArray(new Variable[0]);
+            final CostFunction f = partition.remove(partition.size()-1)
+                    .combineAndSummarize(partition, vars);
             MemoryTracker.add(MemoryTracker.getRequiredMemory(f));
             result.add(f);
         }
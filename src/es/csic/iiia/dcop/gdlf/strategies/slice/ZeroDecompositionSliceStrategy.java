@@ -73,9 +73,10 @@ public class ZeroDecompositionSliceStrategy implements SliceStrategy {
         fs.add(cst);
         f = f.combine(cst.negate());
 
-        // Obtain the projection approximation
+        // Obtain the projection approximation. The function received may be
+        // shared, but the one computed above is ours to overwrite.
         CostFunction[] res =
-                CostFunctionStats.getZeroDecompositionApproximation(f, r);
+                CostFunctionStats.getZeroDecompositionApproximation(f, r, true);
         for (int i=0; i<res.length-1; i++) {
             fs.add(res[i]);
         }
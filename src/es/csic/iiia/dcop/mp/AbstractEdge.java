@@ -86,14 +86,20 @@ public abstract class AbstractEdge<N extends Node, M extends Message> implements
         nm2 = null;
     }
 
-    public boolean sendMessage(N sender, M message) {
+    public synchronized boolean sendMessage(N sender, M message) {
+        // Sending the delivered message again cancels any pending one, which
+        // would be outdated.
         if (sender == c1) {
-            if (message.equals(m2))
+            if (message.equals(m2)) {
+                nm2 = m2;
                 return false;
+            }
             nm2 = message;
         } else {
-            if (message.equals(m1))
+            if (message.equals(m1)) {
+                nm1 = m1;
                 return false;
+            }
             nm1 = message;
         }
         BytesSent.add(message.getBytes());
@@ -117,8 +123,12 @@ public abstract class AbstractEdge<N extends Node, M extends Message> implements
     /**
      * Propagates messages send during the previous tick to the current one,
      * notifiying Nodes as needed.
+     * <p/>
+     * Sending and delivering are synchronized on the edge, so that each
+     * direction can be delivered by its recipient while the other node is
+     * running concurrently.
      */
-    public void tick() {
+    public synchronized void tick() {
         // Propagate new messages, notifying the nodes that have new msgs.
         if (nm1 != m1) {
             m1 = nm1;
@@ -131,6 +141,32 @@ public abstract class AbstractEdge<N extends Node, M extends Message> implements
         }
     }
 
+    public synchronized void tick(N recipient) {
+        if (recipient == c1) {
+            if (nm1 != m1) {
+                m1 = nm1;
+                c1.setUpdated(true);
+            }
+        } else if (nm2 != m2) {
+            m2 = nm2;
+            c2.setUpdated(true);
+        }
+    }
+
+    public synchronized boolean hasPendingMessage(N recipient) {
+        if (recipient == c1) {
+            return nm1 != m1;
+        }
+        return nm2 != m2;
+    }
+
+    public synchronized M getPendingMessage(N recipient) {
+        if (recipient == c1) {
+            return nm1 != m1 ? nm1 : null;
+        }
+        return nm2 != m2 ? nm2 : null;
+    }
+
     public N getNode1() {
         return c1;
     }
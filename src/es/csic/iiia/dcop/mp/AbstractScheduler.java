@@ -0,0 +1,241 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop.mp;
+
+import es.csic.iiia.dcop.util.BytesSent;
+import es.csic.iiia.dcop.util.ConstraintChecks;
+import es.csic.iiia.dcop.util.MemoryTracker;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base scheduler implementation, providing the per-node accounting and the
+ * thread pool shared by the concrete schedulers.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public abstract class AbstractScheduler implements Scheduler {
+
+    protected static Logger log = LoggerFactory.getLogger(Graph.class);
+
+    /**
+     * Index of each metric in the arrays returned by
+     * {@link #runNode(Node, long[])}.
+     */
+    protected static final int CCS = 0, BYTES = 1, MEMORY = 2;
+
+    /**
+     * Number of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * Worker threads, created on first use.
+     */
+    private ExecutorService pool;
+
+    /**
+     * Builds a new scheduler that uses the given number of threads.
+     *
+     * @param threads number of threads (1 means running on the calling
+     * thread).
+     */
+    public AbstractScheduler(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be greater than 0.");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the number of threads used by this scheduler.
+     *
+     * @return number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs the given node on the calling thread, storing the constraint
+     * checks, bytes sent and memory required by the node in the given array.
+     *
+     * @param n node to run.
+     * @param stats array where to store the node's metrics.
+     * @return the stats array.
+     */
+    protected static long[] runNode(Node n, long[] stats) {
+        ConstraintChecks.addTracker(n);
+        BytesSent.addTracker(n);
+        MemoryTracker.addTracker(n);
+        try {
+            n.run();
+        } finally {
+            stats[CCS] = ConstraintChecks.removeTracker(n);
+            stats[BYTES] = BytesSent.removeTracker(n);
+            stats[MEMORY] = MemoryTracker.removeTracker(n);
+        }
+        return stats;
+    }
+
+    /**
+     * Reports the given node runs as cycles of as many runs as nodes in the
+     * graph, for the schedulers that do not run the graph in cycles.
+     *
+     * @param graph graph that has been run.
+     * @param results results where to add the cycles.
+     * @param iter iteration number of the first cycle.
+     * @param stats metrics of every node run, in completion order.
+     * @return iteration number after the reported cycles.
+     */
+    protected static int reportRuns(DefaultGraph<?,?,?> graph, Results<?> results,
+            int iter, List<long[]> stats)
+    {
+        final int size = Math.max(graph.getNodes().size(), 1);
+        for (int i=0; i<stats.size(); i+=size) {
+            graph.reportIteration(iter++);
+            long mcc = 0, tcc = 0, mbytes = 0, tbytes = 0, mmem = 0;
+            for (long[] s : stats.subList(i, Math.min(i+size, stats.size()))) {
+                tcc += s[CCS];
+                tbytes += s[BYTES];
+                mcc = Math.max(mcc, s[CCS]);
+                mbytes = Math.max(mbytes, s[BYTES]);
+                mmem = Math.max(mmem, s[MEMORY]);
+            }
+            results.addCycle(mcc, tcc, mbytes, tbytes, mmem);
+        }
+        return iter;
+    }
+
+    /**
+     * Returns true if all the nodes of the given graph have finished.
+     *
+     * @param graph graph to check.
+     * @return true if the graph has converged.
+     */
+    protected static boolean isConverged(Graph<?,?,?> graph) {
+        for (Node n : graph.getNodes()) {
+            if (!n.isFinished()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the given node has received a message through each
+     * of the given edges. Until then, running the node again without
+     * delivering anything new can not change its state.
+     *
+     * @param n node to check.
+     * @param edges edges of the node.
+     * @return true if the node has heard from all its neighbors.
+     */
+    protected static boolean hasHeardFromAll(Node n, Edge[] edges) {
+        for (Edge e : edges) {
+            if (e.getMessage(n) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the thread pool of this scheduler, creating it if necessary.
+     * Workers are daemon threads, so idle pools never prevent the program
+     * from exiting.
+     *
+     * @return thread pool.
+     */
+    protected synchronized ExecutorService getPool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int count = 0;
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, AbstractScheduler.this.getClass().getSimpleName()
+                            + "-" + count++);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Waits until all the given tasks have finished, rethrowing the first
+     * failure (if any).
+     *
+     * @param futures tasks to wait for.
+     */
+    protected static void join(List<? extends Future<?>> futures) {
+        RuntimeException failure = null;
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new RuntimeException("Interrupted while waiting for the nodes to finish.", e);
+                }
+            } catch (ExecutionException e) {
+                if (failure != null) {
+                    continue;
+                }
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error)cause;
+                }
+                failure = cause instanceof RuntimeException
+                        ? (RuntimeException)cause : new RuntimeException(cause);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
@@ -0,0 +1,547 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop.mp;
+
+import es.csic.iiia.dcop.mp.AbstractNode.Modes;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scheduler that runs every node as an independent agent, which blocks on
+ * its mailbox until messages arrive and then runs.
+ * <p/>
+ * Messages travel through the edges with the delay given by the scheduler's
+ * {@link LatencyModel}. A message is only delivered if it is still the
+ * latest one posted through its edge when it arrives; otherwise, the newer
+ * message (which will arrive later) supersedes it. Convergence and the
+ * bound on the number of runs work as in the {@link AsynchronousScheduler}:
+ * the run finishes when no agent is running and no message is traveling.
+ * Agents that have not converged and have nothing to send wake themselves up
+ * again, unless they are still waiting for the first message of some
+ * neighbor, in which case they park until it arrives.
+ * <p/>
+ * When the virtual machine supports virtual threads (Java 21 and later),
+ * every agent gets its own virtual thread, so graphs with hundreds of
+ * thousands of agents can be simulated on a single machine. Otherwise,
+ * agents are actors that run on the scheduler's pool whenever their mailbox
+ * is not empty. Only graphs of {@link AsynchronousNode}s operating in
+ * {@link Modes#GRAPH} mode are run as agents; the rest are handled by a
+ * {@link WavefrontScheduler}.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class ActorScheduler extends AbstractScheduler {
+
+    /**
+     * Use virtual threads when the virtual machine supports them.
+     */
+    public static boolean VIRTUAL_THREADS = true;
+
+    /**
+     * Factory of virtual threads, or null if they are not supported.
+     */
+    private static final ThreadFactory virtualThreads = buildVirtualThreadFactory();
+
+    /**
+     * Scheduler used for the graphs that can not be run as agents.
+     */
+    private final WavefrontScheduler fallback;
+
+    /**
+     * Latency of the messages.
+     */
+    private LatencyModel latencyModel = LatencyModel.NONE;
+
+    /**
+     * Timer that delivers the delayed messages, created on first use.
+     */
+    private ScheduledExecutorService timer;
+
+    /**
+     * Builds a new agent scheduler whose actors run on a single thread when
+     * virtual threads are not available.
+     */
+    public ActorScheduler() {
+        this(1);
+    }
+
+    /**
+     * Builds a new agent scheduler whose actors run on the given number of
+     * threads when virtual threads are not available.
+     *
+     * @param threads number of threads.
+     */
+    public ActorScheduler(int threads) {
+        super(threads);
+        fallback = new WavefrontScheduler(threads);
+    }
+
+    /**
+     * Returns the latency model of the messages.
+     *
+     * @return latency model.
+     */
+    public LatencyModel getLatencyModel() {
+        return latencyModel;
+    }
+
+    /**
+     * Sets the latency model of the messages.
+     *
+     * @param latencyModel latency model.
+     */
+    public void setLatencyModel(LatencyModel latencyModel) {
+        if (latencyModel == null) {
+            throw new IllegalArgumentException("The latency model can not be null.");
+        }
+        this.latencyModel = latencyModel;
+    }
+
+    /**
+     * Returns true if agents run on their own virtual threads.
+     *
+     * @return true if virtual threads are used.
+     */
+    public static boolean isUsingVirtualThreads() {
+        return VIRTUAL_THREADS && virtualThreads != null;
+    }
+
+    public int run(DefaultGraph<?,?,?> graph, Results<?> results, int iter,
+            int maxIterations)
+    {
+        if (graph.getMode() != Modes.GRAPH) {
+            return fallback.run(graph, results, iter, maxIterations);
+        }
+        for (Node n : graph.getNodes()) {
+            if (!(n instanceof AsynchronousNode) || !(n instanceof AbstractNode)
+                    || ((AbstractNode)n).getMode() != Modes.GRAPH) {
+                return fallback.run(graph, results, iter, maxIterations);
+            }
+        }
+        if (iter >= maxIterations || graph.getNodes().isEmpty()) {
+            return iter;
+        }
+
+        final long budget = (long)(maxIterations - iter) * graph.getNodes().size();
+        final Execution execution = new Execution(graph, budget, isUsingVirtualThreads());
+        execution.run();
+        iter = reportRuns(graph, results, iter,
+                new ArrayList<long[]>(execution.stats));
+
+        if (execution.isExhausted()) {
+            return maxIterations;
+        }
+        log.debug("Quiescence reached.");
+        return Math.min(iter, maxIterations);
+    }
+
+    /**
+     * Returns the timer that delivers the delayed messages, creating it if
+     * necessary.
+     *
+     * @return timer.
+     */
+    private synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, ActorScheduler.class.getSimpleName() + "-timer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return timer;
+    }
+
+    /**
+     * Builds a factory of virtual threads through reflection, because they
+     * are only available from Java 21.
+     *
+     * @return virtual thread factory, or null if they are not supported.
+     */
+    private static ThreadFactory buildVirtualThreadFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory)Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * One direction of an edge.
+     */
+    private static class Channel {
+        private final Edge edge;
+
+        /**
+         * Last message posted through this channel.
+         */
+        private volatile Object latest;
+
+        public Channel(Edge edge) {
+            this.edge = edge;
+        }
+    }
+
+    /**
+     * Message traveling to an agent. Deliveries without channel just wake
+     * the agent up.
+     */
+    private static class Delivery {
+        private final Channel channel;
+        private final Object message;
+
+        public Delivery(Channel channel, Object message) {
+            this.channel = channel;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Wakes an agent up without delivering anything.
+     */
+    private static final Delivery WAKE = new Delivery(null, null);
+
+    /**
+     * Stops an agent running on its own thread.
+     */
+    private static final Delivery STOP = new Delivery(null, null);
+
+    /**
+     * Agent running one of the graph's nodes.
+     */
+    private static class Agent {
+        private final Node node;
+        private final Edge[] edges;
+        private Agent[] neighbors;
+
+        /**
+         * Outgoing channel of each edge.
+         */
+        private final Channel[] out;
+
+        private final LinkedBlockingQueue<Delivery> mailbox =
+                new LinkedBlockingQueue<Delivery>();
+
+        /**
+         * Number of deliveries since the actor last started running (only
+         * used when running on a pool).
+         */
+        private final AtomicInteger signals = new AtomicInteger();
+
+        public Agent(Node node) {
+            this.node = node;
+            edges = (Edge[])node.getEdges().toArray(new Edge[0]);
+            out = new Channel[edges.length];
+            for (int i=0; i<edges.length; i++) {
+                out[i] = new Channel(edges[i]);
+            }
+        }
+    }
+
+    /**
+     * Execution of a graph by its agents until quiescence.
+     */
+    private class Execution {
+
+        private final Agent[] agents;
+        private final boolean virtual;
+
+        /**
+         * Metrics of every node run, in completion order.
+         */
+        private final ConcurrentLinkedQueue<long[]> stats =
+                new ConcurrentLinkedQueue<long[]>();
+
+        private final long budget;
+        private final AtomicLong runs = new AtomicLong();
+
+        /**
+         * Number of deliveries that have not been processed yet. The graph is
+         * quiescent when it drops to zero.
+         */
+        private final AtomicLong outstanding = new AtomicLong();
+
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        public Execution(DefaultGraph<?,?,?> graph, long budget, boolean virtual) {
+            this.budget = budget;
+            this.virtual = virtual;
+
+            final List<? extends Node> nodes = graph.getNodes();
+            final IdentityHashMap<Node, Agent> index =
+                    new IdentityHashMap<Node, Agent>(nodes.size());
+            agents = new Agent[nodes.size()];
+            for (int i=0; i<agents.length; i++) {
+                agents[i] = new Agent(nodes.get(i));
+                index.put(agents[i].node, agents[i]);
+            }
+            for (Agent a : agents) {
+                a.neighbors = new Agent[a.edges.length];
+                for (int i=0; i<a.edges.length; i++) {
+                    a.neighbors[i] = index.get(a.edges[i].getDestination(a.node));
+                }
+            }
+        }
+
+        public boolean isExhausted() {
+            return runs.get() >= budget;
+        }
+
+        /**
+         * Runs the agents until the graph becomes quiescent or the budget of
+         * runs is exhausted.
+         */
+        public void run() {
+            if (virtual) {
+                for (final Agent a : agents) {
+                    virtualThreads.newThread(new Runnable() {
+                        public void run() {
+                            live(a);
+                        }
+                    }).start();
+                }
+            }
+
+            // Collect the messages sent when initializing the nodes before
+            // any agent starts running.
+            final ArrayList<Agent> recipients = new ArrayList<Agent>();
+            final ArrayList<Delivery> initial = new ArrayList<Delivery>();
+            final ArrayList<Long> latencies = new ArrayList<Long>();
+            for (Agent a : agents) {
+                for (int i=0; i<a.edges.length; i++) {
+                    final Node dst = a.neighbors[i].node;
+                    final Object msg = a.edges[i].getPendingMessage(dst);
+                    if (msg != null) {
+                        a.out[i].latest = msg;
+                        recipients.add(a.neighbors[i]);
+                        initial.add(new Delivery(a.out[i], msg));
+                        latencies.add(latencyModel.getLatency(a.edges[i], a.node, dst));
+                    }
+                }
+            }
+
+            // Then send them, and make every agent run at least once. The
+            // extra delivery keeps the graph from being considered quiescent
+            // while seeding.
+            outstanding.incrementAndGet();
+            for (int i=0; i<initial.size(); i++) {
+                post(recipients.get(i), initial.get(i), latencies.get(i));
+            }
+            for (Agent a : agents) {
+                post(a, WAKE, 0);
+            }
+            release(1);
+
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            }
+            if (virtual) {
+                for (Agent a : agents) {
+                    a.mailbox.add(STOP);
+                }
+            }
+
+            final Throwable t = failure.get();
+            if (t instanceof Error) {
+                throw (Error)t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException)t;
+            } else if (t != null) {
+                throw new RuntimeException("Interrupted while waiting for the agents to finish.", t);
+            }
+        }
+
+        /**
+         * Sends the given delivery to an agent after the given delay.
+         */
+        private void post(final Agent a, final Delivery d, long delay) {
+            outstanding.incrementAndGet();
+            if (delay <= 0) {
+                enqueue(a, d);
+                return;
+            }
+            getTimer().schedule(new Runnable() {
+                public void run() {
+                    enqueue(a, d);
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Puts a delivery into the mailbox of an agent, waking it up.
+         */
+        private void enqueue(final Agent a, Delivery d) {
+            a.mailbox.add(d);
+            if (virtual || a.signals.getAndIncrement() != 0) {
+                return;
+            }
+            getPool().execute(new Runnable() {
+                public void run() {
+                    react(a);
+                }
+            });
+        }
+
+        /**
+         * Processes the given number of deliveries, signaling the end of the
+         * execution when no more are outstanding.
+         */
+        private void release(int deliveries) {
+            if (outstanding.addAndGet(-deliveries) == 0) {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Life of an agent running on its own thread.
+         */
+        private void live(Agent a) {
+            final ArrayList<Delivery> batch = new ArrayList<Delivery>();
+            try {
+                while (true) {
+                    batch.add(a.mailbox.take());
+                    a.mailbox.drainTo(batch);
+                    final boolean stop = batch.remove(STOP);
+                    if (!batch.isEmpty()) {
+                        process(a, batch);
+                        batch.clear();
+                    }
+                    if (stop) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+                done.countDown();
+            }
+        }
+
+        /**
+         * Reaction of an actor running on the pool, until its mailbox is
+         * empty.
+         */
+        private void react(Agent a) {
+            final ArrayList<Delivery> batch = new ArrayList<Delivery>();
+            try {
+                int seen;
+                do {
+                    seen = a.signals.get();
+                    a.mailbox.drainTo(batch);
+                    if (!batch.isEmpty()) {
+                        process(a, batch);
+                        batch.clear();
+                    }
+                } while (a.signals.addAndGet(-seen) != 0);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+                done.countDown();
+            }
+        }
+
+        /**
+         * Delivers the given messages to an agent and runs it.
+         */
+        private void process(Agent a, List<Delivery> batch) {
+            if (failure.get() != null) {
+                return;
+            }
+
+            // Messages superseded by a newer one that is still traveling are
+            // dropped. Otherwise, the channel's pending message is delivered,
+            // which may be a (negligible) update that a converged node did not
+            // post.
+            final Node n = a.node;
+            for (Delivery d : batch) {
+                if (d.channel != null && d.channel.latest == d.message) {
+                    d.channel.edge.tick(n);
+                }
+            }
+
+            if (runs.getAndIncrement() < budget) {
+                stats.add(runNode(n, new long[3]));
+
+                if (!((AbstractNode)n).isConverged()) {
+                    boolean sending = false;
+                    for (int i=0; i<a.edges.length; i++) {
+                        final Node dst = a.neighbors[i].node;
+                        final Object msg = a.edges[i].getPendingMessage(dst);
+                        if (msg != null && msg != a.out[i].latest) {
+                            a.out[i].latest = msg;
+                            sending = true;
+                            post(a.neighbors[i], new Delivery(a.out[i], msg),
+                                    latencyModel.getLatency(a.edges[i], n, dst));
+                        }
+                    }
+                    // Agents that still miss the first message of some
+                    // neighbor park until it arrives, instead of waking
+                    // themselves up in a loop while it travels.
+                    if (!sending && hasHeardFromAll(n, a.edges)) {
+                        post(a, WAKE, 0);
+                    }
+                }
+            }
+
+            release(batch.size());
+        }
+
+    }
+
+}
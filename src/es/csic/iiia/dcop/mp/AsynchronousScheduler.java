@@ -0,0 +1,332 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop.mp;
+
+import es.csic.iiia.dcop.mp.AbstractNode.Modes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scheduler that runs each node as soon as it receives new messages,
+ * without waiting for the rest of the graph to complete a cycle.
+ * <p/>
+ * Every node has a mailbox that is signaled whenever a neighbor sends it a
+ * message. A signaled node is queued, delivers its pending messages (and
+ * only its own, so its neighbors can keep running), runs and then signals
+ * the recipients of the messages it has sent. Converged nodes do not signal
+ * anyone: their (negligible) updates are delivered whenever the recipients
+ * run for some other reason. Conversely, nodes that have not converged but
+ * did not send anything are signaled again, because their next run may still
+ * change their state (for instance, DSA nodes that skipped their turn),
+ * unless they are still waiting for the first message of some neighbor.
+ * Those wait until the neighbor's message signals them.
+ * <p/>
+ * The run finishes when the graph becomes quiescent: no node is queued or
+ * running and therefore no message is waiting to be delivered. Loopy graphs
+ * may never become quiescent, so the number of node runs is bounded by the
+ * number of runs that the remaining synchronous cycles would perform. Every
+ * group of as many runs as nodes in the graph (in completion order) is
+ * reported as a cycle.
+ * <p/>
+ * Only graphs of {@link AsynchronousNode}s operating in {@link Modes#GRAPH}
+ * mode are run asynchronously. The rest are handled by a
+ * {@link WavefrontScheduler}.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class AsynchronousScheduler extends AbstractScheduler {
+
+    /**
+     * Scheduler used for the graphs that can not be run asynchronously.
+     */
+    private final WavefrontScheduler fallback;
+
+    /**
+     * Builds a new asynchronous scheduler that runs all the nodes on the
+     * calling thread.
+     */
+    public AsynchronousScheduler() {
+        this(1);
+    }
+
+    /**
+     * Builds a new asynchronous scheduler that runs the nodes on the given
+     * number of threads.
+     *
+     * @param threads number of threads.
+     */
+    public AsynchronousScheduler(int threads) {
+        super(threads);
+        fallback = new WavefrontScheduler(threads);
+    }
+
+    public int run(DefaultGraph<?,?,?> graph, Results<?> results, int iter,
+            int maxIterations)
+    {
+        if (graph.getMode() != Modes.GRAPH) {
+            return fallback.run(graph, results, iter, maxIterations);
+        }
+        for (Node n : graph.getNodes()) {
+            if (!(n instanceof AsynchronousNode) || !(n instanceof AbstractNode)
+                    || ((AbstractNode)n).getMode() != Modes.GRAPH) {
+                return fallback.run(graph, results, iter, maxIterations);
+            }
+        }
+        if (iter >= maxIterations || graph.getNodes().isEmpty()) {
+            return iter;
+        }
+
+        final long budget = (long)(maxIterations - iter) * graph.getNodes().size();
+        final Execution execution = new Execution(graph, budget);
+        execution.run();
+
+        iter = reportRuns(graph, results, iter,
+                new ArrayList<long[]>(execution.stats));
+
+        if (execution.isExhausted()) {
+            return maxIterations;
+        }
+        log.debug("Quiescence reached.");
+        return Math.min(iter, maxIterations);
+    }
+
+    /**
+     * Mailbox of a node, counting the signals received since it last
+     * started running.
+     */
+    private static class Mailbox {
+        private final Node node;
+        private final AtomicInteger signals = new AtomicInteger();
+        private Mailbox[] neighbors;
+
+        public Mailbox(Node node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * Asynchronous execution of a graph until quiescence.
+     */
+    private class Execution {
+
+        /**
+         * Mailboxes of the graph's nodes.
+         */
+        private final Mailbox[] mailboxes;
+
+        /**
+         * Metrics of every node run, in completion order.
+         */
+        private final ConcurrentLinkedQueue<long[]> stats =
+                new ConcurrentLinkedQueue<long[]>();
+
+        /**
+         * Maximum number of node runs.
+         */
+        private final long budget;
+
+        /**
+         * Number of node runs started so far.
+         */
+        private final AtomicLong runs = new AtomicLong();
+
+        /**
+         * Number of mailboxes that are queued or running. The graph is
+         * quiescent when it drops to zero.
+         */
+        private final AtomicInteger active = new AtomicInteger();
+
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * Mailboxes waiting to run when running on the calling thread.
+         */
+        private final ArrayDeque<Mailbox> queue = new ArrayDeque<Mailbox>();
+
+        public Execution(DefaultGraph<?,?,?> graph, long budget) {
+            this.budget = budget;
+
+            final List<? extends Node> nodes = graph.getNodes();
+            final IdentityHashMap<Node, Mailbox> index =
+                    new IdentityHashMap<Node, Mailbox>(nodes.size());
+            mailboxes = new Mailbox[nodes.size()];
+            for (int i=0; i<mailboxes.length; i++) {
+                mailboxes[i] = new Mailbox(nodes.get(i));
+                index.put(mailboxes[i].node, mailboxes[i]);
+            }
+            for (Mailbox m : mailboxes) {
+                m.neighbors = new Mailbox[m.node.getEdges().size()];
+                int i = 0;
+                for (Object e : m.node.getEdges()) {
+                    m.neighbors[i++] = index.get(((Edge)e).getDestination(m.node));
+                }
+            }
+        }
+
+        public boolean isExhausted() {
+            return runs.get() >= budget;
+        }
+
+        /**
+         * Runs the graph until it becomes quiescent or the budget of runs is
+         * exhausted.
+         */
+        public void run() {
+            // Every node runs at least once, as in the first synchronous
+            // cycle. The extra activation keeps the graph from being
+            // considered quiescent while seeding.
+            active.incrementAndGet();
+            for (Mailbox m : mailboxes) {
+                signal(m);
+            }
+            release();
+
+            if (getThreads() == 1) {
+                Mailbox m;
+                while (failure.get() == null && (m = queue.poll()) != null) {
+                    process(m);
+                }
+            } else {
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure.compareAndSet(null, e);
+                }
+            }
+
+            final Throwable t = failure.get();
+            if (t instanceof Error) {
+                throw (Error)t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException)t;
+            } else if (t != null) {
+                throw new RuntimeException("Interrupted while waiting for the nodes to finish.", t);
+            }
+        }
+
+        /**
+         * Signals the given mailbox, queuing it unless it is already queued
+         * or running.
+         */
+        private void signal(final Mailbox m) {
+            if (m.signals.getAndIncrement() != 0) {
+                return;
+            }
+            active.incrementAndGet();
+            if (getThreads() == 1) {
+                queue.add(m);
+                return;
+            }
+            getPool().execute(new Runnable() {
+                public void run() {
+                    try {
+                        process(m);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Releases one activation, signaling the end of the execution when
+         * no more mailboxes are active.
+         */
+        private void release() {
+            if (active.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Runs the node of the given mailbox until no more signals arrive.
+         */
+        private void process(Mailbox m) {
+            final Node n = m.node;
+            final Edge[] edges = (Edge[])n.getEdges().toArray(new Edge[0]);
+            final Object[] pending = new Object[edges.length];
+
+            int seen;
+            do {
+                if (failure.get() != null) {
+                    return;
+                }
+                seen = m.signals.get();
+                if (runs.getAndIncrement() < budget) {
+                    for (int i=0; i<edges.length; i++) {
+                        edges[i].tick(n);
+                        pending[i] = edges[i].getPendingMessage(m.neighbors[i].node);
+                    }
+                    stats.add(runNode(n, new long[3]));
+
+                    if (!((AbstractNode)n).isConverged()) {
+                        // Messages that were already waiting for a neighbor
+                        // do not count as sent by this run.
+                        boolean sent = false;
+                        for (int i=0; i<edges.length; i++) {
+                            final Object msg = edges[i].getPendingMessage(m.neighbors[i].node);
+                            if (msg != null) {
+                                sent |= msg != pending[i];
+                                signal(m.neighbors[i]);
+                            }
+                        }
+                        if (!sent && hasHeardFromAll(n, edges)) {
+                            m.signals.incrementAndGet();
+                        }
+                    }
+                }
+            } while (m.signals.addAndGet(-seen) != 0);
+
+            release();
+        }
+
+    }
+
+}
@@ -38,9 +38,6 @@
 package es.csic.iiia.dcop.mp;
 
 import es.csic.iiia.dcop.mp.AbstractNode.Modes;
-import es.csic.iiia.dcop.util.BytesSent;
-import es.csic.iiia.dcop.util.ConstraintChecks;
-import es.csic.iiia.dcop.util.MemoryTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +55,16 @@ public abstract class DefaultGraph<N extends Node, E extends Edge, R extends Res
 
     private Modes mode = Modes.GRAPH;
 
+    /**
+     * Scheduler used by the graphs that do not set their own.
+     */
+    private static Scheduler defaultScheduler = new SynchronousScheduler();
+
+    /**
+     * Scheduler of this graph, or null to use the default one.
+     */
+    private Scheduler scheduler;
+
     public void reportIteration(int i) {};
     public void reportStart() {};
     public void reportResults(R results) {};
@@ -79,47 +86,7 @@ public abstract class DefaultGraph<N extends Node, E extends Edge, R extends Res
         }
 
         // Now for the "real meat":
-        boolean converged = false;
-        for (; iter < maxIterations && !converged; iter++) {
-
-            // Tick for synchronous graphs
-            reportIteration(iter);
-            for (Edge e : getEdges()) {
-                e.tick();
-            }
-
-            // Clique operation
-            long mcc = 0, tcc = 0, mbytes = 0, tbytes = 0, mmem = 0;
-            for (Node n : getNodes()) {
-                if (n.isUpdated()) {
-                    ConstraintChecks.addTracker(n);
-                    BytesSent.addTracker(n);
-                    MemoryTracker.addTracker(n);
-                    n.run();
-                    long cc = ConstraintChecks.removeTracker(n);
-                    long bytes = BytesSent.removeTracker(n);
-                    long mem = MemoryTracker.removeTracker(n);
-                    tcc += cc;
-                    tbytes += bytes;
-                    mcc = Math.max(mcc, cc);
-                    mbytes = Math.max(mbytes, bytes);
-                    mmem = Math.max(mmem, mem);
-                }
-            }
-            results.addCycle(mcc, tcc, mbytes, tbytes, mmem);
-
-            // Check for convergence
-            converged = true;
-            for (Node n : getNodes()) {
-                if (!n.isFinished()) {
-                    converged = false;
-                    break;
-                }
-            }
-            if (converged) {
-                log.debug("Convergence achieved.");
-            }
-        }
+        iter = getScheduler().run(this, results, iter, maxIterations);
 
         // Just in case...
         if (iter == maxIterations) {
@@ -133,6 +100,45 @@ public abstract class DefaultGraph<N extends Node, E extends Edge, R extends Res
         return results;
     }
 
+    /**
+     * Returns the scheduler used by the graphs that do not set their own.
+     *
+     * @return default scheduler.
+     */
+    public static Scheduler getDefaultScheduler() {
+        return defaultScheduler;
+    }
+
+    /**
+     * Sets the scheduler used by the graphs that do not set their own.
+     *
+     * @param scheduler default scheduler.
+     */
+    public static void setDefaultScheduler(Scheduler scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("The default scheduler can not be null.");
+        }
+        defaultScheduler = scheduler;
+    }
+
+    /**
+     * Returns the scheduler that runs this graph.
+     *
+     * @return scheduler of this graph.
+     */
+    public Scheduler getScheduler() {
+        return scheduler == null ? defaultScheduler : scheduler;
+    }
+
+    /**
+     * Sets the scheduler that runs this graph (null to use the default one).
+     *
+     * @param scheduler scheduler of this graph.
+     */
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     /**
      * @return the mode
      */
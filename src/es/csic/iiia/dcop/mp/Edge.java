@@ -47,6 +47,32 @@ package es.csic.iiia.dcop.mp;
 public interface Edge<N extends Node, M extends Message> {
 
     void tick();
+
+    /**
+     * Delivers the message sent to the given node (if any), notifying it,
+     * without touching the opposite direction of the edge.
+     *
+     * @param recipient node whose incoming message is delivered.
+     */
+    void tick(N recipient);
+
+    /**
+     * Returns true if a message sent to the given node is waiting to be
+     * delivered.
+     *
+     * @param recipient node to check.
+     * @return true if there is an undelivered message for the node.
+     */
+    public boolean hasPendingMessage(N recipient);
+
+    /**
+     * Returns the message sent to the given node that is waiting to be
+     * delivered.
+     *
+     * @param recipient node to check.
+     * @return undelivered message for the node, or null if there is none.
+     */
+    public M getPendingMessage(N recipient);
     public boolean sendMessage(N sender, M message);
     public M getMessage(N recipient);
     public N getDestination(N sender);
@@ -0,0 +1,148 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop.mp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Scheduler that runs the graph in synchronous cycles: the messages sent
+ * during a cycle are delivered at the start of the next one, and every
+ * updated node runs once per cycle.
+ * <p/>
+ * Because nodes only read the messages delivered by the preceding tick, the
+ * nodes of a cycle can run concurrently. With more than one thread, they are
+ * spread among a pool of workers with a barrier before the next tick. The
+ * per-cycle metrics are measured on the thread that runs each node, so they
+ * are exactly the same as in a sequential run.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class SynchronousScheduler extends AbstractScheduler {
+
+    /**
+     * Builds a new sequential synchronous scheduler.
+     */
+    public SynchronousScheduler() {
+        this(1);
+    }
+
+    /**
+     * Builds a new synchronous scheduler that runs the nodes of each cycle
+     * on the given number of threads.
+     *
+     * @param threads number of threads.
+     */
+    public SynchronousScheduler(int threads) {
+        super(threads);
+    }
+
+    public int run(DefaultGraph<?,?,?> graph, Results<?> results, int iter,
+            int maxIterations)
+    {
+        boolean converged = false;
+        for (; iter < maxIterations && !converged; iter++) {
+
+            // Tick for synchronous graphs
+            graph.reportIteration(iter);
+            for (Edge e : graph.getEdges()) {
+                e.tick();
+            }
+
+            // Clique operation
+            ArrayList<Node> updated = new ArrayList<Node>();
+            for (Node n : graph.getNodes()) {
+                if (n.isUpdated()) {
+                    updated.add(n);
+                }
+            }
+            final long[][] stats = runCycle(updated);
+            long mcc = 0, tcc = 0, mbytes = 0, tbytes = 0, mmem = 0;
+            for (long[] s : stats) {
+                tcc += s[CCS];
+                tbytes += s[BYTES];
+                mcc = Math.max(mcc, s[CCS]);
+                mbytes = Math.max(mbytes, s[BYTES]);
+                mmem = Math.max(mmem, s[MEMORY]);
+            }
+            results.addCycle(mcc, tcc, mbytes, tbytes, mmem);
+
+            // Check for convergence
+            converged = isConverged(graph);
+            if (converged) {
+                log.debug("Convergence achieved.");
+            }
+        }
+
+        return iter;
+    }
+
+    /**
+     * Runs the given nodes, returning the metrics of each one.
+     *
+     * @param nodes nodes to run.
+     * @return metrics of each node.
+     */
+    private long[][] runCycle(List<Node> nodes) {
+        final long[][] stats = new long[nodes.size()][3];
+        if (getThreads() == 1 || nodes.size() < 2) {
+            for (int i=0; i<stats.length; i++) {
+                runNode(nodes.get(i), stats[i]);
+            }
+            return stats;
+        }
+
+        ArrayList<Future<long[]>> futures = new ArrayList<Future<long[]>>(stats.length);
+        for (int i=0; i<stats.length; i++) {
+            final Node n = nodes.get(i);
+            final long[] s = stats[i];
+            futures.add(getPool().submit(new Callable<long[]>() {
+                public long[] call() {
+                    return runNode(n, s);
+                }
+            }));
+        }
+        join(futures);
+        return stats;
+    }
+
+}
@@ -0,0 +1,518 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop.mp;
+
+import es.csic.iiia.dcop.mp.AbstractNode.Modes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scheduler for tree-shaped graphs that runs each node exactly when its
+ * messages are available, instead of polling every node at every cycle.
+ * <p/>
+ * The tree is rooted at the graph's root (or at its first node, if it has
+ * none) before running. In
+ * {@link Modes#TREE_UP} mode, nodes are run from the leaves to the root
+ * (each node after all its children) and then back from the root to the
+ * leaves. In {@link Modes#TREE_DOWN} mode only the root-to-leaves pass is
+ * performed, because the root has already run. With more than one thread,
+ * the passes are executed as a dependency graph on a pool of workers, so
+ * sibling subtrees are processed concurrently.
+ * <p/>
+ * Each node ticks the edges towards its children, so every edge is ticked
+ * by a single task and no node is notified from two threads at once. The
+ * metrics of the nodes at the same tree level are reported as a single
+ * cycle, which matches what the synchronous scheduler reports for exact
+ * algorithms. Graphs whose nodes operate in {@link Modes#GRAPH} mode, graphs
+ * that are not trees
+ * and graphs that have not converged after both passes are handled by a
+ * {@link SynchronousScheduler}.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class WavefrontScheduler extends AbstractScheduler {
+
+    /**
+     * Scheduler used when the graph can not be run in waves.
+     */
+    private final SynchronousScheduler fallback;
+
+    /**
+     * Builds a new sequential wavefront scheduler.
+     */
+    public WavefrontScheduler() {
+        this(1);
+    }
+
+    /**
+     * Builds a new wavefront scheduler that runs independent subtrees on
+     * the given number of threads.
+     *
+     * @param threads number of threads.
+     */
+    public WavefrontScheduler(int threads) {
+        super(threads);
+        fallback = new SynchronousScheduler(threads);
+    }
+
+    public int run(DefaultGraph<?,?,?> graph, Results<?> results, int iter,
+            int maxIterations)
+    {
+        final Modes mode = getMode(graph);
+        if (mode == Modes.GRAPH || (mode == Modes.TREE_DOWN && graph.getRoot() < 0)) {
+            return fallback.run(graph, results, iter, maxIterations);
+        }
+
+        Tree tree;
+        if (graph.getRoot() >= 0) {
+            tree = Tree.build(graph, graph.getRoot());
+        } else {
+            // Without a root, messages meet at the center of the tree
+            tree = Tree.build(graph, 0);
+            if (tree != null) {
+                tree = Tree.build(graph, graph.getNodes().indexOf(tree.getCenter()));
+            }
+        }
+        if (tree == null) {
+            log.warn("The graph is not a tree, using the synchronous scheduler instead.");
+            return fallback.run(graph, results, iter, maxIterations);
+        }
+
+        final Wave wave = new Wave(tree, mode == Modes.TREE_UP);
+        if (getThreads() == 1 || tree.size() < 2) {
+            wave.runSequential();
+        } else {
+            wave.runParallel();
+        }
+        iter = wave.report(graph, results, iter);
+
+        if (!isConverged(graph) && iter < maxIterations) {
+            log.debug("The graph has not converged after the waves, running synchronous cycles.");
+            return fallback.run(graph, results, iter, maxIterations);
+        }
+        log.debug("Convergence achieved.");
+        return iter;
+    }
+
+    /**
+     * Returns the mode the nodes of the given graph operate in. Graphs in
+     * {@link Modes#GRAPH} mode may still hold nodes in
+     * {@link Modes#TREE_UP} mode (as GDL over a junction tree does), which
+     * can be run in waves from any node.
+     *
+     * @param graph graph to check.
+     * @return operational mode of the graph's nodes.
+     */
+    private static Modes getMode(DefaultGraph<?,?,?> graph) {
+        if (graph.getMode() != Modes.GRAPH) {
+            return graph.getMode();
+        }
+        for (Node n : graph.getNodes()) {
+            if (!(n instanceof AbstractNode)
+                    || ((AbstractNode)n).getMode() != Modes.TREE_UP) {
+                return Modes.GRAPH;
+            }
+        }
+        return Modes.TREE_UP;
+    }
+
+    /**
+     * Rooted view of a tree-shaped graph.
+     */
+    private static class Tree {
+
+        /**
+         * Nodes in breadth-first order, starting from the root.
+         */
+        private final Node[] nodes;
+
+        /**
+         * Position (in {@link #nodes}) of the parent of each node, or -1
+         * for the root.
+         */
+        private final int[] parent;
+
+        /**
+         * Positions of the children of each node.
+         */
+        private final int[][] children;
+
+        /**
+         * Edges towards the children of each node, in the same order as
+         * {@link #children}.
+         */
+        private final Edge[][] childEdges;
+
+        private Tree(int size) {
+            nodes = new Node[size];
+            parent = new int[size];
+            children = new int[size][];
+            childEdges = new Edge[size][];
+        }
+
+        public int size() {
+            return nodes.length;
+        }
+
+        /**
+         * Returns the node that minimizes the height of the tree when
+         * chosen as root.
+         *
+         * @return center of the tree.
+         */
+        public Node getCenter() {
+            final int n = size();
+
+            // Height of the subtree below each node, and the two highest
+            // children of each node.
+            final int[] below = new int[n];
+            final int[] first = new int[n], second = new int[n];
+            for (int i=n-1; i>=0; i--) {
+                first[i] = second[i] = -1;
+                for (int c : children[i]) {
+                    final int h = below[c] + 1;
+                    if (h > below[i]) {
+                        below[i] = h;
+                    }
+                    if (first[i] < 0 || h > below[first[i]] + 1) {
+                        second[i] = first[i];
+                        first[i] = c;
+                    } else if (second[i] < 0 || h > below[second[i]] + 1) {
+                        second[i] = c;
+                    }
+                }
+            }
+
+            // Longest path from each node that starts through its parent
+            final int[] above = new int[n];
+            int center = 0;
+            for (int i=0; i<n; i++) {
+                final int p = parent[i];
+                if (p >= 0) {
+                    final int sibling = first[p] == i ? second[p] : first[p];
+                    above[i] = 1 + Math.max(above[p],
+                            sibling < 0 ? 0 : below[sibling] + 1);
+                }
+                if (Math.max(above[i], below[i]) < Math.max(above[center], below[center])) {
+                    center = i;
+                }
+            }
+            return nodes[center];
+        }
+
+        /**
+         * Roots the given graph at the given node.
+         *
+         * @param graph graph to root.
+         * @param root index of the root node.
+         * @return rooted tree, or null if the graph is not a tree.
+         */
+        public static Tree build(Graph<?,?,?> graph, int root) {
+            final List<? extends Node> gnodes = graph.getNodes();
+            final Tree tree = new Tree(gnodes.size());
+            final IdentityHashMap<Node, Integer> position =
+                    new IdentityHashMap<Node, Integer>(gnodes.size());
+
+            tree.nodes[0] = gnodes.get(root);
+            tree.parent[0] = -1;
+            position.put(tree.nodes[0], 0);
+            int size = 1;
+            for (int i=0; i<size; i++) {
+                final Node n = tree.nodes[i];
+                final Collection<? extends Edge> edges = n.getEdges();
+                final int nchildren = i == 0 ? edges.size() : edges.size() - 1;
+                tree.children[i] = new int[Math.max(nchildren, 0)];
+                tree.childEdges[i] = new Edge[tree.children[i].length];
+
+                int c = 0;
+                for (Edge e : edges) {
+                    final Node dst = e.getDestination(n);
+                    final Integer p = position.get(dst);
+                    if (p != null) {
+                        if (p != tree.parent[i]) {
+                            // Reached an already visited node: not a tree
+                            return null;
+                        }
+                        continue;
+                    }
+                    if (c == tree.children[i].length) {
+                        return null;
+                    }
+                    tree.nodes[size] = dst;
+                    tree.parent[size] = i;
+                    position.put(dst, size);
+                    tree.children[i][c] = size;
+                    tree.childEdges[i][c] = e;
+                    c++; size++;
+                }
+                if (c != tree.children[i].length) {
+                    return null;
+                }
+            }
+
+            // Disconnected graphs can not be run in waves either
+            return size == tree.nodes.length ? tree : null;
+        }
+
+    }
+
+    /**
+     * Execution of the passes over a tree, collecting the metrics of every
+     * node run.
+     */
+    private class Wave {
+
+        private final Tree tree;
+
+        /**
+         * True if the leaves-to-root pass must be performed.
+         */
+        private final boolean up;
+
+        /**
+         * Tree level (cycle) of each node in each pass.
+         */
+        private final int[] upLevel, downLevel;
+
+        /**
+         * Metrics of each node in each pass, or null if the node did not
+         * run.
+         */
+        private final long[][] upStats, downStats;
+
+        public Wave(Tree tree, boolean up) {
+            this.tree = tree;
+            this.up = up;
+            upLevel = new int[tree.size()];
+            downLevel = new int[tree.size()];
+            upStats = new long[tree.size()][];
+            downStats = new long[tree.size()][];
+        }
+
+        /**
+         * Leaves-to-root step of the given node, which can only be run
+         * after all its children.
+         */
+        private void up(int i) {
+            int level = -1;
+            for (int c : tree.children[i]) {
+                level = Math.max(level, upLevel[c]);
+            }
+            upLevel[i] = level + 1;
+
+            for (Edge e : tree.childEdges[i]) {
+                e.tick();
+            }
+            final Node n = tree.nodes[i];
+            if (n.isUpdated()) {
+                upStats[i] = runNode(n, new long[3]);
+            }
+        }
+
+        /**
+         * Root-to-leaves step of the given node, which can only be run after
+         * its parent.
+         */
+        private void down(int i) {
+            if (i == 0) {
+                // The root has already run, either in the previous pass or
+                // before running the scheduler.
+                downLevel[i] = up ? upLevel[i] : 0;
+            } else {
+                downLevel[i] = downLevel[tree.parent[i]] + 1;
+                final Node n = tree.nodes[i];
+                if (n.isUpdated()) {
+                    downStats[i] = runNode(n, new long[3]);
+                }
+            }
+
+            for (Edge e : tree.childEdges[i]) {
+                e.tick();
+            }
+        }
+
+        /**
+         * Runs both passes on the calling thread.
+         */
+        public void runSequential() {
+            if (up) {
+                for (int i=tree.size()-1; i>=0; i--) {
+                    up(i);
+                }
+            }
+            for (int i=0; i<tree.size(); i++) {
+                down(i);
+            }
+        }
+
+        /**
+         * Runs both passes on the scheduler's pool, submitting each node as
+         * soon as the nodes it depends on have finished.
+         */
+        public void runParallel() {
+            final int n = tree.size();
+            final AtomicInteger[] pending = new AtomicInteger[n];
+            for (int i=0; i<n; i++) {
+                pending[i] = new AtomicInteger(tree.children[i].length);
+            }
+            final AtomicInteger remaining = new AtomicInteger(up ? 2*n : n);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            final CountDownLatch done = new CountDownLatch(1);
+
+            final class Step implements Runnable {
+                private final int node;
+                private final boolean upwards;
+                Step(int node, boolean upwards) {
+                    this.node = node;
+                    this.upwards = upwards;
+                }
+                public void run() {
+                    if (failure.get() != null) {
+                        return;
+                    }
+                    try {
+                        if (upwards) {
+                            up(node);
+                            final int p = tree.parent[node];
+                            if (p < 0) {
+                                getPool().execute(new Step(0, false));
+                            } else if (pending[p].decrementAndGet() == 0) {
+                                getPool().execute(new Step(p, true));
+                            }
+                        } else {
+                            down(node);
+                            for (int c : tree.children[node]) {
+                                getPool().execute(new Step(c, false));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        done.countDown();
+                        return;
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        done.countDown();
+                    }
+                }
+            }
+
+            if (up) {
+                for (int i=0; i<n; i++) {
+                    if (tree.children[i].length == 0) {
+                        getPool().execute(new Step(i, true));
+                    }
+                }
+            } else {
+                getPool().execute(new Step(0, false));
+            }
+
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            }
+
+            final Throwable t = failure.get();
+            if (t instanceof Error) {
+                throw (Error)t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException)t;
+            } else if (t != null) {
+                throw new RuntimeException("Interrupted while waiting for the nodes to finish.", t);
+            }
+        }
+
+        /**
+         * Reports the metrics of the nodes at each tree level as a cycle.
+         *
+         * @return iteration number after the reported cycles.
+         */
+        public int report(DefaultGraph<?,?,?> graph, Results<?> results, int iter) {
+            // Leaves have no children to wait for, so they share the first
+            // cycle with the nodes at level one.
+            int levels = 0;
+            for (int i=0; i<tree.size(); i++) {
+                upLevel[i] = Math.max(upLevel[i], 1);
+                downLevel[i] = Math.max(downLevel[i], 1);
+                if (upStats[i] != null) {
+                    levels = Math.max(levels, upLevel[i]);
+                }
+                if (downStats[i] != null) {
+                    levels = Math.max(levels, downLevel[i]);
+                }
+            }
+
+            ArrayList<List<long[]>> cycles = new ArrayList<List<long[]>>(levels);
+            for (int l=0; l<levels; l++) {
+                cycles.add(new ArrayList<long[]>());
+            }
+            for (int i=0; i<tree.size(); i++) {
+                if (upStats[i] != null) {
+                    cycles.get(upLevel[i]-1).add(upStats[i]);
+                }
+                if (downStats[i] != null) {
+                    cycles.get(downLevel[i]-1).add(downStats[i]);
+                }
+            }
+
+            for (List<long[]> cycle : cycles) {
+                graph.reportIteration(iter++);
+                long mcc = 0, tcc = 0, mbytes = 0, tbytes = 0, mmem = 0;
+                for (long[] s : cycle) {
+                    tcc += s[CCS];
+                    tbytes += s[BYTES];
+                    mcc = Math.max(mcc, s[CCS]);
+                    mbytes = Math.max(mbytes, s[BYTES]);
+                    mmem = Math.max(mmem, s[MEMORY]);
+                }
+                results.addCycle(mcc, tcc, mbytes, tbytes, mmem);
+            }
+            return iter;
+        }
+
+    }
+
+}
@@ -41,7 +41,7 @@ package es.csic.iiia.dcop.up;
 import es.csic.iiia.dcop.CostFunction;
 import es.csic.iiia.dcop.CostFunctionFactory;
 import es.csic.iiia.dcop.Variable;
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.mp.AbstractNode;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -198,8 +198,9 @@ public abstract class UPNode<E extends UPEdge, R extends UPResult> extends
 
     /**
      * Returns the reduced list of belief cost functions according to the given map.
+     * The returned functions may be read-only views of this node's functions.
      */
-    public abstract ArrayList<CostFunction> getReducedBelief(VariableAssignment map);
+    public abstract ArrayList<CostFunction> getReducedBelief(CompactAssignment map);
 
     @Override
     public String toString() {
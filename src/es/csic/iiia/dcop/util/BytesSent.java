@@ -38,33 +38,36 @@
 
 package es.csic.iiia.dcop.util;
 
-import java.util.HashMap;
-
 /**
+ * Counter of the bytes sent through the graph edges.
+ * <p/>
+ * Trackers account for the work performed on behalf of the calling thread
+ * (including the parallel workers that ran its operations), whereas
+ * {@link #getTotal()} aggregates all the threads.
  *
  * @author Marc Pujol (mpujol at iiia.csic.es)
+ * @see StripedCounter
  */
 public class BytesSent {
 
-    private static long bytes;
-    private static HashMap<Object, Long> trackers = new HashMap<Object, Long>();
+    private static final StripedCounter bytes = new StripedCounter();
 
     public static void add(long count) {
-        bytes += count;
+        bytes.add(count);
     }
 
     public static void addTracker(Object tracker) {
-        trackers.put(tracker, bytes);
+        bytes.addTracker(tracker);
     }
     public static long removeTracker(Object tracker) {
-        long tccs = bytes - trackers.remove(tracker);
-        if (trackers.isEmpty()) {
-            bytes = 0;
-        }
-        return tccs;
+        return bytes.removeTracker(tracker);
     }
 
     public static void inc() {
-        bytes += 1;
+        bytes.inc();
+    }
+
+    public static long getTotal() {
+        return bytes.sum();
     }
 }
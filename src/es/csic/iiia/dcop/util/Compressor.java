@@ -38,8 +38,10 @@
 
 package es.csic.iiia.dcop.util;
 
+import es.csic.iiia.dcop.ADDCostFunction;
 import es.csic.iiia.dcop.CostFunction;
 import es.csic.iiia.dcop.MapCostFunction;
+import es.csic.iiia.dcop.SortedMapCostFunction;
 import es.csic.iiia.dcop.Variable;
 import es.csic.iiia.dcop.cli.CliApp;
 import es.csic.iiia.dcop.cli.CompressionMethod;
@@ -70,6 +72,10 @@ public class Compressor {
                 }
                 return 8*size;
             default:
+                if (f instanceof ADDCostFunction) {
+                    // Decision diagrams are sent in their encoded form
+                    return ((ADDCostFunction)f).getEncodedSize();
+                }
                 return f.getSize() * 8;
         }
     }
@@ -99,6 +105,11 @@ public class Compressor {
                     }
                     break;
                 default:
+                    if (f instanceof ADDCostFunction) {
+                        sum += f.getVariableSet().size()*4
+                                + ((ADDCostFunction)f).getEncodedSize();
+                        break;
+                    }
                     sum += f.getVariableSet().size()*4 + f.getSize()*8;
                     break;
             }
@@ -141,7 +152,7 @@ public class Compressor {
             }
 
             // Values next
-            if (f instanceof MapCostFunction) {
+            if (f instanceof MapCostFunction || f instanceof SortedMapCostFunction) {
                 // Sparse functions are handled by key/value!
                 TLongIterator iter = f.iterator();
                 while (iter.hasNext()) {
@@ -38,33 +38,36 @@
 
 package es.csic.iiia.dcop.util;
 
-import java.util.HashMap;
-
 /**
+ * Constraint checks (evaluations of cost function values) counter.
+ * <p/>
+ * Trackers account for the work performed on behalf of the calling thread
+ * (including the parallel workers that ran its operations), whereas
+ * {@link #getTotal()} aggregates all the threads.
  *
  * @author Marc Pujol (mpujol at iiia.csic.es)
+ * @see StripedCounter
  */
 public class ConstraintChecks {
 
-    private static long ccs;
-    private static HashMap<Object, Long> trackers = new HashMap<Object, Long>();
+    private static final StripedCounter ccs = new StripedCounter();
 
     public static void add(long count) {
-        ccs += count;
+        ccs.add(count);
     }
 
     public static void addTracker(Object tracker) {
-        trackers.put(tracker, ccs);
+        ccs.addTracker(tracker);
     }
     public static long removeTracker(Object tracker) {
-        long tccs = ccs - trackers.remove(tracker);
-        if (trackers.isEmpty()) {
-            ccs = 0;
-        }
-        return tccs;
+        return ccs.removeTracker(tracker);
     }
 
     public static void inc() {
-        ccs += 1;
+        ccs.inc();
+    }
+
+    public static long getTotal() {
+        return ccs.sum();
     }
 }
@@ -359,6 +359,22 @@ public class CostFunctionStats {
     }
 
     public static CostFunction[] getZeroDecompositionApproximation(CostFunction f, int r) {
+        return getZeroDecompositionApproximation(f, r, false);
+    }
+
+    /**
+     * Computes the zero decomposition approximation of the given function.
+     *
+     * @param f function to approximate.
+     * @param r maximum arity of the approximation pieces.
+     * @param inPlace if true, the extracted pieces are directly substracted
+     * from <em>f</em> (which ends up holding the remainder) instead of
+     * working on copies of it.
+     * @return approximation pieces.
+     */
+    public static CostFunction[] getZeroDecompositionApproximation(CostFunction f, int r,
+            boolean inPlace)
+    {
         ArrayList<CostFunction> res = new ArrayList<CostFunction>();
 
         CombinationGenerator c = new CombinationGenerator(f.getVariableSet().toArray(new Variable[0]), r);
@@ -431,7 +447,12 @@ public class CostFunctionStats {
                 CostFunction pr = f.summarize(cf.getVariableSet().toArray(new Variable[0]));
                 //System.out.println("PRO: " + pr);
                 res.add(pr);
-                f = f.combine(pr.negate());
+                if (inPlace) {
+                    f.combineInto(pr.negate(), f);
+                } else {
+                    f = f.combine(pr.negate());
+                    inPlace = true;
+                }
                 //System.out.println("RES: " + f);
                 ncfs++;
             }
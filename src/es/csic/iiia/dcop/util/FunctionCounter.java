@@ -39,8 +39,8 @@
 package es.csic.iiia.dcop.util;
 
 import es.csic.iiia.dcop.CostFunction;
-import es.csic.iiia.dcop.HypercubeCostFunction;
 import es.csic.iiia.dcop.MapCostFunction;
+import es.csic.iiia.dcop.SortedMapCostFunction;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 
@@ -56,17 +56,17 @@ public class FunctionCounter {
 
     private static DecimalFormat df = new DecimalFormat("##.##%");
 
-    public static void countFunction(CostFunction f) {
+    public static synchronized void countFunction(CostFunction f) {
         nTuples += f.getSize();
         nNaNTuples += f.getNumberOfNoGoods();
-        if (f instanceof HypercubeCostFunction) {
-            nDense += f.getSize();
-        } else if (f instanceof MapCostFunction) {
+        if (f instanceof MapCostFunction || f instanceof SortedMapCostFunction) {
             nSparse += f.getSize();
+        } else {
+            nDense += f.getSize();
         }
     }
 
-    public static double getRatio() {
+    public static synchronized double getRatio() {
         DecimalFormatSymbols s = df.getDecimalFormatSymbols();
         s.setDecimalSeparator('.');
         df.setDecimalFormatSymbols(s);
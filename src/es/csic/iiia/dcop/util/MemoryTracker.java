@@ -38,10 +38,13 @@
 
 package es.csic.iiia.dcop.util;
 
+import es.csic.iiia.dcop.ADDCostFunction;
 import es.csic.iiia.dcop.CostFunction;
+import es.csic.iiia.dcop.FloatHypercubeCostFunction;
 import es.csic.iiia.dcop.MapCostFunction;
+import es.csic.iiia.dcop.MaskedHypercubeCostFunction;
+import es.csic.iiia.dcop.SortedMapCostFunction;
 import java.util.Collection;
-import java.util.HashMap;
 
 /**
  *
@@ -49,23 +52,17 @@ import java.util.HashMap;
  */
 public class MemoryTracker {
 
-    static long bytes = 0;
-    
-    private static HashMap<Object, Long> trackers = new HashMap<Object, Long>();
+    private static final StripedCounter bytes = new StripedCounter();
 
     public static void add(long count) {
-        bytes += count;
+        bytes.add(count);
     }
     
     public static void addTracker(Object tracker) {
-        trackers.put(tracker, bytes);
+        bytes.addTracker(tracker);
     }
     public static long removeTracker(Object tracker) {
-        long tbytes = bytes - trackers.remove(tracker);
-        if (trackers.isEmpty()) {
-            bytes = 0;
-        }
-        return tbytes;
+        return bytes.removeTracker(tracker);
     }
     
     
@@ -73,8 +70,14 @@ public class MemoryTracker {
     public static long getRequiredMemory(CostFunction f) {
         long header = f.getVariableSet().size() * 4L;
         long payload;
-        if (f instanceof MapCostFunction)
+        if (f instanceof MapCostFunction || f instanceof SortedMapCostFunction)
             payload = (f.getSize() - f.getNumberOfNoGoods()) * 16L;
+        else if (f instanceof ADDCostFunction)
+            payload = ((ADDCostFunction)f).getEncodedSize();
+        else if (f instanceof MaskedHypercubeCostFunction)
+            payload = f.getSize() * 8L + (f.getSize() + 7) / 8;
+        else if (f instanceof FloatHypercubeCostFunction)
+            payload = f.getSize() * 4L;
         else
             payload = f.getSize() * 8L;
 
@@ -0,0 +1,185 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel execution settings and helpers for cost function operations.
+ * <p/>
+ * Operations over functions larger than {@link #THRESHOLD} split their index
+ * range into blocks that are processed by a shared fork-join pool of
+ * {@link #THREADS} workers. With a single thread (the default) everything
+ * runs sequentially on the calling thread.
+ * <p/>
+ * The metrics counted by the workers are handed over to the calling thread
+ * once they finish, so that its trackers account for them.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class Parallelism {
+
+    /**
+     * Number of worker threads to use (1 means sequential execution).
+     */
+    public static int THREADS = 1;
+
+    /**
+     * Minimum function size (in elements) for an operation to run in
+     * parallel.
+     */
+    public static long THRESHOLD = 1 << 16;
+
+    /**
+     * Number of blocks per thread in which ranges are split, to balance the
+     * load among workers.
+     */
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private static ForkJoinPool pool;
+
+    /**
+     * Task to run over a range of indices.
+     */
+    public interface RangeTask {
+        /**
+         * Processes the indices in [from, to).
+         *
+         * @param block index of the block being processed.
+         * @param from first index (inclusive).
+         * @param to last index (exclusive).
+         */
+        public void run(int block, long from, long to);
+    }
+
+    /**
+     * Returns true if operations over functions of the given size should
+     * run in parallel.
+     *
+     * @param size size of the function (or index range) to process.
+     * @return true if the operation should be parallelized.
+     */
+    public static boolean isParallel(long size) {
+        return THREADS > 1 && size >= THRESHOLD;
+    }
+
+    /**
+     * Returns the number of blocks in which a range of the given size should
+     * be split.
+     *
+     * @param size size of the range.
+     * @return number of blocks.
+     */
+    public static int getBlocks(long size) {
+        if (!isParallel(size)) {
+            return 1;
+        }
+        return (int)Math.max(1, Math.min(THREADS * BLOCKS_PER_THREAD, size));
+    }
+
+    /**
+     * Runs the given task over the [0, size) range, split in the given number
+     * of blocks, waiting until all of them have finished.
+     *
+     * @param size size of the range.
+     * @param blocks number of blocks.
+     * @param task task to run.
+     */
+    public static void forRange(final long size, final int blocks, final RangeTask task) {
+        if (blocks <= 1) {
+            task.run(0, 0, size);
+            return;
+        }
+
+        final Thread caller = Thread.currentThread();
+        final Thread[] runners = new Thread[blocks];
+        final long[][] counts = new long[blocks][];
+        getPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ArrayList<RecursiveAction> actions = new ArrayList<RecursiveAction>(blocks);
+                for (int b=0; b<blocks; b++) {
+                    final int block = b;
+                    final long from = size * b / blocks;
+                    final long to = size * (b+1) / blocks;
+                    actions.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            final long[] mark = StripedCounter.mark();
+                            task.run(block, from, to);
+                            counts[block] = StripedCounter.since(mark);
+                            runners[block] = Thread.currentThread();
+                        }
+                    });
+                }
+                invokeAll(actions);
+            }
+        });
+
+        for (int b=0; b<blocks; b++) {
+            if (runners[b] != caller) {
+                StripedCounter.adopt(counts[b]);
+            }
+        }
+    }
+
+    /**
+     * Runs the given task over the [0, size) range, split in as many blocks
+     * as {@link #getBlocks(long)} dictates.
+     *
+     * @param size size of the range.
+     * @param task task to run.
+     */
+    public static void forRange(long size, RangeTask task) {
+        forRange(size, getBlocks(size), task);
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null || pool.getParallelism() != THREADS) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(THREADS);
+        }
+        return pool;
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2011, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package es.csic.iiia.dcop.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Low-overhead counter for the instrumentation metrics.
+ * <p/>
+ * Each thread counts into its own cell, so increments are plain (unshared)
+ * memory writes. The cells are kept in a lock-free list that is only walked
+ * when the counter is read: {@link #sum()} aggregates the cells of all the
+ * threads (exactly, once the counting threads have been joined), folding
+ * the cells of the threads that have died into a single total and dropping
+ * them from the list.
+ * <p/>
+ * Trackers measure the increments performed between
+ * {@link #addTracker(java.lang.Object)} and
+ * {@link #removeTracker(java.lang.Object)} on behalf of the calling thread.
+ * That is, by the thread itself and by the workers that ran its operations,
+ * whose counts are handed over with {@link #mark()}, {@link #since(long[])}
+ * and {@link #adopt(long[])} once they are joined. Hence, several nodes can
+ * be tracked concurrently without mixing up their counts.
+ * <p/>
+ * Metrics can be disabled altogether by setting {@link #ENABLED} to false
+ * before running the algorithm. Then, all counting operations are reduced
+ * to a single (well predicted) branch.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public final class StripedCounter {
+
+    /**
+     * True if metrics are being collected.
+     */
+    public static boolean ENABLED = true;
+
+    /**
+     * Number of cell registrations between two sweeps of dead cells.
+     */
+    private static final int SWEEP_INTERVAL = 64;
+
+    /**
+     * All the counters, to hand over the counts of every metric at once.
+     */
+    private static final CopyOnWriteArrayList<StripedCounter> counters =
+            new CopyOnWriteArrayList<StripedCounter>();
+
+    /**
+     * Counting cell owned by a single thread.
+     */
+    private static final class Cell {
+        /** Increments performed by the owner thread. */
+        long value;
+        /** Increments handed over by other threads, already in their cells. */
+        long adopted;
+        final Thread owner = Thread.currentThread();
+    }
+
+    /**
+     * Cells of the threads that are (or were, until the next sweep) using
+     * this counter.
+     */
+    private final ConcurrentLinkedQueue<Cell> cells = new ConcurrentLinkedQueue<Cell>();
+
+    /**
+     * Number of cells registered so far, to trigger the periodic sweeps.
+     */
+    private final AtomicInteger registered = new AtomicInteger();
+
+    /**
+     * Aggregated count of the threads whose cells have been swept.
+     */
+    private long retired;
+
+    private final ThreadLocal<Cell> cell = new ThreadLocal<Cell>() {
+        @Override
+        protected Cell initialValue() {
+            Cell c = new Cell();
+            cells.add(c);
+            if (registered.incrementAndGet() % SWEEP_INTERVAL == 0) {
+                sum();
+            }
+            return c;
+        }
+    };
+
+    /**
+     * Starting count of each active tracker.
+     */
+    private final ConcurrentHashMap<Object, Long> trackers = new ConcurrentHashMap<Object, Long>();
+
+    public StripedCounter() {
+        counters.add(this);
+    }
+
+    /**
+     * Adds the given amount to the calling thread's count.
+     *
+     * @param count amount to add.
+     */
+    public void add(long count) {
+        if (ENABLED) {
+            cell.get().value += count;
+        }
+    }
+
+    /**
+     * Increments the calling thread's count.
+     */
+    public void inc() {
+        if (ENABLED) {
+            cell.get().value++;
+        }
+    }
+
+    /**
+     * Returns the count performed on behalf of the calling thread, including
+     * the counts adopted from other threads.
+     *
+     * @return count of the calling thread.
+     */
+    public long get() {
+        if (!ENABLED) {
+            return 0;
+        }
+        final Cell c = cell.get();
+        return c.value + c.adopted;
+    }
+
+    /**
+     * Returns the current counts of the calling thread in every counter, to
+     * be later passed to {@link #since(long[])}.
+     *
+     * @return counts of the calling thread, or null if metrics are disabled.
+     */
+    public static long[] mark() {
+        if (!ENABLED) {
+            return null;
+        }
+        final Object[] cs = counters.toArray();
+        final long[] mark = new long[cs.length];
+        for (int i=0; i<cs.length; i++) {
+            mark[i] = ((StripedCounter)cs[i]).get();
+        }
+        return mark;
+    }
+
+    /**
+     * Returns the counts of the calling thread in every counter since the
+     * given mark was taken.
+     *
+     * @param mark counts returned by {@link #mark()}.
+     * @return counts since the mark, or null if metrics are disabled.
+     */
+    public static long[] since(long[] mark) {
+        if (mark == null) {
+            return null;
+        }
+        final long[] counts = new long[mark.length];
+        for (int i=0; i<mark.length; i++) {
+            counts[i] = counters.get(i).get() - mark[i];
+        }
+        return counts;
+    }
+
+    /**
+     * Hands the given counts, performed by another (already joined) thread,
+     * over to the calling thread, so that its trackers account for them.
+     * They are not added again to the {@link #sum()} of the counters.
+     *
+     * @param counts counts returned by {@link #since(long[])}.
+     */
+    public static void adopt(long[] counts) {
+        if (counts == null) {
+            return;
+        }
+        for (int i=0; i<counts.length; i++) {
+            counters.get(i).cell.get().adopted += counts[i];
+        }
+    }
+
+    /**
+     * Returns the aggregated count of all the threads, sweeping the cells
+     * of the threads that have died.
+     *
+     * @return total count.
+     */
+    public synchronized long sum() {
+        long sum = 0;
+        for (Iterator<Cell> it = cells.iterator(); it.hasNext();) {
+            final Cell c = it.next();
+            if (c.owner.isAlive()) {
+                sum += c.value;
+            } else {
+                // Its final writes are visible once it is seen dead
+                retired += c.value;
+                it.remove();
+            }
+        }
+        return sum + retired;
+    }
+
+    /**
+     * Starts tracking the count performed on behalf of the calling thread
+     * for the given tracker.
+     *
+     * @param tracker tracker object.
+     */
+    public void addTracker(Object tracker) {
+        trackers.put(tracker, get());
+    }
+
+    /**
+     * Stops tracking on behalf of the given tracker, returning the amount
+     * counted on behalf of the calling thread (by any thread) since the
+     * tracker was added.
+     *
+     * @param tracker tracker object.
+     * @return amount counted since the tracker was added.
+     */
+    public long removeTracker(Object tracker) {
+        return get() - trackers.remove(tracker);
+    }
+
+}
@@ -38,7 +38,7 @@
 
 package es.csic.iiia.dcop.vp;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import java.util.ArrayList;
 
 /**
@@ -47,16 +47,16 @@ import java.util.ArrayList;
  */
 public class MappingResults {
 
-    private ArrayList<VariableAssignment> mappings;
+    private ArrayList<CompactAssignment> mappings;
     private ArrayList<Integer> uMap;
 
-    public MappingResults(ArrayList<VariableAssignment> mappings,
+    public MappingResults(ArrayList<CompactAssignment> mappings,
             ArrayList<Integer> uMap) {
         this.mappings = mappings;
         this.uMap = uMap;
     }
 
-    public ArrayList<VariableAssignment> getMappings() {
+    public ArrayList<CompactAssignment> getMappings() {
         return mappings;
     }
 
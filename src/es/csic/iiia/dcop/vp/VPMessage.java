@@ -39,7 +39,7 @@
 package es.csic.iiia.dcop.vp;
 
 import es.csic.iiia.dcop.Variable;
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.mp.Message;
 import java.util.ArrayList;
 import java.util.List;
@@ -54,27 +54,27 @@ import java.util.Set;
 public class VPMessage implements Message {
     final static double log2 = Math.log(2);
 
-    private ArrayList<VariableAssignment> mappings;
+    private ArrayList<CompactAssignment> mappings;
 
     public VPMessage() {
-        mappings = new ArrayList<VariableAssignment>();
+        mappings = new ArrayList<CompactAssignment>();
     }
-    public VPMessage(ArrayList<VariableAssignment> mappings) {
-        this.mappings = new ArrayList<VariableAssignment>(mappings);
+    public VPMessage(ArrayList<CompactAssignment> mappings) {
+        this.mappings = new ArrayList<CompactAssignment>(mappings);
     }
 
-    public void addMapping(VariableAssignment mapping) {
+    public void addMapping(CompactAssignment mapping) {
         mappings.add(mapping);
     }
 
-    public ArrayList<VariableAssignment> getMappings() {
+    public ArrayList<CompactAssignment> getMappings() {
         return mappings;
     }
 
     public void filter(Set<Variable> vars) {
-        ArrayList<VariableAssignment> newMappings =
-                new ArrayList<VariableAssignment>(mappings.size());
-        for (VariableAssignment map : mappings) {
+        ArrayList<CompactAssignment> newMappings =
+                new ArrayList<CompactAssignment>(mappings.size());
+        for (CompactAssignment map : mappings) {
             newMappings.add(map.filter(vars));
         }
         mappings = newMappings;
@@ -83,7 +83,7 @@ public class VPMessage implements Message {
     @Override
     public String toString() {
         StringBuilder buf = new StringBuilder("VP:");
-        for(VariableAssignment m : mappings) {
+        for(CompactAssignment m : mappings) {
             buf.append("\n\t").append(m.toString());
         }
         return buf.toString();
@@ -91,9 +91,9 @@ public class VPMessage implements Message {
 
     public long getBytes() {
         double bits = 0;
-        for(VariableAssignment m : mappings) {
+        for(CompactAssignment m : mappings) {
             if (m == null) continue;
-            for (Variable v : m.keySet()) {
+            for (Variable v : m.getVariables()) {
                 bits += requiredBits(v);
             }
         }
@@ -40,9 +40,9 @@ package es.csic.iiia.dcop.vp;
 
 import es.csic.iiia.dcop.CostFunction;
 import es.csic.iiia.dcop.CostFunctionFactory;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.ValuesArray;
 import es.csic.iiia.dcop.Variable;
-import es.csic.iiia.dcop.VariableAssignment;
 import es.csic.iiia.dcop.mp.AbstractNode;
 import es.csic.iiia.dcop.up.UPNode;
 import es.csic.iiia.dcop.vp.strategy.VPStrategy;
@@ -61,7 +61,7 @@ public class VPNode extends AbstractNode<VPEdge, VPResult> {
 
     private static Logger log = LoggerFactory.getLogger(VPGraph.class);
     
-    private ArrayList<VariableAssignment> mappings;
+    private ArrayList<CompactAssignment> mappings;
     private VPStrategy strategy;
     private ArrayList<Integer> upMappings;
 
@@ -78,7 +78,7 @@ public class VPNode extends AbstractNode<VPEdge, VPResult> {
 
     public void run() {
         // Receive incoming messages
-        mappings = new ArrayList<VariableAssignment>();
+        mappings = new ArrayList<CompactAssignment>();
         for(VPEdge e : getEdges()) {
             VPMessage msg = e.getMessage(this);
             if (msg != null) {
@@ -123,9 +123,9 @@ public class VPNode extends AbstractNode<VPEdge, VPResult> {
         if (log.isDebugEnabled()) {
             boolean fail = false;
             Set<Variable> vars = upnode.getVariables();
-            for (VariableAssignment a : mappings) {
+            for (CompactAssignment a : mappings) {
                 for (Variable v : vars) {
-                    if (!a.containsKey(v)) {
+                    if (!a.contains(v)) {
                         fail = true;
                         break;
                     }
@@ -163,7 +163,7 @@ public class VPNode extends AbstractNode<VPEdge, VPResult> {
         
         Collection<CostFunction> fs = upnode.getRelations();
 
-        for (VariableAssignment map : mappings) {
+        for (CompactAssignment map : mappings) {
             if (log.isTraceEnabled()) {
                 log.trace(map.toString());
             }
@@ -181,7 +181,7 @@ public class VPNode extends AbstractNode<VPEdge, VPResult> {
         return values;
     }
 
-    public VariableAssignment getMapping(int index) {
+    public CompactAssignment getMapping(int index) {
         return mappings.get(index);
     }
 
@@ -204,7 +204,7 @@ public class VPNode extends AbstractNode<VPEdge, VPResult> {
         this.strategy = strategy;
     }
 
-    ArrayList<VariableAssignment> getMappings() {
+    ArrayList<CompactAssignment> getMappings() {
         return mappings;
     }
 
@@ -38,7 +38,7 @@
 
 package es.csic.iiia.dcop.vp;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.mp.Result;
 import java.util.ArrayList;
 
@@ -49,13 +49,13 @@ import java.util.ArrayList;
  */
 public class VPResult implements Result {
 
-    private ArrayList<VariableAssignment> mappings;
+    private ArrayList<CompactAssignment> mappings;
 
     VPResult(VPNode node) {
         this.mappings = node.getMappings();
     }
 
-    public ArrayList<VariableAssignment> getMappings() {
+    public ArrayList<CompactAssignment> getMappings() {
         return mappings;
     }
 
@@ -63,7 +63,7 @@ public class VPResult implements Result {
     public String toString() {
         StringBuilder buf = new StringBuilder("Maps:");
         if (mappings != null) {
-            for (VariableAssignment map : mappings) {
+            for (CompactAssignment map : mappings) {
                 buf.append("\n\t").append(map);
             }
         } else {
@@ -38,7 +38,7 @@
 
 package es.csic.iiia.dcop.vp.strategy;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 
 /**
  *
@@ -46,11 +46,11 @@ import es.csic.iiia.dcop.VariableAssignment;
  */
 public abstract class CandidateSolution {
     protected double cost;
-    protected VariableAssignment parentAssignment;
-    protected VariableAssignment assignment;
+    protected CompactAssignment parentAssignment;
+    protected CompactAssignment assignment;
     protected int parentIndex;
 
-    public CandidateSolution(int parentIndex, VariableAssignment parentAssignment) {
+    public CandidateSolution(int parentIndex, CompactAssignment parentAssignment) {
         this.parentAssignment = parentAssignment;
         this.parentIndex = parentIndex;
     }
@@ -61,7 +61,7 @@ public abstract class CandidateSolution {
         return cost;
     }
 
-    public VariableAssignment getAssignment() {
+    public CompactAssignment getAssignment() {
         return assignment;
     }
 
@@ -41,7 +41,7 @@ package es.csic.iiia.dcop.vp.strategy;
 import es.csic.iiia.dcop.vp.strategy.expansion.ExpansionStrategy;
 import es.csic.iiia.dcop.vp.strategy.solving.SolvingStrategy;
 import es.csic.iiia.dcop.CostFunction;
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.gdlf.GdlFNode;
 import es.csic.iiia.dcop.up.UPNode;
 import es.csic.iiia.dcop.vp.MappingResults;
@@ -69,10 +69,10 @@ public class VPStrategy {
         this.solving = solving;
     }
 
-    public MappingResults getExtendedMappings(ArrayList<VariableAssignment> mappings, UPNode upnode) {
+    public MappingResults getExtendedMappings(ArrayList<CompactAssignment> mappings, UPNode upnode) {
 
         if (mappings.isEmpty()) {
-            mappings.add(new VariableAssignment());
+            mappings.add(new CompactAssignment());
         }
 
 
@@ -99,20 +99,20 @@ public class VPStrategy {
 
     private class SolutionExplorer {
         private PriorityQueue<CandidateSolution> candidates = null;
-        private ArrayList<VariableAssignment> maps;
+        private ArrayList<CompactAssignment> maps;
         private ArrayList<Integer> upper;
 
         public SolutionExplorer(UPNode node,
-                ArrayList<VariableAssignment> upMaps, int expand)
+                ArrayList<CompactAssignment> upMaps, int expand)
         {
             CostFunction.Summarize sum = node.getFactory().getSummarizeOperation();
 
-            maps = new ArrayList<VariableAssignment>();
+            maps = new ArrayList<CompactAssignment>();
             upper = new ArrayList<Integer>();
 
             // Firstly, we need to expand the initial mappings
             int parent=0;
-            for (VariableAssignment map : upMaps) {
+            for (CompactAssignment map : upMaps) {
 
                 ArrayList<CostFunction> rb = node.getReducedBelief(map);
                 CandidateSolution candidate = null;
@@ -162,7 +162,7 @@ public class VPStrategy {
         @Override
         public String toString() {
             StringBuilder buf = new StringBuilder("Mappings:\n");
-            for(VariableAssignment map : maps) {
+            for(CompactAssignment map : maps) {
                 buf.append(map).append("\n");
             }
             return buf.toString();
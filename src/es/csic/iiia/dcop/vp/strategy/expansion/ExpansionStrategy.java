@@ -38,7 +38,7 @@
 
 package es.csic.iiia.dcop.vp.strategy.expansion;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.up.UPNode;
 import java.util.ArrayList;
 
@@ -48,6 +48,6 @@ import java.util.ArrayList;
  */
 public interface ExpansionStrategy {
     public int getNumberOfSolutionsToExpand(
-            ArrayList<VariableAssignment> mappings,
+            ArrayList<CompactAssignment> mappings,
             UPNode upnode);
 }
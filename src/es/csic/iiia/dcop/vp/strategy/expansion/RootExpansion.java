@@ -38,7 +38,7 @@
 
 package es.csic.iiia.dcop.vp.strategy.expansion;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.up.UPNode;
 import es.csic.iiia.dcop.vp.strategy.VPStrategy;
 import java.util.ArrayList;
@@ -49,7 +49,7 @@ import java.util.ArrayList;
  */
 public class RootExpansion implements ExpansionStrategy {
 
-    public int getNumberOfSolutionsToExpand(ArrayList<VariableAssignment> mappings, UPNode upnode) {
+    public int getNumberOfSolutionsToExpand(ArrayList<CompactAssignment> mappings, UPNode upnode) {
         if (upnode.isRoot()) {
             return VPStrategy.numberOfSolutions - mappings.size();
         }
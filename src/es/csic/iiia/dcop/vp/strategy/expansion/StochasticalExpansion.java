@@ -38,7 +38,7 @@
 
 package es.csic.iiia.dcop.vp.strategy.expansion;
 
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.up.UPNode;
 import es.csic.iiia.dcop.vp.strategy.VPStrategy;
 import java.util.ArrayList;
@@ -50,7 +50,7 @@ import java.util.ArrayList;
 public class StochasticalExpansion implements ExpansionStrategy {
     public static double p = 0.9;
 
-    public int getNumberOfSolutionsToExpand(ArrayList<VariableAssignment> mappings, UPNode node) {
+    public int getNumberOfSolutionsToExpand(ArrayList<CompactAssignment> mappings, UPNode node) {
         int remaining = VPStrategy.numberOfSolutions - mappings.size();
 
         int solutions = 0;
@@ -42,7 +42,7 @@ import es.csic.iiia.dcop.vp.strategy.solving.SolvingStrategy;
 import es.csic.iiia.dcop.CostFunction;
 import es.csic.iiia.dcop.FactorGraph;
 import es.csic.iiia.dcop.Variable;
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.dsa.DSA;
 import es.csic.iiia.dcop.dsa.DSAResults;
 import es.csic.iiia.dcop.vp.strategy.CandidateSolution;
@@ -56,7 +56,7 @@ import java.util.HashSet;
 public class DSASolvingStrategy implements SolvingStrategy {
 
     public CandidateSolution getCandidateSolution(ArrayList<CostFunction> fs,
-            int parentIndex, VariableAssignment parentAssignment) {
+            int parentIndex, CompactAssignment parentAssignment) {
 
         // Sparsity check!
         double sparsity = 0;
@@ -81,7 +81,7 @@ public class DSASolvingStrategy implements SolvingStrategy {
     private class DSACandidateSolution extends CandidateSolution {
         private FactorGraph fg;
 
-        public DSACandidateSolution(FactorGraph fg, int parentIndex, VariableAssignment parentAssignment) {
+        public DSACandidateSolution(FactorGraph fg, int parentIndex, CompactAssignment parentAssignment) {
             super(parentIndex, parentAssignment);
             this.fg = fg;
 
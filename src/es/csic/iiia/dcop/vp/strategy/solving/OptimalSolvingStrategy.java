@@ -39,12 +39,19 @@
 package es.csic.iiia.dcop.vp.strategy.solving;
 
 import es.csic.iiia.dcop.CostFunction;
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
+import es.csic.iiia.dcop.IterationPlan;
+import es.csic.iiia.dcop.ReducedCostFunction;
+import es.csic.iiia.dcop.Variable;
 import es.csic.iiia.dcop.up.UPNode;
 import es.csic.iiia.dcop.vp.VPGraph;
 import es.csic.iiia.dcop.vp.strategy.CandidateSolution;
 import es.csic.iiia.dcop.vp.strategy.VPStrategy;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.array.TLongArrayList;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Random;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,7 +64,7 @@ public class OptimalSolvingStrategy implements SolvingStrategy {
     private static Logger log = LoggerFactory.getLogger(VPGraph.class);
 
     public int getNumberOfSolutionsToExpand(
-            ArrayList<VariableAssignment> mappings,
+            ArrayList<CompactAssignment> mappings,
             UPNode upnode)
     {
         int solutionsToTry = 0;
@@ -76,32 +83,137 @@ public class OptimalSolvingStrategy implements SolvingStrategy {
     }
 
     public CandidateSolution getCandidateSolution(ArrayList<CostFunction> fs,
-            int parentIndex, VariableAssignment parentAssignment)
+            int parentIndex, CompactAssignment parentAssignment)
     {
-        CostFunction belief = fs.remove(fs.size()-1).combine(fs);
-        return new OptimalCandidateSolution(belief, parentIndex, parentAssignment);
+        return new OptimalCandidateSolution(fs, parentIndex, parentAssignment);
     }
 
     private class OptimalCandidateSolution extends CandidateSolution {
 
+        /**
+         * (Reduced) factors whose combination is the belief.
+         */
+        private ArrayList<CostFunction> factors;
+
+        /**
+         * Best assignment, found without materializing the belief.
+         */
+        private CompactAssignment best;
+
+        /**
+         * Combined belief, only materialized when further candidates are
+         * requested.
+         */
         private CostFunction belief;
 
-        public OptimalCandidateSolution(CostFunction belief, int parentIndex, VariableAssignment parentAssignment) {
+        /**
+         * Belief tuples from best to worst, shared by all the candidates
+         * of this belief.
+         */
+        private TLongIterator tuples;
+
+        public OptimalCandidateSolution(ArrayList<CostFunction> factors,
+                int parentIndex, CompactAssignment parentAssignment)
+        {
             super(parentIndex, parentAssignment);
-            this.belief = belief;
-            this.assignment = belief.getOptimalConfiguration(null);
+            this.factors = factors;
+            findOptimalAssignment();
+            this.assignment.putAll(parentAssignment);
+            this.best = assignment;
+        }
+
+        private OptimalCandidateSolution(OptimalCandidateSolution previous, long index) {
+            super(previous.parentIndex, previous.parentAssignment);
+            this.factors = previous.factors;
+            this.best = previous.best;
+            this.belief = previous.belief;
+            this.tuples = previous.tuples;
+            this.assignment = belief.getAssignment(index, null);
             this.assignment.putAll(parentAssignment);
             this.cost = belief.getValue(assignment);
         }
 
+        /**
+         * Finds the best assignment of the combination of the factors in a
+         * single pass, reading reduced views straight from their parents'
+         * storage. Ties are broken at random.
+         */
+        private void findOptimalAssignment() {
+            if (factors.isEmpty()) {
+                assignment = new CompactAssignment();
+                return;
+            }
+
+            final CostFunction.Combine com = factors.get(0).getFactory().getCombineOperation();
+            final CostFunction.Summarize sum = factors.get(0).getFactory().getSummarizeOperation();
+            final int n = factors.size();
+
+            LinkedHashSet<Variable> vars = new LinkedHashSet<Variable>();
+            for (CostFunction f : factors) {
+                vars.addAll(f.getVariableSet());
+            }
+            final Variable[] union = vars.toArray(new Variable[0]);
+
+            final CostFunction[] targets = new CostFunction[n];
+            final long[] bases = new long[n];
+            final IterationPlan[] plans = new IterationPlan[n];
+            for (int i=0; i<n; i++) {
+                final CostFunction f = factors.get(i);
+                if (f instanceof ReducedCostFunction) {
+                    targets[i] = ((ReducedCostFunction)f).getParent();
+                    bases[i] = ((ReducedCostFunction)f).getBase();
+                } else {
+                    targets[i] = f;
+                }
+                plans[i] = IterationPlan.get(union,
+                        targets[i].getVariableSet().toArray(new Variable[0]));
+            }
+
+            TLongArrayList optima = new TLongArrayList();
+            double optimal = sum.getNoGood();
+            IterationPlan.Odometer it = IterationPlan.odometer(plans);
+            final long[] idxs = it.getIndices();
+            do {
+                double v = targets[0].getValue(bases[0] + idxs[0]);
+                for (int i=1; i<n; i++) {
+                    v = com.eval(v, targets[i].getValue(bases[i] + idxs[i]));
+                }
+                if (sum.isBetter(v, optimal)) {
+                    optimal = v;
+                    optima.clear();
+                    optima.add(it.getPosition());
+                } else if (v == optimal) {
+                    optima.add(it.getPosition());
+                }
+            } while (it.next());
+
+            long position = optima.get(new Random().nextInt(optima.size()));
+            assignment = new CompactAssignment(union.length);
+            for (int j=union.length-1; j>=0; j--) {
+                final int d = union[j].getDomain();
+                assignment.put(union[j], (int)(position % d));
+                position /= d;
+            }
+            cost = optimal;
+        }
+
         @Override
         public CandidateSolution next() {
-            belief.setValue(belief.getIndex(assignment),
-                    belief.getFactory().getSummarizeOperation().getNoGood());
-            if (belief.getNumberOfNoGoods() == belief.getSize()) {
-                return null;
+            if (belief == null) {
+                ArrayList<CostFunction> fs = new ArrayList<CostFunction>(factors);
+                belief = fs.remove(fs.size()-1).combine(fs);
+                tuples = belief.bestFirstIterator();
+            }
+
+            // Skip the optimal assignment, which was already found
+            while (tuples.hasNext()) {
+                OptimalCandidateSolution candidate =
+                        new OptimalCandidateSolution(this, tuples.next());
+                if (!candidate.assignment.equals(best)) {
+                    return candidate;
+                }
             }
-            return new OptimalCandidateSolution(belief, parentIndex, parentAssignment);
+            return null;
         }
 
     }
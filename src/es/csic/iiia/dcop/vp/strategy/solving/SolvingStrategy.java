@@ -39,7 +39,7 @@
 package es.csic.iiia.dcop.vp.strategy.solving;
 
 import es.csic.iiia.dcop.CostFunction;
-import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.vp.strategy.CandidateSolution;
 import java.util.ArrayList;
 
@@ -51,6 +51,6 @@ public interface SolvingStrategy {
 
     public CandidateSolution getCandidateSolution(
             ArrayList<CostFunction> factors,
-            int parentIndex, VariableAssignment parentAssignment);
+            int parentIndex, CompactAssignment parentAssignment);
 
 }
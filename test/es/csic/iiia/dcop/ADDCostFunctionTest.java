@@ -0,0 +1,158 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.dcop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class ADDCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        CostFunctionTypeFactory cff = new ADDCostFunctionFactory(f);
+        f.setDenseFactory(cff);
+        f.setSparseFactory(cff);
+        return f;
+    }
+
+    /**
+     * Test that functions depending on a single variable are stored as a
+     * single test, regardless of the function's scope.
+     */
+    @Test
+    public void testStructureSharing() {
+        ADDCostFunction f = (ADDCostFunction)factory.buildCostFunction(new Variable[]{a,b,c}, 0);
+        assertEquals(1, f.getNumberOfNodes());
+        for (int i=0; i<f.getSize(); i++) {
+            f.setValue(i, i/6 + 1);
+        }
+        assertEquals(3, f.getNumberOfNodes());
+        assertEquals(3, ((ADDCostFunction)f.summarize(new Variable[]{a})).getNumberOfNodes());
+    }
+
+    /**
+     * Test combination and summarization of functions with different
+     * variable orders.
+     */
+    @Test
+    public void testCombineSummarizeOrders() {
+        factory.setMode(CostFunction.Summarize.SUM, CostFunction.Combine.PRODUCT,
+                CostFunction.Normalize.NONE);
+        CostFunction f = factory.buildCostFunction(new Variable[]{c,a}, 0);
+        f.setValues(new double[]{1, 2, 3, 4, 5, 6});
+        CostFunction g = factory.buildCostFunction(new Variable[]{b,a}, 0);
+        g.setValues(new double[]{1, 2, 3, 4});
+
+        CostFunction res = factory.buildCostFunction(new Variable[]{a}, 0);
+        res.setValues(new double[]{(1+3+5)*(1+3), (2+4+6)*(2+4)});
+        assertEquals(res, f.combine(g).summarize(new Variable[]{a}));
+    }
+
+    /**
+     * Test that the fused combination and summarization matches combining
+     * first and summarizing afterwards, for every operating mode.
+     */
+    @Test
+    public void testFusedCombineAndSummarize() {
+        Random r = new Random(0);
+        for (CostFunction.Summarize sum : CostFunction.Summarize.values()) {
+            for (CostFunction.Combine com : CostFunction.Combine.values()) {
+                factory.setMode(sum, com, CostFunction.Normalize.NONE);
+                final double ng = sum.getNoGood();
+                CostFunction f = factory.buildCostFunction(new Variable[]{c,a}, 0);
+                CostFunction g = factory.buildCostFunction(new Variable[]{b,d}, 0);
+                CostFunction h = factory.buildCostFunction(new Variable[]{d,a}, 0);
+                for (CostFunction x : new CostFunction[]{f, g, h}) {
+                    for (int i=0; i<x.getSize(); i++) {
+                        x.setValue(i, r.nextInt(4) == 0 ? ng : r.nextInt(3) + 1);
+                    }
+                }
+                ArrayList<CostFunction> fs = new ArrayList<CostFunction>();
+                fs.add(g);
+                fs.add(h);
+                for (Variable[] vars : new Variable[][]{{a}, {d,c}, {}, {b,c,a,d}}) {
+                    assertEquals(f.combine(fs).summarize(vars),
+                            f.combineAndSummarize(fs, vars));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a few point writes are patched into the diagram, and that
+     * the lazy iterators only visit the good configurations.
+     */
+    @Test
+    public void testPatchedWrites() {
+        factory.setMode(CostFunction.Summarize.MIN, CostFunction.Combine.SUM,
+                CostFunction.Normalize.NONE);
+        final double ng = Double.POSITIVE_INFINITY;
+        Variable x = new Variable("x", 4), y = new Variable("y", 4), z = new Variable("z", 4);
+        ADDCostFunction f = (ADDCostFunction)factory.buildCostFunction(new Variable[]{z,x,y}, ng);
+        f.setValue(37, 2); f.setValue(5, 1); f.setValue(63, 3);
+        assertEquals(2, f.getValue(37), 0);
+        assertEquals(ng, f.getValue(36), 0);
+        assertEquals(61, f.getNumberOfNoGoods());
+        f.setValue(37, ng);
+        assertEquals(62, f.getNumberOfNoGoods());
+
+        double[] expected = new double[64];
+        Arrays.fill(expected, ng);
+        expected[5] = 1; expected[63] = 3;
+        assertArrayEquals(expected, f.getValues(), 0);
+
+        MasterIterator it = f.masterIterator();
+        int n = 0;
+        while (it.hasNext()) {
+            final long idx = it.next();
+            assertArrayEquals(f.indexToSubindex(idx), it.getIndices());
+            assertFalse(f.getValue(idx) == ng);
+            n++;
+        }
+        assertEquals(2, n);
+    }
+
+}
@@ -44,6 +44,8 @@ import java.util.Arrays;
 import gnu.trove.iterator.TLongIterator;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import es.csic.iiia.dcop.util.ConstraintChecks;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -707,6 +709,58 @@ public abstract class CostFunctionTest {
     }
 
 
+    @Test
+    public void testTiledFilter() {
+        for (CostFunction.Summarize op : new CostFunction.Summarize[]{
+                CostFunction.Summarize.MAX, CostFunction.Summarize.MIN}) {
+            factory.setSummarizeOperation(op);
+            factory.setCombineOperation(CostFunction.Combine.SUM);
+            factory.setNormalizationType(CostFunction.Normalize.NONE);
+            final double sign = op == CostFunction.Summarize.MAX ? 1 : -1;
+
+            // Each tile is (in the summarization sense) better than the last
+            Variable x = new Variable("x", 64);
+            Variable y = new Variable("y", 64);
+            Random r = new Random(0);
+            CostFunction cf = factory.buildCostFunction(new Variable[]{x,y}, 0);
+            double[] values = new double[(int)cf.getSize()];
+            for (int i=0; i<values.length; i++) {
+                values[i] = sign*(TileSummary.getTile(i)*10 + r.nextDouble());
+            }
+            cf.setValues(values);
+            CostFunction fy = factory.buildCostFunction(new Variable[]{y}, 0);
+            for (int i=0; i<fy.getSize(); i++) {
+                fy.setValue(i, sign*r.nextDouble());
+            }
+
+            TileSummary summary = ((AbstractCostFunction)cf).getTileSummary();
+            if (summary != null) {
+                assertEquals(values.length >> TileSummary.TILE_BITS, summary.getTiles());
+                assertEquals(21, summary.getBest(2)*sign, 0.01);
+
+                // Writes keep the summary up to date, without scanning again
+                final long ccs = ConstraintChecks.getTotal();
+                cf.setValue(0, sign*100);
+                summary = ((AbstractCostFunction)cf).getTileSummary();
+                assertEquals(sign*100, summary.getBest(0), 0.0001);
+                assertEquals(ccs, ConstraintChecks.getTotal());
+                cf.setValue(0, values[0]);
+            }
+
+            ArrayList<CostFunction> fs = new ArrayList<CostFunction>();
+            fs.add(fy);
+            for (double bound : new double[]{sign*11.5, sign*15, sign*25.5, sign*40}) {
+                TileSummary.ENABLED = false;
+                CostFunction expected = cf.filter(fs, bound);
+                TileSummary.ENABLED = true;
+                CostFunction actual = cf.filter(fs, bound);
+                assertEquals(expected, actual);
+                assertEquals(expected.getNumberOfNoGoods(), actual.getNumberOfNoGoods());
+            }
+        }
+    }
+
+
     /**
      * Test of combine method, of class CostFunction.
      */
@@ -792,6 +846,277 @@ public abstract class CostFunctionTest {
         assertSame(com.getFactory(), res.getFactory());
     }
     
+    /**
+     * Test of combineAndSummarize method, of class CostFunction.
+     */
+    @Test
+    public void testCombineAndSummarize1() {
+        ArrayList<CostFunction> fs = new ArrayList<CostFunction>();
+        fs.add(fda);
+        fs.add(fdc);
+        for (CostFunction.Summarize sum : CostFunction.Summarize.values()) {
+            for (CostFunction.Combine com : CostFunction.Combine.values()) {
+                if (com.getNeutralValue() == sum.getNoGood()) {
+                    // Degenerate mode, sparse representations drop its values
+                    continue;
+                }
+                factory.setMode(sum, com, CostFunction.Normalize.NONE);
+                Variable[] vars = new Variable[]{c,a};
+                CostFunction res = f1.combine(fs).summarize(vars);
+                CostFunction cs = f1.combineAndSummarize(fs, vars);
+                assertEquals(res, cs);
+                assertSame(cs.getFactory(), res.getFactory());
+            }
+        }
+    }
+
+    /**
+     * Test of combineAndSummarize method to the empty scope, of class
+     * CostFunction.
+     */
+    @Test
+    public void testCombineAndSummarize2() {
+        factory.setMode(CostFunction.Summarize.MAX, CostFunction.Combine.PRODUCT,
+                CostFunction.Normalize.NONE);
+        ArrayList<CostFunction> fs = new ArrayList<CostFunction>();
+        fs.add(fb);
+        fs.add(null);
+        CostFunction cs = fa.combineAndSummarize(fs, new Variable[0]);
+        CostFunction res = factory.buildCostFunction(new Variable[0], 0.42);
+        assertEquals(res, cs);
+    }
+
+    /**
+     * Test of combineAndSummarize method with sparse functions, of class
+     * CostFunction.
+     */
+    @Test
+    public void testCombineAndSummarizeSparse() {
+        factory.setMode(CostFunction.Summarize.MIN, CostFunction.Combine.SUM,
+                CostFunction.Normalize.NONE);
+        final double ng = factory.getSummarizeOperation().getNoGood();
+
+        ArrayList<CostFunction> fs = new ArrayList<CostFunction>();
+        CostFunction sf  = factory.buildCostFunction(new Variable[]{c}, ng);
+        sf.setValues(new double[]{ng, ng, 1.0});
+        fs.add(sf);
+        fs.add(fdc);
+        Variable[] vars = new Variable[]{d};
+        assertEquals(f1.combine(fs).summarize(vars), f1.combineAndSummarize(fs, vars));
+    }
+
+    /**
+     * Test of combineInto method, of class CostFunction.
+     */
+    @Test
+    public void testCombineInto() {
+        factory.setMode(CostFunction.Summarize.MIN, CostFunction.Combine.SUM,
+                CostFunction.Normalize.NONE);
+        ArrayList<CostFunction> fs = new ArrayList<CostFunction>();
+        fs.add(fda);
+        fs.add(fdc);
+        CostFunction dst = factory.buildCostFunction(new Variable[]{a,b,c,d}, 0);
+        assertSame(dst, f1.combineInto(fs, dst));
+        assertEquals(f1.combine(fs), dst);
+
+        // The destination may be one of the operands
+        CostFunction expected = f1.combine(fa);
+        assertSame(f1, f1.combineInto(fa, f1));
+        assertEquals(expected, f1);
+    }
+
+    /**
+     * Test of combineInto method with a destination over the wrong
+     * variables, of class CostFunction.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testCombineIntoInvalidDestination() {
+        CostFunction dst = factory.buildCostFunction(new Variable[]{a,b}, 0);
+        f1.combineInto(fa, dst);
+    }
+
+    /**
+     * Test of summarizeInto method, of class CostFunction.
+     */
+    @Test
+    public void testSummarizeInto() {
+        factory.setMode(CostFunction.Summarize.MAX, CostFunction.Combine.PRODUCT,
+                CostFunction.Normalize.NONE);
+        CostFunction dst = factory.buildCostFunction(new Variable[]{c,a}, 5);
+        assertSame(dst, f1.summarizeInto(dst));
+        assertEquals(f1.summarize(new Variable[]{c,a}), dst);
+    }
+
+    /**
+     * Test of negateInto method, of class CostFunction.
+     */
+    @Test
+    public void testNegateInto() {
+        factory.setCombineOperation(CostFunction.Combine.SUM);
+        CostFunction dst = factory.buildCostFunction(new Variable[]{c,d}, 0);
+        assertSame(dst, fdc.negateInto(dst));
+        assertEquals(fdc.negate(), dst);
+
+        dst = factory.buildCostFunction(new Variable[]{d,c}, 0);
+        assertSame(dst, fdc.negateInto(dst));
+        assertEquals(fdc.negate(), dst);
+    }
+
+    /**
+     * Test of the in-place negate, invert and normalize methods, of class
+     * CostFunction.
+     */
+    @Test
+    public void testInPlace() {
+        factory.setMode(CostFunction.Summarize.MIN, CostFunction.Combine.SUM,
+                CostFunction.Normalize.SUM0);
+        CostFunction expected = f1.negate();
+        f1.negateInPlace();
+        assertEquals(expected, f1);
+
+        expected = f1.invert();
+        f1.invertInPlace();
+        assertEquals(expected, f1);
+
+        expected = f1.normalize();
+        f1.normalizeInPlace();
+        assertEquals(expected, f1);
+
+        factory.setMode(CostFunction.Summarize.MAX, CostFunction.Combine.PRODUCT,
+                CostFunction.Normalize.SUM1);
+        expected = fdc.negate();
+        fdc.negateInPlace();
+        assertEquals(expected, fdc);
+
+        expected = fdc.normalize();
+        fdc.normalizeInPlace();
+        assertEquals(expected, fdc);
+    }
+
+    @Test
+    public void testOperationCache() {
+        CostFunction expectedS = f1.summarize(new Variable[]{a});
+        CostFunction expectedC = f1.combine(fdc);
+
+        OperationCache cache = new OperationCache();
+        factory.setOperationCache(cache);
+        CostFunction s1 = f1.summarize(new Variable[]{a});
+        CostFunction s2 = f1.summarize(new Variable[]{a});
+        assertNotSame(s1, s2);
+        assertEquals(expectedS, s1);
+        assertEquals(expectedS, s2);
+        assertEquals(expectedC, f1.combine(fdc));
+        assertEquals(expectedC, f1.combine(fdc));
+        assertEquals(2, cache.getHits());
+
+        // Modifying an operand invalidates its results
+        f1.setValue(0, 10);
+        factory.setOperationCache(null);
+        expectedS = f1.summarize(new Variable[]{a});
+        factory.setOperationCache(cache);
+        assertEquals(expectedS, f1.summarize(new Variable[]{a}));
+        assertEquals(2, cache.getHits());
+
+        // And so does modifying a result
+        CostFunction s3 = f1.summarize(new Variable[]{b});
+        s3.setValue(0, 20);
+        assertFalse(s3.equals(f1.summarize(new Variable[]{b})));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        final double[] original = f1.getValues().clone();
+
+        // Modifying a copy leaves the original untouched
+        CostFunction copy = factory.buildCostFunction(f1);
+        CostFunction copy2 = factory.buildCostFunction(copy);
+        copy.setValue(0, 100);
+        assertEquals(100, copy.getValue(0), 0.0001);
+        assertEquals(original[0], f1.getValue(0), 0.0001);
+        assertEquals(original[0], copy2.getValue(0), 0.0001);
+
+        // And the other way around
+        copy = factory.buildCostFunction(f1);
+        f1.setValue(1, 100);
+        assertEquals(original[1], copy.getValue(1), 0.0001);
+        assertEquals(original[1], copy2.getValue(1), 0.0001);
+        f1.setValue(1, original[1]);
+
+        // Also for in-place and bulk modifications
+        copy = factory.buildCostFunction(f1);
+        copy.negateInPlace();
+        copy.setValues(new double[(int)copy.getSize()]);
+        for (int i=0; i<original.length; i++) {
+            assertEquals(original[i], f1.getValue(i), 0.0001);
+            assertEquals(original[i], copy2.getValue(i), 0.0001);
+            assertEquals(0, copy.getValue(i), 0.0001);
+        }
+        factory.buildCostFunction(f1).normalize();
+        assertArrayEquals(original, f1.getValues(), 0.0001);
+    }
+
+    @Test
+    public void testContentHash() {
+        CostFunction copy = factory.buildCostFunction(f1);
+        assertEquals(f1.getContentHash(), copy.getContentHash());
+        assertEquals(f1, copy);
+
+        // The hash does not depend on the representation
+        CostFunction map = new MapCostFunctionFactory(factory).buildCostFunction(f1);
+        assertEquals(f1.getContentHash(), map.getContentHash());
+
+        // Nor on the variables' order
+        CostFunction reordered = factory.buildCostFunction(new Variable[]{b,a,c}, 0);
+        reordered.setValues(f1.summarize(new Variable[]{b,a,c}).getValues());
+        assertEquals(f1, reordered);
+        assertEquals(f1.getContentHash(), reordered.getContentHash());
+
+        // But it does on the values
+        copy.setValue(0, copy.getValue(0) + 1);
+        assertFalse(f1.getContentHash() == copy.getContentHash());
+        assertFalse(f1.equals(copy));
+    }
+
+    @Test
+    public void testIntern() {
+        CostFunctionInterner interner = new CostFunctionInterner();
+        assertSame(f1, interner.intern(f1));
+        assertSame(f1, interner.intern(factory.buildCostFunction(f1)));
+        assertSame(fda, interner.intern(fda));
+        assertEquals(1, interner.getHits());
+
+        // Modified functions are no longer canonical
+        f1.setValue(0, 10);
+        CostFunction copy = factory.buildCostFunction(f1);
+        assertSame(copy, interner.intern(copy));
+    }
+
+    @Test
+    public void testBestFirstIterator() {
+        for (CostFunction.Summarize sum : new CostFunction.Summarize[]{
+                CostFunction.Summarize.MAX, CostFunction.Summarize.MIN})
+        {
+            factory.setSummarizeOperation(sum);
+            CostFunction f = factory.buildCostFunction(new Variable[]{a,b,c}, 0);
+            f.setValues(f1.getValues());
+            f.setValue(3, sum.getNoGood());
+            final double best = f.getValue(f.getOptimalConfiguration(null));
+
+            TLongIterator it = f.bestFirstIterator();
+            double previous = best;
+            int n = 0;
+            while (it.hasNext()) {
+                final double v = f.getValue(it.next());
+                assertFalse(sum.isBetter(v, previous));
+                previous = v;
+                n++;
+            }
+            assertEquals(f.getSize() - 1, n);
+            assertEquals(best, f.getValue(f.bestFirstIterator().next()), 0);
+        }
+    }
+
     @Test
     public void testCombineXunguissim() {
         factory.setSummarizeOperation(CostFunction.Summarize.MIN);
@@ -1072,6 +1397,137 @@ public abstract class CostFunctionTest {
         assertEquals(expected, actual);
     }
 
+    /**
+     * Test of reduce method with primitive assignments, of class
+     * CostFunction.
+     */
+    @Test
+    public void testCompactReduce() {
+        Variable[][] fixes = new Variable[][]{{a}, {b}, {c}, {a,c}, {a,b,c}};
+        for (Variable[] fix : fixes) {
+            VariableAssignment map = new VariableAssignment();
+            CompactAssignment assignment = new CompactAssignment();
+            for (Variable v : fix) {
+                map.put(v, 1);
+                assignment.put(v, 1);
+            }
+            assertEquals(f1.reduce(map), f1.reduce(assignment));
+            assertEquals(f1.getValue(map), f1.getValue(assignment), 0);
+            assertEquals(f1.getIndex(map), f1.getIndex(assignment));
+        }
+    }
+
+    @Test
+    public void testReduceView() {
+        Variable[][] fixes = new Variable[][]{{}, {a}, {b}, {c}, {a,c}, {b,c}, {a,b,c}};
+        for (Variable[] fix : fixes) {
+            CompactAssignment assignment = new CompactAssignment();
+            for (Variable v : fix) {
+                assignment.put(v, v.getDomain()-1);
+            }
+            CostFunction expected = f1.reduce(assignment);
+            CostFunction view = f1.reduceView(assignment);
+            assertEquals(expected, view);
+            assertEquals(expected.getNumberOfNoGoods(), view.getNumberOfNoGoods());
+            assertEquals(expected.combine(fda), view.combine(fda));
+            assertEquals(expected, factory.buildCostFunction(view));
+        }
+
+        // Views remap straight into their parent
+        CompactAssignment assignment = new CompactAssignment();
+        assignment.put(b, 1);
+        CostFunction view = f1.reduceView(assignment);
+        if (view instanceof ReducedCostFunction) {
+            assertSame(f1, ((ReducedCostFunction)view).getParent());
+            VariableAssignment map = new VariableAssignment();
+            map.put(a, 1); map.put(b, 1); map.put(c, 2);
+            assertEquals(f1.getValue(map), view.getValue(map), 0);
+            try {
+                view.setValue(0, 0);
+                fail("Reduced views must be read-only");
+            } catch (UnsupportedOperationException e) {}
+        }
+    }
+
+    /**
+     * Test of reduce method with sparse functions and primitive assignments,
+     * of class CostFunction.
+     */
+    @Test
+    public void testCompactSparseReduce() {
+        factory.setMode(CostFunction.Summarize.MIN, CostFunction.Combine.SUM,
+                CostFunction.Normalize.NONE);
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        CostFunction fun = factory.buildSparseCostFunction(new Variable[]{a,b,c}, ng);
+        fun.setValue(5, 1.5);
+        fun.setValue(11, 2.5);
+
+        CompactAssignment assignment = new CompactAssignment();
+        assignment.put(c, 2);
+        CostFunction expected = factory.buildSparseCostFunction(new Variable[]{a,b}, ng);
+        expected.setValue(1, 1.5);
+        expected.setValue(3, 2.5);
+        assertEquals(expected, fun.reduce(assignment));
+    }
+
+    /**
+     * Test of getAssignment and getOptimalAssignment methods, of class
+     * CostFunction.
+     */
+    @Test
+    public void testCompactAssignments() {
+        for (long i=0; i<f1.getSize(); i++) {
+            assertEquals(new CompactAssignment(f1.getMapping(i, null)),
+                    f1.getAssignment(i, null));
+        }
+
+        factory.setMode(CostFunction.Summarize.MAX, CostFunction.Combine.PRODUCT,
+                CostFunction.Normalize.NONE);
+        CompactAssignment assignment = new CompactAssignment();
+        assignment.put(d, 1);
+        assignment = f1.getOptimalAssignment(assignment);
+        assertEquals(4, assignment.size());
+        assertEquals(1, assignment.get(d));
+        assertEquals(0.2, f1.getValue(assignment), 0.0001);
+    }
+
+    /**
+     * Test that primitive assignments only span their assigned identifiers,
+     * whatever their order of insertion.
+     */
+    @Test
+    public void testCompactAssignmentWindow() {
+        Variable[] vs = new Variable[300];
+        for (int i=0; i<vs.length; i++) {
+            vs[i] = new Variable(2);
+        }
+
+        CompactAssignment assignment = new CompactAssignment(1);
+        assignment.put(vs[299], 1);
+        assignment.put(vs[150], 0);
+        assignment.put(vs[0], 1);
+        assertEquals(3, assignment.size());
+        assertEquals(1, assignment.get(vs[299]));
+        assertEquals(0, assignment.get(vs[150]));
+        assertEquals(1, assignment.get(vs[0]));
+        assertEquals(-1, assignment.get(vs[1]));
+        assertArrayEquals(new Variable[]{vs[0], vs[150], vs[299]},
+                assignment.getVariables());
+
+        CompactAssignment copy = new CompactAssignment(assignment);
+        assertEquals(assignment, copy);
+        assertEquals(assignment.hashCode(), copy.hashCode());
+        copy.remove(vs[0]);
+        assertFalse(assignment.equals(copy));
+        assertFalse(copy.contains(vs[0]));
+
+        CompactAssignment filtered = assignment.filter(
+                new HashSet<Variable>(Arrays.asList(vs[150], vs[299], vs[2])));
+        assertEquals(copy, filtered);
+        assertEquals(filtered, new CompactAssignment(filtered));
+        assertEquals(new CompactAssignment(), new CompactAssignment(new CompactAssignment()));
+    }
+
     /**
      * Test of iterator method, of class CostFunction.
      */
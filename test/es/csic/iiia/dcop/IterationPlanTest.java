@@ -0,0 +1,93 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.dcop;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class IterationPlanTest {
+
+    private Variable a, b, c;
+
+    @Before
+    public void setUp() {
+        a = new Variable("a", 2);
+        b = new Variable("b", 3);
+        c = new Variable("c", 4);
+    }
+
+    /**
+     * Test of the plan strides and offsets.
+     */
+    @Test
+    public void testStridesAndOffsets() {
+        IterationPlan plan = IterationPlan.get(new Variable[]{b,a}, new Variable[]{a,c,b});
+        assertArrayEquals(new long[]{1, 12}, plan.getStrides());
+        assertArrayEquals(new long[]{0, 3, 6, 9}, plan.getOffsets());
+        assertEquals(12 + 2, plan.index(new int[]{2, 1}));
+        assertSame(plan, IterationPlan.get(new Variable[]{b,a}, new Variable[]{a,c,b}));
+    }
+
+    /**
+     * Test that the odometer walks the reference space in natural order.
+     */
+    @Test
+    public void testOdometer() {
+        Variable[] ref = new Variable[]{a,b};
+        IterationPlan.Odometer it = IterationPlan.odometer(
+                IterationPlan.get(ref, new Variable[]{b}),
+                IterationPlan.get(ref, new Variable[]{b,a}));
+        final long[] idxs = it.getIndices();
+        long expected = 0;
+        do {
+            assertEquals(expected, it.getPosition());
+            assertEquals(expected % 3, idxs[0]);
+            assertEquals((expected % 3)*2 + expected/3, idxs[1]);
+            expected++;
+        } while (it.next());
+        assertEquals(6, expected);
+        assertEquals(0, idxs[0]);
+        assertEquals(0, idxs[1]);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.dcop;
+
+import gnu.trove.iterator.TLongIterator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class MaskedHypercubeCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        CostFunctionTypeFactory cff = new MaskedHypercubeCostFunctionFactory(f);
+        f.setDenseFactory(cff);
+        f.setSparseFactory(cff);
+        return f;
+    }
+
+    /**
+     * Test that iterators skip whole words of nogoods.
+     */
+    @Test
+    public void testIteratorSkipsNoGoods() {
+        factory.setMode(CostFunction.Summarize.MIN, CostFunction.Combine.SUM,
+                CostFunction.Normalize.NONE);
+        final double ng = Double.POSITIVE_INFINITY;
+        Variable x = new Variable("x", 10);
+        Variable y = new Variable("y", 20);
+        CostFunction f = factory.buildCostFunction(new Variable[]{x,y}, ng);
+        assertEquals(200, f.getNumberOfNoGoods());
+        assertFalse(f.iterator().hasNext());
+
+        final long[] goods = new long[]{0, 63, 64, 65, 130, 199};
+        for (long i : goods) {
+            f.setValue(i, i);
+        }
+        assertEquals(200 - goods.length, f.getNumberOfNoGoods());
+
+        TLongIterator it = f.iterator();
+        MasterIterator mit = f.masterIterator();
+        for (long i : goods) {
+            assertEquals(i, it.next());
+            assertEquals(i, mit.next());
+            assertArrayEquals(new int[]{(int)i/20, (int)i%20}, mit.getIndices());
+        }
+        assertFalse(it.hasNext());
+        assertFalse(mit.hasNext());
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the cost function tests over off-heap hypercubes with tiny (4-element)
+ * chunks, so that most operations cross chunk boundaries.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class OffHeapHypercubeCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        CostFunctionTypeFactory cff = new OffHeapHypercubeCostFunctionFactory(f, 2);
+        f.setDenseFactory(cff);
+        f.setSparseFactory(cff);
+        return f;
+    }
+
+    /**
+     * Test that values beyond the 2^31-th element are addressed through long
+     * indices, across chunk boundaries, and that copies share the chunks.
+     */
+    @Test
+    public void testLongIndices() {
+        Variable x = new Variable("x", 1 << 16);
+        Variable y = new Variable("y", 1 << 16);
+        CostFunctionTypeFactory cff = new OffHeapHypercubeCostFunctionFactory(factory, 20);
+        CostFunction f = cff.buildCostFunction(new Variable[]{x, y}, 1);
+        assertTrue(f.getSize() > Integer.MAX_VALUE);
+
+        final long boundary = (1L << 31) + (1 << 20);
+        f.setValue(boundary - 1, 2);
+        f.setValue(boundary, 3);
+        f.setValue(f.getSize() - 1, 4);
+        assertEquals(1, f.getValue(boundary - 2), 0);
+        assertEquals(2, f.getValue(boundary - 1), 0);
+        assertEquals(3, f.getValue(boundary), 0);
+        assertEquals(1, f.getValue(boundary + 1), 0);
+        assertEquals(4, f.getValue(f.getSize() - 1), 0);
+        assertEquals(1, f.getValue(0), 0);
+
+        CostFunction copy = cff.buildCostFunction(f);
+        copy.setValue(boundary, 5);
+        assertEquals(3, f.getValue(boundary), 0);
+        assertEquals(5, copy.getValue(boundary), 0);
+        assertEquals(2, copy.getValue(boundary - 1), 0);
+
+        try {
+            new HypercubeCostFunctionFactory(factory).buildCostFunction(f);
+            fail("Functions larger than an array can not be copied to hypercubes");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    /**
+     * Test that diagrams are built from off-heap functions without copying
+     * their values into an array.
+     */
+    @Test
+    public void testToDiagram() {
+        CostFunction add = new ADDCostFunctionFactory(factory).buildCostFunction(f1);
+        assertEquals(f1, add);
+        assertEquals(f1.getNumberOfNoGoods(), add.getNumberOfNoGoods());
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.dcop;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class OperationCacheTest {
+
+    private CostFunctionFactory factory;
+    private Variable a, b, c;
+    private CostFunction fab, fbc;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        a = new Variable("a", 2);
+        b = new Variable("b", 3);
+        c = new Variable("c", 4);
+        fab = factory.buildCostFunction(new Variable[]{a, b}, 0);
+        fab.setValues(new double[]{1, 2, 3, 4, 5, 6});
+        fbc = factory.buildCostFunction(new Variable[]{b, c}, 1);
+    }
+
+    /**
+     * Test of the shared summarize and combine methods, of class OperationCache.
+     */
+    @Test
+    public void testShared() {
+        OperationCache cache = new OperationCache();
+        CostFunction s = cache.summarize(fab, new Variable[]{a});
+        assertSame(s, cache.summarize(fab, new Variable[]{a}));
+        assertNotSame(s, cache.summarize(fab, new Variable[]{b}));
+        assertEquals(fab.summarize(new Variable[]{a}), s);
+
+        CostFunction m = cache.combine(fab, fbc);
+        assertSame(m, cache.combine(fab, fbc));
+        assertNotSame(m, cache.combine(fbc, fab));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(1/3d, cache.getHitRate(), 1e-9);
+        assertEquals(4, cache.size());
+    }
+
+    /**
+     * Test of the versioned keys, of class OperationCache.
+     */
+    @Test
+    public void testInvalidation() {
+        OperationCache cache = new OperationCache();
+        CostFunction s = cache.summarize(fab, new Variable[]{a});
+        fab.setValue(0, 10);
+        CostFunction s2 = cache.summarize(fab, new Variable[]{a});
+        assertNotSame(s, s2);
+        assertEquals(10, s2.getValue(0), 0);
+        assertEquals(0, cache.getHits());
+    }
+
+    /**
+     * Test of the size-bounded eviction, of class OperationCache.
+     */
+    @Test
+    public void testEviction() {
+        // Room for a summarization to {b} (3) and one to {a} (2)
+        OperationCache cache = new OperationCache(5);
+        cache.summarize(fab, new Variable[]{b});
+        cache.summarize(fab, new Variable[]{a});
+        assertEquals(0, cache.getEvictions());
+
+        // Using {b} makes {a} the least recently used one
+        cache.summarize(fab, new Variable[]{b});
+        cache.summarize(fbc, new Variable[]{c});
+        assertEquals(2, cache.getEvictions());
+        assertEquals(1, cache.size());
+
+        // Results larger than the cache are not stored
+        cache.combine(fab, fbc);
+        assertEquals(1, cache.size());
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.dcop;
+
+import es.csic.iiia.dcop.RepresentationPlanner.Operation;
+import es.csic.iiia.dcop.RepresentationPlanner.Representation;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class RepresentationPlannerTest {
+
+    private CostFunctionFactory factory;
+    private Variable a, b, c;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        factory.setPlanner(new CostModelPlanner());
+        a = new Variable("a", 10);
+        b = new Variable("b", 10);
+        c = new Variable("c", 10);
+    }
+
+    private CostFunction build(Variable[] vars, int goods) {
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        CostFunction f = factory.buildCostFunction(vars, ng);
+        for (int i=0; i<goods; i++) {
+            f.setValue(i, i+1);
+        }
+        return f;
+    }
+
+    /**
+     * Test of the cost model planner on very sparse operands.
+     */
+    @Test
+    public void testSparseCombination() {
+        CostFunction f = build(new Variable[]{a, b}, 1);
+        CostFunction g = build(new Variable[]{b, c}, 100);
+        CostFunction r = f.combine(g);
+        assertTrue(r instanceof MapCostFunction);
+        assertEquals(1, factory.getPlanner().getDecisions(Operation.COMBINE, Representation.SPARSE));
+        assertEquals(0, factory.getPlanner().getDecisions(Operation.COMBINE, Representation.DENSE));
+        assertEquals(f.getValue(0) + g.getValue(0), r.getValue(0), 0);
+    }
+
+    /**
+     * Test of the cost model planner on dense operands.
+     */
+    @Test
+    public void testDenseCombination() {
+        CostFunction f = build(new Variable[]{a, b}, 100);
+        CostFunction g = build(new Variable[]{b, c}, 100);
+        CostFunction r = f.combine(g);
+        assertTrue(r instanceof HypercubeCostFunction);
+        assertEquals(1, factory.getPlanner().getDecisions(Operation.COMBINE, Representation.DENSE));
+        assertTrue(factory.getPlanner().getReport().contains("PLANNER_COMBINE DENSE=1 HYBRID=0 SPARSE=0"));
+    }
+
+    /**
+     * Test of the stored representation, using both planners.
+     */
+    @Test
+    public void testRepresentation() {
+        CostFunction f = build(new Variable[]{a, b}, 1);
+        assertTrue(factory.buildCostFunction(f) instanceof MapCostFunction);
+        f = build(new Variable[]{a, b}, 100);
+        assertTrue(factory.buildCostFunction(f) instanceof HypercubeCostFunction);
+
+        factory.setPlanner(new ThresholdPlanner());
+        f = build(new Variable[]{a, b}, 20);
+        assertTrue(factory.buildCostFunction(f) instanceof MapCostFunction);
+        f = build(new Variable[]{a, b}, 21);
+        assertTrue(factory.buildCostFunction(f) instanceof HypercubeCostFunction);
+    }
+
+    /**
+     * Test that querying the representation of a function does not record
+     * it as a storage decision.
+     */
+    @Test
+    public void testQueryRepresentation() {
+        CostFunction f = build(new Variable[]{a, b}, 1);
+        final RepresentationPlanner planner = factory.getPlanner();
+        final long stored = planner.getDecisions(Operation.STORE, Representation.SPARSE);
+        assertEquals(Representation.SPARSE, planner.queryRepresentation(f));
+        assertEquals(stored, planner.getDecisions(Operation.STORE, Representation.SPARSE));
+        assertEquals(Representation.SPARSE, planner.getRepresentation(f));
+        assertEquals(stored + 1, planner.getDecisions(Operation.STORE, Representation.SPARSE));
+    }
+
+    /**
+     * Test that the size of very large scopes saturates instead of
+     * overflowing.
+     */
+    @Test
+    public void testGetSizeOverflow() {
+        Variable[] vars = new Variable[4];
+        for (int i=0; i<vars.length; i++) {
+            vars[i] = new Variable("v" + i, 1 << 20);
+        }
+        assertEquals(Long.MAX_VALUE, RepresentationPlanner.getSize(vars));
+        assertEquals(1000, RepresentationPlanner.getSize(new Variable[]{a, b, c}));
+    }
+
+}
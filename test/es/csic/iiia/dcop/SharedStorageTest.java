@@ -0,0 +1,94 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class SharedStorageTest {
+
+    /**
+     * Test that detaching a copy releases its share.
+     */
+    @Test
+    public void testDetach() {
+        Object f = new Object(), g = new Object();
+        SharedStorage s = new SharedStorage();
+        assertFalse(s.isShared());
+        SharedStorage t = s.share(f, g);
+        assertTrue(s.isShared());
+        assertTrue(t.isShared());
+        t = t.detach();
+        assertFalse(s.isShared());
+        assertFalse(t.isShared());
+
+        // Detaching twice does not release the share again
+        SharedStorage u = s.share(f, g);
+        SharedStorage v = s.share(f, new Object());
+        u.detach();
+        u.detach();
+        assertTrue(s.isShared());
+        v.detach();
+        assertFalse(s.isShared());
+    }
+
+    /**
+     * Test that a copy that is garbage collected releases its share.
+     */
+    @Test
+    public void testCollected() throws InterruptedException {
+        Object f = new Object();
+        SharedStorage s = new SharedStorage();
+        SharedStorage t = s.share(f, new Object());
+        assertTrue(s.isShared());
+        assertTrue(t.isShared());
+
+        t = null;
+        for (int i=0; i<100 && s.isShared(); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertFalse(s.isShared());
+    }
+
+}
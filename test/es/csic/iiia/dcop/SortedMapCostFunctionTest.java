@@ -0,0 +1,112 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class SortedMapCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        CostFunctionTypeFactory cff = new SortedMapCostFunctionFactory(f);
+        f.setDenseFactory(cff);
+        f.setSparseFactory(cff);
+        return f;
+    }
+
+    /**
+     * Test of the merge-join combination of two functions over the same
+     * variables, written out of order.
+     */
+    @Test
+    public void testMergeJoinCombine() {
+        factory.setMode(CostFunction.Summarize.MIN, CostFunction.Combine.SUM,
+                CostFunction.Normalize.NONE);
+        final double ng = Double.POSITIVE_INFINITY;
+        CostFunction f = factory.buildCostFunction(new Variable[]{a,c}, ng);
+        CostFunction g = factory.buildCostFunction(new Variable[]{a,c}, ng);
+        f.setValue(5, 1); f.setValue(0, 2); f.setValue(3, 3);
+        g.setValue(3, 1); g.setValue(4, 2); g.setValue(0, 3);
+
+        CostFunction res = factory.buildCostFunction(new Variable[]{a,c}, 0);
+        res.setValues(new double[]{5, ng, ng, 4, ng, ng});
+        CostFunction com = f.combine(g);
+        assertEquals(res, com);
+        assertEquals(4, com.getNumberOfNoGoods());
+    }
+
+    /**
+     * Test of the ordered summarization and filtering of a sparse function.
+     */
+    @Test
+    public void testOrderedSummarizeAndFilter() {
+        factory.setMode(CostFunction.Summarize.MIN, CostFunction.Combine.SUM,
+                CostFunction.Normalize.NONE);
+        final double ng = Double.POSITIVE_INFINITY;
+        CostFunction f = factory.buildCostFunction(new Variable[]{a,b,c}, ng);
+        f.setValue(10, 1); f.setValue(1, 2);
+
+        CostFunction res = factory.buildCostFunction(new Variable[]{a}, ng);
+        res.setValues(new double[]{2, 1});
+        assertEquals(res, f.summarize(new Variable[]{a}));
+        res = factory.buildCostFunction(new Variable[]{a,b}, ng);
+        res.setValues(new double[]{2, ng, ng, 1});
+        assertEquals(res, f.summarize(new Variable[]{a,b}));
+        res = factory.buildCostFunction(new Variable[]{c}, ng);
+        res.setValues(new double[]{ng, 1, ng});
+        assertEquals(res, f.summarize(new Variable[]{c}));
+
+        CostFunction g = factory.buildCostFunction(new Variable[]{b}, ng);
+        g.setValues(new double[]{0, 5});
+        res = factory.buildCostFunction(new Variable[]{a,b,c}, ng);
+        res.setValue(1, 2);
+        assertEquals(res, f.filter(Arrays.asList(g), 3));
+        CostFunction none = f.filter(Arrays.asList(g), 0);
+        assertEquals(0, none.getVariableSet().size());
+        assertEquals(ng, none.getValue(0), 0);
+    }
+
+}
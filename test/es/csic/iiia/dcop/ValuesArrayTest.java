@@ -0,0 +1,94 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.dcop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class ValuesArrayTest {
+
+    private ValuesArray values;
+
+    @Before
+    public void setUp() {
+        values = new ValuesArray(2);
+        for (double v : new double[]{3, 1, 4, 1, 5}) {
+            values.add(v);
+        }
+    }
+
+    /**
+     * Test of reduce method, of class ValuesArray.
+     */
+    @Test
+    public void testReduce() {
+        ArrayList<Integer> up = new ArrayList<Integer>(Arrays.asList(0, 1, 0, 2, 1));
+        ValuesArray red = values.reduce(up, CostFunction.Summarize.MIN);
+        assertEquals(3, red.size());
+        assertEquals(3, red.get(0), 0);
+        assertEquals(1, red.get(1), 0);
+        assertEquals(1, red.get(2), 0);
+
+        ValuesArray ext = red.extend(up);
+        assertEquals(5, ext.size());
+        assertEquals(1, ext.get(3), 0);
+    }
+
+    /**
+     * Test of the in-place combinations, of class ValuesArray.
+     */
+    @Test
+    public void testCombineInPlace() {
+        ValuesArray other = new ValuesArray(values);
+        assertEquals(values.combine(other, CostFunction.Combine.SUM),
+                new ValuesArray(values).combineInPlace(other, CostFunction.Combine.SUM));
+
+        other.combineNegatedInPlace(values, CostFunction.Combine.SUM);
+        for (int i=0; i<other.size(); i++) {
+            assertEquals(0, other.get(i), 0);
+        }
+    }
+
+}
@@ -219,6 +219,70 @@ public class GDLTest {
         assertEquals(cost, 20, 0.0001);
     }
 
+    @Test
+    public void testResidualMinSum() {
+        CostFunction.Summarize summarize = CostFunction.Summarize.MIN;
+        CostFunction.Combine combine = CostFunction.Combine.SUM;
+        CostFunction.Normalize normalize = CostFunction.Normalize.SUM0;
+        factory.setMode(summarize, combine, normalize);
+
+        Variable x,y,z,t,u,v;
+        x = new Variable("x", 2);
+        y = new Variable("y", 2);
+        z = new Variable("z", 2);
+        t = new Variable("t", 2);
+        u = new Variable("u", 2);
+        v = new Variable("v", 2);
+        Variable[] variables = new Variable[] {x, y, z, t, u, v};
+
+        // Simple cycle with unique solution
+        CostFunction f0 = factory.buildCostFunction(new Variable[] {x, y}, 0);
+        f0.setValues(new double[] {20, 10, 10, 0});
+        CostFunction f1 = factory.buildCostFunction(new Variable[] {y, t}, 0);
+        f1.setValues(new double[] {0, 4, 4, 12});
+        CostFunction f2 = factory.buildCostFunction(new Variable[] {z, t}, 0);
+        f2.setValues(new double[] {14, 10, 14, 10});
+        CostFunction f3 = factory.buildCostFunction(new Variable[] {t, u}, 0);
+        f3.setValues(new double[] {3, 2, 2, 0});
+        CostFunction f4 = factory.buildCostFunction(new Variable[] {z, v}, 0);
+        f4.setValues(new double[] {3, 2, 2, 0});
+        CostFunction f5 = factory.buildCostFunction(new Variable[] {u, v}, 0);
+        f5.setValues(new double[] {0, 10, 10, 0});
+        CostFunction[] factors = new CostFunction[] {f0,f1,f2,f3,f4,f5};
+
+        // Build a junction tree
+        UPGraph g = MaxSum.buildGraph(Arrays.asList(factors));
+
+        // Run the UtilityPropagation phase
+        g.setFactory(factory);
+        g.setMode(Modes.GRAPH);
+        g.setScheduler(new ResidualScheduler());
+        g.run(100);
+
+        // Extract a solution
+        VPGraph vp = new VPGraph(g, solvingStrategy);
+        VPResults res = vp.run(100);
+        UBGraph ub = new UBGraph(vp);
+        UBResults ubres = ub.run(100);
+        VariableAssignment map = ubres.getMap();
+
+        // The solution should be 1 1 1 0 1 1
+        assertEquals((int)map.get(x), 1);
+        assertEquals((int)map.get(y), 1);
+        assertEquals((int)map.get(z), 1);
+        assertEquals((int)map.get(t), 0);
+        assertEquals((int)map.get(u), 1);
+        assertEquals((int)map.get(v), 1);
+
+
+        // With a total utility of 20
+        double cost = 0;
+        for (CostFunction fn : factors) {
+            cost += fn.getValue(map);
+        }
+        assertEquals(cost, 20, 0.0001);
+    }
+
     @Test
     @Ignore
     public void testGraphGdlMinSum() {
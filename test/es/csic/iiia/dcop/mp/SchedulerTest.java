@@ -0,0 +1,341 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.dcop.mp;
+
+import es.csic.iiia.dcop.CostFunction;
+import es.csic.iiia.dcop.CostFunctionFactory;
+import es.csic.iiia.dcop.FactorGraph;
+import es.csic.iiia.dcop.Variable;
+import es.csic.iiia.dcop.VariableAssignment;
+import es.csic.iiia.dcop.algo.JunctionTreeAlgo;
+import es.csic.iiia.dcop.algo.MaxSum;
+import es.csic.iiia.dcop.bb.UBGraph;
+import es.csic.iiia.dcop.dfs.MCS;
+import es.csic.iiia.dcop.dsa.DSA;
+import es.csic.iiia.dcop.dsa.DSAResults;
+import es.csic.iiia.dcop.gdl.GdlFactory;
+import es.csic.iiia.dcop.gdl.GdlGraph;
+import es.csic.iiia.dcop.gdl.ResidualScheduler;
+import es.csic.iiia.dcop.jt.JunctionTree;
+import es.csic.iiia.dcop.mp.AbstractNode.Modes;
+import es.csic.iiia.dcop.up.UPGraph;
+import es.csic.iiia.dcop.vp.VPGraph;
+import es.csic.iiia.dcop.vp.strategy.VPStrategy;
+import es.csic.iiia.dcop.vp.strategy.expansion.GreedyExpansion;
+import es.csic.iiia.dcop.vp.strategy.solving.OptimalSolvingStrategy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that every scheduler produces the same results (and metrics, when
+ * applicable) as the sequential synchronous one.
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class SchedulerTest {
+
+    private CostFunctionFactory factory;
+    private List<CostFunction> factors;
+    private MCS mcs;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        factory.setMode(CostFunction.Summarize.MAX, CostFunction.Combine.SUM,
+                CostFunction.Normalize.NONE);
+
+        // Random 5x5 grid of binary variables
+        final int side = 5;
+        Random random = new Random(0);
+        Variable[][] vs = new Variable[side][side];
+        for (int i=0; i<side; i++) {
+            for (int j=0; j<side; j++) {
+                vs[i][j] = new Variable("v" + i + "_" + j, 2);
+            }
+        }
+        factors = new ArrayList<CostFunction>();
+        for (int i=0; i<side; i++) {
+            for (int j=0; j<side; j++) {
+                if (i+1 < side) {
+                    factors.add(randomFunction(random, vs[i][j], vs[i+1][j]));
+                }
+                if (j+1 < side) {
+                    factors.add(randomFunction(random, vs[i][j], vs[i][j+1]));
+                }
+            }
+        }
+
+        // The variable ordering breaks ties randomly, so it is computed once
+        // to build the same junction tree for every scheduler.
+        mcs = new MCS(factors);
+    }
+
+    @After
+    public void tearDown() {
+        DefaultGraph.setDefaultScheduler(new SynchronousScheduler());
+    }
+
+    private CostFunction randomFunction(Random random, Variable... vars) {
+        CostFunction f = factory.buildCostFunction(vars, 0);
+        for (int i=0; i<f.getSize(); i++) {
+            f.setValue(i, random.nextInt(10));
+        }
+        return f;
+    }
+
+    /**
+     * Solves the problem optimally using GDL over a junction tree.
+     *
+     * @return cycle metrics of the utility propagation phase, followed by
+     * the cost of the solution.
+     */
+    private double[] solveGdl(Scheduler scheduler, Modes mode) {
+        DefaultGraph.setDefaultScheduler(scheduler);
+
+        GdlFactory gdlFactory = new GdlFactory();
+        gdlFactory.setMode(mode);
+        UPGraph g = JunctionTreeAlgo.buildGraph(gdlFactory,
+                mcs.getFactorDistribution(), mcs.getAdjacency());
+        new JunctionTree(g).run(100);
+        g.setFactory(factory);
+        DefaultResults results = g.run(1000);
+
+        VPGraph vp = new VPGraph(g, new VPStrategy(new GreedyExpansion(),
+                new OptimalSolvingStrategy()));
+        vp.run(1000);
+        VariableAssignment map = new UBGraph(vp).run(1000).getMap();
+
+        double cost = 0;
+        for (CostFunction f : factors) {
+            cost += f.getValue(map);
+        }
+        return new double[]{results.getIterations(), results.getTotalCcc(),
+                results.getMaximalCcc(), results.getTotalBytesc(),
+                results.getMaximalBytesc(), cost};
+    }
+
+    /**
+     * Runs a fixed number of max-sum iterations.
+     *
+     * @return cycle metrics of the run.
+     */
+    private long[] runMaxSum(Scheduler scheduler) {
+        DefaultGraph.setDefaultScheduler(scheduler);
+
+        GdlGraph g = MaxSum.buildGraph(factors);
+        g.setFactory(factory);
+        DefaultResults results = g.run(20);
+        return new long[]{results.getIterations(), results.getTotalCcc(),
+                results.getMaximalCcc(), results.getTotalBytesc(),
+                results.getMaximalBytesc()};
+    }
+
+    /**
+     * Runs DSA until it converges, checking that it does so before
+     * exhausting the given number of iterations.
+     *
+     * @return assignment found.
+     */
+    private VariableAssignment runDsa(Scheduler scheduler, int maxIterations) {
+        DefaultGraph.setDefaultScheduler(scheduler);
+
+        DSA dsa = new DSA(new FactorGraph(factors));
+        DSAResults results = dsa.run(maxIterations);
+        assertTrue(results.getIterations() < maxIterations);
+        return results.getGlobalAssignment().toVariableAssignment();
+    }
+
+    /**
+     * Checks that no variable can improve the given assignment by changing
+     * its value alone, which holds once every DSA node has converged.
+     */
+    private void assertLocalOptimum(VariableAssignment map) {
+        for (Variable v : new ArrayList<Variable>(map.keySet())) {
+            final int value = map.get(v);
+            final double current = getLocalUtility(v, map);
+            for (int i=0; i<v.getDomain(); i++) {
+                map.put(v, i);
+                assertTrue(getLocalUtility(v, map) <= current + 0.0001);
+            }
+            map.put(v, value);
+        }
+    }
+
+    private double getLocalUtility(Variable v, VariableAssignment map) {
+        double utility = 0;
+        for (CostFunction f : factors) {
+            if (f.getVariableSet().contains(v)) {
+                utility += f.getValue(map);
+            }
+        }
+        return utility;
+    }
+
+    @Test
+    public void testParallelSynchronousGdl() {
+        final double[] expected = solveGdl(new SynchronousScheduler(), Modes.GRAPH);
+        final double[] actual = solveGdl(new SynchronousScheduler(4), Modes.GRAPH);
+        assertArrayEquals(expected, actual, 0.0001);
+    }
+
+    @Test
+    public void testParallelSynchronousMaxSum() {
+        final long[] expected = runMaxSum(new SynchronousScheduler());
+        final long[] actual = runMaxSum(new SynchronousScheduler(4));
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testWavefrontGdl() {
+        final double[] expected = solveGdl(new SynchronousScheduler(), Modes.TREE_UP);
+        final double[] actual = solveGdl(new WavefrontScheduler(), Modes.TREE_UP);
+
+        // Rooting the tree at a single center node can take one more cycle
+        // than meeting at a central edge, but the exchanged messages and the
+        // solution must be the same.
+        assertEquals(expected[0], actual[0], 1);
+        assertEquals(expected[3], actual[3], 0);
+        assertEquals(expected[5], actual[5], 0.0001);
+
+        assertArrayEquals(actual, solveGdl(new WavefrontScheduler(4), Modes.TREE_UP), 0);
+    }
+
+    @Test
+    public void testWavefrontMaxSum() {
+        final long[] expected = runMaxSum(new SynchronousScheduler());
+        assertArrayEquals(expected, runMaxSum(new WavefrontScheduler(4)));
+    }
+
+    @Test
+    public void testAsynchronousGdl() {
+        final double cost = solveGdl(new SynchronousScheduler(), Modes.GRAPH)[5];
+        assertEquals(cost, solveGdl(new AsynchronousScheduler(), Modes.GRAPH)[5], 0.0001);
+        assertEquals(cost, solveGdl(new AsynchronousScheduler(4), Modes.GRAPH)[5], 0.0001);
+    }
+
+    @Test
+    public void testAsynchronousMaxSumBudget() {
+        // Loopy max-sum does not need to become quiescent, so the run is
+        // bounded by the given number of iterations.
+        final long[] metrics = runMaxSum(new AsynchronousScheduler(4));
+        assertTrue(metrics[0] <= 20);
+        assertTrue(metrics[1] > 0);
+    }
+
+    @Test
+    public void testAsynchronousDsa() {
+        // DSA nodes that have not heard from all their neighbors must wait
+        // for them instead of reporting convergence.
+        VariableAssignment map = runDsa(new AsynchronousScheduler(), 1000);
+        assertEquals(25, map.size());
+        assertLocalOptimum(map);
+
+        map = runDsa(new AsynchronousScheduler(4), 1000);
+        assertEquals(25, map.size());
+        assertLocalOptimum(map);
+    }
+
+    @Test
+    public void testResidualGdl() {
+        final double[] expected = solveGdl(new SynchronousScheduler(), Modes.GRAPH);
+        final double[] actual = solveGdl(new ResidualScheduler(), Modes.GRAPH);
+        assertTrue(actual[0] < 1000);
+        assertEquals(expected[5], actual[5], 0.0001);
+    }
+
+    @Test
+    public void testActorsGdl() {
+        final double cost = solveGdl(new SynchronousScheduler(), Modes.GRAPH)[5];
+        assertEquals(cost, solveGdl(new ActorScheduler(4), Modes.GRAPH)[5], 0.0001);
+
+        // Message latencies change the order of the deliveries, but not the
+        // (exact) result.
+        ActorScheduler scheduler = new ActorScheduler(4);
+        scheduler.setLatencyModel(new UniformLatencyModel(0, 200000));
+        assertEquals(cost, solveGdl(scheduler, Modes.GRAPH)[5], 0.0001);
+    }
+
+    @Test
+    public void testActorsOnPool() {
+        final boolean virtual = ActorScheduler.VIRTUAL_THREADS;
+        ActorScheduler.VIRTUAL_THREADS = false;
+        try {
+            final double cost = solveGdl(new SynchronousScheduler(), Modes.GRAPH)[5];
+            assertEquals(cost, solveGdl(new ActorScheduler(), Modes.GRAPH)[5], 0.0001);
+            assertTrue(runMaxSum(new ActorScheduler(4))[0] <= 20);
+        } finally {
+            ActorScheduler.VIRTUAL_THREADS = virtual;
+        }
+    }
+
+    @Test
+    public void testActorsDsa() {
+        // Agents waiting for the (delayed) first messages of their
+        // neighbors park instead of spending the budget of runs, so DSA
+        // converges within a few cycles worth of runs.
+        ActorScheduler scheduler = new ActorScheduler(4);
+        scheduler.setLatencyModel(new UniformLatencyModel(0, 2000000));
+        VariableAssignment map = runDsa(scheduler, 50);
+        assertEquals(25, map.size());
+        assertLocalOptimum(map);
+
+        final boolean virtual = ActorScheduler.VIRTUAL_THREADS;
+        ActorScheduler.VIRTUAL_THREADS = false;
+        try {
+            scheduler = new ActorScheduler(2);
+            scheduler.setLatencyModel(new FixedLatencyModel(1000000));
+            map = runDsa(scheduler, 50);
+            assertEquals(25, map.size());
+            assertLocalOptimum(map);
+        } finally {
+            ActorScheduler.VIRTUAL_THREADS = virtual;
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidThreads() {
+        new SynchronousScheduler(0);
+    }
+
+}
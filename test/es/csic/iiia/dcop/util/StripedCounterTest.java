@@ -0,0 +1,110 @@
+/*
+ * Software License Agreement (BSD License)
+ * 
+ * Copyright (c) 2010, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ * 
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ * 
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute 
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.dcop.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol (mpujol at iiia.csic.es)
+ */
+public class StripedCounterTest {
+
+    /**
+     * Test that trackers only account for the calling thread, whereas the
+     * sum aggregates all of them, even after they have died.
+     */
+    @Test
+    public void testThreads() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        counter.addTracker(this);
+        counter.add(5);
+
+        Thread[] threads = new Thread[4];
+        for (int i=0; i<threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j=0; j<1000; j++) {
+                        counter.inc();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        if (StripedCounter.ENABLED) {
+            assertEquals(5, counter.removeTracker(this));
+            assertEquals(4005, counter.sum());
+        } else {
+            assertEquals(0, counter.removeTracker(this));
+            assertEquals(0, counter.sum());
+        }
+    }
+
+    /**
+     * Test that trackers account for the parallel workers that ran the
+     * calling thread's operations, without counting them twice in the sum.
+     */
+    @Test
+    public void testParallelWorkers() {
+        final StripedCounter counter = new StripedCounter();
+        final int threads = Parallelism.THREADS;
+        Parallelism.THREADS = 4;
+        try {
+            counter.addTracker(this);
+            Parallelism.forRange(1000, 8, new Parallelism.RangeTask() {
+                public void run(int block, long from, long to) {
+                    for (long i=from; i<to; i++) {
+                        counter.inc();
+                    }
+                }
+            });
+            final long expected = StripedCounter.ENABLED ? 1000 : 0;
+            assertEquals(expected, counter.removeTracker(this));
+            assertEquals(expected, counter.sum());
+        } finally {
+            Parallelism.THREADS = threads;
+        }
+    }
+
+}
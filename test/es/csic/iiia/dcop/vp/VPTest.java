@@ -39,6 +39,7 @@
 package es.csic.iiia.dcop.vp;
 
 import es.csic.iiia.dcop.vp.strategy.expansion.GreedyExpansion;
+import es.csic.iiia.dcop.CompactAssignment;
 import es.csic.iiia.dcop.CostFunction;
 import es.csic.iiia.dcop.CostFunctionFactory;
 import es.csic.iiia.dcop.Variable;
@@ -50,8 +51,10 @@ import es.csic.iiia.dcop.dfs.MCS;
 import es.csic.iiia.dcop.gdl.GdlFactory;
 import es.csic.iiia.dcop.up.UPFactory;
 import es.csic.iiia.dcop.up.UPGraph;
+import es.csic.iiia.dcop.vp.strategy.CandidateSolution;
 import es.csic.iiia.dcop.vp.strategy.VPStrategy;
 import es.csic.iiia.dcop.vp.strategy.solving.OptimalSolvingStrategy;
+import java.util.ArrayList;
 import java.util.Arrays;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -130,6 +133,29 @@ public class VPTest {
         assertNotNull(result);
     }
 
+    /**
+     * Test of the candidate solutions of class OptimalSolvingStrategy.
+     */
+    @Test
+    public void testOptimalCandidates() {
+        ArrayList<CostFunction> fs = new ArrayList<CostFunction>();
+        fs.add(f[0]);
+        fs.add(f[3]);
+        CandidateSolution c = new OptimalSolvingStrategy().getCandidateSolution(
+                fs, 0, new CompactAssignment());
+
+        double previous = c.getCost();
+        assertEquals(4, previous, 0);
+        int n = 0;
+        while (c != null) {
+            assertTrue(c.getCost() <= previous);
+            previous = c.getCost();
+            c = c.next();
+            n++;
+        }
+        assertEquals(8, n);
+    }
+
     /**
      * Test of buildResults method, of class VPGraph.
      */